@@ -309,6 +309,19 @@ public abstract class BaseParser implements IParser {
 		doEncodeResourceToWriter(theResource, theWriter);
 	}
 
+	@Override
+	public void encodeResourceToOutputStream(IBaseResource theResource, OutputStream theOutputStream) throws IOException, DataFormatException {
+		Validate.notNull(theOutputStream, "theOutputStream can not be null");
+
+		/*
+		 * OutputStreamWriter encodes into its own byte buffer, so we don't need
+		 * an additional BufferedWriter here
+		 */
+		Writer writer = new OutputStreamWriter(theOutputStream, Constants.CHARSET_UTF8);
+		encodeResourceToWriter(theResource, writer);
+		writer.flush();
+	}
+
 	private void filterCodingsWithNoCodeOrSystem(List<? extends IBaseCoding> tagList) {
 		for (int i = 0; i < tagList.size(); i++) {
 			if (isBlank(tagList.get(i).getCode()) && isBlank(tagList.get(i).getSystem())) {
@@ -42,6 +42,19 @@ public interface IParser {
 
 	void encodeResourceToWriter(IBaseResource theResource, Writer theWriter) throws IOException, DataFormatException;
 
+	/**
+	 * Encodes a resource directly to an output stream, using the UTF-8 character set. This avoids
+	 * creating an intermediate String for the whole encoded resource, which can be significant
+	 * when encoding large resources such as search result Bundles.
+	 *
+	 * @param theResource
+	 *           The resource to encode
+	 * @param theOutputStream
+	 *           The stream to write to. Note that the stream will be flushed but will not be closed by the parser upon completion.
+	 * @since 3.3.0
+	 */
+	void encodeResourceToOutputStream(IBaseResource theResource, OutputStream theOutputStream) throws IOException, DataFormatException;
+
 	/**
 	 * See {@link #setEncodeElements(Set)}
 	 */
@@ -28,6 +28,11 @@ import ca.uhn.fhir.rest.api.RequestTypeEnum;
 
 public interface IRestfulClientFactory {
 
+	/**
+	 * Default value for {@link #getAsyncMaxInFlightRequests()}
+	 */
+	public static final int DEFAULT_ASYNC_MAX_IN_FLIGHT_REQUESTS = 10;
+
 	/**
 	 * Default value for {@link #getConnectTimeout()}
 	 */
@@ -58,6 +63,16 @@ public interface IRestfulClientFactory {
 	 */
 	public static final int DEFAULT_POOL_MAX_PER_ROUTE = DEFAULT_POOL_MAX;
 	
+	/**
+	 * Gets the maximum number of requests started using
+	 * {@link ca.uhn.fhir.rest.gclient.IClientExecutable#executeAsync() executeAsync()} which
+	 * will be executed concurrently by clients created by this factory.
+	 * <p>
+	 * The default value for this setting is defined by {@link #DEFAULT_ASYNC_MAX_IN_FLIGHT_REQUESTS}
+	 * </p>
+	 */
+	int getAsyncMaxInFlightRequests();
+
 	/**
 	 * Gets the connection request timeout, in milliseconds. This is the amount of time that the HTTPClient connection
 	 * pool may wait for an available connection before failing. This setting typically does not need to be adjusted.
@@ -248,6 +263,21 @@ public interface IRestfulClientFactory {
 	 * </p>
 	 */
 	void setPoolMaxPerRoute(int thePoolMaxPerRoute);
+
+	/**
+	 * Sets the maximum number of requests started using
+	 * {@link ca.uhn.fhir.rest.gclient.IClientExecutable#executeAsync() executeAsync()} which
+	 * will be executed concurrently by clients created by this factory. Additional requests are
+	 * queued until a previous request has completed.
+	 * <p>
+	 * Note that in order for requests to actually proceed concurrently, the connection pool
+	 * must be large enough to hold this number of connections (see {@link #setPoolMaxPerRoute(int)}).
+	 * </p>
+	 * <p>
+	 * The default value for this setting is defined by {@link #DEFAULT_ASYNC_MAX_IN_FLIGHT_REQUESTS}
+	 * </p>
+	 */
+	void setAsyncMaxInFlightRequests(int theAsyncMaxInFlightRequests);
 	
 	void validateServerBase(String theServerBase, IHttpClient theHttpClient, IRestfulClient theClient);
 
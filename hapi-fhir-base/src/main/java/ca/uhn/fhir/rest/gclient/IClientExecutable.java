@@ -6,6 +6,7 @@ import ca.uhn.fhir.rest.api.SummaryEnum;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 
 import java.util.List;
+import java.util.concurrent.Future;
 
 /*
  * #%L
@@ -63,6 +64,24 @@ public interface IClientExecutable<T extends IClientExecutable<?,Y>, Y> {
 	 */
 	Y execute();
 
+	/**
+	 * Execute the client operation on a background thread, returning a {@link Future} which
+	 * can be used to retrieve the result once it is available. Any exception which would
+	 * have been thrown by {@link #execute()} will be thrown (wrapped in an
+	 * {@link java.util.concurrent.ExecutionException ExecutionException}) by {@link Future#get()}.
+	 * <p>
+	 * The maximum number of requests which will be executed concurrently is controlled by
+	 * {@link ca.uhn.fhir.rest.client.api.IRestfulClientFactory#setAsyncMaxInFlightRequests(int)}.
+	 * Requests beyond this limit are queued until a thread becomes available.
+	 * </p>
+	 * <p>
+	 * Note that the executable should not be modified after this method has been called.
+	 * </p>
+	 *
+	 * @since 3.3.0
+	 */
+	Future<Y> executeAsync();
+
 	/**
 	 * Explicitly specify a custom structure type to attempt to use when parsing the response. This
 	 * is useful for invocations where the response is a Bundle/Parameters containing nested resources,
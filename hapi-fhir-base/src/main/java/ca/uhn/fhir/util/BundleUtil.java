@@ -73,6 +73,63 @@ public class BundleUtil {
 		return retVal;		
 	}
 	
+	/**
+	 * Returns the URL of the link with the given relation (e.g. "next") in the given bundle, or
+	 * <code>null</code> if the bundle has no such link
+	 */
+	public static String getLinkUrlOfType(FhirContext theContext, IBaseBundle theBundle, String theLinkRelation) {
+		RuntimeResourceDefinition def = theContext.getResourceDefinition(theBundle);
+		BaseRuntimeChildDefinition entryChild = def.getChildByName("link");
+		List<IBase> links = entryChild.getAccessor().getValues(theBundle);
+		for (IBase nextLink : links) {
+
+			boolean isRightRel = false;
+			BaseRuntimeElementCompositeDefinition<?> relDef = (BaseRuntimeElementCompositeDefinition<?>) theContext.getElementDefinition(nextLink.getClass());
+			BaseRuntimeChildDefinition relChild = relDef.getChildByName("relation");
+			List<IBase> relValues = relChild.getAccessor().getValues(nextLink);
+			for (IBase next : relValues) {
+				IPrimitiveType<?> nextValue = (IPrimitiveType<?>) next;
+				if (theLinkRelation.equals(nextValue.getValueAsString())) {
+					isRightRel = true;
+				}
+			}
+
+			if (!isRightRel) {
+				continue;
+			}
+
+			BaseRuntimeChildDefinition urlChild = relDef.getChildByName("url");
+			List<IBase> values = urlChild.getAccessor().getValues(nextLink);
+			for (IBase nextUrl : values) {
+				IPrimitiveType<?> nextValue = (IPrimitiveType<?>) nextUrl;
+				if (isNotBlank(nextValue.getValueAsString())) {
+					return nextValue.getValueAsString();
+				}
+			}
+
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the value of <code>Bundle.total</code>, or <code>null</code> if the bundle
+	 * does not declare a total
+	 */
+	public static Integer getTotal(FhirContext theContext, IBaseBundle theBundle) {
+		RuntimeResourceDefinition def = theContext.getResourceDefinition(theBundle);
+		BaseRuntimeChildDefinition entryChild = def.getChildByName("total");
+		List<IBase> entries = entryChild.getAccessor().getValues(theBundle);
+		if (entries.size() > 0) {
+			@SuppressWarnings("unchecked")
+			IPrimitiveType<Number> typeElement = (IPrimitiveType<Number>) entries.get(0);
+			if (typeElement != null && typeElement.getValue() != null) {
+				return typeElement.getValue().intValue();
+			}
+		}
+		return null;
+	}
+
 	public static String getBundleType(FhirContext theContext, IBaseBundle theBundle) {
 		RuntimeResourceDefinition def = theContext.getResourceDefinition(theBundle);
 		BaseRuntimeChildDefinition entryChild = def.getChildByName("type");
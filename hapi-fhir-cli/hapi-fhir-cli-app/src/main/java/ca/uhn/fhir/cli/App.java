@@ -42,6 +42,7 @@ public class App {
 		ourCommands.add(new WebsocketSubscribeCommand());
 		ourCommands.add(new UploadTerminologyCommand());
 		ourCommands.add(new IgPackUploader());
+		ourCommands.add(new BulkLoadCommand());
 
 		Collections.sort(ourCommands);
 	}
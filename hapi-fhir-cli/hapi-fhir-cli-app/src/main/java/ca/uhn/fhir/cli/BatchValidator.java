@@ -0,0 +1,209 @@
+package ca.uhn.fhir.cli;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.util.OperationOutcomeUtil;
+import ca.uhn.fhir.validation.FhirValidator;
+import ca.uhn.fhir.validation.ResultSeverityEnum;
+import ca.uhn.fhir.validation.SingleValidationMessage;
+import ca.uhn.fhir.validation.ValidationResult;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.hl7.fhir.instance.model.api.IBaseOperationOutcome;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Validates every *.json and *.xml file in a directory (including its subdirectories) or a zip
+ * archive, using one validator which is shared by a pool of threads. The first file is validated
+ * on its own so that the validator has loaded its structure definitions before the other threads
+ * start using it.
+ * <p>
+ * The results for each file can be written to an output file as NDJSON, with one OperationOutcome
+ * per line. The first issue in each OperationOutcome has the name of the file as its location.
+ * </p>
+ */
+class BatchValidator {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(BatchValidator.class);
+
+	private final Charset myCharset;
+	private final FhirContext myCtx;
+	private final AtomicLong myErrorCount = new AtomicLong();
+	private final AtomicLong myFailedFileCount = new AtomicLong();
+	private final AtomicLong myFileCount = new AtomicLong();
+	private final Semaphore myInFlight;
+	private final Writer myOutput;
+	private final int myThreadCount;
+	private final FhirValidator myValidator;
+	private final AtomicLong myWarningCount = new AtomicLong();
+	private ExecutorService myExecutor;
+	private boolean myWarmedUp;
+
+	/**
+	 * @param theOutput Where to write an OperationOutcome for each file, or <code>null</code>
+	 */
+	BatchValidator(FhirContext theCtx, FhirValidator theValidator, int theThreadCount, Charset theCharset, Writer theOutput) {
+		myCtx = theCtx;
+		myValidator = theValidator;
+		myThreadCount = theThreadCount;
+		myCharset = theCharset;
+		myOutput = theOutput;
+		myInFlight = new Semaphore(theThreadCount * 2);
+	}
+
+	long getFailedFileCount() {
+		return myFailedFileCount.get();
+	}
+
+	private static boolean isResourceFile(String theName) {
+		String extension = FilenameUtils.getExtension(theName).toLowerCase();
+		return "json".equals(extension) || "xml".equals(extension);
+	}
+
+	private void submit(final String theName, final File theFile, final String theContents) throws InterruptedException {
+		if (!myWarmedUp) {
+			myWarmedUp = true;
+			validate(theName, theFile, theContents);
+			return;
+		}
+		myInFlight.acquire();
+		myExecutor.submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					validate(theName, theFile, theContents);
+				} finally {
+					myInFlight.release();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Validates all of the files in a directory or zip archive, and logs a summary
+	 */
+	void validate(File theSource) throws IOException, InterruptedException {
+		long start = System.currentTimeMillis();
+		myExecutor = Executors.newFixedThreadPool(myThreadCount);
+		try {
+			if (theSource.isDirectory()) {
+				validateDirectory(theSource);
+			} else {
+				validateZip(theSource);
+			}
+		} finally {
+			myExecutor.shutdown();
+			myExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			if (myOutput != null) {
+				myOutput.flush();
+			}
+		}
+
+		long millis = Math.max(1, System.currentTimeMillis() - start);
+		ourLog.info("Validated {} files in {} seconds ({} files/second)", myFileCount.get(), millis / 1000, myFileCount.get() * 1000 / millis);
+		ourLog.info("{} files failed validation - {} errors and {} warnings in total", myFailedFileCount.get(), myErrorCount.get(), myWarningCount.get());
+	}
+
+	private void validate(String theName, File theFile, String theContents) {
+		ValidationResult result;
+		try {
+			String contents = theContents;
+			if (contents == null) {
+				contents = FileUtils.readFileToString(theFile, myCharset);
+			}
+			result = myValidator.validateWithResult(contents);
+		} catch (Exception e) {
+			SingleValidationMessage message = new SingleValidationMessage();
+			message.setSeverity(ResultSeverityEnum.FATAL);
+			message.setMessage("Failed to validate: " + e.toString());
+			result = new ValidationResult(myCtx, Collections.singletonList(message));
+		}
+
+		long fileCount = myFileCount.incrementAndGet();
+		int errors = 0;
+		for (SingleValidationMessage next : result.getMessages()) {
+			if (next.getSeverity() == ResultSeverityEnum.ERROR || next.getSeverity() == ResultSeverityEnum.FATAL) {
+				errors++;
+			} else if (next.getSeverity() == ResultSeverityEnum.WARNING) {
+				myWarningCount.incrementAndGet();
+			}
+		}
+		myErrorCount.addAndGet(errors);
+		if (!result.isSuccessful()) {
+			myFailedFileCount.incrementAndGet();
+			ourLog.warn("Validation FAILED for {} ({} errors)", theName, errors);
+		}
+		if (fileCount % 1000 == 0) {
+			ourLog.info("Validated {} files", fileCount);
+		}
+
+		if (myOutput != null) {
+			IBaseOperationOutcome oo = OperationOutcomeUtil.newInstance(myCtx);
+			OperationOutcomeUtil.addIssue(myCtx, oo, "information", "Validation results for " + theName, theName, "informational");
+			result.populateOperationOutcome(oo);
+			String encoded = myCtx.newJsonParser().setPrettyPrint(false).encodeResourceToString(oo);
+			synchronized (myOutput) {
+				try {
+					myOutput.write(encoded);
+					myOutput.write('\n');
+				} catch (IOException e) {
+					ourLog.error("Failed to write results for " + theName, e);
+				}
+			}
+		}
+	}
+
+	private void validateDirectory(final File theDirectory) throws IOException, InterruptedException {
+		final Path base = theDirectory.toPath();
+		try {
+			Files.walkFileTree(base, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path theFile, BasicFileAttributes theAttrs) throws IOException {
+					if (theAttrs.isRegularFile() && isResourceFile(theFile.getFileName().toString())) {
+						try {
+							submit(base.relativize(theFile).toString(), theFile.toFile(), null);
+						} catch (InterruptedException e) {
+							throw new InterruptedIOException();
+						}
+					}
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (InterruptedIOException e) {
+			throw new InterruptedException();
+		}
+	}
+
+	private void validateZip(File theFile) throws IOException, InterruptedException {
+		ZipInputStream zis = new ZipInputStream(new BufferedInputStream(FileUtils.openInputStream(theFile)));
+		try {
+			ZipEntry nextEntry;
+			while ((nextEntry = zis.getNextEntry()) != null) {
+				if (nextEntry.isDirectory() || !isResourceFile(nextEntry.getName())) {
+					continue;
+				}
+				// The archive can only be read in order, so entries are read here and validated by the pool
+				String contents = IOUtils.toString(zis, myCharset);
+				submit(nextEntry.getName(), null, contents);
+			}
+		} finally {
+			IOUtils.closeQuietly(zis);
+		}
+	}
+
+}
@@ -0,0 +1,667 @@
+package ca.uhn.fhir.cli;
+
+import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementCompositeDefinition;
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import ca.uhn.fhir.model.valueset.BundleTypeEnum;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.api.IVersionSpecificBundleFactory;
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
+import ca.uhn.fhir.rest.client.apache.GZipContentInterceptor;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.exceptions.FhirClientConnectionException;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import ca.uhn.fhir.util.BundleUtil;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+/**
+ * Uploads the resources in a directory of NDJSON and Bundle files to a server. NDJSON files are
+ * read one line at a time and uploaded as transactions of a fixed number of resources. Any other
+ * file is read in full and uploaded as a transaction of its own, so that the fullUrl and request
+ * of each entry in a Bundle are kept and references between its entries still resolve. Several
+ * transactions are sent at once, failed transactions are retried, and progress is saved to a
+ * checkpoint file so that an interrupted load can be resumed by running the command again.
+ * <p>
+ * A transaction which is interrupted by a connection problem (e.g. a timeout) may still have been
+ * processed by the server, so it is only retried if it has no entries which create resources with
+ * a POST. Running the command again after such a failure uploads the transaction again, which can
+ * create duplicates of the resources it creates.
+ * </p>
+ */
+public class BulkLoadCommand extends BaseCommand {
+
+	static final String CHECKPOINT_FILENAME = ".hapi-fhir-cli-bulk-load.properties";
+	private static final int DEFAULT_BATCH_SIZE = 100;
+	private static final int DEFAULT_CONCURRENCY = 4;
+	private static final int DEFAULT_RETRIES = 3;
+	private static final long INITIAL_RETRY_DELAY_MILLIS = 1000;
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(BulkLoadCommand.class);
+
+	private IGenericClient myClient;
+	private AtomicLong myFailedBatchCount;
+	private int myRetries;
+	private long myStart;
+	private AtomicLong myUploadedCount;
+
+	@Override
+	public String getCommandDescription() {
+		return "Uploads all of the resources in a directory of NDJSON (one resource per line) and/or Bundle files to a given server, in transactions which are sent concurrently. NDJSON files are uploaded in batches, and each Bundle file is uploaded as a single transaction. An interrupted upload can be resumed by running the command again.";
+	}
+
+	@Override
+	public String getCommandName() {
+		return "bulk-load";
+	}
+
+	@Override
+	public Options getOptions() {
+		Options options = new Options();
+		Option opt;
+
+		addFhirVersionOption(options);
+
+		opt = new Option("t", "target", true, "Base URL for the target server (e.g. \"http://example.com/fhir\")");
+		opt.setRequired(true);
+		options.addOption(opt);
+
+		opt = new Option("d", "data", true, "Local directory containing the *.ndjson, *.json and *.xml files to upload. Files are uploaded in order of their name.");
+		opt.setRequired(true);
+		options.addOption(opt);
+
+		opt = new Option("b", "batch-size", true, "Number of resources from an NDJSON file to upload in each transaction (default is " + DEFAULT_BATCH_SIZE + "). Bundle files are always uploaded as a single transaction.");
+		opt.setRequired(false);
+		options.addOption(opt);
+
+		opt = new Option("n", "concurrency", true, "Number of transactions to send to the server at the same time (default is " + DEFAULT_CONCURRENCY + ")");
+		opt.setRequired(false);
+		options.addOption(opt);
+
+		opt = new Option("r", "retries", true, "Number of times to retry a transaction which fails because of a connection problem or a 429/5xx response, waiting twice as long before each retry (default is " + DEFAULT_RETRIES + "). Transactions which create resources with a POST are not retried after a connection problem, since the server may already have processed them.");
+		opt.setRequired(false);
+		options.addOption(opt);
+
+		opt = new Option("k", "checkpoint", true, "File used to record which resources have been uploaded (default is " + CHECKPOINT_FILENAME + " in the data directory)");
+		opt.setRequired(false);
+		options.addOption(opt);
+
+		opt = new Option("s", "restart", false, "Ignore any existing checkpoint and upload every file from the beginning");
+		opt.setRequired(false);
+		options.addOption(opt);
+
+		return options;
+	}
+
+	private static int parsePositiveInt(CommandLine theCommandLine, char theOption, String theName, int theDefault) throws ParseException {
+		String value = theCommandLine.getOptionValue(theOption);
+		if (isBlank(value)) {
+			return theDefault;
+		}
+		int retVal;
+		try {
+			retVal = Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new ParseException("Invalid number for " + theName + " (-" + theOption + ") option, must be a number: " + value);
+		}
+		if (retVal < 0 || (retVal == 0 && theOption != 'r')) {
+			throw new ParseException("Invalid number for " + theName + " (-" + theOption + ") option: " + value);
+		}
+		return retVal;
+	}
+
+	@Override
+	public void run(CommandLine theCommandLine) throws Exception {
+		FhirContext ctx = getSpecVersionContext(theCommandLine);
+
+		String targetServer = theCommandLine.getOptionValue("t");
+		if (isBlank(targetServer)) {
+			throw new ParseException("No target server (-t) specified");
+		} else if (targetServer.startsWith("http") == false) {
+			throw new ParseException("Invalid target server specified, must begin with 'http'");
+		}
+
+		File dataDir = new File(FilenameUtils.normalize(theCommandLine.getOptionValue("d")));
+		if (!dataDir.isDirectory()) {
+			throw new ParseException("Data (-d) must be a directory: " + dataDir.getAbsolutePath());
+		}
+
+		int batchSize = parsePositiveInt(theCommandLine, 'b', "batch size", DEFAULT_BATCH_SIZE);
+		int concurrency = parsePositiveInt(theCommandLine, 'n', "concurrency", DEFAULT_CONCURRENCY);
+		myRetries = parsePositiveInt(theCommandLine, 'r', "retries", DEFAULT_RETRIES);
+
+		File checkpointFile = new File(dataDir, CHECKPOINT_FILENAME);
+		if (isNotBlank(theCommandLine.getOptionValue("k"))) {
+			checkpointFile = new File(FilenameUtils.normalize(theCommandLine.getOptionValue("k")));
+		}
+		Checkpoint checkpoint = new Checkpoint(checkpointFile);
+		if (!theCommandLine.hasOption("s")) {
+			checkpoint.load();
+		}
+
+		List<File> files = new ArrayList<>(FileUtils.listFiles(dataDir, new String[]{"ndjson", "json", "xml"}, false));
+		Collections.sort(files);
+
+		myClient = newClient(ctx, targetServer);
+		myClient.registerInterceptor(new GZipContentInterceptor());
+		myUploadedCount = new AtomicLong();
+		myFailedBatchCount = new AtomicLong();
+		myStart = System.currentTimeMillis();
+
+		ourLog.info("Uploading {} files to {} in batches of {} resources, {} at a time", files.size(), targetServer, batchSize, concurrency);
+
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+		Semaphore inFlight = new Semaphore(concurrency);
+		try {
+			for (File nextFile : files) {
+				String name = nextFile.getName();
+				if (checkpoint.isComplete(name)) {
+					ourLog.info("Skipping {} as it has already been uploaded", name);
+					continue;
+				}
+
+				TreeMap<Long, Long> alreadyUploaded = checkpoint.getUploadedRanges(name);
+				if (!alreadyUploaded.isEmpty()) {
+					ourLog.info("Resuming {}, skipping {} resources which have already been uploaded", name, Checkpoint.countResources(alreadyUploaded));
+				} else {
+					ourLog.info("Uploading {}", name);
+				}
+
+				FileProgress progress = new FileProgress(checkpoint, name, alreadyUploaded);
+				if ("ndjson".equals(FilenameUtils.getExtension(name).toLowerCase())) {
+					uploadNdJson(ctx, nextFile, progress, alreadyUploaded, batchSize, executor, inFlight);
+				} else {
+					uploadWholeFile(ctx, nextFile, progress, executor, inFlight);
+				}
+			}
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+
+		ourLog.info("Finished uploading {} resources in {} seconds ({} resources/second)", myUploadedCount.get(), (System.currentTimeMillis() - myStart) / 1000, getResourcesPerSecond());
+
+		if (myFailedBatchCount.get() > 0) {
+			throw new CommandFailureException(myFailedBatchCount.get() + " batches could not be uploaded. Run the command again to retry them (progress has been saved to " + checkpointFile.getAbsolutePath() + ")");
+		}
+	}
+
+	/**
+	 * Reads an NDJSON file one line at a time, and submits its resources in batches. Lines in
+	 * the ranges which have already been uploaded are counted but not parsed, and a batch never
+	 * spans one of these ranges.
+	 *
+	 * @param theAlreadyUploaded The ranges of resources (start inclusive, end exclusive) which have already been uploaded
+	 */
+	private void uploadNdJson(FhirContext theCtx, File theFile, FileProgress theProgress, TreeMap<Long, Long> theAlreadyUploaded, int theBatchSize, ExecutorService theExecutor, Semaphore theInFlight) throws IOException, InterruptedException {
+		NdJsonReader reader = new NdJsonReader(theCtx, theFile);
+		try {
+			long index = 0;
+			long batchStart = 0;
+			List<IBaseResource> batch = new ArrayList<>(theBatchSize);
+			while (true) {
+				Map.Entry<Long, Long> uploaded = theAlreadyUploaded.floorEntry(index);
+				if (uploaded != null && uploaded.getValue() > index) {
+					if (batch.size() > 0) {
+						submitBatch(theCtx, theFile, batch, theProgress, batchStart, theExecutor, theInFlight);
+						batch = new ArrayList<>(theBatchSize);
+					}
+					long wanted = uploaded.getValue() - index;
+					long skipped = reader.skip(wanted);
+					index += skipped;
+					if (skipped < wanted) {
+						break;
+					}
+					continue;
+				}
+
+				IBaseResource next = reader.next();
+				if (next == null) {
+					break;
+				}
+				if (batch.isEmpty()) {
+					batchStart = index;
+				}
+				batch.add(next);
+				index++;
+				if (batch.size() == theBatchSize) {
+					submitBatch(theCtx, theFile, batch, theProgress, batchStart, theExecutor, theInFlight);
+					batch = new ArrayList<>(theBatchSize);
+				}
+			}
+			if (batch.size() > 0) {
+				submitBatch(theCtx, theFile, batch, theProgress, batchStart, theExecutor, theInFlight);
+			}
+			theProgress.setResourceCount(index);
+		} finally {
+			reader.close();
+		}
+	}
+
+	private void submitBatch(FhirContext theCtx, File theFile, List<IBaseResource> theBatch, FileProgress theProgress, long theBatchStart, ExecutorService theExecutor, Semaphore theInFlight) throws InterruptedException {
+		String description = "resources " + theBatchStart + " to " + (theBatchStart + theBatch.size() - 1) + " of " + theFile.getName();
+		theInFlight.acquire();
+		theExecutor.submit(new BatchUploader(description, toTransaction(theCtx, theBatch), theBatch.size(), theProgress, theBatchStart, theBatch.size(), theInFlight));
+	}
+
+	/**
+	 * Reads a JSON or XML file in full, and submits it as a single transaction. The checkpoint
+	 * for the file counts the whole file as one item.
+	 */
+	private void uploadWholeFile(FhirContext theCtx, File theFile, FileProgress theProgress, ExecutorService theExecutor, Semaphore theInFlight) throws IOException, InterruptedException {
+		IParser parser = "xml".equals(FilenameUtils.getExtension(theFile.getName()).toLowerCase()) ? theCtx.newXmlParser() : theCtx.newJsonParser();
+		IBaseResource parsed;
+		Reader reader = new InputStreamReader(FileUtils.openInputStream(theFile), StandardCharsets.UTF_8);
+		try {
+			parsed = parser.parseResource(reader);
+		} finally {
+			IOUtils.closeQuietly(reader);
+		}
+
+		IBaseBundle transaction;
+		int resourceCount;
+		if (parsed instanceof IBaseBundle) {
+			transaction = toTransaction(theCtx, (IBaseBundle) parsed);
+			resourceCount = BundleUtil.toListOfResources(theCtx, transaction).size();
+		} else {
+			transaction = toTransaction(theCtx, Collections.singletonList(parsed));
+			resourceCount = 1;
+		}
+
+		theInFlight.acquire();
+		theExecutor.submit(new BatchUploader(theFile.getName(), transaction, resourceCount, theProgress, 0, 1, theInFlight));
+		theProgress.setResourceCount(1);
+	}
+
+	/**
+	 * Returns <code>true</code> if sending the transaction twice has the same effect as sending
+	 * it once, i.e. it has no entries which create resources with a POST
+	 */
+	static boolean isIdempotent(FhirContext theCtx, IBaseBundle theTransaction) {
+		for (BundleUtil.BundleEntryParts next : BundleUtil.toListOfEntries(theCtx, theTransaction)) {
+			if (next.getRequestType() == null || next.getRequestType() == RequestTypeEnum.POST) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void setPrimitive(BaseRuntimeElementCompositeDefinition<?> theParentDef, IBase theParent, String theChildName, String theValue) {
+		BaseRuntimeChildDefinition child = theParentDef.getChildByName(theChildName);
+		IPrimitiveType<?> value = (IPrimitiveType<?>) child.getChildByName(theChildName).newInstance(child.getInstanceConstructorArguments());
+		value.setValueAsString(theValue);
+		child.getMutator().setValue(theParent, value);
+	}
+
+	/**
+	 * Returns a transaction which creates (POST) the given resources, or updates (PUT) those which have an ID
+	 */
+	static IBaseBundle toTransaction(FhirContext theCtx, List<IBaseResource> theResources) {
+		IVersionSpecificBundleFactory bundleFactory = theCtx.newBundleFactory();
+		bundleFactory.initializeBundleFromResourceList("", theResources, "", "", theResources.size(), BundleTypeEnum.TRANSACTION);
+		return (IBaseBundle) bundleFactory.getResourceBundle();
+	}
+
+	/**
+	 * Turns a Bundle which isn't already a transaction or batch (e.g. a collection) into a
+	 * transaction. Each entry without a request creates its resource (POST), or updates it (PUT)
+	 * if the resource has an ID which isn't a URN. The fullUrl of each entry is left alone, so
+	 * references between entries (e.g. to <code>urn:uuid:</code> fullUrls) still resolve.
+	 */
+	static IBaseBundle toTransaction(FhirContext theCtx, IBaseBundle theBundle) {
+		String type = BundleUtil.getBundleType(theCtx, theBundle);
+		if ("transaction".equals(type) || "batch".equals(type)) {
+			return theBundle;
+		}
+
+		RuntimeResourceDefinition bundleDef = theCtx.getResourceDefinition(theBundle);
+		setPrimitive(bundleDef, theBundle, "type", "transaction");
+
+		BaseRuntimeChildDefinition entryChild = bundleDef.getChildByName("entry");
+		BaseRuntimeElementCompositeDefinition<?> entryDef = (BaseRuntimeElementCompositeDefinition<?>) entryChild.getChildByName("entry");
+		BaseRuntimeChildDefinition resourceChild = entryDef.getChildByName("resource");
+		BaseRuntimeChildDefinition requestChild = entryDef.getChildByName("request");
+		BaseRuntimeElementCompositeDefinition<?> requestDef = (BaseRuntimeElementCompositeDefinition<?>) requestChild.getChildByName("request");
+		BaseRuntimeChildDefinition methodChild = requestDef.getChildByName("method");
+
+		for (IBase nextEntry : entryChild.getAccessor().getValues(theBundle)) {
+			boolean hasMethod = false;
+			for (IBase nextRequest : requestChild.getAccessor().getValues(nextEntry)) {
+				for (IBase nextMethod : methodChild.getAccessor().getValues(nextRequest)) {
+					hasMethod |= isNotBlank(((IPrimitiveType<?>) nextMethod).getValueAsString());
+				}
+			}
+			List<IBase> resources = resourceChild.getAccessor().getValues(nextEntry);
+			if (hasMethod || resources.isEmpty()) {
+				continue;
+			}
+
+			IBaseResource resource = (IBaseResource) resources.get(0);
+			String resourceType = theCtx.getResourceDefinition(resource).getName();
+			IIdType id = resource.getIdElement();
+			IBase request = requestDef.newInstance(requestChild.getInstanceConstructorArguments());
+			if (id.hasIdPart() && !id.getValue().startsWith("urn:")) {
+				setPrimitive(requestDef, request, "method", "PUT");
+				setPrimitive(requestDef, request, "url", resourceType + "/" + id.getIdPart());
+			} else {
+				setPrimitive(requestDef, request, "method", "POST");
+				setPrimitive(requestDef, request, "url", resourceType);
+			}
+			requestChild.getMutator().setValue(nextEntry, request);
+		}
+		return theBundle;
+	}
+
+	private long getResourcesPerSecond() {
+		long millis = Math.max(1, System.currentTimeMillis() - myStart);
+		return myUploadedCount.get() * 1000 / millis;
+	}
+
+	private boolean upload(IBaseBundle theTransaction, String theDescription) throws InterruptedException {
+		long delay = INITIAL_RETRY_DELAY_MILLIS;
+		for (int attempt = 0; ; attempt++) {
+			try {
+				myClient.transaction().withBundle(theTransaction).execute();
+				return true;
+			} catch (BaseServerResponseException e) {
+				boolean retryable;
+				if (e instanceof FhirClientConnectionException) {
+					// The server may have processed the transaction even though we got no response
+					retryable = isIdempotent(myClient.getFhirContext(), theTransaction);
+				} else {
+					retryable = e.getStatusCode() == 429 || e.getStatusCode() >= 500;
+				}
+				if (!retryable || attempt >= myRetries) {
+					ourLog.error("Failed to upload {}: {}", theDescription, e.toString());
+					if (e instanceof FhirClientConnectionException && !retryable) {
+						ourLog.error("Not retrying {} as it creates resources which the server may already have created", theDescription);
+					}
+					return false;
+				}
+				ourLog.warn("Failed to upload {}, retrying in {} ms: {}", theDescription, delay, e.toString());
+			}
+			Thread.sleep(delay);
+			delay *= 2;
+		}
+	}
+
+	private class BatchUploader implements Runnable {
+
+		private final int myBatchSize;
+		private final long myBatchStart;
+		private final String myDescription;
+		private final Semaphore myInFlight;
+		private final FileProgress myProgress;
+		private final int myResourceCount;
+		private final IBaseBundle myTransaction;
+
+		/**
+		 * @param theResourceCount The number of resources in the transaction
+		 * @param theBatchStart    The position in the file of the first item in the transaction
+		 * @param theBatchSize     The number of items from the file in the transaction
+		 */
+		BatchUploader(String theDescription, IBaseBundle theTransaction, int theResourceCount, FileProgress theProgress, long theBatchStart, int theBatchSize, Semaphore theInFlight) {
+			myDescription = theDescription;
+			myTransaction = theTransaction;
+			myResourceCount = theResourceCount;
+			myProgress = theProgress;
+			myBatchStart = theBatchStart;
+			myBatchSize = theBatchSize;
+			myInFlight = theInFlight;
+		}
+
+		@Override
+		public void run() {
+			try {
+				if (upload(myTransaction, myDescription)) {
+					long uploaded = myUploadedCount.addAndGet(myResourceCount);
+					myProgress.batchUploaded(myBatchStart, myBatchSize);
+					ourLog.info("Uploaded {} resources ({} resources/second)", uploaded, getResourcesPerSecond());
+				} else {
+					myFailedBatchCount.incrementAndGet();
+				}
+			} catch (InterruptedException e) {
+				myFailedBatchCount.incrementAndGet();
+				Thread.currentThread().interrupt();
+			} catch (Exception e) {
+				ourLog.error("Failed to upload resources from " + myProgress.getFileName(), e);
+				myFailedBatchCount.incrementAndGet();
+			} finally {
+				myInFlight.release();
+			}
+		}
+	}
+
+	/**
+	 * Records, for each file, the ranges of resources which have been uploaded (a file which is
+	 * uploaded as a single transaction counts as one resource). Each range is written as
+	 * <code>start-end</code>, with the end exclusive, and a range which starts at the beginning
+	 * of the file is written as just its end. The file is rewritten every time this changes.
+	 */
+	static class Checkpoint {
+
+		private static final String COMPLETE = "complete";
+		private final File myFile;
+		private final Properties myProperties = new Properties();
+
+		Checkpoint(File theFile) {
+			myFile = theFile;
+		}
+
+		/**
+		 * Returns the ranges of resources which have been uploaded, keyed by their (inclusive)
+		 * start, with their (exclusive) end as the value
+		 */
+		synchronized TreeMap<Long, Long> getUploadedRanges(String theFileName) {
+			TreeMap<Long, Long> retVal = new TreeMap<>();
+			String value = myProperties.getProperty(theFileName);
+			if (isBlank(value) || COMPLETE.equals(value)) {
+				return retVal;
+			}
+			for (String next : value.split(",")) {
+				next = next.trim();
+				int dash = next.indexOf('-');
+				if (dash == -1) {
+					addRange(retVal, 0, Long.parseLong(next));
+				} else {
+					addRange(retVal, Long.parseLong(next.substring(0, dash)), Long.parseLong(next.substring(dash + 1)));
+				}
+			}
+			return retVal;
+		}
+
+		synchronized boolean isComplete(String theFileName) {
+			return COMPLETE.equals(myProperties.getProperty(theFileName));
+		}
+
+		synchronized void load() throws IOException {
+			if (myFile.exists()) {
+				InputStream is = FileUtils.openInputStream(myFile);
+				try {
+					myProperties.load(is);
+				} finally {
+					IOUtils.closeQuietly(is);
+				}
+			}
+		}
+
+		synchronized void update(String theFileName, TreeMap<Long, Long> theUploadedRanges, boolean theComplete) throws IOException {
+			StringBuilder value = new StringBuilder();
+			if (theComplete) {
+				value.append(COMPLETE);
+			} else {
+				for (Map.Entry<Long, Long> next : theUploadedRanges.entrySet()) {
+					if (value.length() > 0) {
+						value.append(',');
+					}
+					if (next.getKey() != 0) {
+						value.append(next.getKey()).append('-');
+					}
+					value.append(next.getValue());
+				}
+			}
+			myProperties.setProperty(theFileName, value.toString());
+
+			// Write to a temporary file first so that an interruption can't leave a truncated checkpoint
+			File tmp = new File(myFile.getAbsolutePath() + ".tmp");
+			OutputStream os = FileUtils.openOutputStream(tmp);
+			try {
+				myProperties.store(os, "hapi-fhir-cli bulk-load progress");
+			} finally {
+				IOUtils.closeQuietly(os);
+			}
+			FileUtils.deleteQuietly(myFile);
+			FileUtils.moveFile(tmp, myFile);
+		}
+
+		/**
+		 * Adds a range to a set of ranges, merging it with any ranges it overlaps or touches
+		 */
+		static void addRange(TreeMap<Long, Long> theRanges, long theStart, long theEnd) {
+			long start = theStart;
+			long end = theEnd;
+			Map.Entry<Long, Long> before = theRanges.floorEntry(start);
+			if (before != null && before.getValue() >= start) {
+				start = before.getKey();
+				end = Math.max(end, before.getValue());
+			}
+			Map.Entry<Long, Long> after;
+			while ((after = theRanges.ceilingEntry(start)) != null && after.getKey() <= end) {
+				end = Math.max(end, after.getValue());
+				theRanges.remove(after.getKey());
+			}
+			theRanges.put(start, end);
+		}
+
+		static long countResources(TreeMap<Long, Long> theRanges) {
+			long retVal = 0;
+			for (Map.Entry<Long, Long> next : theRanges.entrySet()) {
+				retVal += next.getValue() - next.getKey();
+			}
+			return retVal;
+		}
+	}
+
+	/**
+	 * Tracks the batches of one file which have been uploaded. Batches finish out of order, so
+	 * every range which has been uploaded is saved, and not just the resources from the start
+	 * of the file, so that a batch which fails doesn't cause the ones after it to be uploaded
+	 * again when the command is run again.
+	 */
+	static class FileProgress {
+
+		private final Checkpoint myCheckpoint;
+		private final String myFileName;
+		private final TreeMap<Long, Long> myUploadedRanges;
+		private long myResourceCount = -1;
+
+		FileProgress(Checkpoint theCheckpoint, String theFileName, TreeMap<Long, Long> theUploadedRanges) {
+			myCheckpoint = theCheckpoint;
+			myFileName = theFileName;
+			myUploadedRanges = new TreeMap<>(theUploadedRanges);
+		}
+
+		synchronized void batchUploaded(long theBatchStart, int theBatchSize) throws IOException {
+			Checkpoint.addRange(myUploadedRanges, theBatchStart, theBatchStart + theBatchSize);
+			save();
+		}
+
+		String getFileName() {
+			return myFileName;
+		}
+
+		private boolean isComplete() {
+			if (myResourceCount == -1) {
+				return false;
+			}
+			if (myResourceCount == 0) {
+				return true;
+			}
+			Long end = myUploadedRanges.get(0L);
+			return myUploadedRanges.size() == 1 && end != null && end >= myResourceCount;
+		}
+
+		/**
+		 * Called once every resource in the file has been read
+		 */
+		synchronized void setResourceCount(long theResourceCount) throws IOException {
+			myResourceCount = theResourceCount;
+			save();
+		}
+
+		private void save() throws IOException {
+			myCheckpoint.update(myFileName, myUploadedRanges, isComplete());
+		}
+	}
+
+	/**
+	 * Reads resources from an NDJSON file one line at a time
+	 */
+	static class NdJsonReader implements Closeable {
+
+		private final IParser myParser;
+		private final BufferedReader myReader;
+
+		NdJsonReader(FhirContext theCtx, File theFile) throws IOException {
+			myParser = theCtx.newJsonParser();
+			myReader = new BufferedReader(new InputStreamReader(FileUtils.openInputStream(theFile), StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public void close() throws IOException {
+			myReader.close();
+		}
+
+		/**
+		 * Skips up to the given number of resources without parsing them
+		 *
+		 * @return Returns the number of resources which were skipped, which is less than the number requested if the end of the file was reached
+		 */
+		long skip(long theCount) throws IOException {
+			long retVal = 0;
+			String line;
+			while (retVal < theCount && (line = myReader.readLine()) != null) {
+				if (isNotBlank(line)) {
+					retVal++;
+				}
+			}
+			return retVal;
+		}
+
+		/**
+		 * Returns the next resource, or <code>null</code> if there are no more
+		 */
+		IBaseResource next() throws IOException {
+			String line;
+			while ((line = myReader.readLine()) != null) {
+				if (isNotBlank(line)) {
+					return myParser.parseResource(line);
+				}
+			}
+			return null;
+		}
+	}
+
+}
@@ -4,6 +4,7 @@ import static org.apache.commons.lang3.StringUtils.*;
 import static org.fusesource.jansi.Ansi.ansi;
 
 import java.io.*;
+import java.nio.charset.Charset;
 
 import org.apache.commons.cli.*;
 import org.apache.commons.io.IOUtils;
@@ -40,6 +41,7 @@ public class ValidateCommand extends BaseCommand {
 		OptionGroup source = new OptionGroup();
 		source.addOption(new Option("n", "file", true, "The name of the file to validate"));
 		source.addOption(new Option("d", "data", true, "The text to validate"));
+		source.addOption(new Option("b", "batch", true, "A directory or *.zip archive containing the files to validate. Every *.json and *.xml file in it (including in subdirectories) is validated."));
 		retVal.addOptionGroup(source);
 
 		retVal.addOption("x", "xsd", false, "Validate using Schemas");
@@ -48,7 +50,9 @@ public class ValidateCommand extends BaseCommand {
 		retVal.addOption("r", "fetch-remote", false,
 				"Allow fetching remote resources (in other words, if a resource being validated refers to an external StructureDefinition, Questionnaire, etc. this flag allows the validator to access the internet to try and fetch this resource)");
 		retVal.addOption(new Option("l", "fetch-local", true, "Fetch a profile locally and use it if referenced"));
-		retVal.addOption("e", "encoding", false, "File encoding (default is UTF-8)");
+		retVal.addOption(new Option("e", "encoding", true, "File encoding (default is UTF-8)"));
+		retVal.addOption(new Option("o", "output", true, "Batch (-b) only: file to write an OperationOutcome for each validated file to, as NDJSON"));
+		retVal.addOption(new Option("j", "threads", true, "Batch (-b) only: number of files to validate at the same time (default is the number of processors)"));
 
 		return retVal;
 	}
@@ -57,24 +61,45 @@ public class ValidateCommand extends BaseCommand {
 	public void run(CommandLine theCommandLine) throws ParseException, Exception {
 		String fileName = theCommandLine.getOptionValue("n");
 		String contents = theCommandLine.getOptionValue("c");
+		String batch = theCommandLine.getOptionValue("b");
+		String encoding = theCommandLine.getOptionValue("e", "UTF-8");
 		if (isNotBlank(fileName) && isNotBlank(contents)) {
 			throw new ParseException("Can not supply both a file (-n) and data (-d)");
 		}
-		if (isBlank(fileName) && isBlank(contents)) {
-			throw new ParseException("Must supply either a file (-n) or data (-d)");
-		}
 
-		if (isNotBlank(fileName)) {
-			String encoding = theCommandLine.getOptionValue("e", "UTF-8");
-			ourLog.info("Reading file '{}' using encoding {}", fileName, encoding);
+		File batchSource = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		if (isNotBlank(batch)) {
+			batchSource = new File(batch);
+			if (!batchSource.isDirectory() && !(batchSource.isFile() && batch.toLowerCase().endsWith(".zip"))) {
+				throw new ParseException("Batch (-b) must be a directory or a *.zip file: " + batch);
+			}
+			if (theCommandLine.hasOption("j")) {
+				try {
+					threads = Integer.parseInt(theCommandLine.getOptionValue("j"));
+				} catch (NumberFormatException e) {
+					threads = 0;
+				}
+				if (threads < 1) {
+					throw new ParseException("Invalid number for threads (-j) option: " + theCommandLine.getOptionValue("j"));
+				}
+			}
+		} else {
+			if (isBlank(fileName) && isBlank(contents)) {
+				throw new ParseException("Must supply either a file (-n), data (-d) or a batch (-b)");
+			}
+
+			if (isNotBlank(fileName)) {
+				ourLog.info("Reading file '{}' using encoding {}", fileName, encoding);
 
-			contents = IOUtils.toString(new InputStreamReader(new FileInputStream(fileName), encoding));
-			ourLog.info("Fully read - Size is {}", FileUtils.getFileSizeDisplay(contents.length()));
-		}
+				contents = IOUtils.toString(new InputStreamReader(new FileInputStream(fileName), encoding));
+				ourLog.info("Fully read - Size is {}", FileUtils.getFileSizeDisplay(contents.length()));
+			}
 
-		ca.uhn.fhir.rest.api.EncodingEnum enc = ca.uhn.fhir.rest.api.EncodingEnum.detectEncodingNoDefault(defaultString(contents));
-		if (enc == null) {
-			throw new ParseException("Could not detect encoding (json/xml) of contents");
+			ca.uhn.fhir.rest.api.EncodingEnum enc = ca.uhn.fhir.rest.api.EncodingEnum.detectEncodingNoDefault(defaultString(contents));
+			if (enc == null) {
+				throw new ParseException("Could not detect encoding (json/xml) of contents");
+			}
 		}
 
 		FhirContext ctx = getSpecVersionContext(theCommandLine);
@@ -132,6 +157,11 @@ public class ValidateCommand extends BaseCommand {
 		val.setValidateAgainstStandardSchema(theCommandLine.hasOption("x"));
 		val.setValidateAgainstStandardSchematron(theCommandLine.hasOption("s"));
 
+		if (batchSource != null) {
+			validateBatch(theCommandLine, ctx, val, batchSource, threads, Charset.forName(encoding));
+			return;
+		}
+
 		ValidationResult results = val.validateWithResult(contents);
 
 		StringBuilder b = new StringBuilder("Validation results:" + ansi().boldOff());
@@ -168,4 +198,24 @@ public class ValidateCommand extends BaseCommand {
 			ourLog.warn("Validation FAILED");
 		}
 	}
+
+	private void validateBatch(CommandLine theCommandLine, FhirContext theCtx, FhirValidator theValidator, File theSource, int theThreads, Charset theCharset) throws IOException, InterruptedException {
+		ourLog.info("Validating the files in {} using {} threads", theSource.getAbsolutePath(), theThreads);
+
+		Writer output = null;
+		if (theCommandLine.hasOption("o")) {
+			output = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(theCommandLine.getOptionValue("o")), "UTF-8"));
+		}
+		try {
+			BatchValidator batchValidator = new BatchValidator(theCtx, theValidator, theThreads, theCharset, output);
+			batchValidator.validate(theSource);
+			if (batchValidator.getFailedFileCount() == 0) {
+				ourLog.info("Validation successful!");
+			} else {
+				ourLog.warn("Validation FAILED");
+			}
+		} finally {
+			IOUtils.closeQuietly(output);
+		}
+	}
 }
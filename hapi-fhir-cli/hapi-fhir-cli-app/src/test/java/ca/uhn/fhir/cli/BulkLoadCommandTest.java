@@ -0,0 +1,285 @@
+package ca.uhn.fhir.cli;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.annotation.Transaction;
+import ca.uhn.fhir.rest.annotation.TransactionParam;
+import ca.uhn.fhir.rest.server.RestfulServer;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.util.PortUtil;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.Observation;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BulkLoadCommandTest {
+
+	private static FhirContext ourCtx = FhirContext.forDstu3();
+	private static volatile String ourFailFamily;
+	private static Server ourServer;
+	private static String ourServerBase;
+	private static List<Bundle> ourTransactions = Collections.synchronizedList(new ArrayList<Bundle>());
+
+	@Rule
+	public TemporaryFolder myTemp = new TemporaryFolder();
+
+	@Before
+	public void before() {
+		ourTransactions.clear();
+		ourFailFamily = null;
+	}
+
+	private List<String> getUploadedFamilies() {
+		List<String> retVal = new ArrayList<>();
+		synchronized (ourTransactions) {
+			for (Bundle next : ourTransactions) {
+				for (Bundle.BundleEntryComponent nextEntry : next.getEntry()) {
+					retVal.add(((Patient) nextEntry.getResource()).getNameFirstRep().getFamily());
+				}
+			}
+		}
+		Collections.sort(retVal);
+		return retVal;
+	}
+
+	private Properties loadCheckpoint(File theDir) throws Exception {
+		Properties retVal = new Properties();
+		InputStream is = FileUtils.openInputStream(new File(theDir, BulkLoadCommand.CHECKPOINT_FILENAME));
+		try {
+			retVal.load(is);
+		} finally {
+			is.close();
+		}
+		return retVal;
+	}
+
+	private void run(File theDir) throws Exception {
+		BulkLoadCommand command = new BulkLoadCommand();
+		String[] args = new String[]{"-t", ourServerBase, "-d", theDir.getAbsolutePath(), "-b", "2", "-n", "1"};
+		command.run(new DefaultParser().parse(command.getOptions(), args));
+	}
+
+	private void writeNdJson(File theFile, int theCount) throws Exception {
+		StringBuilder b = new StringBuilder();
+		for (int i = 0; i < theCount; i++) {
+			Patient patient = new Patient();
+			patient.addName().setFamily("P" + i);
+			b.append(ourCtx.newJsonParser().encodeResourceToString(patient)).append("\n");
+		}
+		FileUtils.write(theFile, b.toString(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testCollectionBundleIsUploadedAsOneTransaction() throws Exception {
+		File dir = myTemp.newFolder();
+
+		Bundle bundle = new Bundle();
+		bundle.setType(Bundle.BundleType.COLLECTION);
+		Patient patient = new Patient();
+		patient.setId("urn:uuid:0b5d8f3c-5b39-4b2e-9f1a-7e5a2b1c9d01");
+		bundle.addEntry().setFullUrl(patient.getId()).setResource(patient);
+		for (int i = 0; i < 2; i++) {
+			Observation obs = new Observation();
+			obs.setSubject(new Reference(patient.getId()));
+			bundle.addEntry().setFullUrl("urn:uuid:0b5d8f3c-5b39-4b2e-9f1a-7e5a2b1c9d1" + i).setResource(obs);
+		}
+		Patient existing = new Patient();
+		existing.setId("Patient/A");
+		bundle.addEntry().setFullUrl("http://example.com/fhir/Patient/A").setResource(existing);
+		FileUtils.write(new File(dir, "bundle.json"), ourCtx.newJsonParser().encodeResourceToString(bundle), StandardCharsets.UTF_8);
+
+		run(dir);
+
+		// The batch size doesn't split up a Bundle
+		assertEquals(1, ourTransactions.size());
+		Bundle received = ourTransactions.get(0);
+		assertEquals(Bundle.BundleType.TRANSACTION, received.getType());
+		assertEquals(4, received.getEntry().size());
+
+		Bundle.BundleEntryComponent patientEntry = received.getEntry().get(0);
+		assertEquals("urn:uuid:0b5d8f3c-5b39-4b2e-9f1a-7e5a2b1c9d01", patientEntry.getFullUrl());
+		assertEquals(Bundle.HTTPVerb.POST, patientEntry.getRequest().getMethod());
+		assertEquals("Patient", patientEntry.getRequest().getUrl());
+
+		Bundle.BundleEntryComponent obsEntry = received.getEntry().get(1);
+		assertEquals("urn:uuid:0b5d8f3c-5b39-4b2e-9f1a-7e5a2b1c9d10", obsEntry.getFullUrl());
+		assertEquals(Bundle.HTTPVerb.POST, obsEntry.getRequest().getMethod());
+		assertEquals("urn:uuid:0b5d8f3c-5b39-4b2e-9f1a-7e5a2b1c9d01", ((Observation) obsEntry.getResource()).getSubject().getReference());
+
+		Bundle.BundleEntryComponent existingEntry = received.getEntry().get(3);
+		assertEquals("http://example.com/fhir/Patient/A", existingEntry.getFullUrl());
+		assertEquals(Bundle.HTTPVerb.PUT, existingEntry.getRequest().getMethod());
+		assertEquals("Patient/A", existingEntry.getRequest().getUrl());
+
+		assertEquals("complete", loadCheckpoint(dir).getProperty("bundle.json"));
+	}
+
+	@Test
+	public void testIsIdempotent() {
+		Bundle bundle = new Bundle();
+		bundle.setType(Bundle.BundleType.TRANSACTION);
+		bundle.addEntry().setResource(new Patient()).getRequest().setMethod(Bundle.HTTPVerb.PUT).setUrl("Patient/A");
+		bundle.addEntry().getRequest().setMethod(Bundle.HTTPVerb.DELETE).setUrl("Patient/B");
+		assertTrue(BulkLoadCommand.isIdempotent(ourCtx, bundle));
+
+		bundle.addEntry().setResource(new Patient()).getRequest().setMethod(Bundle.HTTPVerb.POST).setUrl("Patient");
+		assertFalse(BulkLoadCommand.isIdempotent(ourCtx, bundle));
+	}
+
+	@Test
+	public void testNdJsonIsUploadedInBatches() throws Exception {
+		File dir = myTemp.newFolder();
+		writeNdJson(new File(dir, "patients.ndjson"), 5);
+
+		run(dir);
+
+		assertEquals(3, ourTransactions.size());
+		int total = 0;
+		for (Bundle next : ourTransactions) {
+			assertEquals(Bundle.BundleType.TRANSACTION, next.getType());
+			assertTrue(next.getEntry().size() <= 2);
+			total += next.getEntry().size();
+		}
+		assertEquals(5, total);
+		assertEquals("complete", loadCheckpoint(dir).getProperty("patients.ndjson"));
+	}
+
+	@Test
+	public void testResumesFromCheckpoint() throws Exception {
+		File dir = myTemp.newFolder();
+		writeNdJson(new File(dir, "a.ndjson"), 3);
+		writeNdJson(new File(dir, "b.ndjson"), 5);
+		FileUtils.write(new File(dir, BulkLoadCommand.CHECKPOINT_FILENAME), "a.ndjson=complete\nb.ndjson=2\n", StandardCharsets.UTF_8);
+
+		run(dir);
+
+		// a.ndjson is skipped, and b.ndjson starts at its third resource
+		assertEquals("[P2, P3, P4]", getUploadedFamilies().toString());
+		assertEquals("complete", loadCheckpoint(dir).getProperty("a.ndjson"));
+		assertEquals("complete", loadCheckpoint(dir).getProperty("b.ndjson"));
+	}
+
+	@Test
+	public void testResumesFromCheckpointWithGaps() throws Exception {
+		File dir = myTemp.newFolder();
+		writeNdJson(new File(dir, "patients.ndjson"), 9);
+		FileUtils.write(new File(dir, BulkLoadCommand.CHECKPOINT_FILENAME), "patients.ndjson=2,3-6,7-8\n", StandardCharsets.UTF_8);
+
+		run(dir);
+
+		// The gaps are sent in separate transactions, since a batch never spans an uploaded range
+		assertEquals("[P2, P6, P8]", getUploadedFamilies().toString());
+		assertEquals(3, ourTransactions.size());
+		assertEquals("complete", loadCheckpoint(dir).getProperty("patients.ndjson"));
+	}
+
+	@Test
+	public void testUploadedBatchesAfterAFailedBatchAreNotUploadedAgain() throws Exception {
+		File dir = myTemp.newFolder();
+		writeNdJson(new File(dir, "patients.ndjson"), 7);
+
+		// The second batch (P2 and P3) is rejected, and a 400 is not retried
+		ourFailFamily = "P3";
+		try {
+			run(dir);
+			fail();
+		} catch (CommandFailureException e) {
+			// expected
+		}
+		assertEquals("[P0, P1, P4, P5, P6]", getUploadedFamilies().toString());
+		assertEquals("2,4-7", loadCheckpoint(dir).getProperty("patients.ndjson"));
+
+		ourTransactions.clear();
+		ourFailFamily = null;
+		run(dir);
+
+		assertEquals("[P2, P3]", getUploadedFamilies().toString());
+		assertEquals("complete", loadCheckpoint(dir).getProperty("patients.ndjson"));
+	}
+
+	@Test
+	public void testTransactionBundleIsSentUnchanged() throws Exception {
+		File dir = myTemp.newFolder();
+
+		Bundle bundle = new Bundle();
+		bundle.setType(Bundle.BundleType.TRANSACTION);
+		Patient patient = new Patient();
+		patient.addIdentifier().setSystem("http://example.com").setValue("1");
+		bundle.addEntry()
+			.setFullUrl("urn:uuid:0b5d8f3c-5b39-4b2e-9f1a-7e5a2b1c9d01")
+			.setResource(patient)
+			.getRequest().setMethod(Bundle.HTTPVerb.PUT).setUrl("Patient?identifier=http://example.com|1");
+		FileUtils.write(new File(dir, "transaction.xml"), ourCtx.newXmlParser().encodeResourceToString(bundle), StandardCharsets.UTF_8);
+
+		run(dir);
+
+		assertEquals(1, ourTransactions.size());
+		Bundle.BundleEntryComponent entry = ourTransactions.get(0).getEntry().get(0);
+		assertEquals("urn:uuid:0b5d8f3c-5b39-4b2e-9f1a-7e5a2b1c9d01", entry.getFullUrl());
+		assertEquals(Bundle.HTTPVerb.PUT, entry.getRequest().getMethod());
+		assertEquals("Patient?identifier=http://example.com|1", entry.getRequest().getUrl());
+	}
+
+	@AfterClass
+	public static void afterClass() throws Exception {
+		ourServer.stop();
+	}
+
+	@BeforeClass
+	public static void beforeClass() throws Exception {
+		int port = PortUtil.findFreePort();
+		ourServerBase = "http://localhost:" + port + "/fhir";
+
+		RestfulServer restServer = new RestfulServer(ourCtx);
+		restServer.setPlainProviders(new TransactionListener());
+
+		ourServer = new Server(port);
+		ServletContextHandler proxyHandler = new ServletContextHandler();
+		proxyHandler.setContextPath("/");
+		ServletHolder servletHolder = new ServletHolder();
+		servletHolder.setServlet(restServer);
+		proxyHandler.addServlet(servletHolder, "/fhir/*");
+		ourServer.setHandler(proxyHandler);
+		ourServer.start();
+	}
+
+	public static class TransactionListener {
+
+		@Transaction
+		public Bundle transaction(@TransactionParam Bundle theInput) {
+			for (Bundle.BundleEntryComponent next : theInput.getEntry()) {
+				if (ourFailFamily != null && next.getResource() instanceof Patient && ourFailFamily.equals(((Patient) next.getResource()).getNameFirstRep().getFamily())) {
+					throw new InvalidRequestException("Failing " + ourFailFamily);
+				}
+			}
+			ourTransactions.add(theInput);
+			Bundle retVal = new Bundle();
+			retVal.setType(Bundle.BundleType.TRANSACTIONRESPONSE);
+			for (Bundle.BundleEntryComponent next : theInput.getEntry()) {
+				retVal.addEntry().getResponse().setStatus("201 Created");
+			}
+			return retVal;
+		}
+
+	}
+
+}
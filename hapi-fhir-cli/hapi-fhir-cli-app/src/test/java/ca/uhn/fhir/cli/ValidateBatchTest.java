@@ -0,0 +1,114 @@
+package ca.uhn.fhir.cli;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.validation.FhirValidator;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.io.FileUtils;
+import org.hl7.fhir.dstu3.model.OperationOutcome;
+import org.hl7.fhir.dstu3.model.OperationOutcome.IssueSeverity;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ValidateBatchTest {
+
+	private static final String INVALID_PATIENT = "<Patient xmlns=\"http://hl7.org/fhir\"><foo value=\"true\"/></Patient>";
+	private static final String VALID_PATIENT_JSON = "{\"resourceType\":\"Patient\",\"active\":true}";
+	private static final String VALID_PATIENT_XML = "<Patient xmlns=\"http://hl7.org/fhir\"><active value=\"true\"/></Patient>";
+	private static FhirContext ourCtx = FhirContext.forDstu3();
+
+	@Rule
+	public TemporaryFolder myTemp = new TemporaryFolder();
+
+	/**
+	 * Returns the OperationOutcomes in the NDJSON output, keyed by the file name in their first issue
+	 */
+	private Map<String, OperationOutcome> parseOutput(String theOutput) {
+		Map<String, OperationOutcome> retVal = new HashMap<>();
+		for (String next : theOutput.split("\n")) {
+			if (next.isEmpty()) {
+				continue;
+			}
+			OperationOutcome oo = ourCtx.newJsonParser().parseResource(OperationOutcome.class, next);
+			retVal.put(oo.getIssueFirstRep().getLocation().get(0).getValue(), oo);
+		}
+		return retVal;
+	}
+
+	private static boolean hasError(OperationOutcome theOutcome) {
+		for (OperationOutcome.OperationOutcomeIssueComponent next : theOutcome.getIssue()) {
+			if (next.getSeverity() == IssueSeverity.ERROR || next.getSeverity() == IssueSeverity.FATAL) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Test
+	public void testEncodingOptionTakesValue() throws Exception {
+		ValidateCommand command = new ValidateCommand();
+		CommandLine commandLine = new DefaultParser().parse(command.getOptions(), new String[] {"-n", "patient.xml", "-e", "ISO-8859-1"});
+		assertEquals("ISO-8859-1", commandLine.getOptionValue("e"));
+	}
+
+	@Test
+	public void testValidateDirectory() throws Exception {
+		File dir = myTemp.newFolder("data");
+		FileUtils.write(new File(dir, "a.json"), VALID_PATIENT_JSON, StandardCharsets.UTF_8);
+		FileUtils.write(new File(dir, "sub" + File.separator + "b.xml"), VALID_PATIENT_XML, StandardCharsets.UTF_8);
+		FileUtils.write(new File(dir, "notes.txt"), "Not a resource", StandardCharsets.UTF_8);
+		File output = new File(myTemp.getRoot(), "output.ndjson");
+
+		ValidateCommand command = new ValidateCommand();
+		String[] args = {"-b", dir.getAbsolutePath(), "-x", "-j", "2", "-o", output.getAbsolutePath()};
+		command.run(new DefaultParser().parse(command.getOptions(), args));
+
+		Map<String, OperationOutcome> outcomes = parseOutput(FileUtils.readFileToString(output, StandardCharsets.UTF_8));
+		assertEquals(outcomes.keySet().toString(), new HashSet<>(Arrays.asList("a.json", "sub" + File.separator + "b.xml")), outcomes.keySet());
+		for (OperationOutcome next : outcomes.values()) {
+			assertFalse(ourCtx.newJsonParser().encodeResourceToString(next), hasError(next));
+		}
+	}
+
+	@Test
+	public void testValidateZipWithInvalidFile() throws Exception {
+		File zip = myTemp.newFile("data.zip");
+		ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zip));
+		try {
+			zos.putNextEntry(new ZipEntry("valid.xml"));
+			zos.write(VALID_PATIENT_XML.getBytes(StandardCharsets.UTF_8));
+			zos.putNextEntry(new ZipEntry("dir/invalid.xml"));
+			zos.write(INVALID_PATIENT.getBytes(StandardCharsets.UTF_8));
+			zos.putNextEntry(new ZipEntry("readme.txt"));
+			zos.write("Not a resource".getBytes(StandardCharsets.UTF_8));
+		} finally {
+			zos.close();
+		}
+
+		FhirValidator validator = ourCtx.newValidator();
+		validator.setValidateAgainstStandardSchema(true);
+		StringWriter output = new StringWriter();
+		BatchValidator batchValidator = new BatchValidator(ourCtx, validator, 2, StandardCharsets.UTF_8, output);
+		batchValidator.validate(zip);
+
+		assertEquals(1, batchValidator.getFailedFileCount());
+		Map<String, OperationOutcome> outcomes = parseOutput(output.toString());
+		assertEquals(2, outcomes.size());
+		assertFalse(hasError(outcomes.get("valid.xml")));
+		assertTrue(hasError(outcomes.get("dir/invalid.xml")));
+	}
+
+}
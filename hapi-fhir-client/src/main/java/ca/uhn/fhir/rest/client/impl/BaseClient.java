@@ -33,6 +33,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import ca.uhn.fhir.rest.api.CacheControlDirective;
 import ca.uhn.fhir.util.XmlDetectionUtil;
@@ -140,6 +141,11 @@ public abstract class BaseClient implements IRestfulClient {
 		return invokeClient(getFhirContext(), binding, clientInvocation, null, false, false, null, null, null);
 	}
 
+	ExecutorService getAsyncExecutor() {
+		Validate.validState(myFactory != null, "Asynchronous execution is not supported by clients which were not created by a client factory");
+		return myFactory.getAsyncExecutor();
+	}
+
 	void forceConformanceCheck() {
 		myFactory.validateServerBase(myUrlBase, myClient, this);
 	}
@@ -26,6 +26,8 @@ import java.io.IOException;
 import java.io.Reader;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -421,6 +423,16 @@ public class GenericClient extends BaseClient implements IGenericClient {
 			return (T) this;
 		}
 
+		@Override
+		public Future<Y> executeAsync() {
+			return getAsyncExecutor().submit(new Callable<Y>() {
+				@Override
+				public Y call() {
+					return execute();
+				}
+			});
+		}
+
 		protected EncodingEnum getParamEncoding() {
 			return myParamEncoding;
 		}
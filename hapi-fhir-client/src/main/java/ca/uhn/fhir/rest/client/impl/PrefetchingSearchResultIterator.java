@@ -0,0 +1,240 @@
+package ca.uhn.fhir.rest.client.impl;
+
+/*
+ * #%L
+ * HAPI FHIR - Client Framework
+ * %%
+ * Copyright (C) 2014 - 2018 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.exceptions.FhirClientConnectionException;
+import ca.uhn.fhir.util.BundleUtil;
+import ca.uhn.fhir.util.UrlUtil;
+import org.apache.commons.lang3.Validate;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+/**
+ * Iterates over all of the resources in a paged search result, starting with the first page
+ * of results which has already been retrieved from the server. Subsequent pages are fetched
+ * (and parsed) in the background using {@link ca.uhn.fhir.rest.gclient.IClientExecutable#executeAsync()}
+ * so that up to a given number of pages are in flight while the caller is still processing
+ * earlier pages.
+ * <p>
+ * If the server returns paging links which use an offset into a stored result set (which is what a
+ * HAPI FHIR server using a paging provider returns) and the bundle declares a total, the URLs for
+ * subsequent pages can be calculated in advance and several pages are fetched concurrently.
+ * Otherwise, the <code>next</code> link of each page is followed and only a single page
+ * can be fetched ahead of the caller.
+ * </p>
+ * <p>
+ * Example usage:
+ * </p>
+ * <pre>
+ * Bundle firstPage = client.search().forResource(Observation.class).returnBundle(Bundle.class).execute();
+ * PrefetchingSearchResultIterator iter = new PrefetchingSearchResultIterator(client, firstPage, 4);
+ * while (iter.hasNext()) {
+ *    IBaseResource next = iter.next();
+ *    ...
+ * }
+ * </pre>
+ * <p>
+ * Thread safety: Instances of this class are not thread safe.
+ * </p>
+ */
+public class PrefetchingSearchResultIterator implements Iterator<IBaseResource> {
+
+	private static final Pattern PAGING_OFFSET_PATTERN = Pattern.compile("([?&]" + Constants.PARAM_PAGINGOFFSET + "=)([0-9]+)");
+
+	private final Class<? extends IBaseBundle> myBundleType;
+	private final IGenericClient myClient;
+	private final FhirContext myContext;
+	private final Deque<Future<? extends IBaseBundle>> myPendingPages = new ArrayDeque<>();
+	private final int myPrefetchPageCount;
+	private Iterator<IBaseResource> myCurrentPage;
+	private String myNextLinkUrl;
+	private int myNextOffset;
+	private String myOffsetUrlTemplate;
+	private int myPageSize;
+	private int myTotal;
+
+	/**
+	 * Constructor
+	 *
+	 * @param theClient            The client to use in order to load subsequent pages
+	 * @param theFirstPage         The first page of search results, as returned by the server
+	 * @param thePrefetchPageCount The maximum number of pages to fetch ahead of the page currently being iterated over (must be at least 1)
+	 */
+	public PrefetchingSearchResultIterator(IGenericClient theClient, IBaseBundle theFirstPage, int thePrefetchPageCount) {
+		Validate.notNull(theClient, "theClient must not be null");
+		Validate.notNull(theFirstPage, "theFirstPage must not be null");
+		Validate.isTrue(thePrefetchPageCount > 0, "thePrefetchPageCount must be at least 1");
+
+		myClient = theClient;
+		myContext = theClient.getFhirContext();
+		myBundleType = theFirstPage.getClass();
+		myPrefetchPageCount = thePrefetchPageCount;
+
+		acceptPage(theFirstPage);
+		determineOffsetPaging(theFirstPage);
+		schedulePrefetch();
+	}
+
+	private void acceptPage(IBaseBundle thePage) {
+		List<IBaseResource> resources = BundleUtil.toListOfResources(myContext, thePage);
+		myCurrentPage = resources.iterator();
+
+		/*
+		 * A server which doesn't know the total number of results may keep returning
+		 * a next link, so an empty page is treated as the end of the results
+		 */
+		if (resources.isEmpty()) {
+			myNextLinkUrl = null;
+		} else {
+			myNextLinkUrl = BundleUtil.getLinkUrlOfType(myContext, thePage, Constants.LINK_NEXT);
+		}
+	}
+
+	/**
+	 * Cancels any pages which are currently being fetched in the background. This should be called
+	 * if the caller stops iterating before all results have been consumed.
+	 */
+	public void cancel() {
+		for (Future<? extends IBaseBundle> next : myPendingPages) {
+			next.cancel(true);
+		}
+		myPendingPages.clear();
+		myCurrentPage = Collections.<IBaseResource>emptyList().iterator();
+		myNextLinkUrl = null;
+		myOffsetUrlTemplate = null;
+	}
+
+	/**
+	 * If the next link is an offset into a stored result set (e.g. <code>?_getpages=ID&amp;_getpagesoffset=10&amp;_count=10</code>),
+	 * and we know how many results there are in total, we can calculate the URL of every page up front
+	 */
+	private void determineOffsetPaging(IBaseBundle theFirstPage) {
+		Integer total = BundleUtil.getTotal(myContext, theFirstPage);
+		if (total == null || isBlank(myNextLinkUrl) || myNextLinkUrl.indexOf('?') == -1) {
+			return;
+		}
+
+		Map<String, String[]> params = UrlUtil.parseQueryString(myNextLinkUrl.substring(myNextLinkUrl.indexOf('?') + 1));
+		String[] pagingAction = params.get(Constants.PARAM_PAGINGACTION);
+		String[] count = params.get(Constants.PARAM_COUNT);
+		Matcher matcher = PAGING_OFFSET_PATTERN.matcher(myNextLinkUrl);
+		if (pagingAction == null || count == null || count.length != 1 || !matcher.find()) {
+			return;
+		}
+
+		int pageSize;
+		try {
+			pageSize = Integer.parseInt(count[0]);
+		} catch (NumberFormatException e) {
+			return;
+		}
+		if (pageSize <= 0) {
+			return;
+		}
+
+		myPageSize = pageSize;
+		myTotal = total;
+		myNextOffset = Integer.parseInt(matcher.group(2));
+		myOffsetUrlTemplate = myNextLinkUrl;
+		myNextLinkUrl = null;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (!myCurrentPage.hasNext()) {
+			Future<? extends IBaseBundle> nextPage = myPendingPages.pollFirst();
+			if (nextPage == null) {
+				return false;
+			}
+			IBaseBundle page = waitForPage(nextPage);
+			if (myOffsetUrlTemplate != null) {
+				myCurrentPage = BundleUtil.toListOfResources(myContext, page).iterator();
+			} else {
+				acceptPage(page);
+			}
+			schedulePrefetch();
+		}
+		return true;
+	}
+
+	@Override
+	public IBaseResource next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return myCurrentPage.next();
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	private void schedulePrefetch() {
+		if (myOffsetUrlTemplate != null) {
+			while (myPendingPages.size() < myPrefetchPageCount && myNextOffset < myTotal) {
+				String url = PAGING_OFFSET_PATTERN.matcher(myOffsetUrlTemplate).replaceFirst("$1" + myNextOffset);
+				myPendingPages.addLast(startLoad(url));
+				myNextOffset += myPageSize;
+			}
+		} else if (myPendingPages.isEmpty() && isNotBlank(myNextLinkUrl)) {
+			myPendingPages.addLast(startLoad(myNextLinkUrl));
+			myNextLinkUrl = null;
+		}
+	}
+
+	private Future<? extends IBaseBundle> startLoad(String theUrl) {
+		return myClient
+			.loadPage()
+			.byUrl(theUrl)
+			.andReturnBundle(myBundleType)
+			.executeAsync();
+	}
+
+	private IBaseBundle waitForPage(Future<? extends IBaseBundle> thePage) {
+		try {
+			return thePage.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			cancel();
+			throw new FhirClientConnectionException(e);
+		} catch (ExecutionException e) {
+			cancel();
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new FhirClientConnectionException(e.getCause());
+		}
+	}
+
+}
@@ -21,9 +21,11 @@ package ca.uhn.fhir.rest.client.impl;
  */
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IPrimitiveType;
 
@@ -42,6 +44,8 @@ import ca.uhn.fhir.util.FhirTerser;
 public abstract class RestfulClientFactory implements IRestfulClientFactory {
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(RestfulClientFactory.class);
 
+	private ThreadPoolExecutor myAsyncExecutor;
+	private int myAsyncMaxInFlightRequests = DEFAULT_ASYNC_MAX_IN_FLIGHT_REQUESTS;
 	private Set<String> myValidatedServerBaseUrls = Collections.synchronizedSet(new HashSet<String>());
 	private int myConnectionRequestTimeout = DEFAULT_CONNECTION_REQUEST_TIMEOUT;
 	private int myConnectTimeout = DEFAULT_CONNECT_TIMEOUT;
@@ -70,6 +74,28 @@ public abstract class RestfulClientFactory implements IRestfulClientFactory {
 		myContext = theFhirContext;
 	}
 
+	/**
+	 * Returns the executor used to execute requests started using
+	 * {@link ca.uhn.fhir.rest.gclient.IClientExecutable#executeAsync() executeAsync()}.
+	 * This method is internal to HAPI - It may change in future versions, use with caution.
+	 */
+	public synchronized ExecutorService getAsyncExecutor() {
+		if (myAsyncExecutor == null) {
+			ThreadFactory threadFactory = new BasicThreadFactory.Builder()
+				.namingPattern("hapi-fhir-client-async-%d")
+				.daemon(true)
+				.build();
+			myAsyncExecutor = new ThreadPoolExecutor(myAsyncMaxInFlightRequests, myAsyncMaxInFlightRequests, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+			myAsyncExecutor.allowCoreThreadTimeOut(true);
+		}
+		return myAsyncExecutor;
+	}
+
+	@Override
+	public int getAsyncMaxInFlightRequests() {
+		return myAsyncMaxInFlightRequests;
+	}
+
 	@Override
 	public int getConnectionRequestTimeout() {
 		return myConnectionRequestTimeout;
@@ -228,6 +254,21 @@ public abstract class RestfulClientFactory implements IRestfulClientFactory {
 		resetHttpClient();
 	}
 
+	@Override
+	public synchronized void setAsyncMaxInFlightRequests(int theAsyncMaxInFlightRequests) {
+		Validate.isTrue(theAsyncMaxInFlightRequests > 0, "theAsyncMaxInFlightRequests must be greater than 0");
+		if (myAsyncExecutor != null) {
+			if (theAsyncMaxInFlightRequests > myAsyncMaxInFlightRequests) {
+				myAsyncExecutor.setMaximumPoolSize(theAsyncMaxInFlightRequests);
+				myAsyncExecutor.setCorePoolSize(theAsyncMaxInFlightRequests);
+			} else {
+				myAsyncExecutor.setCorePoolSize(theAsyncMaxInFlightRequests);
+				myAsyncExecutor.setMaximumPoolSize(theAsyncMaxInFlightRequests);
+			}
+		}
+		myAsyncMaxInFlightRequests = theAsyncMaxInFlightRequests;
+	}
+
 	@Override
 	public synchronized void setPoolMaxTotal(int thePoolMaxTotal) {
 		myPoolMaxTotal = thePoolMaxTotal;
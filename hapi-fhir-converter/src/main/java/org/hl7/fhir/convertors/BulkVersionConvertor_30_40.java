@@ -0,0 +1,143 @@
+package org.hl7.fhir.convertors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.hl7.fhir.exceptions.FHIRException;
+
+/**
+ * Converts many resources, or the entries of a large Bundle, between DSTU3 and R4 at once,
+ * using an executor so that the resources are converted concurrently. The conversions
+ * themselves are the ones done by {@link VersionConvertor_30_40}, and the results are in the
+ * same order as the input.
+ *
+ * The executor is not shut down by these methods.
+ */
+public class BulkVersionConvertor_30_40 {
+
+  public static List<org.hl7.fhir.r4.model.Resource> convertResourcesToR4(List<? extends org.hl7.fhir.dstu3.model.Resource> src, ExecutorService executor) throws FHIRException {
+    List<Future<org.hl7.fhir.r4.model.Resource>> futures = new ArrayList<Future<org.hl7.fhir.r4.model.Resource>>();
+    for (final org.hl7.fhir.dstu3.model.Resource next : src) {
+      futures.add(executor.submit(new Callable<org.hl7.fhir.r4.model.Resource>() {
+        @Override
+        public org.hl7.fhir.r4.model.Resource call() throws FHIRException {
+          return VersionConvertor_30_40.convertResource(next);
+        }
+      }));
+    }
+    return waitFor(futures);
+  }
+
+  public static List<org.hl7.fhir.dstu3.model.Resource> convertResourcesToDstu3(List<? extends org.hl7.fhir.r4.model.Resource> src, ExecutorService executor) throws FHIRException {
+    List<Future<org.hl7.fhir.dstu3.model.Resource>> futures = new ArrayList<Future<org.hl7.fhir.dstu3.model.Resource>>();
+    for (final org.hl7.fhir.r4.model.Resource next : src) {
+      futures.add(executor.submit(new Callable<org.hl7.fhir.dstu3.model.Resource>() {
+        @Override
+        public org.hl7.fhir.dstu3.model.Resource call() throws FHIRException {
+          return VersionConvertor_30_40.convertResource(next);
+        }
+      }));
+    }
+    return waitFor(futures);
+  }
+
+  /**
+   * Converts a Bundle, converting its entries concurrently
+   */
+  public static org.hl7.fhir.r4.model.Bundle convertBundle(org.hl7.fhir.dstu3.model.Bundle src, ExecutorService executor) throws FHIRException {
+    if (src == null)
+      return null;
+    List<Future<org.hl7.fhir.r4.model.Bundle.BundleEntryComponent>> futures = new ArrayList<Future<org.hl7.fhir.r4.model.Bundle.BundleEntryComponent>>();
+    for (final org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent next : src.getEntry()) {
+      futures.add(executor.submit(new Callable<org.hl7.fhir.r4.model.Bundle.BundleEntryComponent>() {
+        @Override
+        public org.hl7.fhir.r4.model.Bundle.BundleEntryComponent call() throws FHIRException {
+          return VersionConvertor_30_40.convertBundleEntryComponent(next);
+        }
+      }));
+    }
+
+    // everything apart from the entries is converted by the normal conversion, using a bundle that shares the source's elements
+    org.hl7.fhir.dstu3.model.Bundle shell = new org.hl7.fhir.dstu3.model.Bundle();
+    shell.setIdElement(src.getIdElement());
+    shell.setMeta(src.getMeta());
+    shell.setImplicitRulesElement(src.getImplicitRulesElement());
+    shell.setLanguageElement(src.getLanguageElement());
+    shell.setIdentifier(src.getIdentifier());
+    shell.setTypeElement(src.getTypeElement());
+    shell.setTotalElement(src.getTotalElement());
+    shell.setLink(src.getLink());
+    shell.setSignature(src.getSignature());
+    org.hl7.fhir.r4.model.Bundle tgt = VersionConvertor_30_40.convertBundle(shell);
+
+    for (org.hl7.fhir.r4.model.Bundle.BundleEntryComponent next : waitFor(futures))
+      tgt.addEntry(next);
+    return tgt;
+  }
+
+  /**
+   * Converts a Bundle, converting its entries concurrently
+   */
+  public static org.hl7.fhir.dstu3.model.Bundle convertBundle(org.hl7.fhir.r4.model.Bundle src, ExecutorService executor) throws FHIRException {
+    if (src == null)
+      return null;
+    List<Future<org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent>> futures = new ArrayList<Future<org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent>>();
+    for (final org.hl7.fhir.r4.model.Bundle.BundleEntryComponent next : src.getEntry()) {
+      futures.add(executor.submit(new Callable<org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent>() {
+        @Override
+        public org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent call() throws FHIRException {
+          return VersionConvertor_30_40.convertBundleEntryComponent(next);
+        }
+      }));
+    }
+
+    org.hl7.fhir.r4.model.Bundle shell = new org.hl7.fhir.r4.model.Bundle();
+    shell.setIdElement(src.getIdElement());
+    shell.setMeta(src.getMeta());
+    shell.setImplicitRulesElement(src.getImplicitRulesElement());
+    shell.setLanguageElement(src.getLanguageElement());
+    shell.setIdentifier(src.getIdentifier());
+    shell.setTypeElement(src.getTypeElement());
+    shell.setTotalElement(src.getTotalElement());
+    shell.setLink(src.getLink());
+    shell.setSignature(src.getSignature());
+    org.hl7.fhir.dstu3.model.Bundle tgt = VersionConvertor_30_40.convertBundle(shell);
+
+    for (org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent next : waitFor(futures))
+      tgt.addEntry(next);
+    return tgt;
+  }
+
+  private static <T> List<T> waitFor(List<Future<T>> futures) throws FHIRException {
+    List<T> res = new ArrayList<T>(futures.size());
+    try {
+      for (Future<T> next : futures)
+        res.add(next.get());
+    } catch (InterruptedException e) {
+      cancel(futures);
+      Thread.currentThread().interrupt();
+      throw new FHIRException("Interrupted while converting resources", e);
+    } catch (ExecutionException e) {
+      cancel(futures);
+      Throwable cause = e.getCause();
+      if (cause instanceof FHIRException)
+        throw (FHIRException) cause;
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException) cause;
+      if (cause instanceof Error)
+        throw (Error) cause;
+      throw new FHIRException(cause);
+    }
+    return res;
+  }
+
+  private static void cancel(List<? extends Future<?>> futures) {
+    for (Future<?> next : futures)
+      next.cancel(true);
+  }
+
+}
@@ -0,0 +1,39 @@
+package org.hl7.fhir.convertors;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Replaces a chain of <code>instanceof</code> checks: given the classes that the chain tests for,
+ * in the order it tests them, returns the position of the first one that an object is an
+ * instance of. The answer is remembered for each concrete class, so after the first lookup for
+ * a class it costs a single hash lookup, however long the chain is.
+ */
+public class ClassDispatchTable {
+
+  private final Class<?>[] classes;
+  private final ConcurrentHashMap<Class<?>, Integer> indexes = new ConcurrentHashMap<Class<?>, Integer>();
+
+  public ClassDispatchTable(Class<?>... classes) {
+    this.classes = classes;
+  }
+
+  /**
+   * Returns the position of the first class that the object is an instance of, or -1 if there is none
+   */
+  public int indexOf(Object object) {
+    Class<?> type = object.getClass();
+    Integer res = indexes.get(type);
+    if (res == null) {
+      res = -1;
+      for (int i = 0; i < classes.length; i++) {
+        if (classes[i].isAssignableFrom(type)) {
+          res = i;
+          break;
+        }
+      }
+      indexes.put(type, res);
+    }
+    return res;
+  }
+
+}
@@ -16354,349 +16354,190 @@ public class VersionConvertor_30_40 {
   public static org.hl7.fhir.r4.model.Resource convertResource(org.hl7.fhir.dstu3.model.Resource src) throws FHIRException {
     if (src == null)
       return null;
-    if (src instanceof org.hl7.fhir.dstu3.model.Parameters)
-      return convertParameters((org.hl7.fhir.dstu3.model.Parameters) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.ActivityDefinition)
-      return convertActivityDefinition((org.hl7.fhir.dstu3.model.ActivityDefinition) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.AllergyIntolerance)
-      return convertAllergyIntolerance((org.hl7.fhir.dstu3.model.AllergyIntolerance) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Appointment)
-      return convertAppointment((org.hl7.fhir.dstu3.model.Appointment) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.AppointmentResponse)
-      return convertAppointmentResponse((org.hl7.fhir.dstu3.model.AppointmentResponse) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.AuditEvent)
-      return convertAuditEvent((org.hl7.fhir.dstu3.model.AuditEvent) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Basic)
-      return convertBasic((org.hl7.fhir.dstu3.model.Basic) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Binary)
-      return convertBinary((org.hl7.fhir.dstu3.model.Binary) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.BodySite)
-      return convertBodySite((org.hl7.fhir.dstu3.model.BodySite) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Bundle)
-      return convertBundle((org.hl7.fhir.dstu3.model.Bundle) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.CapabilityStatement)
-      return convertCapabilityStatement((org.hl7.fhir.dstu3.model.CapabilityStatement) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.CareTeam)
-      return convertCareTeam((org.hl7.fhir.dstu3.model.CareTeam) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.ChargeItem)
-      return convertChargeItem((org.hl7.fhir.dstu3.model.ChargeItem) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Claim)
-      return convertClaim((org.hl7.fhir.dstu3.model.Claim) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.ClinicalImpression)
-      return convertClinicalImpression((org.hl7.fhir.dstu3.model.ClinicalImpression) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.CodeSystem)
-      return convertCodeSystem((org.hl7.fhir.dstu3.model.CodeSystem) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Communication)
-      return convertCommunication((org.hl7.fhir.dstu3.model.Communication) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.CompartmentDefinition)
-      return convertCompartmentDefinition((org.hl7.fhir.dstu3.model.CompartmentDefinition) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Composition)
-      return convertComposition((org.hl7.fhir.dstu3.model.Composition) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.ConceptMap)
-      return convertConceptMap((org.hl7.fhir.dstu3.model.ConceptMap) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Condition)
-      return convertCondition((org.hl7.fhir.dstu3.model.Condition) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Consent)
-      return convertConsent((org.hl7.fhir.dstu3.model.Consent) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Contract)
-      return convertContract((org.hl7.fhir.dstu3.model.Contract) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Coverage)
-      return convertCoverage((org.hl7.fhir.dstu3.model.Coverage) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.DataElement)
-      return convertDataElement((org.hl7.fhir.dstu3.model.DataElement) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.DetectedIssue)
-      return convertDetectedIssue((org.hl7.fhir.dstu3.model.DetectedIssue) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Device)
-      return convertDevice((org.hl7.fhir.dstu3.model.Device) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.DeviceComponent)
-      return convertDeviceComponent((org.hl7.fhir.dstu3.model.DeviceComponent) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.DeviceMetric)
-      return convertDeviceMetric((org.hl7.fhir.dstu3.model.DeviceMetric) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.DeviceUseStatement)
-      return convertDeviceUseStatement((org.hl7.fhir.dstu3.model.DeviceUseStatement) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.DiagnosticReport)
-      return convertDiagnosticReport((org.hl7.fhir.dstu3.model.DiagnosticReport) src);
+    switch (src.getResourceType()) {
+    case Parameters: return convertParameters((org.hl7.fhir.dstu3.model.Parameters) src);
+    case ActivityDefinition: return convertActivityDefinition((org.hl7.fhir.dstu3.model.ActivityDefinition) src);
+    case AllergyIntolerance: return convertAllergyIntolerance((org.hl7.fhir.dstu3.model.AllergyIntolerance) src);
+    case Appointment: return convertAppointment((org.hl7.fhir.dstu3.model.Appointment) src);
+    case AppointmentResponse: return convertAppointmentResponse((org.hl7.fhir.dstu3.model.AppointmentResponse) src);
+    case AuditEvent: return convertAuditEvent((org.hl7.fhir.dstu3.model.AuditEvent) src);
+    case Basic: return convertBasic((org.hl7.fhir.dstu3.model.Basic) src);
+    case Binary: return convertBinary((org.hl7.fhir.dstu3.model.Binary) src);
+    case BodySite: return convertBodySite((org.hl7.fhir.dstu3.model.BodySite) src);
+    case Bundle: return convertBundle((org.hl7.fhir.dstu3.model.Bundle) src);
+    case CapabilityStatement: return convertCapabilityStatement((org.hl7.fhir.dstu3.model.CapabilityStatement) src);
+    case CareTeam: return convertCareTeam((org.hl7.fhir.dstu3.model.CareTeam) src);
+    case ChargeItem: return convertChargeItem((org.hl7.fhir.dstu3.model.ChargeItem) src);
+    case Claim: return convertClaim((org.hl7.fhir.dstu3.model.Claim) src);
+    case ClinicalImpression: return convertClinicalImpression((org.hl7.fhir.dstu3.model.ClinicalImpression) src);
+    case CodeSystem: return convertCodeSystem((org.hl7.fhir.dstu3.model.CodeSystem) src);
+    case Communication: return convertCommunication((org.hl7.fhir.dstu3.model.Communication) src);
+    case CompartmentDefinition: return convertCompartmentDefinition((org.hl7.fhir.dstu3.model.CompartmentDefinition) src);
+    case Composition: return convertComposition((org.hl7.fhir.dstu3.model.Composition) src);
+    case ConceptMap: return convertConceptMap((org.hl7.fhir.dstu3.model.ConceptMap) src);
+    case Condition: return convertCondition((org.hl7.fhir.dstu3.model.Condition) src);
+    case Consent: return convertConsent((org.hl7.fhir.dstu3.model.Consent) src);
+    case Contract: return convertContract((org.hl7.fhir.dstu3.model.Contract) src);
+    case Coverage: return convertCoverage((org.hl7.fhir.dstu3.model.Coverage) src);
+    case DataElement: return convertDataElement((org.hl7.fhir.dstu3.model.DataElement) src);
+    case DetectedIssue: return convertDetectedIssue((org.hl7.fhir.dstu3.model.DetectedIssue) src);
+    case Device: return convertDevice((org.hl7.fhir.dstu3.model.Device) src);
+    case DeviceComponent: return convertDeviceComponent((org.hl7.fhir.dstu3.model.DeviceComponent) src);
+    case DeviceMetric: return convertDeviceMetric((org.hl7.fhir.dstu3.model.DeviceMetric) src);
+    case DeviceUseStatement: return convertDeviceUseStatement((org.hl7.fhir.dstu3.model.DeviceUseStatement) src);
+    case DiagnosticReport: return convertDiagnosticReport((org.hl7.fhir.dstu3.model.DiagnosticReport) src);
+    case DocumentReference: return convertDocumentReference((org.hl7.fhir.dstu3.model.DocumentReference) src);
+    case EligibilityRequest: return convertEligibilityRequest((org.hl7.fhir.dstu3.model.EligibilityRequest) src);
+    case Encounter: return convertEncounter((org.hl7.fhir.dstu3.model.Encounter) src);
+    case Endpoint: return convertEndpoint((org.hl7.fhir.dstu3.model.Endpoint) src);
+    case EpisodeOfCare: return convertEpisodeOfCare((org.hl7.fhir.dstu3.model.EpisodeOfCare) src);
+    case ExpansionProfile: return convertExpansionProfile((org.hl7.fhir.dstu3.model.ExpansionProfile) src);
+    case FamilyMemberHistory: return convertFamilyMemberHistory((org.hl7.fhir.dstu3.model.FamilyMemberHistory) src);
+    case Flag: return convertFlag((org.hl7.fhir.dstu3.model.Flag) src);
+    case Goal: return convertGoal((org.hl7.fhir.dstu3.model.Goal) src);
+    case GraphDefinition: return convertGraphDefinition((org.hl7.fhir.dstu3.model.GraphDefinition) src);
+    case Group: return convertGroup((org.hl7.fhir.dstu3.model.Group) src);
+    case HealthcareService: return convertHealthcareService((org.hl7.fhir.dstu3.model.HealthcareService) src);
+    case ImplementationGuide: return convertImplementationGuide((org.hl7.fhir.dstu3.model.ImplementationGuide) src);
+    case Linkage: return convertLinkage((org.hl7.fhir.dstu3.model.Linkage) src);
+    case List: return convertList((org.hl7.fhir.dstu3.model.ListResource) src);
+    case Location: return convertLocation((org.hl7.fhir.dstu3.model.Location) src);
+    case MedicationAdministration: return convertMedicationAdministration((org.hl7.fhir.dstu3.model.MedicationAdministration) src);
+    case MedicationDispense: return convertMedicationDispense((org.hl7.fhir.dstu3.model.MedicationDispense) src);
+    case MedicationRequest: return convertMedicationRequest((org.hl7.fhir.dstu3.model.MedicationRequest) src);
+    case MedicationStatement: return convertMedicationStatement((org.hl7.fhir.dstu3.model.MedicationStatement) src);
+    case MessageDefinition: return convertMessageDefinition((org.hl7.fhir.dstu3.model.MessageDefinition) src);
+    case MessageHeader: return convertMessageHeader((org.hl7.fhir.dstu3.model.MessageHeader) src);
+    case NamingSystem: return convertNamingSystem((org.hl7.fhir.dstu3.model.NamingSystem) src);
+    case NutritionOrder: return convertNutritionOrder((org.hl7.fhir.dstu3.model.NutritionOrder) src);
+    case Observation: return convertObservation((org.hl7.fhir.dstu3.model.Observation) src);
+    case OperationDefinition: return convertOperationDefinition((org.hl7.fhir.dstu3.model.OperationDefinition) src);
+    case OperationOutcome: return convertOperationOutcome((org.hl7.fhir.dstu3.model.OperationOutcome) src);
+    case Organization: return convertOrganization((org.hl7.fhir.dstu3.model.Organization) src);
+    case Patient: return convertPatient((org.hl7.fhir.dstu3.model.Patient) src);
+    case PaymentNotice: return convertPaymentNotice((org.hl7.fhir.dstu3.model.PaymentNotice) src);
+    case Person: return convertPerson((org.hl7.fhir.dstu3.model.Person) src);
+    case Practitioner: return convertPractitioner((org.hl7.fhir.dstu3.model.Practitioner) src);
+    case PractitionerRole: return convertPractitionerRole((org.hl7.fhir.dstu3.model.PractitionerRole) src);
+    case ProcessRequest: return convertProcessRequest((org.hl7.fhir.dstu3.model.ProcessRequest) src);
+    case Questionnaire: return convertQuestionnaire((org.hl7.fhir.dstu3.model.Questionnaire) src);
+    case QuestionnaireResponse: return convertQuestionnaireResponse((org.hl7.fhir.dstu3.model.QuestionnaireResponse) src);
+    case RiskAssessment: return convertRiskAssessment((org.hl7.fhir.dstu3.model.RiskAssessment) src);
+    case Schedule: return convertSchedule((org.hl7.fhir.dstu3.model.Schedule) src);
+    case SearchParameter: return convertSearchParameter((org.hl7.fhir.dstu3.model.SearchParameter) src);
+    case Sequence: return convertSequence((org.hl7.fhir.dstu3.model.Sequence) src);
+    case Slot: return convertSlot((org.hl7.fhir.dstu3.model.Slot) src);
+    case Specimen: return convertSpecimen((org.hl7.fhir.dstu3.model.Specimen) src);
+    case StructureDefinition: return convertStructureDefinition((org.hl7.fhir.dstu3.model.StructureDefinition) src);
+    case StructureMap: return convertStructureMap((org.hl7.fhir.dstu3.model.StructureMap) src);
+    case Subscription: return convertSubscription((org.hl7.fhir.dstu3.model.Subscription) src);
+    case Substance: return convertSubstance((org.hl7.fhir.dstu3.model.Substance) src);
+    case SupplyDelivery: return convertSupplyDelivery((org.hl7.fhir.dstu3.model.SupplyDelivery) src);
+    case TestReport: return convertTestReport((org.hl7.fhir.dstu3.model.TestReport) src);
+    case TestScript: return convertTestScript((org.hl7.fhir.dstu3.model.TestScript) src);
+    case ValueSet: return convertValueSet((org.hl7.fhir.dstu3.model.ValueSet) src);
+    case VisionPrescription: return convertVisionPrescription((org.hl7.fhir.dstu3.model.VisionPrescription) src);
 //    if (src instanceof org.hl7.fhir.dstu3.model.DocumentManifest)
 //      return convertDocumentManifest((org.hl7.fhir.dstu3.model.DocumentManifest) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.DocumentReference)
-      return convertDocumentReference((org.hl7.fhir.dstu3.model.DocumentReference) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.EligibilityRequest)
-      return convertEligibilityRequest((org.hl7.fhir.dstu3.model.EligibilityRequest) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Encounter)
-      return convertEncounter((org.hl7.fhir.dstu3.model.Encounter) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Endpoint)
-      return convertEndpoint((org.hl7.fhir.dstu3.model.Endpoint) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.EpisodeOfCare)
-      return convertEpisodeOfCare((org.hl7.fhir.dstu3.model.EpisodeOfCare) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.ExpansionProfile)
-      return convertExpansionProfile((org.hl7.fhir.dstu3.model.ExpansionProfile) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.FamilyMemberHistory)
-      return convertFamilyMemberHistory((org.hl7.fhir.dstu3.model.FamilyMemberHistory) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Flag)
-      return convertFlag((org.hl7.fhir.dstu3.model.Flag) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Goal)
-      return convertGoal((org.hl7.fhir.dstu3.model.Goal) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.GraphDefinition)
-      return convertGraphDefinition((org.hl7.fhir.dstu3.model.GraphDefinition) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Group)
-      return convertGroup((org.hl7.fhir.dstu3.model.Group) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.HealthcareService)
-      return convertHealthcareService((org.hl7.fhir.dstu3.model.HealthcareService) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.ImplementationGuide)
-      return convertImplementationGuide((org.hl7.fhir.dstu3.model.ImplementationGuide) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Linkage)
-      return convertLinkage((org.hl7.fhir.dstu3.model.Linkage) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.ListResource)
-      return convertList((org.hl7.fhir.dstu3.model.ListResource) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Location)
-      return convertLocation((org.hl7.fhir.dstu3.model.Location) src);
 //    if (src instanceof org.hl7.fhir.dstu3.model.Medication)
 //      return convertMedication((org.hl7.fhir.dstu3.model.Medication) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.MedicationAdministration)
-      return convertMedicationAdministration((org.hl7.fhir.dstu3.model.MedicationAdministration) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.MedicationDispense)
-      return convertMedicationDispense((org.hl7.fhir.dstu3.model.MedicationDispense) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.MedicationRequest)
-      return convertMedicationRequest((org.hl7.fhir.dstu3.model.MedicationRequest) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.MedicationStatement)
-      return convertMedicationStatement((org.hl7.fhir.dstu3.model.MedicationStatement) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.MessageDefinition)
-      return convertMessageDefinition((org.hl7.fhir.dstu3.model.MessageDefinition) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.MessageHeader)
-      return convertMessageHeader((org.hl7.fhir.dstu3.model.MessageHeader) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.NamingSystem)
-      return convertNamingSystem((org.hl7.fhir.dstu3.model.NamingSystem) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.NutritionOrder)
-      return convertNutritionOrder((org.hl7.fhir.dstu3.model.NutritionOrder) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Observation)
-      return convertObservation((org.hl7.fhir.dstu3.model.Observation) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.OperationDefinition)
-      return convertOperationDefinition((org.hl7.fhir.dstu3.model.OperationDefinition) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.OperationOutcome)
-      return convertOperationOutcome((org.hl7.fhir.dstu3.model.OperationOutcome) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Organization)
-      return convertOrganization((org.hl7.fhir.dstu3.model.Organization) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Patient)
-      return convertPatient((org.hl7.fhir.dstu3.model.Patient) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.PaymentNotice)
-      return convertPaymentNotice((org.hl7.fhir.dstu3.model.PaymentNotice) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Person)
-      return convertPerson((org.hl7.fhir.dstu3.model.Person) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Practitioner)
-      return convertPractitioner((org.hl7.fhir.dstu3.model.Practitioner) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.PractitionerRole)
-      return convertPractitionerRole((org.hl7.fhir.dstu3.model.PractitionerRole) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.ProcessRequest)
-      return convertProcessRequest((org.hl7.fhir.dstu3.model.ProcessRequest) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Questionnaire)
-      return convertQuestionnaire((org.hl7.fhir.dstu3.model.Questionnaire) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.QuestionnaireResponse)
-      return convertQuestionnaireResponse((org.hl7.fhir.dstu3.model.QuestionnaireResponse) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.RiskAssessment)
-      return convertRiskAssessment((org.hl7.fhir.dstu3.model.RiskAssessment) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Schedule)
-      return convertSchedule((org.hl7.fhir.dstu3.model.Schedule) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.SearchParameter)
-      return convertSearchParameter((org.hl7.fhir.dstu3.model.SearchParameter) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Sequence)
-      return convertSequence((org.hl7.fhir.dstu3.model.Sequence) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Slot)
-      return convertSlot((org.hl7.fhir.dstu3.model.Slot) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Specimen)
-      return convertSpecimen((org.hl7.fhir.dstu3.model.Specimen) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.StructureDefinition)
-      return convertStructureDefinition((org.hl7.fhir.dstu3.model.StructureDefinition) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.StructureMap)
-      return convertStructureMap((org.hl7.fhir.dstu3.model.StructureMap) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Subscription)
-      return convertSubscription((org.hl7.fhir.dstu3.model.Subscription) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Substance)
-      return convertSubstance((org.hl7.fhir.dstu3.model.Substance) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.SupplyDelivery)
-      return convertSupplyDelivery((org.hl7.fhir.dstu3.model.SupplyDelivery) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.TestReport)
-      return convertTestReport((org.hl7.fhir.dstu3.model.TestReport) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.TestScript)
-      return convertTestScript((org.hl7.fhir.dstu3.model.TestScript) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.ValueSet)
-      return convertValueSet((org.hl7.fhir.dstu3.model.ValueSet) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.VisionPrescription)
-      return convertVisionPrescription((org.hl7.fhir.dstu3.model.VisionPrescription) src);
-    throw new Error("Unknown resource "+src.fhirType());
+    default: throw new Error("Unknown resource "+src.fhirType());
+    }
   }
 
   public static org.hl7.fhir.dstu3.model.Resource convertResource(org.hl7.fhir.r4.model.Resource src) throws FHIRException {
     if (src == null)
       return null;
-    if (src instanceof org.hl7.fhir.r4.model.Parameters)
-      return convertParameters((org.hl7.fhir.r4.model.Parameters) src);
-    if (src instanceof org.hl7.fhir.r4.model.ActivityDefinition)
-      return convertActivityDefinition((org.hl7.fhir.r4.model.ActivityDefinition) src);
-    if (src instanceof org.hl7.fhir.r4.model.AllergyIntolerance)
-      return convertAllergyIntolerance((org.hl7.fhir.r4.model.AllergyIntolerance) src);
-    if (src instanceof org.hl7.fhir.r4.model.Appointment)
-      return convertAppointment((org.hl7.fhir.r4.model.Appointment) src);
-    if (src instanceof org.hl7.fhir.r4.model.AppointmentResponse)
-      return convertAppointmentResponse((org.hl7.fhir.r4.model.AppointmentResponse) src);
-    if (src instanceof org.hl7.fhir.r4.model.AuditEvent)
-      return convertAuditEvent((org.hl7.fhir.r4.model.AuditEvent) src);
-    if (src instanceof org.hl7.fhir.r4.model.Basic)
-      return convertBasic((org.hl7.fhir.r4.model.Basic) src);
-    if (src instanceof org.hl7.fhir.r4.model.Binary)
-      return convertBinary((org.hl7.fhir.r4.model.Binary) src);
-    if (src instanceof org.hl7.fhir.r4.model.BodyStructure)
-      return convertBodySite((org.hl7.fhir.r4.model.BodyStructure) src);
-    if (src instanceof org.hl7.fhir.r4.model.Bundle)
-      return convertBundle((org.hl7.fhir.r4.model.Bundle) src);
-    if (src instanceof org.hl7.fhir.r4.model.CapabilityStatement)
-      return convertCapabilityStatement((org.hl7.fhir.r4.model.CapabilityStatement) src);
-    if (src instanceof org.hl7.fhir.r4.model.CareTeam)
-      return convertCareTeam((org.hl7.fhir.r4.model.CareTeam) src);
-    if (src instanceof org.hl7.fhir.r4.model.ChargeItem)
-      return convertChargeItem((org.hl7.fhir.r4.model.ChargeItem) src);
-    if (src instanceof org.hl7.fhir.r4.model.Claim)
-      return convertClaim((org.hl7.fhir.r4.model.Claim) src);
-    if (src instanceof org.hl7.fhir.r4.model.ClinicalImpression)
-      return convertClinicalImpression((org.hl7.fhir.r4.model.ClinicalImpression) src);
-    if (src instanceof org.hl7.fhir.r4.model.CodeSystem)
-      return convertCodeSystem((org.hl7.fhir.r4.model.CodeSystem) src);
-    if (src instanceof org.hl7.fhir.r4.model.Communication)
-      return convertCommunication((org.hl7.fhir.r4.model.Communication) src);
-    if (src instanceof org.hl7.fhir.r4.model.CompartmentDefinition)
-      return convertCompartmentDefinition((org.hl7.fhir.r4.model.CompartmentDefinition) src);
-    if (src instanceof org.hl7.fhir.r4.model.Composition)
-      return convertComposition((org.hl7.fhir.r4.model.Composition) src);
-    if (src instanceof org.hl7.fhir.r4.model.ConceptMap)
-      return convertConceptMap((org.hl7.fhir.r4.model.ConceptMap) src);
-    if (src instanceof org.hl7.fhir.r4.model.Condition)
-      return convertCondition((org.hl7.fhir.r4.model.Condition) src);
-    if (src instanceof org.hl7.fhir.r4.model.Consent)
-      return convertConsent((org.hl7.fhir.r4.model.Consent) src);
-    if (src instanceof org.hl7.fhir.r4.model.Contract)
-      return convertContract((org.hl7.fhir.r4.model.Contract) src);
-    if (src instanceof org.hl7.fhir.r4.model.Coverage)
-      return convertCoverage((org.hl7.fhir.r4.model.Coverage) src);
-    if (src instanceof org.hl7.fhir.r4.model.DetectedIssue)
-      return convertDetectedIssue((org.hl7.fhir.r4.model.DetectedIssue) src);
-    if (src instanceof org.hl7.fhir.r4.model.Device)
-      return convertDevice((org.hl7.fhir.r4.model.Device) src);
-    if (src instanceof org.hl7.fhir.r4.model.DeviceComponent)
-      return convertDeviceComponent((org.hl7.fhir.r4.model.DeviceComponent) src);
-    if (src instanceof org.hl7.fhir.r4.model.DeviceMetric)
-      return convertDeviceMetric((org.hl7.fhir.r4.model.DeviceMetric) src);
-    if (src instanceof org.hl7.fhir.r4.model.DeviceUseStatement)
-      return convertDeviceUseStatement((org.hl7.fhir.r4.model.DeviceUseStatement) src);
-    if (src instanceof org.hl7.fhir.r4.model.DiagnosticReport)
-      return convertDiagnosticReport((org.hl7.fhir.r4.model.DiagnosticReport) src);
+    switch (src.getResourceType()) {
+    case Parameters: return convertParameters((org.hl7.fhir.r4.model.Parameters) src);
+    case ActivityDefinition: return convertActivityDefinition((org.hl7.fhir.r4.model.ActivityDefinition) src);
+    case AllergyIntolerance: return convertAllergyIntolerance((org.hl7.fhir.r4.model.AllergyIntolerance) src);
+    case Appointment: return convertAppointment((org.hl7.fhir.r4.model.Appointment) src);
+    case AppointmentResponse: return convertAppointmentResponse((org.hl7.fhir.r4.model.AppointmentResponse) src);
+    case AuditEvent: return convertAuditEvent((org.hl7.fhir.r4.model.AuditEvent) src);
+    case Basic: return convertBasic((org.hl7.fhir.r4.model.Basic) src);
+    case Binary: return convertBinary((org.hl7.fhir.r4.model.Binary) src);
+    case BodyStructure: return convertBodySite((org.hl7.fhir.r4.model.BodyStructure) src);
+    case Bundle: return convertBundle((org.hl7.fhir.r4.model.Bundle) src);
+    case CapabilityStatement: return convertCapabilityStatement((org.hl7.fhir.r4.model.CapabilityStatement) src);
+    case CareTeam: return convertCareTeam((org.hl7.fhir.r4.model.CareTeam) src);
+    case ChargeItem: return convertChargeItem((org.hl7.fhir.r4.model.ChargeItem) src);
+    case Claim: return convertClaim((org.hl7.fhir.r4.model.Claim) src);
+    case ClinicalImpression: return convertClinicalImpression((org.hl7.fhir.r4.model.ClinicalImpression) src);
+    case CodeSystem: return convertCodeSystem((org.hl7.fhir.r4.model.CodeSystem) src);
+    case Communication: return convertCommunication((org.hl7.fhir.r4.model.Communication) src);
+    case CompartmentDefinition: return convertCompartmentDefinition((org.hl7.fhir.r4.model.CompartmentDefinition) src);
+    case Composition: return convertComposition((org.hl7.fhir.r4.model.Composition) src);
+    case ConceptMap: return convertConceptMap((org.hl7.fhir.r4.model.ConceptMap) src);
+    case Condition: return convertCondition((org.hl7.fhir.r4.model.Condition) src);
+    case Consent: return convertConsent((org.hl7.fhir.r4.model.Consent) src);
+    case Contract: return convertContract((org.hl7.fhir.r4.model.Contract) src);
+    case Coverage: return convertCoverage((org.hl7.fhir.r4.model.Coverage) src);
+    case DetectedIssue: return convertDetectedIssue((org.hl7.fhir.r4.model.DetectedIssue) src);
+    case Device: return convertDevice((org.hl7.fhir.r4.model.Device) src);
+    case DeviceComponent: return convertDeviceComponent((org.hl7.fhir.r4.model.DeviceComponent) src);
+    case DeviceMetric: return convertDeviceMetric((org.hl7.fhir.r4.model.DeviceMetric) src);
+    case DeviceUseStatement: return convertDeviceUseStatement((org.hl7.fhir.r4.model.DeviceUseStatement) src);
+    case DiagnosticReport: return convertDiagnosticReport((org.hl7.fhir.r4.model.DiagnosticReport) src);
+    case DocumentReference: return convertDocumentReference((org.hl7.fhir.r4.model.DocumentReference) src);
+    case EligibilityRequest: return convertEligibilityRequest((org.hl7.fhir.r4.model.EligibilityRequest) src);
+    case Encounter: return convertEncounter((org.hl7.fhir.r4.model.Encounter) src);
+    case Endpoint: return convertEndpoint((org.hl7.fhir.r4.model.Endpoint) src);
+    case EpisodeOfCare: return convertEpisodeOfCare((org.hl7.fhir.r4.model.EpisodeOfCare) src);
+    case ExpansionProfile: return convertExpansionProfile((org.hl7.fhir.r4.model.ExpansionProfile) src);
+    case FamilyMemberHistory: return convertFamilyMemberHistory((org.hl7.fhir.r4.model.FamilyMemberHistory) src);
+    case Flag: return convertFlag((org.hl7.fhir.r4.model.Flag) src);
+    case Goal: return convertGoal((org.hl7.fhir.r4.model.Goal) src);
+    case GraphDefinition: return convertGraphDefinition((org.hl7.fhir.r4.model.GraphDefinition) src);
+    case Group: return convertGroup((org.hl7.fhir.r4.model.Group) src);
+    case HealthcareService: return convertHealthcareService((org.hl7.fhir.r4.model.HealthcareService) src);
+    case ImplementationGuide: return convertImplementationGuide((org.hl7.fhir.r4.model.ImplementationGuide) src);
+    case Linkage: return convertLinkage((org.hl7.fhir.r4.model.Linkage) src);
+    case List: return convertList((org.hl7.fhir.r4.model.ListResource) src);
+    case Location: return convertLocation((org.hl7.fhir.r4.model.Location) src);
+    case MedicationAdministration: return convertMedicationAdministration((org.hl7.fhir.r4.model.MedicationAdministration) src);
+    case MedicationDispense: return convertMedicationDispense((org.hl7.fhir.r4.model.MedicationDispense) src);
+    case MedicationRequest: return convertMedicationRequest((org.hl7.fhir.r4.model.MedicationRequest) src);
+    case MedicationStatement: return convertMedicationStatement((org.hl7.fhir.r4.model.MedicationStatement) src);
+    case MessageDefinition: return convertMessageDefinition((org.hl7.fhir.r4.model.MessageDefinition) src);
+    case MessageHeader: return convertMessageHeader((org.hl7.fhir.r4.model.MessageHeader) src);
+    case NamingSystem: return convertNamingSystem((org.hl7.fhir.r4.model.NamingSystem) src);
+    case NutritionOrder: return convertNutritionOrder((org.hl7.fhir.r4.model.NutritionOrder) src);
+    case Observation: return convertObservation((org.hl7.fhir.r4.model.Observation) src);
+    case OperationDefinition: return convertOperationDefinition((org.hl7.fhir.r4.model.OperationDefinition) src);
+    case OperationOutcome: return convertOperationOutcome((org.hl7.fhir.r4.model.OperationOutcome) src);
+    case Organization: return convertOrganization((org.hl7.fhir.r4.model.Organization) src);
+    case Patient: return convertPatient((org.hl7.fhir.r4.model.Patient) src);
+    case PaymentNotice: return convertPaymentNotice((org.hl7.fhir.r4.model.PaymentNotice) src);
+    case Person: return convertPerson((org.hl7.fhir.r4.model.Person) src);
+    case Practitioner: return convertPractitioner((org.hl7.fhir.r4.model.Practitioner) src);
+    case PractitionerRole: return convertPractitionerRole((org.hl7.fhir.r4.model.PractitionerRole) src);
+    case ProcessRequest: return convertProcessRequest((org.hl7.fhir.r4.model.ProcessRequest) src);
+    case Questionnaire: return convertQuestionnaire((org.hl7.fhir.r4.model.Questionnaire) src);
+    case QuestionnaireResponse: return convertQuestionnaireResponse((org.hl7.fhir.r4.model.QuestionnaireResponse) src);
+    case RiskAssessment: return convertRiskAssessment((org.hl7.fhir.r4.model.RiskAssessment) src);
+    case Schedule: return convertSchedule((org.hl7.fhir.r4.model.Schedule) src);
+    case SearchParameter: return convertSearchParameter((org.hl7.fhir.r4.model.SearchParameter) src);
+    case Sequence: return convertSequence((org.hl7.fhir.r4.model.Sequence) src);
+    case Slot: return convertSlot((org.hl7.fhir.r4.model.Slot) src);
+    case Specimen: return convertSpecimen((org.hl7.fhir.r4.model.Specimen) src);
+    case StructureDefinition: return convertStructureDefinition((org.hl7.fhir.r4.model.StructureDefinition) src);
+    case StructureMap: return convertStructureMap((org.hl7.fhir.r4.model.StructureMap) src);
+    case Subscription: return convertSubscription((org.hl7.fhir.r4.model.Subscription) src);
+    case Substance: return convertSubstance((org.hl7.fhir.r4.model.Substance) src);
+    case SupplyDelivery: return convertSupplyDelivery((org.hl7.fhir.r4.model.SupplyDelivery) src);
+    case TestReport: return convertTestReport((org.hl7.fhir.r4.model.TestReport) src);
+    case TestScript: return convertTestScript((org.hl7.fhir.r4.model.TestScript) src);
+    case ValueSet: return convertValueSet((org.hl7.fhir.r4.model.ValueSet) src);
+    case VisionPrescription: return convertVisionPrescription((org.hl7.fhir.r4.model.VisionPrescription) src);
 //    if (src instanceof org.hl7.fhir.r4.model.DocumentManifest)
 //      return convertDocumentManifest((org.hl7.fhir.r4.model.DocumentManifest) src);
-    if (src instanceof org.hl7.fhir.r4.model.DocumentReference)
-      return convertDocumentReference((org.hl7.fhir.r4.model.DocumentReference) src);
-    if (src instanceof org.hl7.fhir.r4.model.EligibilityRequest)
-      return convertEligibilityRequest((org.hl7.fhir.r4.model.EligibilityRequest) src);
-    if (src instanceof org.hl7.fhir.r4.model.Encounter)
-      return convertEncounter((org.hl7.fhir.r4.model.Encounter) src);
-    if (src instanceof org.hl7.fhir.r4.model.Endpoint)
-      return convertEndpoint((org.hl7.fhir.r4.model.Endpoint) src);
-    if (src instanceof org.hl7.fhir.r4.model.EpisodeOfCare)
-      return convertEpisodeOfCare((org.hl7.fhir.r4.model.EpisodeOfCare) src);
-    if (src instanceof org.hl7.fhir.r4.model.ExpansionProfile)
-      return convertExpansionProfile((org.hl7.fhir.r4.model.ExpansionProfile) src);
-    if (src instanceof org.hl7.fhir.r4.model.FamilyMemberHistory)
-      return convertFamilyMemberHistory((org.hl7.fhir.r4.model.FamilyMemberHistory) src);
-    if (src instanceof org.hl7.fhir.r4.model.Flag)
-      return convertFlag((org.hl7.fhir.r4.model.Flag) src);
-    if (src instanceof org.hl7.fhir.r4.model.Goal)
-      return convertGoal((org.hl7.fhir.r4.model.Goal) src);
-    if (src instanceof org.hl7.fhir.r4.model.GraphDefinition)
-      return convertGraphDefinition((org.hl7.fhir.r4.model.GraphDefinition) src);
-    if (src instanceof org.hl7.fhir.r4.model.Group)
-      return convertGroup((org.hl7.fhir.r4.model.Group) src);
-    if (src instanceof org.hl7.fhir.r4.model.HealthcareService)
-      return convertHealthcareService((org.hl7.fhir.r4.model.HealthcareService) src);
-    if (src instanceof org.hl7.fhir.r4.model.ImplementationGuide)
-      return convertImplementationGuide((org.hl7.fhir.r4.model.ImplementationGuide) src);
-    if (src instanceof org.hl7.fhir.r4.model.Linkage)
-      return convertLinkage((org.hl7.fhir.r4.model.Linkage) src);
-    if (src instanceof org.hl7.fhir.r4.model.ListResource)
-      return convertList((org.hl7.fhir.r4.model.ListResource) src);
-    if (src instanceof org.hl7.fhir.r4.model.Location)
-      return convertLocation((org.hl7.fhir.r4.model.Location) src);
 //    if (src instanceof org.hl7.fhir.r4.model.Medication)
 //      return convertMedication((org.hl7.fhir.r4.model.Medication) src);
-    if (src instanceof org.hl7.fhir.r4.model.MedicationAdministration)
-      return convertMedicationAdministration((org.hl7.fhir.r4.model.MedicationAdministration) src);
-    if (src instanceof org.hl7.fhir.r4.model.MedicationDispense)
-      return convertMedicationDispense((org.hl7.fhir.r4.model.MedicationDispense) src);
-    if (src instanceof org.hl7.fhir.r4.model.MedicationRequest)
-      return convertMedicationRequest((org.hl7.fhir.r4.model.MedicationRequest) src);
-    if (src instanceof org.hl7.fhir.r4.model.MedicationStatement)
-      return convertMedicationStatement((org.hl7.fhir.r4.model.MedicationStatement) src);
-    if (src instanceof org.hl7.fhir.r4.model.MessageDefinition)
-      return convertMessageDefinition((org.hl7.fhir.r4.model.MessageDefinition) src);
-    if (src instanceof org.hl7.fhir.r4.model.MessageHeader)
-      return convertMessageHeader((org.hl7.fhir.r4.model.MessageHeader) src);
-    if (src instanceof org.hl7.fhir.r4.model.NamingSystem)
-      return convertNamingSystem((org.hl7.fhir.r4.model.NamingSystem) src);
-    if (src instanceof org.hl7.fhir.r4.model.NutritionOrder)
-      return convertNutritionOrder((org.hl7.fhir.r4.model.NutritionOrder) src);
-    if (src instanceof org.hl7.fhir.r4.model.Observation)
-      return convertObservation((org.hl7.fhir.r4.model.Observation) src);
-    if (src instanceof org.hl7.fhir.r4.model.OperationDefinition)
-      return convertOperationDefinition((org.hl7.fhir.r4.model.OperationDefinition) src);
-    if (src instanceof org.hl7.fhir.r4.model.OperationOutcome)
-      return convertOperationOutcome((org.hl7.fhir.r4.model.OperationOutcome) src);
-    if (src instanceof org.hl7.fhir.r4.model.Organization)
-      return convertOrganization((org.hl7.fhir.r4.model.Organization) src);
-    if (src instanceof org.hl7.fhir.r4.model.Patient)
-      return convertPatient((org.hl7.fhir.r4.model.Patient) src);
-    if (src instanceof org.hl7.fhir.r4.model.PaymentNotice)
-      return convertPaymentNotice((org.hl7.fhir.r4.model.PaymentNotice) src);
-    if (src instanceof org.hl7.fhir.r4.model.Person)
-      return convertPerson((org.hl7.fhir.r4.model.Person) src);
-    if (src instanceof org.hl7.fhir.r4.model.Practitioner)
-      return convertPractitioner((org.hl7.fhir.r4.model.Practitioner) src);
-    if (src instanceof org.hl7.fhir.r4.model.PractitionerRole)
-      return convertPractitionerRole((org.hl7.fhir.r4.model.PractitionerRole) src);
-    if (src instanceof org.hl7.fhir.r4.model.ProcessRequest)
-      return convertProcessRequest((org.hl7.fhir.r4.model.ProcessRequest) src);
 //    if (src instanceof org.hl7.fhir.r4.model.Provenance)
 //      return convertProvenance((org.hl7.fhir.r4.model.Provenance) src);
-    if (src instanceof org.hl7.fhir.r4.model.Questionnaire)
-      return convertQuestionnaire((org.hl7.fhir.r4.model.Questionnaire) src);
-    if (src instanceof org.hl7.fhir.r4.model.QuestionnaireResponse)
-      return convertQuestionnaireResponse((org.hl7.fhir.r4.model.QuestionnaireResponse) src);
-    if (src instanceof org.hl7.fhir.r4.model.RiskAssessment)
-      return convertRiskAssessment((org.hl7.fhir.r4.model.RiskAssessment) src);
-    if (src instanceof org.hl7.fhir.r4.model.Schedule)
-      return convertSchedule((org.hl7.fhir.r4.model.Schedule) src);
-    if (src instanceof org.hl7.fhir.r4.model.SearchParameter)
-      return convertSearchParameter((org.hl7.fhir.r4.model.SearchParameter) src);
-    if (src instanceof org.hl7.fhir.r4.model.Sequence)
-      return convertSequence((org.hl7.fhir.r4.model.Sequence) src);
-    if (src instanceof org.hl7.fhir.r4.model.Slot)
-      return convertSlot((org.hl7.fhir.r4.model.Slot) src);
-    if (src instanceof org.hl7.fhir.r4.model.Specimen)
-      return convertSpecimen((org.hl7.fhir.r4.model.Specimen) src);
-    if (src instanceof org.hl7.fhir.r4.model.StructureDefinition)
-      return convertStructureDefinition((org.hl7.fhir.r4.model.StructureDefinition) src);
-    if (src instanceof org.hl7.fhir.r4.model.StructureMap)
-      return convertStructureMap((org.hl7.fhir.r4.model.StructureMap) src);
-    if (src instanceof org.hl7.fhir.r4.model.Subscription)
-      return convertSubscription((org.hl7.fhir.r4.model.Subscription) src);
-    if (src instanceof org.hl7.fhir.r4.model.Substance)
-      return convertSubstance((org.hl7.fhir.r4.model.Substance) src);
-    if (src instanceof org.hl7.fhir.r4.model.SupplyDelivery)
-      return convertSupplyDelivery((org.hl7.fhir.r4.model.SupplyDelivery) src);
-    if (src instanceof org.hl7.fhir.r4.model.TestReport)
-      return convertTestReport((org.hl7.fhir.r4.model.TestReport) src);
-    if (src instanceof org.hl7.fhir.r4.model.TestScript)
-      return convertTestScript((org.hl7.fhir.r4.model.TestScript) src);
-    if (src instanceof org.hl7.fhir.r4.model.ValueSet)
-      return convertValueSet((org.hl7.fhir.r4.model.ValueSet) src);
-    if (src instanceof org.hl7.fhir.r4.model.VisionPrescription)
-      return convertVisionPrescription((org.hl7.fhir.r4.model.VisionPrescription) src);
-    throw new Error("Unknown resource "+src.fhirType());
+    default: throw new Error("Unknown resource "+src.fhirType());
+    }
   }
 
   public static org.hl7.fhir.r4.model.CapabilityStatement.ResourceInteractionComponent convertResourceInteractionComponent(org.hl7.fhir.dstu3.model.CapabilityStatement.ResourceInteractionComponent src) throws FHIRException {
@@ -21113,212 +20954,222 @@ public class VersionConvertor_30_40 {
   }
 }
 
+  // the classes tested for by convertType(org.hl7.fhir.dstu3.model.Type), in the order they used to be tested
+  private static final ClassDispatchTable ourTypesFromDstu3 = new ClassDispatchTable(
+      org.hl7.fhir.dstu3.model.Base64BinaryType.class,
+      org.hl7.fhir.dstu3.model.BooleanType.class,
+      org.hl7.fhir.dstu3.model.CodeType.class,
+      org.hl7.fhir.dstu3.model.DateType.class,
+      org.hl7.fhir.dstu3.model.DateTimeType.class,
+      org.hl7.fhir.dstu3.model.DecimalType.class,
+      org.hl7.fhir.dstu3.model.IdType.class,
+      org.hl7.fhir.dstu3.model.InstantType.class,
+      org.hl7.fhir.dstu3.model.IntegerType.class,
+      org.hl7.fhir.dstu3.model.MarkdownType.class,
+      org.hl7.fhir.dstu3.model.OidType.class,
+      org.hl7.fhir.dstu3.model.PositiveIntType.class,
+      org.hl7.fhir.dstu3.model.StringType.class,
+      org.hl7.fhir.dstu3.model.TimeType.class,
+      org.hl7.fhir.dstu3.model.UnsignedIntType.class,
+      org.hl7.fhir.dstu3.model.UriType.class,
+      org.hl7.fhir.dstu3.model.UuidType.class,
+      org.hl7.fhir.dstu3.model.Extension.class,
+      org.hl7.fhir.dstu3.model.Narrative.class,
+      org.hl7.fhir.dstu3.model.Age.class,
+      org.hl7.fhir.dstu3.model.Annotation.class,
+      org.hl7.fhir.dstu3.model.Attachment.class,
+      org.hl7.fhir.dstu3.model.CodeableConcept.class,
+      org.hl7.fhir.dstu3.model.Coding.class,
+      org.hl7.fhir.dstu3.model.Count.class,
+      org.hl7.fhir.dstu3.model.Distance.class,
+      org.hl7.fhir.dstu3.model.Duration.class,
+      org.hl7.fhir.dstu3.model.Identifier.class,
+      org.hl7.fhir.dstu3.model.Money.class,
+      org.hl7.fhir.dstu3.model.Period.class,
+      org.hl7.fhir.dstu3.model.Quantity.class,
+      org.hl7.fhir.dstu3.model.Range.class,
+      org.hl7.fhir.dstu3.model.Ratio.class,
+      org.hl7.fhir.dstu3.model.Reference.class,
+      org.hl7.fhir.dstu3.model.SampledData.class,
+      org.hl7.fhir.dstu3.model.Signature.class,
+      org.hl7.fhir.dstu3.model.Address.class,
+      org.hl7.fhir.dstu3.model.ContactDetail.class,
+      org.hl7.fhir.dstu3.model.ContactPoint.class,
+      org.hl7.fhir.dstu3.model.Contributor.class,
+      org.hl7.fhir.dstu3.model.Dosage.class,
+      org.hl7.fhir.dstu3.model.ElementDefinition.class,
+      org.hl7.fhir.dstu3.model.HumanName.class,
+      org.hl7.fhir.dstu3.model.Meta.class,
+      org.hl7.fhir.dstu3.model.ParameterDefinition.class,
+      org.hl7.fhir.dstu3.model.RelatedArtifact.class,
+      org.hl7.fhir.dstu3.model.Timing.class,
+      org.hl7.fhir.dstu3.model.UsageContext.class,
+      org.hl7.fhir.dstu3.model.SimpleQuantity.class);
+
   public static org.hl7.fhir.r4.model.Type convertType(org.hl7.fhir.dstu3.model.Type src) throws FHIRException {
     if (src == null)
       return null;
-    if (src instanceof org.hl7.fhir.dstu3.model.Base64BinaryType)
-      return convertBase64Binary((org.hl7.fhir.dstu3.model.Base64BinaryType) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.BooleanType)
-      return convertBoolean((org.hl7.fhir.dstu3.model.BooleanType) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.CodeType)
-      return convertCode((org.hl7.fhir.dstu3.model.CodeType) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.DateType)
-      return convertDate((org.hl7.fhir.dstu3.model.DateType) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.DateTimeType)
-      return convertDateTime((org.hl7.fhir.dstu3.model.DateTimeType) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.DecimalType)
-      return convertDecimal((org.hl7.fhir.dstu3.model.DecimalType) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.IdType)
-      return convertId((org.hl7.fhir.dstu3.model.IdType) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.InstantType)
-      return convertInstant((org.hl7.fhir.dstu3.model.InstantType) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.IntegerType)
-      return convertInteger((org.hl7.fhir.dstu3.model.IntegerType) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.MarkdownType)
-      return convertMarkdown((org.hl7.fhir.dstu3.model.MarkdownType) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.OidType)
-      return convertOid((org.hl7.fhir.dstu3.model.OidType) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.PositiveIntType)
-      return convertPositiveInt((org.hl7.fhir.dstu3.model.PositiveIntType) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.StringType)
-      return convertString((org.hl7.fhir.dstu3.model.StringType) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.TimeType)
-      return convertTime((org.hl7.fhir.dstu3.model.TimeType) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.UnsignedIntType)
-      return convertUnsignedInt((org.hl7.fhir.dstu3.model.UnsignedIntType) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.UriType)
-      return convertUri((org.hl7.fhir.dstu3.model.UriType) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.UuidType)
-      return convertUuid((org.hl7.fhir.dstu3.model.UuidType) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Extension)
-      return convertExtension((org.hl7.fhir.dstu3.model.Extension) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Narrative)
-      return convertNarrative((org.hl7.fhir.dstu3.model.Narrative) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Age)
-      return convertAge((org.hl7.fhir.dstu3.model.Age) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Annotation)
-      return convertAnnotation((org.hl7.fhir.dstu3.model.Annotation) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Attachment)
-      return convertAttachment((org.hl7.fhir.dstu3.model.Attachment) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.CodeableConcept)
-      return convertCodeableConcept((org.hl7.fhir.dstu3.model.CodeableConcept) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Coding)
-      return convertCoding((org.hl7.fhir.dstu3.model.Coding) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Count)
-      return convertCount((org.hl7.fhir.dstu3.model.Count) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Distance)
-      return convertDistance((org.hl7.fhir.dstu3.model.Distance) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Duration)
-      return convertDuration((org.hl7.fhir.dstu3.model.Duration) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Identifier)
-      return convertIdentifier((org.hl7.fhir.dstu3.model.Identifier) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Money)
-      return convertMoney((org.hl7.fhir.dstu3.model.Money) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Period)
-      return convertPeriod((org.hl7.fhir.dstu3.model.Period) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Quantity)
-      return convertQuantity((org.hl7.fhir.dstu3.model.Quantity) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Range)
-      return convertRange((org.hl7.fhir.dstu3.model.Range) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Ratio)
-      return convertRatio((org.hl7.fhir.dstu3.model.Ratio) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Reference)
-      return convertReference((org.hl7.fhir.dstu3.model.Reference) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.SampledData)
-      return convertSampledData((org.hl7.fhir.dstu3.model.SampledData) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Signature)
-      return convertSignature((org.hl7.fhir.dstu3.model.Signature) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Address)
-      return convertAddress((org.hl7.fhir.dstu3.model.Address) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.ContactDetail)
-      return convertContactDetail((org.hl7.fhir.dstu3.model.ContactDetail) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.ContactPoint)
-      return convertContactPoint((org.hl7.fhir.dstu3.model.ContactPoint) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Contributor)
-      return convertContributor((org.hl7.fhir.dstu3.model.Contributor) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Dosage)
-      return convertDosage((org.hl7.fhir.dstu3.model.Dosage) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.ElementDefinition)
-      return convertElementDefinition((org.hl7.fhir.dstu3.model.ElementDefinition) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.HumanName)
-      return convertHumanName((org.hl7.fhir.dstu3.model.HumanName) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Meta)
-      return convertMeta((org.hl7.fhir.dstu3.model.Meta) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.ParameterDefinition)
-      return convertParameterDefinition((org.hl7.fhir.dstu3.model.ParameterDefinition) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.RelatedArtifact)
-      return convertRelatedArtifact((org.hl7.fhir.dstu3.model.RelatedArtifact) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.Timing)
-      return convertTiming((org.hl7.fhir.dstu3.model.Timing) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.UsageContext)
-      return convertUsageContext((org.hl7.fhir.dstu3.model.UsageContext) src);
-    if (src instanceof org.hl7.fhir.dstu3.model.SimpleQuantity)
-      return convertSimpleQuantity((org.hl7.fhir.dstu3.model.SimpleQuantity) src);
-    throw new Error("Unknown type "+src.fhirType());
+    switch (ourTypesFromDstu3.indexOf(src)) {
+    case 0: return convertBase64Binary((org.hl7.fhir.dstu3.model.Base64BinaryType) src);
+    case 1: return convertBoolean((org.hl7.fhir.dstu3.model.BooleanType) src);
+    case 2: return convertCode((org.hl7.fhir.dstu3.model.CodeType) src);
+    case 3: return convertDate((org.hl7.fhir.dstu3.model.DateType) src);
+    case 4: return convertDateTime((org.hl7.fhir.dstu3.model.DateTimeType) src);
+    case 5: return convertDecimal((org.hl7.fhir.dstu3.model.DecimalType) src);
+    case 6: return convertId((org.hl7.fhir.dstu3.model.IdType) src);
+    case 7: return convertInstant((org.hl7.fhir.dstu3.model.InstantType) src);
+    case 8: return convertInteger((org.hl7.fhir.dstu3.model.IntegerType) src);
+    case 9: return convertMarkdown((org.hl7.fhir.dstu3.model.MarkdownType) src);
+    case 10: return convertOid((org.hl7.fhir.dstu3.model.OidType) src);
+    case 11: return convertPositiveInt((org.hl7.fhir.dstu3.model.PositiveIntType) src);
+    case 12: return convertString((org.hl7.fhir.dstu3.model.StringType) src);
+    case 13: return convertTime((org.hl7.fhir.dstu3.model.TimeType) src);
+    case 14: return convertUnsignedInt((org.hl7.fhir.dstu3.model.UnsignedIntType) src);
+    case 15: return convertUri((org.hl7.fhir.dstu3.model.UriType) src);
+    case 16: return convertUuid((org.hl7.fhir.dstu3.model.UuidType) src);
+    case 17: return convertExtension((org.hl7.fhir.dstu3.model.Extension) src);
+    case 18: return convertNarrative((org.hl7.fhir.dstu3.model.Narrative) src);
+    case 19: return convertAge((org.hl7.fhir.dstu3.model.Age) src);
+    case 20: return convertAnnotation((org.hl7.fhir.dstu3.model.Annotation) src);
+    case 21: return convertAttachment((org.hl7.fhir.dstu3.model.Attachment) src);
+    case 22: return convertCodeableConcept((org.hl7.fhir.dstu3.model.CodeableConcept) src);
+    case 23: return convertCoding((org.hl7.fhir.dstu3.model.Coding) src);
+    case 24: return convertCount((org.hl7.fhir.dstu3.model.Count) src);
+    case 25: return convertDistance((org.hl7.fhir.dstu3.model.Distance) src);
+    case 26: return convertDuration((org.hl7.fhir.dstu3.model.Duration) src);
+    case 27: return convertIdentifier((org.hl7.fhir.dstu3.model.Identifier) src);
+    case 28: return convertMoney((org.hl7.fhir.dstu3.model.Money) src);
+    case 29: return convertPeriod((org.hl7.fhir.dstu3.model.Period) src);
+    case 30: return convertQuantity((org.hl7.fhir.dstu3.model.Quantity) src);
+    case 31: return convertRange((org.hl7.fhir.dstu3.model.Range) src);
+    case 32: return convertRatio((org.hl7.fhir.dstu3.model.Ratio) src);
+    case 33: return convertReference((org.hl7.fhir.dstu3.model.Reference) src);
+    case 34: return convertSampledData((org.hl7.fhir.dstu3.model.SampledData) src);
+    case 35: return convertSignature((org.hl7.fhir.dstu3.model.Signature) src);
+    case 36: return convertAddress((org.hl7.fhir.dstu3.model.Address) src);
+    case 37: return convertContactDetail((org.hl7.fhir.dstu3.model.ContactDetail) src);
+    case 38: return convertContactPoint((org.hl7.fhir.dstu3.model.ContactPoint) src);
+    case 39: return convertContributor((org.hl7.fhir.dstu3.model.Contributor) src);
+    case 40: return convertDosage((org.hl7.fhir.dstu3.model.Dosage) src);
+    case 41: return convertElementDefinition((org.hl7.fhir.dstu3.model.ElementDefinition) src);
+    case 42: return convertHumanName((org.hl7.fhir.dstu3.model.HumanName) src);
+    case 43: return convertMeta((org.hl7.fhir.dstu3.model.Meta) src);
+    case 44: return convertParameterDefinition((org.hl7.fhir.dstu3.model.ParameterDefinition) src);
+    case 45: return convertRelatedArtifact((org.hl7.fhir.dstu3.model.RelatedArtifact) src);
+    case 46: return convertTiming((org.hl7.fhir.dstu3.model.Timing) src);
+    case 47: return convertUsageContext((org.hl7.fhir.dstu3.model.UsageContext) src);
+    case 48: return convertSimpleQuantity((org.hl7.fhir.dstu3.model.SimpleQuantity) src);
+    default: throw new Error("Unknown type "+src.fhirType());
+    }
   }
 
+  // the classes tested for by convertType(org.hl7.fhir.r4.model.Type), in the order they used to be tested
+  private static final ClassDispatchTable ourTypesFromR4 = new ClassDispatchTable(
+      org.hl7.fhir.r4.model.Base64BinaryType.class,
+      org.hl7.fhir.r4.model.BooleanType.class,
+      org.hl7.fhir.r4.model.CodeType.class,
+      org.hl7.fhir.r4.model.DateType.class,
+      org.hl7.fhir.r4.model.DateTimeType.class,
+      org.hl7.fhir.r4.model.DecimalType.class,
+      org.hl7.fhir.r4.model.IdType.class,
+      org.hl7.fhir.r4.model.InstantType.class,
+      org.hl7.fhir.r4.model.IntegerType.class,
+      org.hl7.fhir.r4.model.MarkdownType.class,
+      org.hl7.fhir.r4.model.OidType.class,
+      org.hl7.fhir.r4.model.PositiveIntType.class,
+      org.hl7.fhir.r4.model.StringType.class,
+      org.hl7.fhir.r4.model.TimeType.class,
+      org.hl7.fhir.r4.model.UnsignedIntType.class,
+      org.hl7.fhir.r4.model.UriType.class,
+      org.hl7.fhir.r4.model.UuidType.class,
+      org.hl7.fhir.r4.model.Extension.class,
+      org.hl7.fhir.r4.model.Narrative.class,
+      org.hl7.fhir.r4.model.Age.class,
+      org.hl7.fhir.r4.model.Annotation.class,
+      org.hl7.fhir.r4.model.Attachment.class,
+      org.hl7.fhir.r4.model.CodeableConcept.class,
+      org.hl7.fhir.r4.model.Coding.class,
+      org.hl7.fhir.r4.model.Count.class,
+      org.hl7.fhir.r4.model.Distance.class,
+      org.hl7.fhir.r4.model.Duration.class,
+      org.hl7.fhir.r4.model.Identifier.class,
+      org.hl7.fhir.r4.model.Money.class,
+      org.hl7.fhir.r4.model.Period.class,
+      org.hl7.fhir.r4.model.Quantity.class,
+      org.hl7.fhir.r4.model.Range.class,
+      org.hl7.fhir.r4.model.Ratio.class,
+      org.hl7.fhir.r4.model.Reference.class,
+      org.hl7.fhir.r4.model.SampledData.class,
+      org.hl7.fhir.r4.model.Signature.class,
+      org.hl7.fhir.r4.model.Address.class,
+      org.hl7.fhir.r4.model.ContactDetail.class,
+      org.hl7.fhir.r4.model.ContactPoint.class,
+      org.hl7.fhir.r4.model.Contributor.class,
+      org.hl7.fhir.r4.model.Dosage.class,
+      org.hl7.fhir.r4.model.ElementDefinition.class,
+      org.hl7.fhir.r4.model.HumanName.class,
+      org.hl7.fhir.r4.model.Meta.class,
+      org.hl7.fhir.r4.model.ParameterDefinition.class,
+      org.hl7.fhir.r4.model.RelatedArtifact.class,
+      org.hl7.fhir.r4.model.Timing.class,
+      org.hl7.fhir.r4.model.UsageContext.class,
+      org.hl7.fhir.r4.model.SimpleQuantity.class);
+
   public static org.hl7.fhir.dstu3.model.Type convertType(org.hl7.fhir.r4.model.Type src) throws FHIRException {
     if (src == null)
       return null;
-    if (src instanceof org.hl7.fhir.r4.model.Base64BinaryType)
-      return convertBase64Binary((org.hl7.fhir.r4.model.Base64BinaryType) src);
-    if (src instanceof org.hl7.fhir.r4.model.BooleanType)
-      return convertBoolean((org.hl7.fhir.r4.model.BooleanType) src);
-    if (src instanceof org.hl7.fhir.r4.model.CodeType)
-      return convertCode((org.hl7.fhir.r4.model.CodeType) src);
-    if (src instanceof org.hl7.fhir.r4.model.DateType)
-      return convertDate((org.hl7.fhir.r4.model.DateType) src);
-    if (src instanceof org.hl7.fhir.r4.model.DateTimeType)
-      return convertDateTime((org.hl7.fhir.r4.model.DateTimeType) src);
-    if (src instanceof org.hl7.fhir.r4.model.DecimalType)
-      return convertDecimal((org.hl7.fhir.r4.model.DecimalType) src);
-    if (src instanceof org.hl7.fhir.r4.model.IdType)
-      return convertId((org.hl7.fhir.r4.model.IdType) src);
-    if (src instanceof org.hl7.fhir.r4.model.InstantType)
-      return convertInstant((org.hl7.fhir.r4.model.InstantType) src);
-    if (src instanceof org.hl7.fhir.r4.model.IntegerType)
-      return convertInteger((org.hl7.fhir.r4.model.IntegerType) src);
-    if (src instanceof org.hl7.fhir.r4.model.MarkdownType)
-      return convertMarkdown((org.hl7.fhir.r4.model.MarkdownType) src);
-    if (src instanceof org.hl7.fhir.r4.model.OidType)
-      return convertOid((org.hl7.fhir.r4.model.OidType) src);
-    if (src instanceof org.hl7.fhir.r4.model.PositiveIntType)
-      return convertPositiveInt((org.hl7.fhir.r4.model.PositiveIntType) src);
-    if (src instanceof org.hl7.fhir.r4.model.StringType)
-      return convertString((org.hl7.fhir.r4.model.StringType) src);
-    if (src instanceof org.hl7.fhir.r4.model.TimeType)
-      return convertTime((org.hl7.fhir.r4.model.TimeType) src);
-    if (src instanceof org.hl7.fhir.r4.model.UnsignedIntType)
-      return convertUnsignedInt((org.hl7.fhir.r4.model.UnsignedIntType) src);
-    if (src instanceof org.hl7.fhir.r4.model.UriType)
-      return convertUri((org.hl7.fhir.r4.model.UriType) src);
-    if (src instanceof org.hl7.fhir.r4.model.UuidType)
-      return convertUuid((org.hl7.fhir.r4.model.UuidType) src);
-    if (src instanceof org.hl7.fhir.r4.model.Extension)
-      return convertExtension((org.hl7.fhir.r4.model.Extension) src);
-    if (src instanceof org.hl7.fhir.r4.model.Narrative)
-      return convertNarrative((org.hl7.fhir.r4.model.Narrative) src);
-    if (src instanceof org.hl7.fhir.r4.model.Age)
-      return convertAge((org.hl7.fhir.r4.model.Age) src);
-    if (src instanceof org.hl7.fhir.r4.model.Annotation)
-      return convertAnnotation((org.hl7.fhir.r4.model.Annotation) src);
-    if (src instanceof org.hl7.fhir.r4.model.Attachment)
-      return convertAttachment((org.hl7.fhir.r4.model.Attachment) src);
-    if (src instanceof org.hl7.fhir.r4.model.CodeableConcept)
-      return convertCodeableConcept((org.hl7.fhir.r4.model.CodeableConcept) src);
-    if (src instanceof org.hl7.fhir.r4.model.Coding)
-      return convertCoding((org.hl7.fhir.r4.model.Coding) src);
-    if (src instanceof org.hl7.fhir.r4.model.Count)
-      return convertCount((org.hl7.fhir.r4.model.Count) src);
-    if (src instanceof org.hl7.fhir.r4.model.Distance)
-      return convertDistance((org.hl7.fhir.r4.model.Distance) src);
-    if (src instanceof org.hl7.fhir.r4.model.Duration)
-      return convertDuration((org.hl7.fhir.r4.model.Duration) src);
-    if (src instanceof org.hl7.fhir.r4.model.Identifier)
-      return convertIdentifier((org.hl7.fhir.r4.model.Identifier) src);
-    if (src instanceof org.hl7.fhir.r4.model.Money)
-      return convertMoney((org.hl7.fhir.r4.model.Money) src);
-    if (src instanceof org.hl7.fhir.r4.model.Period)
-      return convertPeriod((org.hl7.fhir.r4.model.Period) src);
-    if (src instanceof org.hl7.fhir.r4.model.Quantity)
-      return convertQuantity((org.hl7.fhir.r4.model.Quantity) src);
-    if (src instanceof org.hl7.fhir.r4.model.Range)
-      return convertRange((org.hl7.fhir.r4.model.Range) src);
-    if (src instanceof org.hl7.fhir.r4.model.Ratio)
-      return convertRatio((org.hl7.fhir.r4.model.Ratio) src);
-    if (src instanceof org.hl7.fhir.r4.model.Reference)
-      return convertReference((org.hl7.fhir.r4.model.Reference) src);
-    if (src instanceof org.hl7.fhir.r4.model.SampledData)
-      return convertSampledData((org.hl7.fhir.r4.model.SampledData) src);
-    if (src instanceof org.hl7.fhir.r4.model.Signature)
-      return convertSignature((org.hl7.fhir.r4.model.Signature) src);
-    if (src instanceof org.hl7.fhir.r4.model.Address)
-      return convertAddress((org.hl7.fhir.r4.model.Address) src);
-    if (src instanceof org.hl7.fhir.r4.model.ContactDetail)
-      return convertContactDetail((org.hl7.fhir.r4.model.ContactDetail) src);
-    if (src instanceof org.hl7.fhir.r4.model.ContactPoint)
-      return convertContactPoint((org.hl7.fhir.r4.model.ContactPoint) src);
-    if (src instanceof org.hl7.fhir.r4.model.Contributor)
-      return convertContributor((org.hl7.fhir.r4.model.Contributor) src);
-    if (src instanceof org.hl7.fhir.r4.model.Dosage)
-      return convertDosage((org.hl7.fhir.r4.model.Dosage) src);
-    if (src instanceof org.hl7.fhir.r4.model.ElementDefinition)
-      return convertElementDefinition((org.hl7.fhir.r4.model.ElementDefinition) src);
-    if (src instanceof org.hl7.fhir.r4.model.HumanName)
-      return convertHumanName((org.hl7.fhir.r4.model.HumanName) src);
-    if (src instanceof org.hl7.fhir.r4.model.Meta)
-      return convertMeta((org.hl7.fhir.r4.model.Meta) src);
-    if (src instanceof org.hl7.fhir.r4.model.ParameterDefinition)
-      return convertParameterDefinition((org.hl7.fhir.r4.model.ParameterDefinition) src);
-    if (src instanceof org.hl7.fhir.r4.model.RelatedArtifact)
-      return convertRelatedArtifact((org.hl7.fhir.r4.model.RelatedArtifact) src);
-    if (src instanceof org.hl7.fhir.r4.model.Timing)
-      return convertTiming((org.hl7.fhir.r4.model.Timing) src);
-    if (src instanceof org.hl7.fhir.r4.model.UsageContext)
-      return convertUsageContext((org.hl7.fhir.r4.model.UsageContext) src);
-    if (src instanceof org.hl7.fhir.r4.model.SimpleQuantity)
-      return convertSimpleQuantity((org.hl7.fhir.r4.model.SimpleQuantity) src);
-    throw new Error("Unknown type "+src.fhirType());
+    switch (ourTypesFromR4.indexOf(src)) {
+    case 0: return convertBase64Binary((org.hl7.fhir.r4.model.Base64BinaryType) src);
+    case 1: return convertBoolean((org.hl7.fhir.r4.model.BooleanType) src);
+    case 2: return convertCode((org.hl7.fhir.r4.model.CodeType) src);
+    case 3: return convertDate((org.hl7.fhir.r4.model.DateType) src);
+    case 4: return convertDateTime((org.hl7.fhir.r4.model.DateTimeType) src);
+    case 5: return convertDecimal((org.hl7.fhir.r4.model.DecimalType) src);
+    case 6: return convertId((org.hl7.fhir.r4.model.IdType) src);
+    case 7: return convertInstant((org.hl7.fhir.r4.model.InstantType) src);
+    case 8: return convertInteger((org.hl7.fhir.r4.model.IntegerType) src);
+    case 9: return convertMarkdown((org.hl7.fhir.r4.model.MarkdownType) src);
+    case 10: return convertOid((org.hl7.fhir.r4.model.OidType) src);
+    case 11: return convertPositiveInt((org.hl7.fhir.r4.model.PositiveIntType) src);
+    case 12: return convertString((org.hl7.fhir.r4.model.StringType) src);
+    case 13: return convertTime((org.hl7.fhir.r4.model.TimeType) src);
+    case 14: return convertUnsignedInt((org.hl7.fhir.r4.model.UnsignedIntType) src);
+    case 15: return convertUri((org.hl7.fhir.r4.model.UriType) src);
+    case 16: return convertUuid((org.hl7.fhir.r4.model.UuidType) src);
+    case 17: return convertExtension((org.hl7.fhir.r4.model.Extension) src);
+    case 18: return convertNarrative((org.hl7.fhir.r4.model.Narrative) src);
+    case 19: return convertAge((org.hl7.fhir.r4.model.Age) src);
+    case 20: return convertAnnotation((org.hl7.fhir.r4.model.Annotation) src);
+    case 21: return convertAttachment((org.hl7.fhir.r4.model.Attachment) src);
+    case 22: return convertCodeableConcept((org.hl7.fhir.r4.model.CodeableConcept) src);
+    case 23: return convertCoding((org.hl7.fhir.r4.model.Coding) src);
+    case 24: return convertCount((org.hl7.fhir.r4.model.Count) src);
+    case 25: return convertDistance((org.hl7.fhir.r4.model.Distance) src);
+    case 26: return convertDuration((org.hl7.fhir.r4.model.Duration) src);
+    case 27: return convertIdentifier((org.hl7.fhir.r4.model.Identifier) src);
+    case 28: return convertMoney((org.hl7.fhir.r4.model.Money) src);
+    case 29: return convertPeriod((org.hl7.fhir.r4.model.Period) src);
+    case 30: return convertQuantity((org.hl7.fhir.r4.model.Quantity) src);
+    case 31: return convertRange((org.hl7.fhir.r4.model.Range) src);
+    case 32: return convertRatio((org.hl7.fhir.r4.model.Ratio) src);
+    case 33: return convertReference((org.hl7.fhir.r4.model.Reference) src);
+    case 34: return convertSampledData((org.hl7.fhir.r4.model.SampledData) src);
+    case 35: return convertSignature((org.hl7.fhir.r4.model.Signature) src);
+    case 36: return convertAddress((org.hl7.fhir.r4.model.Address) src);
+    case 37: return convertContactDetail((org.hl7.fhir.r4.model.ContactDetail) src);
+    case 38: return convertContactPoint((org.hl7.fhir.r4.model.ContactPoint) src);
+    case 39: return convertContributor((org.hl7.fhir.r4.model.Contributor) src);
+    case 40: return convertDosage((org.hl7.fhir.r4.model.Dosage) src);
+    case 41: return convertElementDefinition((org.hl7.fhir.r4.model.ElementDefinition) src);
+    case 42: return convertHumanName((org.hl7.fhir.r4.model.HumanName) src);
+    case 43: return convertMeta((org.hl7.fhir.r4.model.Meta) src);
+    case 44: return convertParameterDefinition((org.hl7.fhir.r4.model.ParameterDefinition) src);
+    case 45: return convertRelatedArtifact((org.hl7.fhir.r4.model.RelatedArtifact) src);
+    case 46: return convertTiming((org.hl7.fhir.r4.model.Timing) src);
+    case 47: return convertUsageContext((org.hl7.fhir.r4.model.UsageContext) src);
+    case 48: return convertSimpleQuantity((org.hl7.fhir.r4.model.SimpleQuantity) src);
+    default: throw new Error("Unknown type "+src.fhirType());
+    }
   }
 
   private static org.hl7.fhir.r4.model.StructureDefinition.TypeDerivationRule convertTypeDerivationRule(org.hl7.fhir.dstu3.model.StructureDefinition.TypeDerivationRule src) throws FHIRException {
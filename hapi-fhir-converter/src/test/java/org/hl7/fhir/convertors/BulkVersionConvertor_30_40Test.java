@@ -0,0 +1,155 @@
+package org.hl7.fhir.convertors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.hl7.fhir.exceptions.FHIRException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class BulkVersionConvertor_30_40Test {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(BulkVersionConvertor_30_40Test.class);
+	private static FhirContext ourCtxDstu3 = FhirContext.forDstu3();
+	private static FhirContext ourCtxR4 = FhirContext.forR4();
+	private ExecutorService myExecutor;
+
+	@Before
+	public void before() {
+		myExecutor = Executors.newFixedThreadPool(4);
+	}
+
+	@After
+	public void after() {
+		myExecutor.shutdownNow();
+	}
+
+	@Test
+	public void testConvertBundleMatchesSequentialConversion() throws FHIRException {
+		org.hl7.fhir.dstu3.model.Bundle input = createDstu3Bundle(50);
+
+		org.hl7.fhir.r4.model.Bundle sequential = (org.hl7.fhir.r4.model.Bundle) VersionConvertor_30_40.convertResource(input);
+		org.hl7.fhir.r4.model.Bundle parallel = BulkVersionConvertor_30_40.convertBundle(input, myExecutor);
+		assertEquals(input.getEntry().size(), parallel.getEntry().size());
+		assertEquals(ourCtxR4.newJsonParser().encodeResourceToString(sequential), ourCtxR4.newJsonParser().encodeResourceToString(parallel));
+
+		org.hl7.fhir.dstu3.model.Bundle back = BulkVersionConvertor_30_40.convertBundle(parallel, myExecutor);
+		org.hl7.fhir.dstu3.model.Bundle backSequential = (org.hl7.fhir.dstu3.model.Bundle) VersionConvertor_30_40.convertResource(sequential);
+		assertEquals(ourCtxDstu3.newJsonParser().encodeResourceToString(backSequential), ourCtxDstu3.newJsonParser().encodeResourceToString(back));
+	}
+
+	@Test
+	public void testConvertResourcesKeepsOrder() throws FHIRException {
+		List<org.hl7.fhir.dstu3.model.Resource> input = new ArrayList<org.hl7.fhir.dstu3.model.Resource>();
+		for (org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent next : createDstu3Bundle(100).getEntry()) {
+			input.add(next.getResource());
+		}
+
+		List<org.hl7.fhir.r4.model.Resource> output = BulkVersionConvertor_30_40.convertResourcesToR4(input, myExecutor);
+		assertEquals(input.size(), output.size());
+		for (int i = 0; i < input.size(); i++) {
+			assertEquals(input.get(i).getResourceType().name(), output.get(i).getResourceType().name());
+			assertEquals(input.get(i).getIdElement().getIdPart(), output.get(i).getIdElement().getIdPart());
+		}
+
+		List<org.hl7.fhir.dstu3.model.Resource> back = BulkVersionConvertor_30_40.convertResourcesToDstu3(output, myExecutor);
+		for (int i = 0; i < input.size(); i++) {
+			assertEquals(ourCtxDstu3.newJsonParser().encodeResourceToString(input.get(i)), ourCtxDstu3.newJsonParser().encodeResourceToString(back.get(i)));
+		}
+	}
+
+	@Test
+	public void testConvertResourcesPropagatesFailure() {
+		List<org.hl7.fhir.r4.model.Resource> input = new ArrayList<org.hl7.fhir.r4.model.Resource>();
+		input.add(new org.hl7.fhir.r4.model.Patient());
+		input.add(new org.hl7.fhir.r4.model.Medication());
+		try {
+			BulkVersionConvertor_30_40.convertResourcesToDstu3(input, myExecutor);
+			fail();
+		} catch (Error e) {
+			assertEquals("Unknown resource Medication", e.getMessage());
+		} catch (FHIRException e) {
+			fail(e.toString());
+		}
+	}
+
+	@Test
+	public void testConvertTypesUsesMostSpecificMatch() throws FHIRException {
+		// CodeType extends StringType and must not be converted as a string
+		org.hl7.fhir.r4.model.Type code = VersionConvertor_30_40.convertType(new org.hl7.fhir.dstu3.model.CodeType("final"));
+		assertEquals(org.hl7.fhir.r4.model.CodeType.class, code.getClass());
+		org.hl7.fhir.r4.model.Type string = VersionConvertor_30_40.convertType(new org.hl7.fhir.dstu3.model.StringType("final"));
+		assertEquals(org.hl7.fhir.r4.model.StringType.class, string.getClass());
+		org.hl7.fhir.dstu3.model.Type age = VersionConvertor_30_40.convertType(new org.hl7.fhir.r4.model.Age().setValue(3));
+		assertEquals(org.hl7.fhir.dstu3.model.Age.class, age.getClass());
+	}
+
+	@Test
+	@Ignore
+	public void testConvertBundleThroughput() throws FHIRException {
+		org.hl7.fhir.dstu3.model.Bundle input = createDstu3Bundle(5000);
+
+		// warm up
+		for (int i = 0; i < 5; i++) {
+			VersionConvertor_30_40.convertResource(input);
+			BulkVersionConvertor_30_40.convertBundle(input, myExecutor);
+		}
+
+		for (int i = 0; i < 5; i++) {
+			long start = System.nanoTime();
+			VersionConvertor_30_40.convertResource(input);
+			long sequential = System.nanoTime() - start;
+			start = System.nanoTime();
+			BulkVersionConvertor_30_40.convertBundle(input, myExecutor);
+			long parallel = System.nanoTime() - start;
+			ourLog.info("Converted {} entries - sequential {}ms, parallel {}ms", input.getEntry().size(), sequential / 1000000, parallel / 1000000);
+		}
+	}
+
+	private static org.hl7.fhir.dstu3.model.Bundle createDstu3Bundle(int theEntryCount) {
+		org.hl7.fhir.dstu3.model.Bundle retVal = new org.hl7.fhir.dstu3.model.Bundle();
+		retVal.setId("bundle");
+		retVal.setType(org.hl7.fhir.dstu3.model.Bundle.BundleType.COLLECTION);
+		retVal.setTotal(theEntryCount);
+		retVal.addLink().setRelation("self").setUrl("http://example.com/fhir/Bundle/bundle");
+		for (int i = 0; i < theEntryCount; i++) {
+			org.hl7.fhir.dstu3.model.Resource resource;
+			switch (i % 3) {
+			case 0:
+				org.hl7.fhir.dstu3.model.Patient patient = new org.hl7.fhir.dstu3.model.Patient();
+				patient.addName().setFamily("Family " + i).addGiven("Given");
+				patient.addIdentifier().setSystem("http://example.com/mrn").setValue("MRN" + i);
+				patient.setGender(org.hl7.fhir.dstu3.model.Enumerations.AdministrativeGender.FEMALE);
+				resource = patient;
+				break;
+			case 1:
+				org.hl7.fhir.dstu3.model.Observation obs = new org.hl7.fhir.dstu3.model.Observation();
+				obs.setStatus(org.hl7.fhir.dstu3.model.Observation.ObservationStatus.FINAL);
+				obs.getCode().addCoding().setSystem("http://loinc.org").setCode("29463-7");
+				obs.setSubject(new org.hl7.fhir.dstu3.model.Reference("Patient/P" + (i - 1)));
+				obs.setValue(new org.hl7.fhir.dstu3.model.Quantity().setValue(70 + i).setUnit("kg"));
+				resource = obs;
+				break;
+			default:
+				org.hl7.fhir.dstu3.model.Organization organization = new org.hl7.fhir.dstu3.model.Organization();
+				organization.setName("Organization " + i);
+				organization.addTelecom().setSystem(org.hl7.fhir.dstu3.model.ContactPoint.ContactPointSystem.PHONE).setValue("555-" + i);
+				resource = organization;
+				break;
+			}
+			resource.setId("P" + i);
+			retVal.addEntry().setFullUrl("http://example.com/fhir/" + resource.getResourceType().name() + "/P" + i).setResource(resource);
+		}
+		return retVal;
+	}
+
+}
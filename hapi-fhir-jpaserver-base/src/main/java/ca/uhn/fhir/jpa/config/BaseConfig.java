@@ -20,6 +20,10 @@ package ca.uhn.fhir.jpa.config;
  * #L%
  */
 
+import ca.uhn.fhir.jpa.dao.HistoryArchivingSvcImpl;
+import ca.uhn.fhir.jpa.dao.IHistoryArchivingSvc;
+import ca.uhn.fhir.jpa.dao.IResourceCacheSvc;
+import ca.uhn.fhir.jpa.dao.ResourceCacheSvcImpl;
 import ca.uhn.fhir.jpa.search.*;
 import ca.uhn.fhir.jpa.sp.ISearchParamPresenceSvc;
 import ca.uhn.fhir.jpa.sp.SearchParamPresenceSvcImpl;
@@ -67,6 +71,11 @@ public class BaseConfig implements SchedulingConfigurer {
 		return retVal;
 	}
 
+	@Bean(autowire = Autowire.BY_TYPE)
+	public IHistoryArchivingSvc historyArchivingSvc() {
+		return new HistoryArchivingSvcImpl();
+	}
+
 	@Bean()
 	public ScheduledExecutorFactoryBean scheduledExecutorService() {
 		ScheduledExecutorFactoryBean b = new ScheduledExecutorFactoryBean();
@@ -74,16 +83,31 @@ public class BaseConfig implements SchedulingConfigurer {
 		return b;
 	}
 
+	@Bean(autowire = Autowire.BY_TYPE)
+	public IResourceCacheSvc resourceCacheSvc() {
+		return new ResourceCacheSvcImpl();
+	}
+
 	@Bean(autowire = Autowire.BY_TYPE)
 	public ISearchCoordinatorSvc searchCoordinatorSvc() {
 		return new SearchCoordinatorSvcImpl();
 	}
 
+	@Bean
+	public ISearchMetricsSvc searchMetricsSvc() {
+		return new SearchMetricsSvcImpl();
+	}
+
 	@Bean
 	public ISearchParamPresenceSvc searchParamPresenceSvc() {
 		return new SearchParamPresenceSvcImpl();
 	}
 
+	@Bean
+	public ISearchSelectivitySvc searchSelectivitySvc() {
+		return new SearchSelectivitySvcImpl();
+	}
+
 	@Bean(autowire = Autowire.BY_TYPE)
 	public IStaleSearchDeletingSvc staleSearchDeletingSvc() {
 		return new StaleSearchDeletingSvcImpl();
@@ -24,6 +24,8 @@ import ca.uhn.fhir.context.*;
 import ca.uhn.fhir.jpa.dao.data.*;
 import ca.uhn.fhir.jpa.entity.*;
 import ca.uhn.fhir.jpa.search.ISearchCoordinatorSvc;
+import ca.uhn.fhir.jpa.search.ISearchMetricsSvc;
+import ca.uhn.fhir.jpa.search.ISearchSelectivitySvc;
 import ca.uhn.fhir.jpa.search.JpaRuntimeSearchParam;
 import ca.uhn.fhir.jpa.search.PersistedJpaBundleProvider;
 import ca.uhn.fhir.jpa.sp.ISearchParamPresenceSvc;
@@ -59,6 +61,7 @@ import com.google.common.hash.Hashing;
 import org.apache.commons.lang3.NotImplementedException;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.utils.URLEncodedUtils;
 import org.hl7.fhir.instance.model.api.*;
@@ -79,6 +82,7 @@ import java.io.UnsupportedEncodingException;
 import java.text.Normalizer;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.apache.commons.lang3.StringUtils.*;
 
@@ -148,6 +152,15 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 	private PlatformTransactionManager myPlatformTransactionManager;
 	@Autowired
 	private List<IFhirResourceDao<?>> myResourceDaos;
+	/**
+	 * Key is the resource type (or an empty string for all types), value is the time
+	 * the total was counted and the total
+	 */
+	private final Map<String, Pair<Long, Integer>> myHistoryCountCache = new ConcurrentHashMap<>();
+	@Autowired(required = false)
+	private IResourceCacheSvc myResourceCacheSvc;
+	@Autowired
+	private IResourceHistoryArchiveDao myResourceHistoryArchiveDao;
 	@Autowired
 	private IResourceHistoryTableDao myResourceHistoryTableDao;
 	private Map<Class<? extends IBaseResource>, IFhirResourceDao<?>> myResourceTypeToDao;
@@ -160,6 +173,10 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 	@Autowired
 	private ISearchParamRegistry mySearchParamRegistry;
 	@Autowired
+	private ISearchSelectivitySvc mySearchSelectivitySvc;
+	@Autowired(required = false)
+	private ISearchMetricsSvc mySearchMetricsSvc;
+	@Autowired
 	private ISearchResultDao mySearchResultDao;
 	@Autowired
 	private IResourceIndexedCompositeStringUniqueDao myResourceIndexedCompositeStringUniqueDao;
@@ -266,6 +283,58 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 		return compositeStringUniques;
 	}
 
+	/**
+	 * Builds the sort keys for any search parameters configured in {@link DaoConfig#getSortKeySearchParams()}
+	 * for this resource type, using the index rows which have already been extracted
+	 */
+	private Set<ResourceIndexedSortKey> extractSortKeys(ResourceTable theEntity, Set<ResourceIndexedSearchParamString> theStringParams, Set<ResourceIndexedSearchParamToken> theTokenParams, Set<ResourceIndexedSearchParamNumber> theNumberParams, Set<ResourceIndexedSearchParamQuantity> theQuantityParams, Set<ResourceIndexedSearchParamDate> theDateParams, Set<ResourceIndexedSearchParamUri> theUriParams) {
+		Set<ResourceIndexedSortKey> retVal = new HashSet<>();
+		String prefix = theEntity.getResourceType() + ":";
+		for (String next : myConfig.getSortKeySearchParams()) {
+			if (!next.startsWith(prefix)) {
+				continue;
+			}
+			String paramName = next.substring(prefix.length());
+			ResourceIndexedSortKey sortKey = new ResourceIndexedSortKey(theEntity, paramName);
+
+			for (ResourceIndexedSearchParamString nextParam : theStringParams) {
+				if (paramName.equals(nextParam.getParamName())) {
+					sortKey.addStringValue(nextParam.getValueExact());
+				}
+			}
+			for (ResourceIndexedSearchParamToken nextParam : theTokenParams) {
+				if (paramName.equals(nextParam.getParamName())) {
+					sortKey.addStringValue(defaultString(nextParam.getSystem()) + "|" + defaultString(nextParam.getValue()));
+				}
+			}
+			for (ResourceIndexedSearchParamUri nextParam : theUriParams) {
+				if (paramName.equals(nextParam.getParamName())) {
+					sortKey.addStringValue(nextParam.getUri());
+				}
+			}
+			for (ResourceIndexedSearchParamNumber nextParam : theNumberParams) {
+				if (paramName.equals(nextParam.getParamName())) {
+					sortKey.addNumberValue(nextParam.getValue());
+				}
+			}
+			for (ResourceIndexedSearchParamQuantity nextParam : theQuantityParams) {
+				if (paramName.equals(nextParam.getParamName())) {
+					sortKey.addNumberValue(nextParam.getValue());
+				}
+			}
+			for (ResourceIndexedSearchParamDate nextParam : theDateParams) {
+				if (paramName.equals(nextParam.getParamName())) {
+					sortKey.addDateValue(nextParam.getValueLow());
+				}
+			}
+
+			if (!sortKey.isEmpty()) {
+				retVal.add(sortKey);
+			}
+		}
+		return retVal;
+	}
+
 	/**
 	 * @return Returns a set containing all of the parameter names that
 	 * were found to have a value
@@ -640,10 +709,26 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 		return retVal;
 	}
 
-	protected DaoConfig getConfig() {
+	@Override
+	public DaoConfig getConfig() {
 		return myConfig;
 	}
 
+	protected ISearchParamPresenceSvc getSearchParamPresenceSvc() {
+		return mySearchParamPresenceSvc;
+	}
+
+	/**
+	 * May return <code>null</code> if no metrics service has been configured
+	 */
+	protected ISearchMetricsSvc getSearchMetricsSvc() {
+		return mySearchMetricsSvc;
+	}
+
+	protected ISearchSelectivitySvc getSearchSelectivitySvc() {
+		return mySearchSelectivitySvc;
+	}
+
 	public void setConfig(DaoConfig theConfig) {
 		myConfig = theConfig;
 	}
@@ -777,6 +862,39 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 		}
 	}
 
+	private int countHistory(String theResourceName, Long theId, Date theSince) {
+		if (theSince != null) {
+			if (theResourceName == null) {
+				return myResourceHistoryTableDao.countForAllResourceTypes(theSince);
+			} else if (theId == null) {
+				return myResourceHistoryTableDao.countForResourceType(theResourceName, theSince);
+			} else {
+				return myResourceHistoryTableDao.countForResourceInstance(theId, theSince);
+			}
+		} else {
+			if (theResourceName == null) {
+				return myResourceHistoryTableDao.countForAllResourceTypes();
+			} else if (theId == null) {
+				return myResourceHistoryTableDao.countForResourceType(theResourceName);
+			} else {
+				return myResourceHistoryTableDao.countForResourceInstance(theId);
+			}
+		}
+	}
+
+	private int countHistoryCached(String theResourceName) {
+		String key = defaultString(theResourceName);
+		long now = System.currentTimeMillis();
+		Pair<Long, Integer> cached = myHistoryCountCache.get(key);
+		if (cached != null && now - cached.getLeft() < myConfig.getHistoryCountCacheMillis()) {
+			return cached.getRight();
+		}
+
+		int retVal = countHistory(theResourceName, null, null);
+		myHistoryCountCache.put(key, Pair.of(now, retVal));
+		return retVal;
+	}
+
 	protected IBundleProvider history(String theResourceName, Long theId, Date theSince, Date theUntil) {
 
 		String resourceName = defaultIfBlank(theResourceName, null);
@@ -791,22 +909,20 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 		search.setSearchType(SearchTypeEnum.HISTORY);
 		search.setStatus(SearchStatusEnum.FINISHED);
 
-		if (theSince != null) {
-			if (resourceName == null) {
-				search.setTotalCount(myResourceHistoryTableDao.countForAllResourceTypes(theSince));
-			} else if (theId == null) {
-				search.setTotalCount(myResourceHistoryTableDao.countForResourceType(resourceName, theSince));
-			} else {
-				search.setTotalCount(myResourceHistoryTableDao.countForResourceInstance(theId, theSince));
-			}
-		} else {
-			if (resourceName == null) {
-				search.setTotalCount(myResourceHistoryTableDao.countForAllResourceTypes());
-			} else if (theId == null) {
-				search.setTotalCount(myResourceHistoryTableDao.countForResourceType(resourceName));
-			} else {
-				search.setTotalCount(myResourceHistoryTableDao.countForResourceInstance(theId));
-			}
+		switch (myConfig.getHistoryCountMode()) {
+			case COUNT_DISABLED:
+				break;
+			case COUNT_CACHED:
+				if (theSince == null && theId == null) {
+					search.setTotalCount(countHistoryCached(resourceName));
+				} else {
+					search.setTotalCount(countHistory(resourceName, theId, theSince));
+				}
+				break;
+			case COUNT_ACCURATE:
+			default:
+				search.setTotalCount(countHistory(resourceName, theId, theSince));
+				break;
 		}
 
 		search = mySearchDao.save(search);
@@ -821,6 +937,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 		theProvider.setPlatformTransactionManager(myPlatformTransactionManager);
 		theProvider.setSearchDao(mySearchDao);
 		theProvider.setSearchCoordinatorSvc(mySearchCoordinatorSvc);
+		theProvider.setSearchMetricsSvc(mySearchMetricsSvc);
 	}
 
 	protected boolean isLogicalReference(IIdType theId) {
@@ -1032,6 +1149,38 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 		return retVal;
 	}
 
+	/**
+	 * Returns the encoded body of the given version, or <code>null</code> if it is a deletion
+	 */
+	private String loadResourceText(ResourceHistoryTable theHistory) {
+		if (theHistory.getArchiveSegmentId() != null) {
+			ResourceHistoryArchive segment = myResourceHistoryArchiveDao.findOne(theHistory.getArchiveSegmentId());
+			String retVal = null;
+			if (segment != null) {
+				retVal = segment.getResourceText(theHistory.getVersion());
+			}
+			if (retVal == null) {
+				throw new InternalErrorException("Archive segment " + theHistory.getArchiveSegmentId() + " does not contain version " + theHistory.getVersion() + " of resource " + theHistory.getResourceId());
+			}
+			return retVal;
+		}
+
+		byte[] resourceBytes = theHistory.getResource();
+		switch (theHistory.getEncoding()) {
+			case JSON:
+				try {
+					return new String(resourceBytes, "UTF-8");
+				} catch (UnsupportedEncodingException e) {
+					throw new Error("Should not happen", e);
+				}
+			case JSONC:
+				return GZipUtil.decompress(resourceBytes);
+			case DEL:
+			default:
+				return null;
+		}
+	}
+
 	@SuppressWarnings("unchecked")
 	private <R extends IBaseResource> R populateResourceMetadataHapi(Class<R> theResourceType, BaseHasResource theEntity, boolean theForHistoryOperation, IResource res) {
 		R retVal = (R) res;
@@ -1202,6 +1351,16 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 		throw new NotImplementedException("");
 	}
 
+	private boolean isSortKeysEnabled(String theResourceType) {
+		String prefix = theResourceType + ":";
+		for (String next : myConfig.getSortKeySearchParams()) {
+			if (next.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	private <T> Collection<T> removeCommon(Collection<T> theInput, Collection<T> theToRemove) {
 		assert theInput != theToRemove;
 
@@ -1251,34 +1410,42 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 	@Override
 	public <R extends IBaseResource> R toResource(Class<R> theResourceType, BaseHasResource theEntity, boolean theForHistoryOperation) {
 
-		ResourceHistoryTable history;
-		if (theEntity instanceof ResourceHistoryTable) {
-			history = (ResourceHistoryTable) theEntity;
-		} else {
-			history = myResourceHistoryTableDao.findForIdAndVersion(theEntity.getId(), theEntity.getVersion());
+		/*
+		 * Bodies of the current version of a resource may be cached. Since the
+		 * cache is keyed by version, an entry can't be stale even if the resource
+		 * was updated by another node.
+		 */
+		IResourceCacheSvc resourceCache = null;
+		if (theEntity instanceof ResourceTable && myResourceCacheSvc != null && myConfig.getResourceCacheMaximumSize() > 0) {
+			resourceCache = myResourceCacheSvc;
 		}
 
-		if (history == null) {
-			return null;
+		ResourceEncodingEnum resourceEncoding;
+		String resourceText = null;
+		if (resourceCache != null) {
+			resourceText = resourceCache.getResourceText(theEntity.getResourceType(), theEntity.getId(), theEntity.getVersion());
 		}
 
-		byte[] resourceBytes = history.getResource();
-		ResourceEncodingEnum resourceEncoding = history.getEncoding();
+		if (resourceText != null) {
+			resourceEncoding = ResourceEncodingEnum.JSON;
+		} else {
+			ResourceHistoryTable history;
+			if (theEntity instanceof ResourceHistoryTable) {
+				history = (ResourceHistoryTable) theEntity;
+			} else {
+				history = myResourceHistoryTableDao.findForIdAndVersion(theEntity.getId(), theEntity.getVersion());
+			}
 
-		String resourceText = null;
-		switch (resourceEncoding) {
-			case JSON:
-				try {
-					resourceText = new String(resourceBytes, "UTF-8");
-				} catch (UnsupportedEncodingException e) {
-					throw new Error("Should not happen", e);
-				}
-				break;
-			case JSONC:
-				resourceText = GZipUtil.decompress(resourceBytes);
-				break;
-			case DEL:
-				break;
+			if (history == null) {
+				return null;
+			}
+
+			resourceEncoding = history.getEncoding();
+			resourceText = loadResourceText(history);
+
+			if (resourceCache != null && resourceText != null) {
+				resourceCache.putResourceText(theEntity.getResourceType(), theEntity.getId(), theEntity.getVersion(), resourceText);
+			}
 		}
 
 		/*
@@ -1433,6 +1600,13 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 			existingCompositeStringUniques.addAll(theEntity.getParamsCompositeStringUnique());
 		}
 
+		// Existing sort keys are loaded even if none are enabled for this type any more, so that they get removed
+		boolean sortKeysEnabled = isSortKeysEnabled(theEntity.getResourceType());
+		Collection<ResourceIndexedSortKey> existingSortKeys = new ArrayList<>();
+		if (theEntity.getId() != null) {
+			existingSortKeys.addAll(theEntity.getParamsSortKey());
+		}
+
 		Set<ResourceIndexedSearchParamString> stringParams = null;
 		Set<ResourceIndexedSearchParamToken> tokenParams = null;
 		Set<ResourceIndexedSearchParamNumber> numberParams = null;
@@ -1441,6 +1615,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 		Set<ResourceIndexedSearchParamUri> uriParams = null;
 		Set<ResourceIndexedSearchParamCoords> coordsParams = null;
 		Set<ResourceIndexedCompositeStringUnique> compositeStringUniques = null;
+		Set<ResourceIndexedSortKey> sortKeys = null;
 		Set<ResourceLink> links = null;
 
 		Set<String> populatedResourceLinkParameters = Collections.emptySet();
@@ -1456,6 +1631,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 			coordsParams = Collections.emptySet();
 			links = Collections.emptySet();
 			compositeStringUniques = Collections.emptySet();
+			sortKeys = Collections.emptySet();
 
 			theEntity.setDeleted(theDeletedTimestampOrNull);
 			theEntity.setUpdated(theDeletedTimestampOrNull);
@@ -1574,6 +1750,15 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 				 */
 				compositeStringUniques = extractCompositeStringUniques(theEntity, stringParams, tokenParams, numberParams, quantityParams, dateParams, uriParams, links);
 
+				/*
+				 * Handle sort keys
+				 */
+				if (sortKeysEnabled) {
+					sortKeys = extractSortKeys(theEntity, stringParams, tokenParams, numberParams, quantityParams, dateParams, uriParams);
+				} else {
+					sortKeys = Collections.emptySet();
+				}
+
 				changed = populateResourceIntoEntity(theResource, theEntity, true);
 
 				theEntity.setUpdated(theUpdateTime);
@@ -1659,6 +1844,10 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 
 			ourLog.info("Saving history entry {}", historyEntry.getIdDt());
 			myResourceHistoryTableDao.save(historyEntry);
+
+			if (myResourceCacheSvc != null) {
+				myResourceCacheSvc.invalidate(theEntity.getResourceType(), theEntity.getId());
+			}
 		}
 
 		/*
@@ -1776,6 +1965,14 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 				}
 			}
 
+			// Store sort keys
+			for (ResourceIndexedSortKey next : removeCommon(existingSortKeys, sortKeys)) {
+				myEntityManager.remove(next);
+			}
+			for (ResourceIndexedSortKey next : removeCommon(sortKeys, existingSortKeys)) {
+				myEntityManager.persist(next);
+			}
+
 		} // if thePerformIndexing
 
 		theEntity = myEntityManager.merge(theEntity);
@@ -42,6 +42,7 @@ import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.param.ParameterUtil;
 import ca.uhn.fhir.rest.param.QualifierDetails;
+import ca.uhn.fhir.rest.server.RestfulServerUtils;
 import ca.uhn.fhir.rest.server.exceptions.*;
 import ca.uhn.fhir.rest.server.interceptor.IServerInterceptor;
 import ca.uhn.fhir.rest.server.interceptor.IServerInterceptor.ActionRequestDetails;
@@ -1009,6 +1010,11 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 			if (!isPagingProviderDatabaseBacked(theRequestDetails)) {
 				theParams.setLoadSynchronous(true);
 			}
+
+			Set<SummaryEnum> summaryMode = RestfulServerUtils.determineSummaryMode(theRequestDetails);
+			if (summaryMode != null && summaryMode.contains(SummaryEnum.COUNT)) {
+				theParams.setCountOnly(true);
+			}
 		}
 
 		CacheControlDirective cacheControlDirective = new CacheControlDirective();
@@ -238,6 +238,10 @@ public abstract class BaseHapiFhirSystemDao<T, MT> extends BaseHapiFhirDao<IBase
 				q.setParameter("id", theId);
 				q.executeUpdate();
 
+				q = myEntityManager.createQuery("DELETE FROM ResourceIndexedSortKey t WHERE t.myResourcePid = :id");
+				q.setParameter("id", theId);
+				q.executeUpdate();
+
 				q = myEntityManager.createQuery("DELETE FROM ResourceLink t WHERE t.mySourceResourcePid = :id");
 				q.setParameter("id", theId);
 				q.executeUpdate();
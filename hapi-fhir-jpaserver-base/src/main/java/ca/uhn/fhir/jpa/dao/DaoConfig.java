@@ -49,6 +49,14 @@ public class DaoConfig {
 	 * Default value for {@link #setReuseCachedSearchResultsForMillis(Long)}: 60000ms (one minute)
 	 */
 	public static final Long DEFAULT_REUSE_CACHED_SEARCH_RESULTS_FOR_MILLIS = DateUtils.MILLIS_PER_MINUTE;
+	/**
+	 * Default value for {@link #setMaximumIncludeInClauseSize(int)}: 800
+	 */
+	public static final int DEFAULT_MAXIMUM_INCLUDE_IN_CLAUSE_SIZE = 800;
+	/**
+	 * Default value for {@link #setChainedSearchPreResolveThreshold(int)}: 500
+	 */
+	public static final int DEFAULT_CHAINED_SEARCH_PRE_RESOLVE_THRESHOLD = 500;
 	/**
 	 * Default value for {@link #setMaximumSearchResultCountInTransaction(Integer)}
 	 *
@@ -56,6 +64,7 @@ public class DaoConfig {
 	 */
 	private static final Integer DEFAULT_MAXIMUM_SEARCH_RESULT_COUNT_IN_TRANSACTION = null;
 	private IndexEnabledEnum myIndexMissingFieldsEnabled = IndexEnabledEnum.DISABLED;
+	private MissingFieldsIndexEncodingEnum myMissingFieldsIndexEncoding = MissingFieldsIndexEncodingEnum.SEPARATE_TABLE;
 	/**
 	 * update setter javadoc if default changes
 	 */
@@ -65,6 +74,7 @@ public class DaoConfig {
 	 */
 	private boolean myAllowInlineMatchUrlReferences = true;
 	private boolean myAllowMultipleDelete;
+	private int myChainedSearchPreResolveThreshold = DEFAULT_CHAINED_SEARCH_PRE_RESOLVE_THRESHOLD;
 	private boolean myDefaultSearchParamsCanBeOverridden = false;
 	/**
 	 * update setter javadoc if default changes
@@ -73,6 +83,7 @@ public class DaoConfig {
 	private boolean myDeleteStaleSearches = true;
 	private boolean myEnforceReferentialIntegrityOnDelete = true;
 	private boolean myUniqueIndexesEnabled = true;
+	private boolean myUseCountQueryForSearchTotal;
 	private boolean myUniqueIndexesCheckedBeforeSave = true;
 	private boolean myEnforceReferentialIntegrityOnWrite = true;
 	private int myEverythingIncludesFetchPageSize = 50;
@@ -85,6 +96,12 @@ public class DaoConfig {
 	 */
 	private Integer myFetchSizeDefaultMaximum = null;
 	private int myHardTagListLimit = 1000;
+	private Long myHistoryArchiveAfterMillis;
+	private HistoryCountModeEnum myHistoryCountMode = HistoryCountModeEnum.COUNT_ACCURATE;
+	/**
+	 * update setter javadoc if default changes
+	 */
+	private long myHistoryCountCacheMillis = DateUtils.MILLIS_PER_MINUTE;
 	/**
 	 * update setter javadoc if default changes
 	 */
@@ -94,7 +111,16 @@ public class DaoConfig {
 	 * update setter javadoc if default changes
 	 */
 	private int myMaximumExpansionSize = 5000;
+	private int myMaximumIncludeInClauseSize = DEFAULT_MAXIMUM_INCLUDE_IN_CLAUSE_SIZE;
 	private Integer myMaximumSearchResultCountInTransaction = DEFAULT_MAXIMUM_SEARCH_RESULT_COUNT_IN_TRANSACTION;
+	/**
+	 * update setter javadoc if default changes
+	 */
+	private int myResourceCacheMaximumSize = 0;
+	/**
+	 * update setter javadoc if default changes
+	 */
+	private long myResourceCacheTimeToLiveMillis = 10 * DateUtils.MILLIS_PER_MINUTE;
 	private ResourceEncodingEnum myResourceEncoding = ResourceEncodingEnum.JSONC;
 	/**
 	 * update setter javadoc if default changes
@@ -102,6 +128,8 @@ public class DaoConfig {
 	private Integer myResourceMetaCountHardLimit = 1000;
 	private Long myReuseCachedSearchResultsForMillis = DEFAULT_REUSE_CACHED_SEARCH_RESULTS_FOR_MILLIS;
 	private boolean mySchedulingDisabled;
+	private boolean mySearchFirstPageFastPathEnabled;
+	private Set<String> mySortKeySearchParams = new HashSet<>();
 	private boolean mySuppressUpdatesWithNoChange = true;
 	private Set<String> myTreatBaseUrlsAsLocal = new HashSet<>();
 	private Set<String> myTreatReferencesAsLogical = new HashSet<>(DEFAULT_LOGICAL_BASE_URLS);
@@ -155,6 +183,37 @@ public class DaoConfig {
 		myCacheControlNoStoreMaxResultsUpperLimit = theCacheControlNoStoreMaxResults;
 	}
 
+	/**
+	 * When performing a chained search (e.g. <code>Observation?subject.name=smith</code>), the server
+	 * first looks for resources matching the chained part of the search, fetching no more than
+	 * this number of them. See {@link #setChainedSearchPreResolveThreshold(int)} for details.
+	 */
+	public int getChainedSearchPreResolveThreshold() {
+		return myChainedSearchPreResolveThreshold;
+	}
+
+	/**
+	 * When performing a chained search (e.g. <code>Observation?subject.name=smith</code>), the server
+	 * first looks for resources matching the chained part of the search (the patients named "smith"
+	 * in this example), fetching no more than this number of them. If all of the matches were
+	 * fetched, the main search is performed using the list of matching IDs, which is usually much
+	 * faster than the subquery that would otherwise be used. If there are more matches, the
+	 * chained part is performed as a subquery of the main search.
+	 * <p>
+	 * The number of matches found for each chain and value is remembered for a short time, so
+	 * that chained searches which are known to match many resources skip straight to the
+	 * subquery. Search plans are logged at DEBUG level.
+	 * </p>
+	 * <p>
+	 * Set to 0 to always use a subquery. The default is {@link #DEFAULT_CHAINED_SEARCH_PRE_RESOLVE_THRESHOLD}.
+	 * Note that values above 1000 may exceed the maximum size of an IN clause on some databases.
+	 * </p>
+	 */
+	public void setChainedSearchPreResolveThreshold(int theChainedSearchPreResolveThreshold) {
+		Validate.isTrue(theChainedSearchPreResolveThreshold >= 0, "theChainedSearchPreResolveThreshold must not be negative");
+		myChainedSearchPreResolveThreshold = theChainedSearchPreResolveThreshold;
+	}
+
 	/**
 	 * When searching, if set to a non-null value (default is <code>null</code>) the
 	 * search coordinator will attempt to find at least this many results
@@ -342,6 +401,75 @@ public class DaoConfig {
 		myHardTagListLimit = theHardTagListLimit;
 	}
 
+	/**
+	 * See {@link #setHistoryArchiveAfterMillis(Long)}
+	 */
+	public Long getHistoryArchiveAfterMillis() {
+		return myHistoryArchiveAfterMillis;
+	}
+
+	/**
+	 * If set to a non-null value (default is <code>null</code>), resource versions which are
+	 * no longer the current version of their resource and which were last updated longer ago
+	 * than this number of milliseconds will periodically have their bodies moved out of the
+	 * HFJ_RES_VER table and into compressed archive segments in the HFJ_RES_VER_ARC table.
+	 * Each segment holds the versions of a single resource which were updated in the same
+	 * calendar month.
+	 * <p>
+	 * Archived versions are still returned by vread and <code>_history</code> operations,
+	 * but reading them is slower since the whole segment needs to be decompressed. This
+	 * keeps HFJ_RES_VER (which is also used to read the current version of every resource)
+	 * small on servers with a large amount of history.
+	 * </p>
+	 */
+	public void setHistoryArchiveAfterMillis(Long theHistoryArchiveAfterMillis) {
+		Validate.isTrue(theHistoryArchiveAfterMillis == null || theHistoryArchiveAfterMillis >= 0, "theHistoryArchiveAfterMillis must not be negative");
+		myHistoryArchiveAfterMillis = theHistoryArchiveAfterMillis;
+	}
+
+	/**
+	 * See {@link #setHistoryCountCacheMillis(long)}
+	 */
+	public long getHistoryCountCacheMillis() {
+		return myHistoryCountCacheMillis;
+	}
+
+	/**
+	 * When the {@link #setHistoryCountMode(HistoryCountModeEnum) history count mode} is
+	 * {@link HistoryCountModeEnum#COUNT_CACHED}, this is the length of time that the total
+	 * for a type or system level history will be reused before it is counted again.
+	 * <p>
+	 * The default value is 60000 (one minute)
+	 * </p>
+	 */
+	public void setHistoryCountCacheMillis(long theHistoryCountCacheMillis) {
+		Validate.isTrue(theHistoryCountCacheMillis >= 0, "theHistoryCountCacheMillis must not be negative");
+		myHistoryCountCacheMillis = theHistoryCountCacheMillis;
+	}
+
+	/**
+	 * See {@link #setHistoryCountMode(HistoryCountModeEnum)}
+	 */
+	public HistoryCountModeEnum getHistoryCountMode() {
+		return myHistoryCountMode;
+	}
+
+	/**
+	 * Controls how the total number of results is calculated for <code>_history</code>
+	 * operations. Counting every row in the history table can be very slow on servers
+	 * with a large amount of history, and this count is performed before the first page
+	 * of results is returned.
+	 * <p>
+	 * The default is {@link HistoryCountModeEnum#COUNT_ACCURATE}
+	 * </p>
+	 *
+	 * @see HistoryCountModeEnum
+	 */
+	public void setHistoryCountMode(HistoryCountModeEnum theHistoryCountMode) {
+		Validate.notNull(theHistoryCountMode, "theHistoryCountMode must not be null");
+		myHistoryCountMode = theHistoryCountMode;
+	}
+
 	/**
 	 * If set to {@link IndexEnabledEnum#DISABLED} (default is {@link IndexEnabledEnum#DISABLED})
 	 * the server will not create search indexes for search parameters with no values in resources.
@@ -384,6 +512,33 @@ public class DaoConfig {
 		myIndexMissingFieldsEnabled = theIndexMissingFields;
 	}
 
+	/**
+	 * See {@link #setMissingFieldsIndexEncoding(MissingFieldsIndexEncodingEnum)}
+	 */
+	public MissingFieldsIndexEncodingEnum getMissingFieldsIndexEncoding() {
+		return myMissingFieldsIndexEncoding;
+	}
+
+	/**
+	 * Controls how the server records whether reference search parameters have a value
+	 * in a given resource, when {@link #setIndexMissingFields(IndexEnabledEnum) indexing missing fields}
+	 * is enabled. This information is used to support the <code>:missing</code> modifier on
+	 * reference search parameters.
+	 * <p>
+	 * The default is {@link MissingFieldsIndexEncodingEnum#SEPARATE_TABLE}
+	 * </p>
+	 * <p>
+	 * Note that resources which were stored before this setting is changed need to be
+	 * reindexed before they will be found by <code>:missing</code> searches.
+	 * </p>
+	 *
+	 * @see MissingFieldsIndexEncodingEnum
+	 */
+	public void setMissingFieldsIndexEncoding(MissingFieldsIndexEncodingEnum theMissingFieldsIndexEncoding) {
+		Validate.notNull(theMissingFieldsIndexEncoding, "theMissingFieldsIndexEncoding must not be null");
+		myMissingFieldsIndexEncoding = theMissingFieldsIndexEncoding;
+	}
+
 	/**
 	 * Returns the interceptors which will be notified of operations.
 	 *
@@ -419,6 +574,28 @@ public class DaoConfig {
 		myMaximumExpansionSize = theMaximumExpansionSize;
 	}
 
+	/**
+	 * See {@link #setMaximumIncludeInClauseSize(int)}
+	 */
+	public int getMaximumIncludeInClauseSize() {
+		return myMaximumIncludeInClauseSize;
+	}
+
+	/**
+	 * When loading <code>_include</code> and <code>_revinclude</code> targets, the resource IDs whose
+	 * links are being followed are passed to the database in an <code>IN</code> clause. This setting
+	 * controls the maximum number of IDs in a single clause; larger sets are split across several
+	 * queries. Oracle rejects more than 1000 values in a single clause, but other databases
+	 * (e.g. Postgres) can efficiently handle much larger lists.
+	 * <p>
+	 * The default value is {@link #DEFAULT_MAXIMUM_INCLUDE_IN_CLAUSE_SIZE}
+	 * </p>
+	 */
+	public void setMaximumIncludeInClauseSize(int theMaximumIncludeInClauseSize) {
+		Validate.isTrue(theMaximumIncludeInClauseSize > 0, "theMaximumIncludeInClauseSize must be > 0");
+		myMaximumIncludeInClauseSize = theMaximumIncludeInClauseSize;
+	}
+
 	/**
 	 * Provides the maximum number of results which may be returned by a search (HTTP GET) which
 	 * is executed as a sub-operation within within a FHIR <code>transaction</code> or
@@ -449,6 +626,50 @@ public class DaoConfig {
 		myMaximumSearchResultCountInTransaction = theMaximumSearchResultCountInTransaction;
 	}
 
+	/**
+	 * See {@link #setResourceCacheMaximumSize(int)}
+	 */
+	public int getResourceCacheMaximumSize() {
+		return myResourceCacheMaximumSize;
+	}
+
+	/**
+	 * If set to a value greater than zero, the body of the current version of up
+	 * to this many resources will be cached in memory, so that reading a resource which
+	 * is read frequently (e.g. a Practitioner or Organization) doesn't require the body
+	 * to be loaded from the database and decompressed every time. Entries are keyed by
+	 * resource version so a server with multiple nodes will never return a stale
+	 * body, and they are also evicted when the resource is updated or deleted on this node.
+	 * <p>
+	 * The default value for this setting is 0 (disabled)
+	 * </p>
+	 *
+	 * @see #setResourceCacheTimeToLiveMillis(long)
+	 */
+	public void setResourceCacheMaximumSize(int theResourceCacheMaximumSize) {
+		Validate.isTrue(theResourceCacheMaximumSize >= 0, "theResourceCacheMaximumSize must not be negative");
+		myResourceCacheMaximumSize = theResourceCacheMaximumSize;
+	}
+
+	/**
+	 * See {@link #setResourceCacheTimeToLiveMillis(long)}
+	 */
+	public long getResourceCacheTimeToLiveMillis() {
+		return myResourceCacheTimeToLiveMillis;
+	}
+
+	/**
+	 * If the {@link #setResourceCacheMaximumSize(int) resource cache} is enabled, this is
+	 * the length of time that an entry will be kept after it has been loaded.
+	 * <p>
+	 * The default value for this setting is 600000 (ten minutes)
+	 * </p>
+	 */
+	public void setResourceCacheTimeToLiveMillis(long theResourceCacheTimeToLiveMillis) {
+		Validate.isTrue(theResourceCacheTimeToLiveMillis > 0, "theResourceCacheTimeToLiveMillis must be greater than 0");
+		myResourceCacheTimeToLiveMillis = theResourceCacheTimeToLiveMillis;
+	}
+
 	public ResourceEncodingEnum getResourceEncoding() {
 		return myResourceEncoding;
 	}
@@ -546,6 +767,55 @@ public class DaoConfig {
 		myReuseCachedSearchResultsForMillis = theReuseCachedSearchResultsForMillis;
 	}
 
+	/**
+	 * Search parameters (in the form <code>[resourceType]:[paramName]</code>, e.g.
+	 * <code>Observation:date</code>) for which a single normalized sort value will be
+	 * stored for each resource in a dedicated sort table. Searches which use <code>_sort</code>
+	 * on one of these parameters will order using that table instead of joining to the
+	 * search parameter index table, which allows the database to use an index-ordered scan.
+	 * <p>
+	 * This is supported for string, token, date, number, quantity and URI parameters. Sorts on
+	 * other parameter types are not affected by this setting. Default is an empty set.
+	 * </p>
+	 * <p>
+	 * Note that sort values are only written when a resource is created, updated or reindexed.
+	 * Existing resources are still returned by searches sorting on a parameter which has been
+	 * added to this set, but they sort as if they had no value for it until they are reindexed.
+	 * Sort values for a parameter which is removed from this set are deleted the next time each
+	 * resource is updated or reindexed.
+	 * </p>
+	 */
+	public Set<String> getSortKeySearchParams() {
+		return mySortKeySearchParams;
+	}
+
+	/**
+	 * Search parameters (in the form <code>[resourceType]:[paramName]</code>, e.g.
+	 * <code>Observation:date</code>) for which a single normalized sort value will be
+	 * stored for each resource in a dedicated sort table. Searches which use <code>_sort</code>
+	 * on one of these parameters will order using that table instead of joining to the
+	 * search parameter index table, which allows the database to use an index-ordered scan.
+	 * <p>
+	 * This is supported for string, token, date, number, quantity and URI parameters. Sorts on
+	 * other parameter types are not affected by this setting. Default is an empty set.
+	 * </p>
+	 * <p>
+	 * Note that sort values are only written when a resource is created, updated or reindexed.
+	 * Existing resources are still returned by searches sorting on a parameter which has been
+	 * added to this set, but they sort as if they had no value for it until they are reindexed.
+	 * Sort values for a parameter which is removed from this set are deleted the next time each
+	 * resource is updated or reindexed.
+	 * </p>
+	 */
+	public void setSortKeySearchParams(Set<String> theSortKeySearchParams) {
+		HashSet<String> sortKeySearchParams = new HashSet<>();
+		for (String next : ObjectUtils.defaultIfNull(theSortKeySearchParams, new HashSet<String>())) {
+			Validate.isTrue(next.indexOf(':') > 0 && next.indexOf(':') < next.length() - 1, "Invalid sort key search parameter (must be in the form [resourceType]:[paramName]): %s", next);
+			sortKeySearchParams.add(next);
+		}
+		mySortKeySearchParams = sortKeySearchParams;
+	}
+
 	/**
 	 * This setting may be used to advise the server that any references found in
 	 * resources that have any of the base URLs given here will be replaced with
@@ -940,6 +1210,38 @@ public class DaoConfig {
 		mySchedulingDisabled = theSchedulingDisabled;
 	}
 
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), the first page of a new
+	 * search will be returned as soon as enough matching resource IDs have been collected
+	 * by the background search, using the IDs held in memory. Otherwise the request waits
+	 * until those IDs have also been saved to the search result table.
+	 * <p>
+	 * Saving the results continues in the background either way, and subsequent pages are
+	 * served in the same way as before. Note that if saving the results fails after the first
+	 * page has been returned, the search will be marked as failed and subsequent pages will
+	 * not be available.
+	 * </p>
+	 */
+	public boolean isSearchFirstPageFastPathEnabled() {
+		return mySearchFirstPageFastPathEnabled;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), the first page of a new
+	 * search will be returned as soon as enough matching resource IDs have been collected
+	 * by the background search, using the IDs held in memory. Otherwise the request waits
+	 * until those IDs have also been saved to the search result table.
+	 * <p>
+	 * Saving the results continues in the background either way, and subsequent pages are
+	 * served in the same way as before. Note that if saving the results fails after the first
+	 * page has been returned, the search will be marked as failed and subsequent pages will
+	 * not be available.
+	 * </p>
+	 */
+	public void setSearchFirstPageFastPathEnabled(boolean theSearchFirstPageFastPathEnabled) {
+		mySearchFirstPageFastPathEnabled = theSearchFirstPageFastPathEnabled;
+	}
+
 	/**
 	 * If set to {@literal true} (default is true), if a client performs an update which does not actually
 	 * result in any chance to a given resource (e.g. an update where the resource body matches the
@@ -1019,6 +1321,36 @@ public class DaoConfig {
 		myUniqueIndexesEnabled = theUniqueIndexesEnabled;
 	}
 
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), the total number of results for a
+	 * search is calculated using a separate <code>SELECT COUNT</code> query, which runs at the
+	 * same time as the search, so that the total can be included with the first page of results.
+	 * Otherwise the total is only known once all of the matching resource IDs have been loaded.
+	 * <p>
+	 * Note that the count query repeats the work of the search itself, so this setting
+	 * is a trade-off between returning the total sooner and the load on the database.
+	 * Searches which specify <code>_summary=count</code> always use a count query.
+	 * </p>
+	 */
+	public boolean isUseCountQueryForSearchTotal() {
+		return myUseCountQueryForSearchTotal;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), the total number of results for a
+	 * search is calculated using a separate <code>SELECT COUNT</code> query, which runs at the
+	 * same time as the search, so that the total can be included with the first page of results.
+	 * Otherwise the total is only known once all of the matching resource IDs have been loaded.
+	 * <p>
+	 * Note that the count query repeats the work of the search itself, so this setting
+	 * is a trade-off between returning the total sooner and the load on the database.
+	 * Searches which specify <code>_summary=count</code> always use a count query.
+	 * </p>
+	 */
+	public void setUseCountQueryForSearchTotal(boolean theUseCountQueryForSearchTotal) {
+		myUseCountQueryForSearchTotal = theUseCountQueryForSearchTotal;
+	}
+
 	/**
 	 * Do not call this method, it exists only for legacy reasons. It
 	 * will be removed in a future version. Configure the page size on your
@@ -1102,6 +1434,39 @@ public class DaoConfig {
 		DISABLED
 	}
 
+	public enum MissingFieldsIndexEncodingEnum {
+		/**
+		 * One row is stored in the HFJ_RES_PARAM_PRESENT table for each
+		 * reference search parameter of each resource (this is the default)
+		 */
+		SEPARATE_TABLE,
+		/**
+		 * The presence of each reference search parameter is encoded into a single
+		 * column on the resource table, with one character per search parameter. This
+		 * avoids reading and writing a row per search parameter every time a resource
+		 * is written, and <code>:missing</code> searches do not need a join.
+		 */
+		RESOURCE_COLUMN
+	}
+
+	public enum HistoryCountModeEnum {
+		/**
+		 * The total is counted every time a history operation is performed (this is the default)
+		 */
+		COUNT_ACCURATE,
+		/**
+		 * Type and system level history totals are counted at most once per
+		 * {@link #setHistoryCountCacheMillis(long) cache period} and reused in between, so
+		 * the total may be slightly out of date. History of a single resource
+		 * instance, or using <code>_since</code>, is always counted.
+		 */
+		COUNT_CACHED,
+		/**
+		 * No total is calculated, and history bundles will not include a total
+		 */
+		COUNT_DISABLED
+	}
+
 	public enum IdStrategyEnum {
 		/**
 		 * This strategy is the default strategy, and it simply uses a sequential
@@ -0,0 +1,198 @@
+package ca.uhn.fhir.jpa.dao;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2018 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.dao.data.IResourceHistoryArchiveDao;
+import ca.uhn.fhir.jpa.dao.data.IResourceHistoryTableDao;
+import ca.uhn.fhir.jpa.dao.data.IResourceTableDao;
+import ca.uhn.fhir.jpa.entity.ResourceEncodingEnum;
+import ca.uhn.fhir.jpa.entity.ResourceHistoryArchive;
+import ca.uhn.fhir.jpa.entity.ResourceHistoryTable;
+import ca.uhn.fhir.jpa.entity.ResourceTable;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.lang3.time.DateUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.UnsupportedEncodingException;
+import java.util.*;
+
+/**
+ * Archives the bodies of old resource versions
+ *
+ * @see DaoConfig#setHistoryArchiveAfterMillis(Long)
+ */
+public class HistoryArchivingSvcImpl implements IHistoryArchivingSvc {
+
+	/**
+	 * Number of resources whose versions are archived per pass (each resource is
+	 * archived in its own transaction)
+	 */
+	static final int RESOURCES_PER_PASS = 100;
+	private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(HistoryArchivingSvcImpl.class);
+	private static Long ourNowForUnitTests;
+	@Autowired
+	private DaoConfig myDaoConfig;
+	@Autowired
+	private IResourceHistoryArchiveDao myResourceHistoryArchiveDao;
+	@Autowired
+	private IResourceHistoryTableDao myResourceHistoryTableDao;
+	@Autowired
+	private IResourceTableDao myResourceTableDao;
+	@Autowired
+	private PlatformTransactionManager myTransactionManager;
+
+	@Override
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public int archiveOldHistory() {
+		if (myDaoConfig.getHistoryArchiveAfterMillis() == null) {
+			return 0;
+		}
+
+		final Date cutoff = new Date(now() - myDaoConfig.getHistoryArchiveAfterMillis());
+		TransactionTemplate tt = new TransactionTemplate(myTransactionManager);
+
+		int count = 0;
+		Slice<Long> resourceIds;
+		do {
+			resourceIds = tt.execute(new TransactionCallback<Slice<Long>>() {
+				@Override
+				public Slice<Long> doInTransaction(TransactionStatus theStatus) {
+					return myResourceHistoryTableDao.findIdsOfResourcesWithArchivableVersions(cutoff, ResourceEncodingEnum.DEL, new PageRequest(0, RESOURCES_PER_PASS));
+				}
+			});
+
+			for (final Long next : resourceIds) {
+				count += tt.execute(new TransactionCallback<Integer>() {
+					@Override
+					public Integer doInTransaction(TransactionStatus theStatus) {
+						return archiveVersions(next, cutoff);
+					}
+				});
+			}
+		} while (resourceIds.hasNext());
+
+		if (count > 0) {
+			ourLog.info("Archived {} resource versions last updated before {}", count, cutoff);
+		}
+		return count;
+	}
+
+	private int archiveVersions(Long theResourceId, Date theCutoff) {
+		ResourceTable resource = myResourceTableDao.findOne(theResourceId);
+		if (resource == null) {
+			return 0;
+		}
+
+		List<ResourceHistoryTable> versions = myResourceHistoryTableDao.findArchivableVersions(theResourceId, resource.getVersion(), theCutoff, ResourceEncodingEnum.DEL);
+
+		/*
+		 * Versions are grouped into one segment per calendar month so that the
+		 * archive table can be partitioned (or purged) by period
+		 */
+		Map<Date, List<ResourceHistoryTable>> periodToVersions = new TreeMap<>();
+		for (ResourceHistoryTable next : versions) {
+			Date periodStart = toPeriodStart(next.getUpdatedDate());
+			if (!periodToVersions.containsKey(periodStart)) {
+				periodToVersions.put(periodStart, new ArrayList<ResourceHistoryTable>());
+			}
+			periodToVersions.get(periodStart).add(next);
+		}
+
+		for (Map.Entry<Date, List<ResourceHistoryTable>> nextPeriod : periodToVersions.entrySet()) {
+			SortedMap<Long, String> versionToText = new TreeMap<>();
+			for (ResourceHistoryTable next : nextPeriod.getValue()) {
+				versionToText.put(next.getVersion(), toResourceText(next));
+			}
+
+			ResourceHistoryArchive segment = new ResourceHistoryArchive();
+			segment.setResourceId(theResourceId);
+			segment.setResourceType(resource.getResourceType());
+			segment.setPeriodStart(nextPeriod.getKey());
+			segment.setResourceTexts(versionToText);
+			segment = myResourceHistoryArchiveDao.save(segment);
+
+			for (ResourceHistoryTable next : nextPeriod.getValue()) {
+				next.setArchiveSegmentId(segment.getId());
+				next.setResource(null);
+			}
+		}
+
+		myResourceHistoryTableDao.save(versions);
+		return versions.size();
+	}
+
+	@Scheduled(fixedDelay = DateUtils.MILLIS_PER_MINUTE)
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	@Override
+	public synchronized void scheduleArchiveOldHistory() {
+		if (!myDaoConfig.isSchedulingDisabled()) {
+			archiveOldHistory();
+		}
+	}
+
+	private static long now() {
+		if (ourNowForUnitTests != null) {
+			return ourNowForUnitTests;
+		}
+		return System.currentTimeMillis();
+	}
+
+	/**
+	 * This is for unit tests only, do not call otherwise
+	 */
+	@VisibleForTesting
+	public static void setNowForUnitTests(Long theNowForUnitTests) {
+		ourNowForUnitTests = theNowForUnitTests;
+	}
+
+	static Date toPeriodStart(Date theUpdated) {
+		Calendar cal = Calendar.getInstance(UTC);
+		cal.setTime(theUpdated);
+		return DateUtils.truncate(cal, Calendar.MONTH).getTime();
+	}
+
+	private static String toResourceText(ResourceHistoryTable theVersion) {
+		switch (theVersion.getEncoding()) {
+			case JSON:
+				try {
+					return new String(theVersion.getResource(), "UTF-8");
+				} catch (UnsupportedEncodingException e) {
+					throw new Error("Should not happen", e);
+				}
+			case JSONC:
+				return GZipUtil.decompress(theVersion.getResource());
+			case DEL:
+			default:
+				throw new IllegalStateException("Can not archive version with encoding " + theVersion.getEncoding());
+		}
+	}
+
+}
@@ -37,6 +37,8 @@ public interface IDao {
 
 	ResourceMetadataKeySupportingAnyResource<Long, Long> RESOURCE_PID = new MetadataKeyResourcePid("RESOURCE_PID");
 
+	DaoConfig getConfig();
+
 	FhirContext getContext();
 
 	RuntimeSearchParam getSearchParamByName(RuntimeResourceDefinition theResourceDef, String theParamName);
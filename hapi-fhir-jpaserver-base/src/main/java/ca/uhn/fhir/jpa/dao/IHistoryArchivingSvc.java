@@ -0,0 +1,39 @@
+package ca.uhn.fhir.jpa.dao;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2018 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Moves the bodies of old resource versions into compressed archive segments
+ *
+ * @see DaoConfig#setHistoryArchiveAfterMillis(Long)
+ */
+public interface IHistoryArchivingSvc {
+
+	/**
+	 * Archives all versions which are eligible for archiving
+	 *
+	 * @return The number of versions which were archived
+	 */
+	int archiveOldHistory();
+
+	void scheduleArchiveOldHistory();
+
+}
@@ -0,0 +1,42 @@
+package ca.uhn.fhir.jpa.dao;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2018 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Caches the encoded body of the current version of resources
+ *
+ * @see DaoConfig#setResourceCacheMaximumSize(int)
+ */
+public interface IResourceCacheSvc {
+
+	/**
+	 * Returns the cached body of the given version of a resource, or <code>null</code> if it isn't cached
+	 */
+	String getResourceText(String theResourceType, Long theResourcePid, long theVersion);
+
+	/**
+	 * Removes any cached body for the given resource
+	 */
+	void invalidate(String theResourceType, Long theResourcePid);
+
+	void putResourceText(String theResourceType, Long theResourcePid, long theVersion, String theResourceText);
+
+}
@@ -37,6 +37,12 @@ public interface ISearchBuilder {
 
 	Iterator<Long> createQuery(SearchParameterMap theParams, String theSearchUuid);
 
+	/**
+	 * Returns the number of resources matching the given parameters, without loading their IDs.
+	 * Sorting, includes and <code>$everything</code> mode are not applicable to this query.
+	 */
+	Long createCountQuery(SearchParameterMap theParams, String theSearchUuid);
+
 	void setType(Class<? extends IBaseResource> theResourceType, String theResourceName);
 
 	void loadResourcesByPid(Collection<Long> theIncludePids, List<IBaseResource> theResourceListToPopulate, Set<Long> theRevIncludedPids, boolean theForHistoryOperation, EntityManager theEntityManager,
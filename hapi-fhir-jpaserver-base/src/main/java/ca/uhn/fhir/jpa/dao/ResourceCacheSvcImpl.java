@@ -0,0 +1,173 @@
+package ca.uhn.fhir.jpa.dao;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2018 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory {@link IResourceCacheSvc} bounded by the size and time-to-live
+ * configured in the {@link DaoConfig}. Only one version is cached for each resource.
+ */
+public class ResourceCacheSvcImpl implements IResourceCacheSvc {
+
+	private final AtomicLong myHitCount = new AtomicLong();
+	private final AtomicLong myMissCount = new AtomicLong();
+	private volatile Cache<CacheKey, CachedResource> myCache;
+	private int myCacheMaximumSize;
+	private long myCacheTimeToLiveMillis;
+	@Autowired
+	private DaoConfig myDaoConfig;
+
+	/**
+	 * Returns the cache, recreating it if the cache settings in the DaoConfig have changed
+	 */
+	private Cache<CacheKey, CachedResource> getCache() {
+		Cache<CacheKey, CachedResource> retVal = myCache;
+		if (retVal == null || myCacheMaximumSize != myDaoConfig.getResourceCacheMaximumSize() || myCacheTimeToLiveMillis != myDaoConfig.getResourceCacheTimeToLiveMillis()) {
+			synchronized (this) {
+				if (myCache == null || myCacheMaximumSize != myDaoConfig.getResourceCacheMaximumSize() || myCacheTimeToLiveMillis != myDaoConfig.getResourceCacheTimeToLiveMillis()) {
+					myCacheMaximumSize = myDaoConfig.getResourceCacheMaximumSize();
+					myCacheTimeToLiveMillis = myDaoConfig.getResourceCacheTimeToLiveMillis();
+					myCache = CacheBuilder
+						.newBuilder()
+						.maximumSize(myCacheMaximumSize)
+						.expireAfterWrite(myCacheTimeToLiveMillis, TimeUnit.MILLISECONDS)
+						.build();
+				}
+				retVal = myCache;
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * Returns the number of lookups which found the requested version in the cache
+	 */
+	public long getHitCount() {
+		return myHitCount.get();
+	}
+
+	/**
+	 * Returns the fraction of lookups which found the requested version in the cache, or
+	 * 0 if there have not been any lookups
+	 */
+	public double getHitRate() {
+		long hits = myHitCount.get();
+		long total = hits + myMissCount.get();
+		if (total == 0) {
+			return 0.0;
+		}
+		return (double) hits / total;
+	}
+
+	/**
+	 * Returns the number of lookups which did not find the requested version in the cache
+	 */
+	public long getMissCount() {
+		return myMissCount.get();
+	}
+
+	@Override
+	public String getResourceText(String theResourceType, Long theResourcePid, long theVersion) {
+		CachedResource cached = getCache().getIfPresent(new CacheKey(theResourceType, theResourcePid));
+		if (cached == null || cached.myVersion != theVersion) {
+			myMissCount.incrementAndGet();
+			return null;
+		}
+		myHitCount.incrementAndGet();
+		return cached.myResourceText;
+	}
+
+	@Override
+	public void invalidate(String theResourceType, Long theResourcePid) {
+		Cache<CacheKey, CachedResource> cache = myCache;
+		if (cache != null) {
+			cache.invalidate(new CacheKey(theResourceType, theResourcePid));
+		}
+	}
+
+	@Override
+	public void putResourceText(String theResourceType, Long theResourcePid, long theVersion, String theResourceText) {
+		getCache().put(new CacheKey(theResourceType, theResourcePid), new CachedResource(theVersion, theResourceText));
+	}
+
+	@VisibleForTesting
+	public void clearForUnitTest() {
+		Cache<CacheKey, CachedResource> cache = myCache;
+		if (cache != null) {
+			cache.invalidateAll();
+		}
+		myHitCount.set(0);
+		myMissCount.set(0);
+	}
+
+	private static class CacheKey {
+		private final Long myResourcePid;
+		private final String myResourceType;
+
+		CacheKey(String theResourceType, Long theResourcePid) {
+			myResourceType = theResourceType;
+			myResourcePid = theResourcePid;
+		}
+
+		@Override
+		public boolean equals(Object theO) {
+			if (this == theO) {
+				return true;
+			}
+			if (!(theO instanceof CacheKey)) {
+				return false;
+			}
+			CacheKey that = (CacheKey) theO;
+			return new EqualsBuilder()
+				.append(myResourceType, that.myResourceType)
+				.append(myResourcePid, that.myResourcePid)
+				.isEquals();
+		}
+
+		@Override
+		public int hashCode() {
+			return new HashCodeBuilder(17, 37)
+				.append(myResourceType)
+				.append(myResourcePid)
+				.toHashCode();
+		}
+	}
+
+	private static class CachedResource {
+		private final String myResourceText;
+		private final long myVersion;
+
+		CachedResource(long theVersion, String theResourceText) {
+			myVersion = theVersion;
+			myResourceText = theResourceText;
+		}
+	}
+
+}
@@ -24,10 +24,15 @@ import ca.uhn.fhir.context.*;
 import ca.uhn.fhir.jpa.dao.data.IForcedIdDao;
 import ca.uhn.fhir.jpa.dao.data.IResourceIndexedSearchParamUriDao;
 import ca.uhn.fhir.jpa.entity.*;
+import ca.uhn.fhir.jpa.search.ISearchMetricsSvc;
+import ca.uhn.fhir.jpa.search.ISearchSelectivitySvc;
 import ca.uhn.fhir.jpa.search.JpaRuntimeSearchParam;
+import ca.uhn.fhir.jpa.search.SearchPhaseEnum;
 import ca.uhn.fhir.jpa.term.IHapiTerminologySvc;
 import ca.uhn.fhir.jpa.term.VersionIndependentConcept;
 import ca.uhn.fhir.jpa.util.BaseIterator;
+import ca.uhn.fhir.jpa.util.LongArrayList;
+import ca.uhn.fhir.jpa.util.LongHashSet;
 import ca.uhn.fhir.jpa.util.StopWatch;
 import ca.uhn.fhir.model.api.*;
 import ca.uhn.fhir.model.base.composite.BaseCodingDt;
@@ -72,6 +77,7 @@ import java.math.BigDecimal;
 import java.math.MathContext;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
 
 import static org.apache.commons.lang3.StringUtils.*;
 
@@ -88,6 +94,11 @@ public class SearchBuilder implements ISearchBuilder {
 	private List<Long> myAlsoIncludePids;
 	private CriteriaBuilder myBuilder;
 	private BaseHapiFhirDao<?> myCallingDao;
+	/**
+	 * Chained PIDs which have already been looked up, keyed by criteria. A SearchBuilder is only used
+	 * for one search, so these are not looked up again when the query is rebuilt.
+	 */
+	private Map<String, List<Long>> myChainedPids = new HashMap<String, List<Long>>();
 	private FhirContext myContext;
 	private EntityManager myEntityManager;
 	private IForcedIdDao myForcedIdDao;
@@ -282,6 +293,11 @@ public class SearchBuilder implements ISearchBuilder {
 	}
 
 	private void addPredicateParamMissing(String theResourceName, String theParamName, boolean theMissing) {
+		if (myCallingDao.getConfig().getMissingFieldsIndexEncoding() == DaoConfig.MissingFieldsIndexEncodingEnum.RESOURCE_COLUMN) {
+			addPredicateParamMissingUsingPresenceColumn(theResourceName, theParamName, theMissing);
+			return;
+		}
+
 		Join<ResourceTable, SearchParamPresent> paramPresentJoin = myResourceTableRoot.join("mySearchParamPresents", JoinType.LEFT);
 		Join<SearchParamPresent, SearchParam> paramJoin = paramPresentJoin.join("mySearchParam", JoinType.LEFT);
 
@@ -290,6 +306,23 @@ public class SearchBuilder implements ISearchBuilder {
 		myPredicates.add(myBuilder.equal(paramPresentJoin.get("myPresent"), !theMissing));
 	}
 
+	/**
+	 * Checks the character for the given search param within ResourceTable#getParamsPresence(),
+	 * which avoids joining to the HFJ_RES_PARAM_PRESENT table
+	 */
+	private void addPredicateParamMissingUsingPresenceColumn(String theResourceName, String theParamName, boolean theMissing) {
+		Integer ordinal = myCallingDao.getSearchParamPresenceSvc().getOrdinal(theResourceName, theParamName);
+		if (ordinal == null) {
+			// The presence of this parameter has never been recorded, so nothing can match
+			myPredicates.add(myBuilder.disjunction());
+			return;
+		}
+
+		char expected = theMissing ? ResourceTable.PARAM_PRESENCE_MISSING : ResourceTable.PARAM_PRESENCE_PRESENT;
+		Expression<String> presence = myResourceTableRoot.get("myParamsPresence");
+		myPredicates.add(myBuilder.equal(myBuilder.substring(presence, ordinal + 1, 1), Character.toString(expected)));
+	}
+
 	private void addPredicateParamMissing(String theResourceName, String theParamName, boolean theMissing, Join<ResourceTable, ? extends BaseResourceIndexedSearchParam> theJoin) {
 
 		myPredicates.add(myBuilder.equal(theJoin.get("myResourceType"), theResourceName));
@@ -488,41 +521,78 @@ public class SearchBuilder implements ISearchBuilder {
 
 						foundChainMatch = true;
 
-						Subquery<Long> subQ = myResourceTableQuery.subquery(Long.class);
-						Root<ResourceTable> subQfrom = subQ.from(ResourceTable.class);
-						subQ.select(subQfrom.get("myId").as(Long.class));
-
 						List<List<? extends IQueryParameterType>> andOrParams = new ArrayList<List<? extends IQueryParameterType>>();
 						andOrParams.add(Collections.singletonList(chainValue));
 
+						Predicate pathPredicate = createResourceLinkPathPredicate(theResourceName, theParamName, join);
+						Predicate pidPredicate = null;
+
 						/*
-						 * We're doing a chain call, so push the current query root
-						 * and predicate list down and put new ones at the top of the
-						 * stack and run a subuery
+						 * If the chained side of the search matches only a few resources, it is
+						 * much cheaper to look those up first and search for links to them by PID
+						 * than to make the database evaluate a correlated subquery
 						 */
-						Root<ResourceTable> stackRoot = myResourceTableRoot;
-						ArrayList<Predicate> stackPredicates = myPredicates;
-						Map<JoinKey, Join<?, ?>> stackIndexJoins = myIndexJoins;
-						myResourceTableRoot = subQfrom;
-						myPredicates = Lists.newArrayList();
-						myIndexJoins = Maps.newHashMap();
+						int preResolveThreshold = myCallingDao.getConfig().getChainedSearchPreResolveThreshold();
+						if (preResolveThreshold > 0) {
+							ISearchSelectivitySvc selectivitySvc = myCallingDao.getSearchSelectivitySvc();
+							String criteria = subResourceName + '?' + ref.getChain() + '=' + resourceId;
+							Integer estimate = selectivitySvc.getEstimatedMatchCount(criteria);
+							if (estimate == null || estimate <= preResolveThreshold) {
+								List<Long> pids = myChainedPids.get(criteria);
+								if (pids == null) {
+									pids = resolveChainedPids(subResourceName, chain, andOrParams, preResolveThreshold + 1);
+									selectivitySvc.recordMatchCount(criteria, pids.size());
+									myChainedPids.put(criteria, pids);
+								}
+								if (pids.size() <= preResolveThreshold) {
+									ourLog.debug("Chained search {}.{} on {} will use a list of {} pre-resolved PIDs", theParamName, criteria, theResourceName, pids.size());
+									if (pids.isEmpty()) {
+										// Use a PID that will never exist
+										pids = Collections.singletonList(-1L);
+									}
+									pidPredicate = join.get("myTargetResourcePid").in(pids);
+								} else {
+									ourLog.debug("Chained search {}.{} on {} will use a subquery, found more than {} matches", theParamName, criteria, theResourceName, preResolveThreshold);
+								}
+							} else {
+								ourLog.debug("Chained search {}.{} on {} will use a subquery, recently found {} matches", theParamName, criteria, theResourceName, estimate);
+							}
+						}
 
-						// Create the subquery predicates
-						myPredicates.add(myBuilder.equal(myResourceTableRoot.get("myResourceType"), subResourceName));
-						myPredicates.add(myBuilder.isNull(myResourceTableRoot.get("myDeleted")));
-						searchForIdsWithAndOr(subResourceName, chain, andOrParams);
+						if (pidPredicate == null) {
+							Subquery<Long> subQ = myResourceTableQuery.subquery(Long.class);
+							Root<ResourceTable> subQfrom = subQ.from(ResourceTable.class);
+							subQ.select(subQfrom.get("myId").as(Long.class));
 
-						subQ.where(toArray(myPredicates));
+							/*
+							 * We're doing a chain call, so push the current query root
+							 * and predicate list down and put new ones at the top of the
+							 * stack and run a subuery
+							 */
+							Root<ResourceTable> stackRoot = myResourceTableRoot;
+							ArrayList<Predicate> stackPredicates = myPredicates;
+							Map<JoinKey, Join<?, ?>> stackIndexJoins = myIndexJoins;
+							myResourceTableRoot = subQfrom;
+							myPredicates = Lists.newArrayList();
+							myIndexJoins = Maps.newHashMap();
 
-						/*
-						 * Pop the old query root and predicate list back
-						 */
-						myResourceTableRoot = stackRoot;
-						myPredicates = stackPredicates;
-						myIndexJoins = stackIndexJoins;
+							// Create the subquery predicates
+							myPredicates.add(myBuilder.equal(myResourceTableRoot.get("myResourceType"), subResourceName));
+							myPredicates.add(myBuilder.isNull(myResourceTableRoot.get("myDeleted")));
+							searchForIdsWithAndOr(subResourceName, chain, andOrParams);
+
+							subQ.where(toArray(myPredicates));
+
+							/*
+							 * Pop the old query root and predicate list back
+							 */
+							myResourceTableRoot = stackRoot;
+							myPredicates = stackPredicates;
+							myIndexJoins = stackIndexJoins;
+
+							pidPredicate = join.get("myTargetResourcePid").in(subQ);
+						}
 
-						Predicate pathPredicate = createResourceLinkPathPredicate(theResourceName, theParamName, join);
-						Predicate pidPredicate = join.get("myTargetResourcePid").in(subQ);
 						codePredicates.add(myBuilder.and(pathPredicate, pidPredicate));
 
 					}
@@ -1248,6 +1318,19 @@ public class SearchBuilder implements ISearchBuilder {
 		return combineParamIndexPredicateWithParamNamePredicate(theResourceName, theParamName, theFrom, singleCode);
 	}
 
+	@Override
+	public Long createCountQuery(SearchParameterMap theParams, String theSearchUuid) {
+		Validate.isTrue(theParams.getEverythingMode() == null, "Can not count results of $everything operation");
+		myParams = theParams;
+		myBuilder = myEntityManager.getCriteriaBuilder();
+		mySearchUuid = theSearchUuid;
+
+		TypedQuery<Long> query = createQuery(null, null, true);
+		Long retVal = query.getSingleResult();
+		ourLog.debug("Count query found {} matches for query {}", retVal, mySearchUuid);
+		return retVal;
+	}
+
 	@Override
 	public Iterator<Long> createQuery(SearchParameterMap theParams, String theSearchUuid) {
 		myParams = theParams;
@@ -1299,7 +1382,7 @@ public class SearchBuilder implements ISearchBuilder {
 		return new QueryIterator();
 	}
 
-	private TypedQuery<Long> createQuery(SortSpec sort, Integer theMaximumResults) {
+	private TypedQuery<Long> createQuery(SortSpec sort, Integer theMaximumResults, boolean theCount) {
 		CriteriaQuery<Long> outerQuery;
 		/*
 		 * Sort
@@ -1339,7 +1422,12 @@ public class SearchBuilder implements ISearchBuilder {
 			outerQuery = myBuilder.createQuery(Long.class);
 			myResourceTableQuery = outerQuery;
 			myResourceTableRoot = myResourceTableQuery.from(ResourceTable.class);
-			outerQuery.multiselect(myResourceTableRoot.get("myId").as(Long.class));
+			if (theCount) {
+				// Joins to index tables can produce more than one row per resource
+				outerQuery.select(myBuilder.countDistinct(myResourceTableRoot));
+			} else {
+				outerQuery.multiselect(myResourceTableRoot.get("myId").as(Long.class));
+			}
 
 		}
 
@@ -1468,6 +1556,11 @@ public class SearchBuilder implements ISearchBuilder {
 			throw new InvalidRequestException("Unknown sort parameter '" + theSort.getParamName() + "'");
 		}
 
+		if (createSortUsingSortKey(theBuilder, theFrom, theSort, param, theOrders)) {
+			createSort(theBuilder, theFrom, theSort.getChain(), theOrders, thePredicates);
+			return true;
+		}
+
 		String joinAttrName;
 		String[] sortAttrName;
 		JoinEnum joinType;
@@ -1544,6 +1637,58 @@ public class SearchBuilder implements ISearchBuilder {
 		return true;
 	}
 
+	/**
+	 * If the parameter being sorted on has been configured to store sort keys
+	 * (see {@link DaoConfig#getSortKeySearchParams()}), sort using the single
+	 * value stored per resource instead of joining to the index table
+	 *
+	 * @return Returns <code>true</code> if the sort was handled
+	 */
+	private boolean createSortUsingSortKey(CriteriaBuilder theBuilder, Root<ResourceTable> theFrom, SortSpec theSort, RuntimeSearchParam theParam, List<Order> theOrders) {
+		if (!myCallingDao.getConfig().getSortKeySearchParams().contains(myResourceName + ":" + theSort.getParamName())) {
+			return false;
+		}
+
+		String lowAttrName;
+		String highAttrName;
+		switch (theParam.getParamType()) {
+			case STRING:
+			case TOKEN:
+			case URI:
+				lowAttrName = "myStringLow";
+				highAttrName = "myStringHigh";
+				break;
+			case NUMBER:
+			case QUANTITY:
+				lowAttrName = "myNumberLow";
+				highAttrName = "myNumberHigh";
+				break;
+			case DATE:
+				lowAttrName = "myDateLow";
+				highAttrName = "myDateHigh";
+				break;
+			default:
+				return false;
+		}
+
+		/*
+		 * There is at most one sort key row per resource and parameter, so unlike the
+		 * index table join this can't produce duplicate rows. The parameter name goes in
+		 * the join condition so that resources with no value for the parameter are kept.
+		 */
+		Join<ResourceTable, ResourceIndexedSortKey> join = theFrom.join("myParamsSortKey", JoinType.LEFT);
+		join.on(theBuilder.equal(join.get("myParamName"), theSort.getParamName()));
+
+		if (theSort.getOrder() == null || theSort.getOrder() == SortOrderEnum.ASC) {
+			theOrders.add(theBuilder.asc(join.get(lowAttrName)));
+		} else {
+			theOrders.add(theBuilder.desc(join.get(highAttrName)));
+		}
+
+		ourLog.debug("Sorting on {} using stored sort keys", theSort.getParamName());
+		return true;
+	}
+
 	private String determineSystemIfMissing(String theParamName, String code, String theSystem) {
 		String retVal = theSystem;
 		if (retVal == null) {
@@ -1665,13 +1810,27 @@ public class SearchBuilder implements ISearchBuilder {
 			return new HashSet<Long>();
 		}
 		String searchFieldName = theReverseMode ? "myTargetResourcePid" : "mySourceResourcePid";
+		String resultFieldName = theReverseMode ? "mySourceResourcePid" : "myTargetResourcePid";
+
+		int maxInClauseSize = DaoConfig.DEFAULT_MAXIMUM_INCLUDE_IN_CLAUSE_SIZE;
+		if (theCallingDao != null && theCallingDao.getConfig() != null) {
+			maxInClauseSize = theCallingDao.getConfig().getMaximumIncludeInClauseSize();
+		}
 
 		Collection<Long> nextRoundMatches = theMatches;
 		HashSet<Long> allAdded = new HashSet<>();
 		HashSet<Long> original = new HashSet<>(theMatches);
 		ArrayList<Include> includes = new ArrayList<>(theRevIncludes);
 
+		/*
+		 * Every round after the first one only follows the recursive includes, which
+		 * were already followed from any PID seen in an earlier round, so links are
+		 * never followed from the same PID twice
+		 */
+		HashSet<Long> visited = new HashSet<>(theMatches);
+
 		int roundCounts = 0;
+		int queryCounts = 0;
 		StopWatch w = new StopWatch();
 
 		boolean addedSomeThisRound;
@@ -1679,89 +1838,23 @@ public class SearchBuilder implements ISearchBuilder {
 			roundCounts++;
 
 			HashSet<Long> pidsToInclude = new HashSet<>();
-			Set<Long> nextRoundOmit = new HashSet<>();
 
-			for (Iterator<Include> iter = includes.iterator(); iter.hasNext(); ) {
-				Include nextInclude = iter.next();
-				if (nextInclude.isRecurse() == false) {
-					iter.remove();
-				}
-
-				boolean matchAll = "*".equals(nextInclude.getValue());
-				if (matchAll) {
-					String sql;
-					sql = "SELECT r FROM ResourceLink r WHERE r." + searchFieldName + " IN (:target_pids)";
-					TypedQuery<ResourceLink> q = theEntityManager.createQuery(sql, ResourceLink.class);
-					q.setParameter("target_pids", nextRoundMatches);
-					List<ResourceLink> results = q.getResultList();
-					for (ResourceLink resourceLink : results) {
-						if (theReverseMode) {
-							pidsToInclude.add(resourceLink.getSourceResourcePid());
-						} else {
-							pidsToInclude.add(resourceLink.getTargetResourcePid());
-						}
-					}
-				} else {
-
-					List<String> paths;
-					RuntimeSearchParam param = null;
-					String resType = nextInclude.getParamType();
-					if (isBlank(resType)) {
-						continue;
-					}
-					RuntimeResourceDefinition def = theContext.getResourceDefinition(resType);
-					if (def == null) {
-						ourLog.warn("Unknown resource type in include/revinclude=" + nextInclude.getValue());
-						continue;
-					}
-
-					String paramName = nextInclude.getParamName();
-					if (isNotBlank(paramName)) {
-						param = theCallingDao.getSearchParamByName(def, paramName);
-					} else {
-						param = null;
+			IncludesQuery includesQuery = createIncludesQuery(theCallingDao, theContext, includes, searchFieldName, resultFieldName);
+			if (includesQuery != null) {
+				List<Long> roundMatches = new ArrayList<>(nextRoundMatches);
+				for (int i = 0; i < roundMatches.size(); i += maxInClauseSize) {
+					List<Long> roundMatchesSubList = roundMatches.subList(i, Math.min(i + maxInClauseSize, roundMatches.size()));
+					TypedQuery<Long> q = theEntityManager.createQuery(includesQuery.mySql, Long.class);
+					for (Entry<String, Collection<String>> nextParam : includesQuery.myParams.entrySet()) {
+						q.setParameter(nextParam.getKey(), nextParam.getValue());
 					}
-					if (param == null) {
-						ourLog.warn("Unknown param name in include/revinclude=" + nextInclude.getValue());
-						continue;
-					}
-
-					paths = param.getPathsSplit();
-
-					String targetResourceType = defaultString(nextInclude.getParamTargetType(), null);
-					for (String nextPath : paths) {
-						String sql;
-						boolean haveTargetTypesDefinedByParam = param != null && param.getTargets() != null && param.getTargets().isEmpty() == false;
-						if (targetResourceType != null) {
-							sql = "SELECT r FROM ResourceLink r WHERE r.mySourcePath = :src_path AND r." + searchFieldName + " IN (:target_pids) AND r.myTargetResourceType = :target_resource_type";
-						} else if (haveTargetTypesDefinedByParam) {
-							sql = "SELECT r FROM ResourceLink r WHERE r.mySourcePath = :src_path AND r." + searchFieldName + " IN (:target_pids) AND r.myTargetResourceType in (:target_resource_types)";
-						} else {
-							sql = "SELECT r FROM ResourceLink r WHERE r.mySourcePath = :src_path AND r." + searchFieldName + " IN (:target_pids)";
-						}
-						TypedQuery<ResourceLink> q = theEntityManager.createQuery(sql, ResourceLink.class);
-						q.setParameter("src_path", nextPath);
-						q.setParameter("target_pids", nextRoundMatches);
-						if (targetResourceType != null) {
-							q.setParameter("target_resource_type", targetResourceType);
-						} else if (haveTargetTypesDefinedByParam) {
-							q.setParameter("target_resource_types", param.getTargets());
-						}
-						List<ResourceLink> results = q.getResultList();
-						for (ResourceLink resourceLink : results) {
-							if (theReverseMode) {
-								Long pid = resourceLink.getSourceResourcePid();
-								if (pid != null) {
-									pidsToInclude.add(pid);
-								}
-							} else {
-								Long pid = resourceLink.getTargetResourcePid();
-								if (pid != null) {
-									pidsToInclude.add(pid);
-								}
-							}
+					q.setParameter("target_pids", roundMatchesSubList);
+					for (Long next : q.getResultList()) {
+						if (next != null) {
+							pidsToInclude.add(next);
 						}
 					}
+					queryCounts++;
 				}
 			}
 
@@ -1774,17 +1867,148 @@ public class SearchBuilder implements ISearchBuilder {
 				}
 			}
 
-			pidsToInclude.removeAll(nextRoundOmit);
-
 			addedSomeThisRound = allAdded.addAll(pidsToInclude);
+
+			int foundThisRound = pidsToInclude.size();
+			pidsToInclude.removeAll(visited);
+			visited.addAll(pidsToInclude);
+			ourLog.debug("Include round {} followed links from {} resources and found {} resources ({} not previously visited)", new Object[]{roundCounts, nextRoundMatches.size(), foundThisRound, pidsToInclude.size()});
 			nextRoundMatches = pidsToInclude;
 		} while (includes.size() > 0 && nextRoundMatches.size() > 0 && addedSomeThisRound);
 
-		ourLog.info("Loaded {} {} in {} rounds and {} ms", new Object[]{allAdded.size(), theReverseMode ? "_revincludes" : "_includes", roundCounts, w.getMillisAndRestart()});
+		ourLog.info("Loaded {} {} in {} rounds ({} queries) and {} ms", new Object[]{allAdded.size(), theReverseMode ? "_revincludes" : "_includes", roundCounts, queryCounts, w.getMillisAndRestart()});
 
 		return allAdded;
 	}
 
+	/**
+	 * Creates a single query which follows every include path for one round of include
+	 * loading, or returns <code>null</code> if none of the includes can be followed. Non-recursive
+	 * includes are removed from the list, since they only apply to the first round.
+	 */
+	private IncludesQuery createIncludesQuery(IDao theCallingDao, FhirContext theContext, List<Include> theIncludes, String theSearchFieldName, String theResultFieldName) {
+		boolean matchAll = false;
+
+		// Paths are grouped by the target resource types they are restricted to (null means any type)
+		Map<Set<String>, Set<String>> targetTypesToPaths = new LinkedHashMap<>();
+
+		for (Iterator<Include> iter = theIncludes.iterator(); iter.hasNext(); ) {
+			Include nextInclude = iter.next();
+			if (nextInclude.isRecurse() == false) {
+				iter.remove();
+			}
+
+			if ("*".equals(nextInclude.getValue())) {
+				matchAll = true;
+				continue;
+			}
+
+			String resType = nextInclude.getParamType();
+			if (isBlank(resType)) {
+				continue;
+			}
+			RuntimeResourceDefinition def = theContext.getResourceDefinition(resType);
+			if (def == null) {
+				ourLog.warn("Unknown resource type in include/revinclude=" + nextInclude.getValue());
+				continue;
+			}
+
+			String paramName = nextInclude.getParamName();
+			RuntimeSearchParam param = null;
+			if (isNotBlank(paramName)) {
+				param = theCallingDao.getSearchParamByName(def, paramName);
+			}
+			if (param == null) {
+				ourLog.warn("Unknown param name in include/revinclude=" + nextInclude.getValue());
+				continue;
+			}
+
+			Set<String> targetTypes = null;
+			String targetResourceType = defaultString(nextInclude.getParamTargetType(), null);
+			if (targetResourceType != null) {
+				targetTypes = Collections.singleton(targetResourceType);
+			} else if (param.getTargets() != null && param.getTargets().isEmpty() == false) {
+				targetTypes = new HashSet<>(param.getTargets());
+			}
+
+			Set<String> paths = targetTypesToPaths.get(targetTypes);
+			if (paths == null) {
+				paths = new HashSet<>();
+				targetTypesToPaths.put(targetTypes, paths);
+			}
+			paths.addAll(param.getPathsSplit());
+		}
+
+		IncludesQuery retVal = new IncludesQuery();
+		StringBuilder sql = new StringBuilder();
+		sql.append("SELECT DISTINCT r.").append(theResultFieldName).append(" FROM ResourceLink r WHERE r.").append(theSearchFieldName).append(" IN (:target_pids)");
+		if (!matchAll) {
+			if (targetTypesToPaths.isEmpty()) {
+				return null;
+			}
+
+			sql.append(" AND (");
+			int index = 0;
+			for (Entry<Set<String>, Set<String>> next : targetTypesToPaths.entrySet()) {
+				if (index > 0) {
+					sql.append(" OR ");
+				}
+				sql.append("(r.mySourcePath IN (:src_paths").append(index).append(")");
+				retVal.myParams.put("src_paths" + index, next.getValue());
+				if (next.getKey() != null) {
+					sql.append(" AND r.myTargetResourceType IN (:target_resource_types").append(index).append(")");
+					retVal.myParams.put("target_resource_types" + index, next.getKey());
+				}
+				sql.append(")");
+				index++;
+			}
+			sql.append(")");
+		}
+
+		retVal.mySql = sql.toString();
+		return retVal;
+	}
+
+	/**
+	 * Runs the chained part of a chained search as a query of its own, returning
+	 * no more than the given number of matching PIDs
+	 */
+	private List<Long> resolveChainedPids(String theResourceName, String theParamName, List<List<? extends IQueryParameterType>> theAndOrParams, int theMaxResults) {
+		CriteriaQuery<Long> query = myBuilder.createQuery(Long.class);
+		Root<ResourceTable> from = query.from(ResourceTable.class);
+		query.select(from.get("myId").as(Long.class));
+		query.distinct(true);
+
+		/*
+		 * As with a subquery, push the current query root and predicate
+		 * list down and run the chained search against a new root
+		 */
+		AbstractQuery<Long> stackQuery = myResourceTableQuery;
+		Root<ResourceTable> stackRoot = myResourceTableRoot;
+		ArrayList<Predicate> stackPredicates = myPredicates;
+		Map<JoinKey, Join<?, ?>> stackIndexJoins = myIndexJoins;
+		myResourceTableQuery = query;
+		myResourceTableRoot = from;
+		myPredicates = Lists.newArrayList();
+		myIndexJoins = Maps.newHashMap();
+
+		try {
+			myPredicates.add(myBuilder.equal(myResourceTableRoot.get("myResourceType"), theResourceName));
+			myPredicates.add(myBuilder.isNull(myResourceTableRoot.get("myDeleted")));
+			searchForIdsWithAndOr(theResourceName, theParamName, theAndOrParams);
+			query.where(toArray(myPredicates));
+		} finally {
+			myResourceTableQuery = stackQuery;
+			myResourceTableRoot = stackRoot;
+			myPredicates = stackPredicates;
+			myIndexJoins = stackIndexJoins;
+		}
+
+		TypedQuery<Long> typedQuery = myEntityManager.createQuery(query);
+		typedQuery.setMaxResults(theMaxResults);
+		return typedQuery.getResultList();
+	}
+
 	private void searchForIdsWithAndOr(SearchParameterMap theParams) {
 		SearchParameterMap params = theParams;
 		if (params == null) {
@@ -2064,12 +2288,18 @@ public class SearchBuilder implements ISearchBuilder {
 
 		private Iterator<Long> myCurrentIterator;
 		private int myCurrentOffset;
-		private ArrayList<Long> myCurrentPids;
+		private LongArrayList myCurrentPids;
+		private int myCurrentPidCount;
 		private Long myNext;
 		private int myPageSize = myCallingDao.getConfig().getEverythingIncludesFetchPageSize();
 
-		public IncludesIterator(Set<Long> thePidSet) {
-			myCurrentPids = new ArrayList<Long>(thePidSet);
+		/**
+		 * Only the PIDs which are in the list when this iterator is created are
+		 * scanned, even if the caller keeps adding to the list afterward
+		 */
+		public IncludesIterator(LongArrayList thePids) {
+			myCurrentPids = thePids;
+			myCurrentPidCount = thePids.size();
 			myCurrentIterator = EMPTY_LONG_LIST.iterator();
 			myCurrentOffset = 0;
 		}
@@ -2085,15 +2315,15 @@ public class SearchBuilder implements ISearchBuilder {
 				if (!myCurrentIterator.hasNext()) {
 					int start = myCurrentOffset;
 					int end = myCurrentOffset + myPageSize;
-					if (end > myCurrentPids.size()) {
-						end = myCurrentPids.size();
+					if (end > myCurrentPidCount) {
+						end = myCurrentPidCount;
 					}
 					if (end - start <= 0) {
 						myNext = NO_MORE;
 						break;
 					}
 					myCurrentOffset = end;
-					Collection<Long> pidsToScan = myCurrentPids.subList(start, end);
+					Collection<Long> pidsToScan = myCurrentPids.toList(start, end);
 					Set<Include> includes = Collections.singleton(new Include("*", true));
 					Set<Long> newPids = loadReverseIncludes(myCallingDao, myContext, myEntityManager, pidsToScan, includes, false, myParams.getLastUpdated());
 					myCurrentIterator = newPids.iterator();
@@ -2120,12 +2350,17 @@ public class SearchBuilder implements ISearchBuilder {
 
 	private final class QueryIterator extends BaseIterator<Long> implements Iterator<Long> {
 
-		private final Set<Long> myPidSet = new HashSet<Long>();
+		private final LongHashSet myPidSet = new LongHashSet();
 		private boolean myFirst = true;
 		private IncludesIterator myIncludesIterator;
+		private String myJpql;
 		private Long myNext;
+		private long myPidFetchNanos;
 		private Iterator<Long> myPreResultsIterator;
 		private Iterator<Long> myResultsIterator;
+		private boolean myResultsIteratorExhausted;
+		private ISearchMetricsSvc mySearchMetricsSvc;
+		private String myParameterShape;
 		private SortSpec mySort;
 		private boolean myStillNeedToFetchIncludes;
 		private StopWatch myStopwatch = null;
@@ -2149,11 +2384,20 @@ public class SearchBuilder implements ISearchBuilder {
 			if (myResultsIterator == null) {
 				Integer maximumResults = myCallingDao.getConfig().getFetchSizeDefaultMaximum();
 
-				final TypedQuery<Long> query = createQuery(mySort, maximumResults);
+				mySearchMetricsSvc = myCallingDao.getSearchMetricsSvc();
+				if (mySearchMetricsSvc != null) {
+					myParameterShape = myParams.toParameterShape(myContext);
+				}
+
+				StopWatch sw = new StopWatch();
+				final TypedQuery<Long> query = createQuery(mySort, maximumResults, false);
+				recordPhase(SearchPhaseEnum.QUERY_BUILD, sw.getMillisAndRestart());
 
 				Query<Long> hibernateQuery = (Query<Long>) query;
 				ScrollableResults scroll = hibernateQuery.scroll(ScrollMode.FORWARD_ONLY);
 				myResultsIterator = new ScrollableResultsIterator(scroll);
+				recordPhase(SearchPhaseEnum.SQL_EXECUTION, sw.getMillis());
+				myJpql = hibernateQuery.getQueryString();
 
 				// If the query resulted in extra results being requested
 				if (myAlsoIncludePids != null) {
@@ -2173,7 +2417,8 @@ public class SearchBuilder implements ISearchBuilder {
 					}
 				}
 
-				if (myNext == null) {
+				if (myNext == null && !myResultsIteratorExhausted) {
+					long start = System.nanoTime();
 					while (myResultsIterator.hasNext()) {
 						Long next = myResultsIterator.next();
 						if (next != null && myPidSet.add(next)) {
@@ -2181,11 +2426,20 @@ public class SearchBuilder implements ISearchBuilder {
 							break;
 						}
 					}
+					myPidFetchNanos += System.nanoTime() - start;
+
+					if (myNext == null) {
+						myResultsIteratorExhausted = true;
+						recordPhase(SearchPhaseEnum.PID_FETCH, TimeUnit.NANOSECONDS.toMillis(myPidFetchNanos));
+						if (mySearchMetricsSvc != null) {
+							mySearchMetricsSvc.recordQuery(myResourceName, myParameterShape, myJpql, myStopwatch.getMillis(), myPidSet.size());
+						}
+					}
 				}
 
 				if (myNext == null) {
 					if (myStillNeedToFetchIncludes) {
-						myIncludesIterator = new IncludesIterator(myPidSet);
+						myIncludesIterator = new IncludesIterator(myPidSet.getValuesInInsertionOrder());
 						myStillNeedToFetchIncludes = false;
 					}
 					if (myIncludesIterator != null) {
@@ -2217,6 +2471,12 @@ public class SearchBuilder implements ISearchBuilder {
 
 		}
 
+		private void recordPhase(SearchPhaseEnum thePhase, long theMillis) {
+			if (mySearchMetricsSvc != null) {
+				mySearchMetricsSvc.recordPhase(myResourceName, myParameterShape, thePhase, theMillis);
+			}
+		}
+
 		@Override
 		public boolean hasNext() {
 			if (myNext == null) {
@@ -2310,6 +2570,11 @@ public class SearchBuilder implements ISearchBuilder {
 		}
 	}
 
+	private static class IncludesQuery {
+		private final Map<String, Collection<String>> myParams = new HashMap<>();
+		private String mySql;
+	}
+
 	private static class JoinKey {
 		private final JoinEnum myJoinType;
 		private final String myParamName;
@@ -41,6 +41,7 @@ public class SearchParameterMap extends LinkedHashMap<String, List<List<? extend
 	private static final long serialVersionUID = 1L;
 
 	private Integer myCount;
+	private boolean myCountOnly;
 	private EverythingModeEnum myEverythingMode = null;
 	private Set<Include> myIncludes;
 	private DateRangeParam myLastUpdated;
@@ -210,6 +211,15 @@ public class SearchParameterMap extends LinkedHashMap<String, List<List<? extend
 		return mySort;
 	}
 
+	/**
+	 * If set, the server only calculates the number of matching resources (e.g. because
+	 * the client requested <code>_summary=count</code>), and the returned bundle provider
+	 * will not return any resources
+	 */
+	public boolean isCountOnly() {
+		return myCountOnly;
+	}
+
 	/**
 	 * This will only return true if all parameters have no modifier of any kind
 	 */
@@ -238,6 +248,16 @@ public class SearchParameterMap extends LinkedHashMap<String, List<List<? extend
 		myCount = theCount;
 	}
 
+	/**
+	 * If set, the server only calculates the number of matching resources (e.g. because
+	 * the client requested <code>_summary=count</code>), and the returned bundle provider
+	 * will not return any resources
+	 */
+	public SearchParameterMap setCountOnly(boolean theCountOnly) {
+		myCountOnly = theCountOnly;
+		return this;
+	}
+
 	public void setEverythingMode(EverythingModeEnum theConsolidateMatches) {
 		myEverythingMode = theConsolidateMatches;
 	}
@@ -391,6 +411,138 @@ public class SearchParameterMap extends LinkedHashMap<String, List<List<? extend
 		return b.toString();
 	}
 
+	/**
+	 * Reduces a query string created by {@link #toNormalizedQueryString(FhirContext)} to its
+	 * "shape", meaning the parameter names and qualifiers without their values, so that searches
+	 * which only differ by the values being searched for can be grouped together (e.g. for metrics).
+	 * The values of <code>_sort</code>, <code>_include</code> and <code>_revinclude</code> are kept
+	 * since they affect how the search is performed.
+	 * <p>
+	 * For example, <code>?date=ge2011&amp;subject=Patient%2F123&amp;_sort=-date</code> becomes
+	 * <code>?date&amp;subject&amp;_sort=-date</code>
+	 * </p>
+	 */
+	public static String toParameterShape(String theNormalizedQueryString) {
+		StringBuilder b = new StringBuilder();
+		String last = null;
+		for (String nextPart : StringUtils.split(StringUtils.defaultString(theNormalizedQueryString), "?&")) {
+			String next = nextPart;
+			int equalsIdx = next.indexOf('=');
+			if (equalsIdx != -1) {
+				String name = next.substring(0, equalsIdx);
+				if (!Constants.PARAM_SORT.equals(name) && !Constants.PARAM_INCLUDE.equals(name) && !Constants.PARAM_REVINCLUDE.equals(name)) {
+					next = name;
+				}
+			}
+			if (next.equals(last)) {
+				continue;
+			}
+			b.append(b.length() == 0 ? '?' : '&');
+			b.append(next);
+			last = next;
+		}
+
+		if (b.length() == 0) {
+			b.append('?');
+		}
+
+		return b.toString();
+	}
+
+	/**
+	 * Returns the "shape" of this map (see {@link #toParameterShape(String)}) without
+	 * building its normalized query string, since only the first non-empty value of each
+	 * parameter needs to be looked at.
+	 */
+	public String toParameterShape(FhirContext theCtx) {
+		StringBuilder b = new StringBuilder();
+		ArrayList<String> keys = new ArrayList<String>(keySet());
+		Collections.sort(keys);
+		Comparator<IQueryParameterType> comparator = new Comparator<IQueryParameterType>() {
+			@Override
+			public int compare(IQueryParameterType theO1, IQueryParameterType theO2) {
+				return compareIgnoringValue(theO1, theO2);
+			}
+		};
+		for (String nextKey : keys) {
+
+			// The first value of each AND, in the order toNormalizedQueryString would sort them
+			List<IQueryParameterType> firstValues = new ArrayList<IQueryParameterType>();
+			for (List<? extends IQueryParameterType> nextValuesAnd : get(nextKey)) {
+				IQueryParameterType firstValue = null;
+				for (IQueryParameterType nextValueOr : nextValuesAnd) {
+					if (firstValue != null && comparator.compare(nextValueOr, firstValue) >= 0) {
+						continue;
+					}
+					if (nextValueOr.getMissing() != null || isNotBlank(nextValueOr.getValueAsQueryToken(theCtx))) {
+						firstValue = nextValueOr;
+					}
+				}
+				if (firstValue != null) {
+					firstValues.add(firstValue);
+				}
+			}
+			Collections.sort(firstValues, comparator);
+
+			String last = null;
+			for (IQueryParameterType firstValue : firstValues) {
+				String next = UrlUtil.escapeUrlParam(nextKey);
+				if (firstValue.getMissing() != null) {
+					next = next + Constants.PARAMQUALIFIER_MISSING;
+				} else if (isNotBlank(firstValue.getQueryParameterQualifier())) {
+					next = next + firstValue.getQueryParameterQualifier();
+				}
+				if (next.equals(last)) {
+					continue;
+				}
+				addUrlParamSeparator(b);
+				b.append(next);
+				last = next;
+			}
+		}
+
+		StringBuilder sortValue = new StringBuilder();
+		for (SortSpec sort = getSort(); sort != null; sort = sort.getChain()) {
+			if (isNotBlank(sort.getParamName())) {
+				if (sortValue.length() > 0) {
+					sortValue.append(',');
+				}
+				if (sort.getOrder() == SortOrderEnum.DESC) {
+					sortValue.append('-');
+				}
+				sortValue.append(sort.getParamName());
+			}
+			Validate.isTrue(sort != sort.getChain()); // just in case, shouldn't happen
+		}
+		if (sortValue.length() > 0) {
+			addUrlParamSeparator(b);
+			b.append(Constants.PARAM_SORT).append('=').append(sortValue);
+		}
+
+		addUrlIncludeParams(b, Constants.PARAM_INCLUDE, getIncludes());
+		addUrlIncludeParams(b, Constants.PARAM_REVINCLUDE, getRevIncludes());
+
+		if (getLastUpdated() != null) {
+			DateParam lb = getLastUpdated().getLowerBound();
+			DateParam ub = getLastUpdated().getUpperBound();
+			if ((lb != null && isNotBlank(lb.getValueAsString())) || (ub != null && isNotBlank(ub.getValueAsString()))) {
+				addUrlParamSeparator(b);
+				b.append(Constants.PARAM_LASTUPDATED);
+			}
+		}
+
+		if (getCount() != null) {
+			addUrlParamSeparator(b);
+			b.append(Constants.PARAM_COUNT);
+		}
+
+		if (b.length() == 0) {
+			b.append('?');
+		}
+
+		return b.toString();
+	}
+
 	@Override
 	public String toString() {
 		ToStringBuilder b = new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE);
@@ -404,6 +556,21 @@ public class SearchParameterMap extends LinkedHashMap<String, List<List<? extend
 	}
 
 	static int compare(FhirContext theCtx, IQueryParameterType theO1, IQueryParameterType theO2) {
+		int retVal = compareIgnoringValue(theO1, theO2);
+		if (retVal == 0) {
+			String v1 = theO1.getValueAsQueryToken(theCtx);
+			String v2 = theO2.getValueAsQueryToken(theCtx);
+			retVal = StringUtils.compare(v1, v2);
+		}
+		return retVal;
+	}
+
+	/**
+	 * Compares only the <code>:missing</code> modifier and the qualifier, which are all that
+	 * {@link #compare(FhirContext, IQueryParameterType, IQueryParameterType)} looks at before
+	 * the values
+	 */
+	private static int compareIgnoringValue(IQueryParameterType theO1, IQueryParameterType theO2) {
 		int retVal;
 		if (theO1.getMissing() == null && theO2.getMissing() == null) {
 			retVal = 0;
@@ -426,12 +593,6 @@ public class SearchParameterMap extends LinkedHashMap<String, List<List<? extend
 			String q2 = theO2.getQueryParameterQualifier();
 			retVal = StringUtils.compare(q1, q2);
 		}
-
-		if (retVal == 0) {
-			String v1 = theO1.getValueAsQueryToken(theCtx);
-			String v2 = theO2.getValueAsQueryToken(theCtx);
-			retVal = StringUtils.compare(v1, v2);
-		}
 		return retVal;
 	}
 
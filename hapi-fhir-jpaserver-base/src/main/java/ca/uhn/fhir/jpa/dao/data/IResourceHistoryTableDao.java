@@ -1,6 +1,7 @@
 package ca.uhn.fhir.jpa.dao.data;
 
 import java.util.Date;
+import java.util.List;
 
 import javax.persistence.TemporalType;
 
@@ -24,11 +25,14 @@ import javax.persistence.TemporalType;
  * #L%
  */
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.jpa.repository.Temporal;
 import org.springframework.data.repository.query.Param;
 
+import ca.uhn.fhir.jpa.entity.ResourceEncodingEnum;
 import ca.uhn.fhir.jpa.entity.ResourceHistoryTable;
 
 public interface IResourceHistoryTableDao extends JpaRepository<ResourceHistoryTable, Long> {
@@ -98,6 +102,19 @@ public interface IResourceHistoryTableDao extends JpaRepository<ResourceHistoryT
 
 	@Query("SELECT t FROM ResourceHistoryTable t WHERE t.myResourceId = :id AND t.myResourceVersion = :version")
 	ResourceHistoryTable findForIdAndVersion(@Param("id") long theId, @Param("version") long theVersion);
+
+	@Query("SELECT DISTINCT t.myResourceId FROM ResourceHistoryTable t, ResourceTable r WHERE r.myId = t.myResourceId AND t.myResourceVersion < r.myVersion AND t.myUpdated < :cutoff AND t.myArchiveSegmentId IS NULL AND t.myEncoding <> :del")
+	Slice<Long> findIdsOfResourcesWithArchivableVersions(
+		@Temporal(value=TemporalType.TIMESTAMP) @Param("cutoff") Date theCutoff,
+		@Param("del") ResourceEncodingEnum theDeletedEncoding,
+		Pageable thePageable);
+
+	@Query("SELECT t FROM ResourceHistoryTable t WHERE t.myResourceId = :id AND t.myResourceVersion < :currentVersion AND t.myUpdated < :cutoff AND t.myArchiveSegmentId IS NULL AND t.myEncoding <> :del ORDER BY t.myResourceVersion ASC")
+	List<ResourceHistoryTable> findArchivableVersions(
+		@Param("id") Long theId,
+		@Param("currentVersion") long theCurrentVersion,
+		@Temporal(value=TemporalType.TIMESTAMP) @Param("cutoff") Date theCutoff,
+		@Param("del") ResourceEncodingEnum theDeletedEncoding);
 	
 	//@formatter:on
 }
@@ -51,4 +51,8 @@ public interface ISearchDao extends JpaRepository<Search, Long> {
 	@Query("UPDATE Search s SET s.mySearchLastReturned = :last WHERE s.myId = :pid")
 	public void updateSearchLastReturned(@Param("pid") long thePid, @Param("last") Date theDate);
 
+	@Modifying
+	@Query("UPDATE Search s SET s.myHistoryCursorOffset = :offset, s.myHistoryCursorUpdated = :updated, s.myHistoryCursorPid = :cursor_pid WHERE s.myId = :pid")
+	public void updateHistoryCursor(@Param("pid") long thePid, @Param("offset") int theOffset, @Param("updated") Date theUpdated, @Param("cursor_pid") long theCursorPid);
+
 }
@@ -0,0 +1,63 @@
+package ca.uhn.fhir.jpa.dao.data;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2018 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.entity.SubscriptionDelivery;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Date;
+import java.util.List;
+
+public interface ISubscriptionDeliveryDao extends JpaRepository<SubscriptionDelivery, Long> {
+
+	/**
+	 * Claims a delivery by moving its next attempt to <code>theClaimedUntil</code>. Returns 0 if the row
+	 * has been deleted, attempted again or claimed since <code>theAttemptCount</code> was read.
+	 */
+	@Modifying
+	@Query("UPDATE SubscriptionDelivery d SET d.myNextAttempt = :claimedUntil WHERE d.myId = :pid AND d.myAttemptCount = :attempts AND d.myNextAttempt <= :now")
+	int claim(@Param("pid") long thePid, @Param("attempts") int theAttemptCount, @Param("now") Date theNow, @Param("claimedUntil") Date theClaimedUntil);
+
+	@Query("SELECT COUNT(d) FROM SubscriptionDelivery d WHERE d.myChannelName = :channel")
+	long countByChannel(@Param("channel") String theChannelName);
+
+	@Query("SELECT d.mySubscriptionId, COUNT(d) FROM SubscriptionDelivery d WHERE d.myChannelName = :channel GROUP BY d.mySubscriptionId")
+	List<Object[]> countByChannelGroupedBySubscription(@Param("channel") String theChannelName);
+
+	@Modifying
+	@Query("DELETE FROM SubscriptionDelivery d WHERE d.myId = :pid")
+	int deleteByPid(@Param("pid") long thePid);
+
+	@Query("SELECT d FROM SubscriptionDelivery d WHERE d.myChannelName = :channel AND d.mySubscriptionId = :subscription AND d.myNextAttempt <= :now ORDER BY d.myId")
+	List<SubscriptionDelivery> findDue(@Param("channel") String theChannelName, @Param("subscription") String theSubscriptionId, @Param("now") Date theNow, Pageable thePage);
+
+	@Query("SELECT DISTINCT d.mySubscriptionId FROM SubscriptionDelivery d WHERE d.myChannelName = :channel AND d.myNextAttempt <= :now")
+	List<String> findSubscriptionIdsWithDeliveriesDue(@Param("channel") String theChannelName, @Param("now") Date theNow);
+
+	@Modifying
+	@Query("UPDATE SubscriptionDelivery d SET d.myAttemptCount = :attempts, d.myNextAttempt = :next WHERE d.myId = :pid")
+	int updateNextAttempt(@Param("pid") long thePid, @Param("attempts") int theAttemptCount, @Param("next") Date theNextAttempt);
+
+}
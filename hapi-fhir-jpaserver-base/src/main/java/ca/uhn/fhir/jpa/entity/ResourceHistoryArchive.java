@@ -0,0 +1,174 @@
+package ca.uhn.fhir.jpa.entity;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2018 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.parser.DataFormatException;
+import org.apache.commons.lang3.Validate;
+
+import javax.persistence.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An archive segment holds the bodies of several old versions of a single resource,
+ * compressed together. Versions are grouped into segments by the calendar month
+ * (UTC) in which they were last updated, which is stored in the
+ * <code>PERIOD_START</code> column so that the table can be partitioned by time.
+ * <p>
+ * When a version is moved into a segment, its row in {@link ResourceHistoryTable}
+ * is kept (so that <code>_history</code> paging, counts and tags are unaffected)
+ * but its body is cleared and it refers to the segment instead.
+ * </p>
+ *
+ * @see ca.uhn.fhir.jpa.dao.DaoConfig#setHistoryArchiveAfterMillis(Long)
+ */
+@Entity()
+@Table(name = "HFJ_RES_VER_ARC", indexes = {
+	@Index(name = "IDX_RESVERARC_RES", columnList = "RES_ID"),
+	@Index(name = "IDX_RESVERARC_PERIOD", columnList = "PERIOD_START")
+})
+public class ResourceHistoryArchive implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	@SequenceGenerator(name = "SEQ_RESVERARC_ID", sequenceName = "SEQ_RESVERARC_ID")
+	@GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_RESVERARC_ID")
+	@Column(name = "PID")
+	private Long myId;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "PERIOD_START", nullable = false)
+	private Date myPeriodStart;
+
+	@Column(name = "RES_ID", nullable = false)
+	private Long myResourceId;
+
+	@Column(name = "RES_TYPE", length = 30, nullable = false)
+	private String myResourceType;
+
+	@Column(name = "SEG_DATA", length = Integer.MAX_VALUE - 1, nullable = false)
+	@Lob()
+	private byte[] mySegmentData;
+
+	@Column(name = "VER_HIGH", nullable = false)
+	private Long myVersionHigh;
+
+	@Column(name = "VER_LOW", nullable = false)
+	private Long myVersionLow;
+
+	public Long getId() {
+		return myId;
+	}
+
+	public Date getPeriodStart() {
+		return myPeriodStart;
+	}
+
+	public void setPeriodStart(Date thePeriodStart) {
+		myPeriodStart = thePeriodStart;
+	}
+
+	public Long getResourceId() {
+		return myResourceId;
+	}
+
+	public void setResourceId(Long theResourceId) {
+		myResourceId = theResourceId;
+	}
+
+	/**
+	 * Returns the encoded (uncompressed) body of the given version, or <code>null</code> if
+	 * the version is not contained in this segment
+	 */
+	public String getResourceText(long theVersion) {
+		if (theVersion < myVersionLow || theVersion > myVersionHigh) {
+			return null;
+		}
+		try {
+			DataInputStream is = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(mySegmentData)));
+			try {
+				int count = is.readInt();
+				for (int i = 0; i < count; i++) {
+					long version = is.readLong();
+					byte[] text = new byte[is.readInt()];
+					is.readFully(text);
+					if (version == theVersion) {
+						return new String(text, StandardCharsets.UTF_8);
+					}
+				}
+			} finally {
+				is.close();
+			}
+		} catch (IOException e) {
+			throw new DataFormatException("Failed to read archive segment " + myId, e);
+		}
+		return null;
+	}
+
+	public String getResourceType() {
+		return myResourceType;
+	}
+
+	public void setResourceType(String theResourceType) {
+		myResourceType = theResourceType;
+	}
+
+	public long getVersionHigh() {
+		return myVersionHigh;
+	}
+
+	public long getVersionLow() {
+		return myVersionLow;
+	}
+
+	/**
+	 * Sets the contents of this segment
+	 *
+	 * @param theVersionToText A map of version numbers to the encoded (uncompressed) body of that version
+	 */
+	public void setResourceTexts(SortedMap<Long, String> theVersionToText) {
+		Validate.notEmpty(theVersionToText, "theVersionToText must not be empty");
+		try {
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			DataOutputStream os = new DataOutputStream(new GZIPOutputStream(bos));
+			os.writeInt(theVersionToText.size());
+			for (Map.Entry<Long, String> next : theVersionToText.entrySet()) {
+				byte[] text = next.getValue().getBytes(StandardCharsets.UTF_8);
+				os.writeLong(next.getKey());
+				os.writeInt(text.length);
+				os.write(text);
+			}
+			os.close();
+			mySegmentData = bos.toByteArray();
+		} catch (IOException e) {
+			throw new DataFormatException("Failed to write archive segment", e);
+		}
+		myVersionLow = theVersionToText.firstKey();
+		myVersionHigh = theVersionToText.lastKey();
+	}
+
+}
@@ -49,6 +49,14 @@ public class ResourceHistoryTable extends BaseHasResource implements Serializabl
 	@Column(name = "PID")
 	private Long myId;
 
+	/**
+	 * If this version has been archived, this is the PID of the {@link ResourceHistoryArchive}
+	 * segment which holds its body, and {@link #getResource()} will return <code>null</code>
+	 */
+	@Column(name = "ARC_ID", nullable = true)
+	@OptimisticLock(excluded = true)
+	private Long myArchiveSegmentId;
+
 	@Column(name = "RES_ID")
 	private Long myResourceId;
 
@@ -102,6 +110,14 @@ public class ResourceHistoryTable extends BaseHasResource implements Serializabl
 		return historyTag;
 	}
 
+	public Long getArchiveSegmentId() {
+		return myArchiveSegmentId;
+	}
+
+	public void setArchiveSegmentId(Long theArchiveSegmentId) {
+		myArchiveSegmentId = theArchiveSegmentId;
+	}
+
 	public ResourceEncodingEnum getEncoding() {
 		return myEncoding;
 	}
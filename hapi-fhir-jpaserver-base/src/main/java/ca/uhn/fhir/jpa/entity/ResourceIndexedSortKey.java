@@ -0,0 +1,277 @@
+package ca.uhn.fhir.jpa.entity;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2018 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * Holds a single normalized sort value for a given resource and search parameter,
+ * so that <code>_sort</code> on that parameter can be served by an index-ordered
+ * scan instead of joining to the (possibly multi-valued) search parameter index table.
+ * <p>
+ * The <code>LOW</code> columns hold the smallest value the resource has for the
+ * parameter and are used for ascending sorts, and the <code>HIGH</code> columns
+ * hold the largest value and are used for descending sorts.
+ * </p>
+ *
+ * @see ca.uhn.fhir.jpa.dao.DaoConfig#setSortKeySearchParams(java.util.Set)
+ */
+@Entity()
+@Table(name = "HFJ_SPIDX_SORT", indexes = {
+	@Index(name = ResourceIndexedSortKey.IDX_SPIDXSORT_STRING_LOW, columnList = "SP_NAME,RES_TYPE,SORT_STRING_LOW"),
+	@Index(name = ResourceIndexedSortKey.IDX_SPIDXSORT_STRING_HIGH, columnList = "SP_NAME,RES_TYPE,SORT_STRING_HIGH"),
+	@Index(name = ResourceIndexedSortKey.IDX_SPIDXSORT_NUMBER_LOW, columnList = "SP_NAME,RES_TYPE,SORT_NUMBER_LOW"),
+	@Index(name = ResourceIndexedSortKey.IDX_SPIDXSORT_NUMBER_HIGH, columnList = "SP_NAME,RES_TYPE,SORT_NUMBER_HIGH"),
+	@Index(name = ResourceIndexedSortKey.IDX_SPIDXSORT_DATE_LOW, columnList = "SP_NAME,RES_TYPE,SORT_DATE_LOW"),
+	@Index(name = ResourceIndexedSortKey.IDX_SPIDXSORT_DATE_HIGH, columnList = "SP_NAME,RES_TYPE,SORT_DATE_HIGH"),
+	@Index(name = ResourceIndexedSortKey.IDX_SPIDXSORT_RESOURCE, columnList = "RES_ID")
+})
+public class ResourceIndexedSortKey {
+
+	public static final int MAX_STRING_LENGTH = 255;
+	public static final String IDX_SPIDXSORT_STRING_LOW = "IDX_SPIDXSORT_STRING_LOW";
+	public static final String IDX_SPIDXSORT_STRING_HIGH = "IDX_SPIDXSORT_STRING_HIGH";
+	public static final String IDX_SPIDXSORT_NUMBER_LOW = "IDX_SPIDXSORT_NUMBER_LOW";
+	public static final String IDX_SPIDXSORT_NUMBER_HIGH = "IDX_SPIDXSORT_NUMBER_HIGH";
+	public static final String IDX_SPIDXSORT_DATE_LOW = "IDX_SPIDXSORT_DATE_LOW";
+	public static final String IDX_SPIDXSORT_DATE_HIGH = "IDX_SPIDXSORT_DATE_HIGH";
+	public static final String IDX_SPIDXSORT_RESOURCE = "IDX_SPIDXSORT_RESOURCE";
+
+	@SequenceGenerator(name = "SEQ_SPIDX_SORT", sequenceName = "SEQ_SPIDX_SORT")
+	@GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_SPIDX_SORT")
+	@Id
+	@Column(name = "PID")
+	private Long myId;
+
+	@ManyToOne
+	@JoinColumn(name = "RES_ID", referencedColumnName = "RES_ID", foreignKey = @ForeignKey(name = "FK_SPIDXSORT_RES_ID"))
+	private ResourceTable myResource;
+	@Column(name = "RES_ID", insertable = false, updatable = false)
+	private Long myResourcePid;
+	@Column(name = "RES_TYPE", nullable = false, length = ResourceTable.RESTYPE_LEN)
+	private String myResourceType;
+	@Column(name = "SP_NAME", nullable = false, length = BaseResourceIndexedSearchParam.MAX_SP_NAME)
+	private String myParamName;
+
+	@Column(name = "SORT_STRING_LOW", nullable = true, length = MAX_STRING_LENGTH)
+	private String myStringLow;
+	@Column(name = "SORT_STRING_HIGH", nullable = true, length = MAX_STRING_LENGTH)
+	private String myStringHigh;
+	@Column(name = "SORT_NUMBER_LOW", nullable = true)
+	private BigDecimal myNumberLow;
+	@Column(name = "SORT_NUMBER_HIGH", nullable = true)
+	private BigDecimal myNumberHigh;
+	@Column(name = "SORT_DATE_LOW", nullable = true)
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date myDateLow;
+	@Column(name = "SORT_DATE_HIGH", nullable = true)
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date myDateHigh;
+
+	/**
+	 * Constructor
+	 */
+	public ResourceIndexedSortKey() {
+		super();
+	}
+
+	/**
+	 * Constructor
+	 */
+	public ResourceIndexedSortKey(ResourceTable theResource, String theParamName) {
+		setResource(theResource);
+		setParamName(theParamName);
+	}
+
+	/**
+	 * Adds a date value for this parameter, widening the low/high range if needed
+	 */
+	public void addDateValue(Date theValue) {
+		if (theValue == null) {
+			return;
+		}
+		if (myDateLow == null || theValue.before(myDateLow)) {
+			myDateLow = theValue;
+		}
+		if (myDateHigh == null || theValue.after(myDateHigh)) {
+			myDateHigh = theValue;
+		}
+	}
+
+	/**
+	 * Adds a numeric value for this parameter, widening the low/high range if needed
+	 */
+	public void addNumberValue(BigDecimal theValue) {
+		if (theValue == null) {
+			return;
+		}
+		if (myNumberLow == null || theValue.compareTo(myNumberLow) < 0) {
+			myNumberLow = theValue;
+		}
+		if (myNumberHigh == null || theValue.compareTo(myNumberHigh) > 0) {
+			myNumberHigh = theValue;
+		}
+	}
+
+	/**
+	 * Adds a string value for this parameter, widening the low/high range if needed
+	 */
+	public void addStringValue(String theValue) {
+		if (theValue == null) {
+			return;
+		}
+		String value = StringUtils.left(theValue, MAX_STRING_LENGTH);
+		if (myStringLow == null || value.compareTo(myStringLow) < 0) {
+			myStringLow = value;
+		}
+		if (myStringHigh == null || value.compareTo(myStringHigh) > 0) {
+			myStringHigh = value;
+		}
+	}
+
+	@Override
+	public boolean equals(Object theO) {
+		if (this == theO) return true;
+
+		if (!(theO instanceof ResourceIndexedSortKey)) {
+			return false;
+		}
+
+		ResourceIndexedSortKey that = (ResourceIndexedSortKey) theO;
+
+		return new EqualsBuilder()
+			.append(myParamName, that.myParamName)
+			.append(myStringLow, that.myStringLow)
+			.append(myStringHigh, that.myStringHigh)
+			.append(normalize(myNumberLow), normalize(that.myNumberLow))
+			.append(normalize(myNumberHigh), normalize(that.myNumberHigh))
+			.append(getTime(myDateLow), getTime(that.myDateLow))
+			.append(getTime(myDateHigh), getTime(that.myDateHigh))
+			.isEquals();
+	}
+
+	public Date getDateHigh() {
+		return myDateHigh;
+	}
+
+	public Date getDateLow() {
+		return myDateLow;
+	}
+
+	public BigDecimal getNumberHigh() {
+		return myNumberHigh;
+	}
+
+	public BigDecimal getNumberLow() {
+		return myNumberLow;
+	}
+
+	public String getParamName() {
+		return myParamName;
+	}
+
+	public void setParamName(String theParamName) {
+		myParamName = theParamName;
+	}
+
+	public ResourceTable getResource() {
+		return myResource;
+	}
+
+	public void setResource(ResourceTable theResource) {
+		Validate.notNull(theResource);
+		myResource = theResource;
+		myResourceType = theResource.getResourceType();
+	}
+
+	public String getResourceType() {
+		return myResourceType;
+	}
+
+	public String getStringHigh() {
+		return myStringHigh;
+	}
+
+	public String getStringLow() {
+		return myStringLow;
+	}
+
+	@Override
+	public int hashCode() {
+		return new HashCodeBuilder(17, 37)
+			.append(myParamName)
+			.append(myStringLow)
+			.append(myStringHigh)
+			.append(normalize(myNumberLow))
+			.append(normalize(myNumberHigh))
+			.append(getTime(myDateLow))
+			.append(getTime(myDateHigh))
+			.toHashCode();
+	}
+
+	/**
+	 * Is there any value at all to sort on?
+	 */
+	public boolean isEmpty() {
+		return myStringLow == null && myNumberLow == null && myDateLow == null;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+			.append("id", myId)
+			.append("resourceId", myResourcePid)
+			.append("paramName", myParamName)
+			.append("stringLow", myStringLow)
+			.append("stringHigh", myStringHigh)
+			.append("numberLow", myNumberLow)
+			.append("numberHigh", myNumberHigh)
+			.append("dateLow", myDateLow)
+			.append("dateHigh", myDateHigh)
+			.toString();
+	}
+
+	/**
+	 * Dates loaded from the database are {@link java.sql.Timestamp} instances, which
+	 * don't compare as equal to plain {@link Date}s so we compare the millis instead
+	 */
+	private static Long getTime(Date theDate) {
+		return theDate != null ? theDate.getTime() : null;
+	}
+
+	/**
+	 * The database may hand back numbers with a different scale than the one we stored
+	 */
+	private static BigDecimal normalize(BigDecimal theNumber) {
+		return theNumber != null ? theNumber.stripTrailingZeros() : null;
+	}
+
+}
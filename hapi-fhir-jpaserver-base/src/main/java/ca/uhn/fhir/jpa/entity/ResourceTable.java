@@ -53,6 +53,10 @@ public class ResourceTable extends BaseHasResource implements Serializable {
 	static final int RESTYPE_LEN = 30;
 	private static final int MAX_LANGUAGE_LENGTH = 20;
 	private static final int MAX_PROFILE_LENGTH = 200;
+	public static final int MAX_PARAMS_PRESENCE_LENGTH = 200;
+	public static final char PARAM_PRESENCE_PRESENT = '1';
+	public static final char PARAM_PRESENCE_MISSING = '0';
+	public static final char PARAM_PRESENCE_UNKNOWN = '-';
 	private static final long serialVersionUID = 1L;
 
 //	@Transient
@@ -173,6 +177,11 @@ public class ResourceTable extends BaseHasResource implements Serializable {
 	@OptimisticLock(excluded = true)
 	private String myProfile;
 
+	// Added in 3.3.0
+	@Column(name = "SP_PRESENCE", length = MAX_PARAMS_PRESENCE_LENGTH, nullable = true)
+	@OptimisticLock(excluded = true)
+	private String myParamsPresence;
+
 	// Added in 3.0.0 - Should make this a primitive Boolean at some point
 	@OptimisticLock(excluded = true)
 	@Column(name = "SP_CMPSTR_UNIQ_PRESENT")
@@ -182,6 +191,11 @@ public class ResourceTable extends BaseHasResource implements Serializable {
 	@OptimisticLock(excluded = true)
 	private Collection<ResourceIndexedCompositeStringUnique> myParamsCompositeStringUnique;
 
+	// Added in 3.3.0
+	@OneToMany(mappedBy = "myResource", cascade = {}, fetch = FetchType.LAZY, orphanRemoval = false)
+	@OptimisticLock(excluded = true)
+	private Collection<ResourceIndexedSortKey> myParamsSortKey;
+
 	@OneToMany(mappedBy = "mySourceResource", cascade = {}, fetch = FetchType.LAZY, orphanRemoval = false)
 	@IndexedEmbedded()
 	@OptimisticLock(excluded = true)
@@ -285,6 +299,13 @@ public class ResourceTable extends BaseHasResource implements Serializable {
 		myParamsCompositeStringUnique = theParamsCompositeStringUnique;
 	}
 
+	public Collection<ResourceIndexedSortKey> getParamsSortKey() {
+		if (myParamsSortKey == null) {
+			myParamsSortKey = new ArrayList<>();
+		}
+		return myParamsSortKey;
+	}
+
 	public Collection<ResourceIndexedSearchParamCoords> getParamsCoords() {
 		if (myParamsCoords == null) {
 			myParamsCoords = new ArrayList<>();
@@ -390,6 +411,20 @@ public class ResourceTable extends BaseHasResource implements Serializable {
 		getParamsUri().addAll(theParamsUri);
 	}
 
+	/**
+	 * Returns the presence of the reference search parameters of this resource, with one
+	 * character per search parameter at the position given by {@link SearchParamOrdinal#getOrdinal()}.
+	 * Each character is one of {@link #PARAM_PRESENCE_PRESENT}, {@link #PARAM_PRESENCE_MISSING}
+	 * or {@link #PARAM_PRESENCE_UNKNOWN}.
+	 */
+	public String getParamsPresence() {
+		return myParamsPresence;
+	}
+
+	public void setParamsPresence(String theParamsPresence) {
+		myParamsPresence = theParamsPresence;
+	}
+
 	public String getProfile() {
 		return myProfile;
 	}
@@ -62,6 +62,21 @@ public class Search implements Serializable {
 	@Column(name="FAILURE_MESSAGE", length=FAILURE_MESSAGE_LENGTH, nullable=true)
 	private String myFailureMessage;
 
+	/**
+	 * For history searches, the index of the first result after the last page
+	 * that was loaded, which is where the next page can be loaded from using
+	 * the cursor (as opposed to an offset)
+	 */
+	@Column(name="HISTORY_CURSOR_OFFSET", nullable=true)
+	private Integer myHistoryCursorOffset;
+
+	@Column(name="HISTORY_CURSOR_PID", nullable=true)
+	private Long myHistoryCursorPid;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name="HISTORY_CURSOR_UPDATED", nullable=true)
+	private Date myHistoryCursorUpdated;
+
 	@Id
 	@GeneratedValue(strategy = GenerationType.AUTO, generator="SEQ_SEARCH")
 	@SequenceGenerator(name="SEQ_SEARCH", sequenceName="SEQ_SEARCH")
@@ -141,6 +156,18 @@ public class Search implements Serializable {
 		return myFailureMessage;
 	}
 
+	public Integer getHistoryCursorOffset() {
+		return myHistoryCursorOffset;
+	}
+
+	public Long getHistoryCursorPid() {
+		return myHistoryCursorPid;
+	}
+
+	public Date getHistoryCursorUpdated() {
+		return myHistoryCursorUpdated;
+	}
+
 	public Long getId() {
 		return myId;
 	}
@@ -221,6 +248,16 @@ public class Search implements Serializable {
 		myFailureMessage = left(theFailureMessage, FAILURE_MESSAGE_LENGTH);
 	}
 
+	/**
+	 * Sets the position of the last result returned by a history search, so that the
+	 * next page can be loaded by continuing from that result
+	 */
+	public void setHistoryCursor(Integer theOffset, Date theUpdated, Long thePid) {
+		myHistoryCursorOffset = theOffset;
+		myHistoryCursorUpdated = theUpdated;
+		myHistoryCursorPid = thePid;
+	}
+
 	public void setLastUpdated(Date theLowerBound, Date theUpperBound) {
 		myLastUpdatedLow = theLowerBound;
 		myLastUpdatedHigh = theUpperBound;
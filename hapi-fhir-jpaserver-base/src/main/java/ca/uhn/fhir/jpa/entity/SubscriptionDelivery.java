@@ -0,0 +1,127 @@
+package ca.uhn.fhir.jpa.entity;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2018 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * A subscription delivery which has been queued but not yet successfully delivered. Rows
+ * are removed once the delivery succeeds (or is abandoned after too many attempts), so
+ * anything left in this table when the server stops is delivered after it restarts.
+ *
+ * @see ca.uhn.fhir.jpa.subscription.DurableDeliveryChannel
+ */
+@Entity()
+@Table(name = "HFJ_SUBS_DELIVERY", indexes = {
+	@Index(name = "IDX_SUBSDELIV_DUE", columnList = "CHANNEL_NAME,SUBSCRIPTION_ID,NEXT_ATTEMPT")
+})
+public class SubscriptionDelivery implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@Column(name = "ATTEMPT_COUNT", nullable = false)
+	private int myAttemptCount;
+
+	@Column(name = "CHANNEL_NAME", length = 20, nullable = false)
+	private String myChannelName;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "CREATED", nullable = false)
+	private Date myCreated;
+
+	@Id
+	@SequenceGenerator(name = "SEQ_SUBS_DELIVERY", sequenceName = "SEQ_SUBS_DELIVERY")
+	@GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_SUBS_DELIVERY")
+	@Column(name = "PID")
+	private Long myId;
+
+	@Column(name = "MESSAGE_TEXT", length = Integer.MAX_VALUE - 1, nullable = false)
+	@Lob()
+	private String myMessageText;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "NEXT_ATTEMPT", nullable = false)
+	private Date myNextAttempt;
+
+	@Column(name = "SUBSCRIPTION_ID", length = 200, nullable = false)
+	private String mySubscriptionId;
+
+	public int getAttemptCount() {
+		return myAttemptCount;
+	}
+
+	public void setAttemptCount(int theAttemptCount) {
+		myAttemptCount = theAttemptCount;
+	}
+
+	public String getChannelName() {
+		return myChannelName;
+	}
+
+	public void setChannelName(String theChannelName) {
+		myChannelName = theChannelName;
+	}
+
+	public Date getCreated() {
+		return myCreated;
+	}
+
+	public void setCreated(Date theCreated) {
+		myCreated = theCreated;
+	}
+
+	public Long getId() {
+		return myId;
+	}
+
+	/**
+	 * The delivery message, encoded as JSON
+	 */
+	public String getMessageText() {
+		return myMessageText;
+	}
+
+	public void setMessageText(String theMessageText) {
+		myMessageText = theMessageText;
+	}
+
+	/**
+	 * The delivery will not be attempted before this time
+	 */
+	public Date getNextAttempt() {
+		return myNextAttempt;
+	}
+
+	public void setNextAttempt(Date theNextAttempt) {
+		myNextAttempt = theNextAttempt;
+	}
+
+	public String getSubscriptionId() {
+		return mySubscriptionId;
+	}
+
+	public void setSubscriptionId(String theSubscriptionId) {
+		mySubscriptionId = theSubscriptionId;
+	}
+
+}
@@ -26,15 +26,20 @@ import ca.uhn.fhir.jpa.dao.BaseHapiFhirDao;
 import ca.uhn.fhir.jpa.dao.IFhirResourceDao;
 import ca.uhn.fhir.jpa.dao.SearchParameterMap;
 import ca.uhn.fhir.jpa.entity.BaseHasResource;
+import ca.uhn.fhir.jpa.entity.ResourceTable;
 import ca.uhn.fhir.model.api.IQueryParameterType;
+import ca.uhn.fhir.parser.DataFormatException;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.param.*;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.exceptions.NotImplementedOperationException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import org.hl7.fhir.exceptions.FHIRException;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.DomainResource;
+import org.hl7.fhir.r4.model.IdType;
 import org.hl7.fhir.r4.model.Reference;
 import org.hl7.fhir.r4.model.Resource;
 import org.hl7.fhir.r4.utils.GraphQLEngine;
@@ -43,10 +48,20 @@ import org.hl7.fhir.utilities.graphql.Value;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.List;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+import java.util.*;
 
-public class JpaStorageServices extends BaseHapiFhirDao<IBaseResource> implements GraphQLEngine.IGraphQLStorageServices {
+import static org.apache.commons.lang3.StringUtils.isBlank;
 
+public class JpaStorageServices extends BaseHapiFhirDao<IBaseResource> implements GraphQLEngine.IGraphQLBatchingStorageServices {
+
+	/**
+	 * Some databases (Oracle) don't like more than ~1000 parameters in a single IN clause
+	 */
+	private static final int MAX_REFERENCES_PER_LOAD = 800;
 
 	private IFhirResourceDao<? extends IBaseResource> getDao(String theResourceType) {
 		RuntimeResourceDefinition typeDef = getContext().getResourceDefinition(theResourceType);
@@ -124,9 +139,112 @@ public class JpaStorageServices extends BaseHapiFhirDao<IBaseResource> implement
 		return (Resource) toResource(id, false);
 	}
 
+	@Transactional(propagation = Propagation.REQUIRED)
 	@Override
-	public ReferenceResolution lookup(Object appInfo, Resource context, Reference reference) throws FHIRException {
-		return null;
+	public ReferenceResolution lookup(Object theAppInfo, Resource theContext, Reference theReference) throws FHIRException {
+		String reference = theReference.getReference();
+		if (isBlank(reference)) {
+			return null;
+		}
+
+		if (reference.startsWith("#")) {
+			if (theContext instanceof DomainResource) {
+				for (Resource next : ((DomainResource) theContext).getContained()) {
+					if (reference.equals(next.getId()) || reference.substring(1).equals(next.getIdElement().getIdPart())) {
+						return new ReferenceResolution(theContext, next);
+					}
+				}
+			}
+			return null;
+		}
+
+		IdType id = new IdType(reference);
+		if (!isLocalReference(id)) {
+			return null;
+		}
+
+		try {
+			Resource target = lookup(theAppInfo, id.getResourceType(), id.getIdPart());
+			return new ReferenceResolution(target, target);
+		} catch (ResourceNotFoundException e) {
+			return null;
+		} catch (DataFormatException e) {
+			// Unknown resource type
+			return null;
+		}
+	}
+
+	/**
+	 * Resolves a set of references using a single database load for all of the
+	 * targets (broken up into chunks for very large sets), instead of one read per
+	 * reference
+	 */
+	@Transactional(propagation = Propagation.REQUIRED)
+	@Override
+	public Map<String, Resource> lookup(Object theAppInfo, Set<String> theReferences) throws FHIRException {
+		Map<String, Resource> retVal = new HashMap<>();
+
+		/*
+		 * Several references may point to the same target, so each PID is
+		 * loaded once and handed back for every reference that points to it
+		 */
+		Map<Long, List<IdType>> pidToReferences = new LinkedHashMap<>();
+		for (String nextReference : theReferences) {
+			IdType id = new IdType(nextReference);
+			if (!isLocalReference(id)) {
+				continue;
+			}
+
+			List<Long> pids;
+			try {
+				pids = translateForcedIdToPids(id);
+			} catch (ResourceNotFoundException e) {
+				continue;
+			}
+
+			for (Long nextPid : pids) {
+				List<IdType> references = pidToReferences.get(nextPid);
+				if (references == null) {
+					references = new ArrayList<>();
+					pidToReferences.put(nextPid, references);
+				}
+				references.add(id);
+			}
+		}
+
+		List<Long> pids = new ArrayList<>(pidToReferences.keySet());
+		for (int i = 0; i < pids.size(); i += MAX_REFERENCES_PER_LOAD) {
+			List<Long> pidsSubList = pids.subList(i, Math.min(i + MAX_REFERENCES_PER_LOAD, pids.size()));
+
+			CriteriaBuilder builder = myEntityManager.getCriteriaBuilder();
+			CriteriaQuery<ResourceTable> cq = builder.createQuery(ResourceTable.class);
+			Root<ResourceTable> from = cq.from(ResourceTable.class);
+			cq.where(from.get("myId").in(pidsSubList));
+			TypedQuery<ResourceTable> q = myEntityManager.createQuery(cq);
+
+			for (ResourceTable next : q.getResultList()) {
+				if (next.getDeleted() != null) {
+					continue;
+				}
+				Resource resource = (Resource) toResource(next, false);
+				if (resource == null) {
+					continue;
+				}
+
+				// Numeric IDs are not checked against the resource type when they are translated
+				for (IdType nextReference : pidToReferences.get(next.getId())) {
+					if (nextReference.getResourceType().equals(next.getResourceType())) {
+						retVal.put(nextReference.getValue(), resource);
+					}
+				}
+			}
+		}
+
+		return retVal;
+	}
+
+	private boolean isLocalReference(IdType theId) {
+		return !theId.isAbsolute() && theId.hasResourceType() && theId.hasIdPart() && !theId.hasVersionIdPart();
 	}
 
 	@Transactional(propagation = Propagation.NEVER)
@@ -34,6 +34,10 @@ import ca.uhn.fhir.rest.param.DateRangeParam;
 
 public class BaseJpaSystemProvider<T, MT> extends BaseJpaProvider {
 
+	/**
+	 * Operation which returns the slowest searches from the last hour, along with their JPQL
+	 */
+	public static final String GET_SLOWEST_SEARCHES = "$get-slowest-searches";
 	public static final String MARK_ALL_RESOURCES_FOR_REINDEXING = "$mark-all-resources-for-reindexing";
 	public static final String PERFORM_REINDEXING_PASS = "$perform-reindexing-pass";
 
@@ -23,13 +23,35 @@ package ca.uhn.fhir.jpa.provider;
 import org.hl7.fhir.instance.model.api.IBaseParameters;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IPrimitiveType;
+import org.springframework.beans.factory.annotation.Autowired;
 
+import ca.uhn.fhir.jpa.search.ISearchMetricsSvc;
+import ca.uhn.fhir.jpa.search.SearchMetricsSvcImpl;
 import ca.uhn.fhir.rest.annotation.Operation;
 import ca.uhn.fhir.rest.annotation.OperationParam;
+import ca.uhn.fhir.rest.server.exceptions.NotImplementedOperationException;
 import ca.uhn.fhir.util.ParametersUtil;
 
 public abstract class BaseJpaSystemProviderDstu2Plus<T, MT> extends BaseJpaSystemProvider<T, MT> {
 
+	@Autowired(required = false)
+	private ISearchMetricsSvc mySearchMetricsSvc;
+
+	/**
+	 * Returns the slowest searches which have completed within the last hour, slowest first. This
+	 * is only available if the {@link ISearchMetricsSvc} is a {@link SearchMetricsSvcImpl} (which
+	 * is the default).
+	 */
+	@Operation(name=GET_SLOWEST_SEARCHES, idempotent=true, returnParameters= {
+		@OperationParam(name="search", min=0, max=OperationParam.MAX_UNLIMITED)
+	})
+	public IBaseResource getSlowestSearches() {
+		if (!(mySearchMetricsSvc instanceof SearchMetricsSvcImpl)) {
+			throw new NotImplementedOperationException("Slow searches are not being recorded by this server");
+		}
+		return ((SearchMetricsSvcImpl) mySearchMetricsSvc).getSlowestRecentQueriesAsParameters(getContext());
+	}
+
 	@Operation(name=MARK_ALL_RESOURCES_FOR_REINDEXING, idempotent=true, returnParameters= {
 		@OperationParam(name="status")
 	})
@@ -0,0 +1,57 @@
+package ca.uhn.fhir.jpa.search;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2018 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Receives timings for the individual phases of JPA searches. The default
+ * implementation ({@link SearchMetricsSvcImpl}) keeps these in memory, but this
+ * interface may be implemented in order to forward them to a metrics library
+ * instead by replacing the <code>searchMetricsSvc</code> bean.
+ * <p>
+ * Implementations are called on the thread performing the search, so they
+ * must be thread safe and should return quickly.
+ * </p>
+ */
+public interface ISearchMetricsSvc {
+
+	/**
+	 * Records the time taken by one phase of a search
+	 *
+	 * @param theResourceType   The resource type being searched for (may be <code>null</code> for system level searches)
+	 * @param theParameterShape The parameters used by the search without their values (see
+	 *                          {@link ca.uhn.fhir.jpa.dao.SearchParameterMap#toParameterShape(String)})
+	 * @param thePhase          The phase of the search
+	 * @param theMillis         The time taken
+	 */
+	void recordPhase(String theResourceType, String theParameterShape, SearchPhaseEnum thePhase, long theMillis);
+
+	/**
+	 * Records that the query for a search has returned all of its results
+	 *
+	 * @param theResourceType   The resource type being searched for (may be <code>null</code> for system level searches)
+	 * @param theParameterShape The parameters used by the search without their values
+	 * @param theJpql           The JPQL query which was executed
+	 * @param theMillis         The total time taken from starting to build the query until all results had been fetched
+	 * @param theResultCount    The number of matching resources
+	 */
+	void recordQuery(String theResourceType, String theParameterShape, String theJpql, long theMillis, int theResultCount);
+
+}
@@ -0,0 +1,45 @@
+package ca.uhn.fhir.jpa.search;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2018 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Keeps track of how many resources were found to match individual search criteria,
+ * so that the search builder can decide how to execute chained searches
+ */
+public interface ISearchSelectivitySvc {
+
+	/**
+	 * Returns the number of matches which were recently recorded for the given criteria, or
+	 * <code>null</code> if nothing has been recorded or the recorded value has expired
+	 *
+	 * @param theCriteria A key describing the criteria, e.g. <code>Patient?name=smith</code>
+	 */
+	Integer getEstimatedMatchCount(String theCriteria);
+
+	/**
+	 * Records the number of matches found for the given criteria. If only a limited number
+	 * of results was fetched, this is the lower bound.
+	 */
+	void recordMatchCount(String theCriteria, int theMatchCount);
+
+	void flushCachesForUnitTest();
+
+}
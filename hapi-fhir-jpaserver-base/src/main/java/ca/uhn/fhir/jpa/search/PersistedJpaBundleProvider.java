@@ -23,11 +23,13 @@ package ca.uhn.fhir.jpa.search;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.jpa.dao.IDao;
 import ca.uhn.fhir.jpa.dao.ISearchBuilder;
+import ca.uhn.fhir.jpa.dao.SearchParameterMap;
 import ca.uhn.fhir.jpa.dao.data.ISearchDao;
 import ca.uhn.fhir.jpa.entity.BaseHasResource;
 import ca.uhn.fhir.jpa.entity.ResourceHistoryTable;
 import ca.uhn.fhir.jpa.entity.Search;
 import ca.uhn.fhir.jpa.entity.SearchTypeEnum;
+import ca.uhn.fhir.jpa.util.StopWatch;
 import ca.uhn.fhir.model.primitive.InstantDt;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import org.hl7.fhir.instance.model.api.IBaseResource;
@@ -55,6 +57,7 @@ public class PersistedJpaBundleProvider implements IBundleProvider {
 	private ISearchCoordinatorSvc mySearchCoordinatorSvc;
 	private ISearchDao mySearchDao;
 	private Search mySearchEntity;
+	private ISearchMetricsSvc mySearchMetricsSvc;
 	private String myUuid;
 	private boolean myCacheHit;
 
@@ -86,16 +89,35 @@ public class PersistedJpaBundleProvider implements IBundleProvider {
 			predicates.add(cb.lessThanOrEqualTo(from.get("myUpdated").as(Date.class), mySearchEntity.getLastUpdatedHigh()));
 		}
 
+		/*
+		 * If this page starts exactly where the previous page ended, continue from the last
+		 * entry of the previous page instead of asking the database to skip over all of the
+		 * preceding rows, which gets very slow for deep pages in a large history table
+		 */
+		boolean useCursor = theFromIndex > 0
+			&& Integer.valueOf(theFromIndex).equals(mySearchEntity.getHistoryCursorOffset())
+			&& mySearchEntity.getHistoryCursorUpdated() != null
+			&& mySearchEntity.getHistoryCursorPid() != null;
+		if (useCursor) {
+			Date cursorUpdated = mySearchEntity.getHistoryCursorUpdated();
+			Long cursorPid = mySearchEntity.getHistoryCursorPid();
+			Predicate olderThanCursor = cb.lessThan(from.get("myUpdated").as(Date.class), cursorUpdated);
+			Predicate sameTimeAsCursor = cb.and(cb.equal(from.get("myUpdated").as(Date.class), cursorUpdated), cb.lessThan(from.<Long>get("myId"), cursorPid));
+			predicates.add(cb.or(olderThanCursor, sameTimeAsCursor));
+		}
+
 		if (predicates.size() > 0) {
 			q.where(predicates.toArray(new Predicate[predicates.size()]));
 		}
 
-		q.orderBy(cb.desc(from.get("myUpdated")));
+		q.orderBy(cb.desc(from.get("myUpdated")), cb.desc(from.get("myId")));
 
 		TypedQuery<ResourceHistoryTable> query = myEntityManager.createQuery(q);
 
 		if (theToIndex - theFromIndex > 0) {
-			query.setFirstResult(theFromIndex);
+			if (!useCursor) {
+				query.setFirstResult(theFromIndex);
+			}
 			query.setMaxResults(theToIndex - theFromIndex);
 		}
 
@@ -109,6 +131,13 @@ public class PersistedJpaBundleProvider implements IBundleProvider {
 			retVal.add(myDao.toResource(resource, true));
 		}
 
+		if (!results.isEmpty() && mySearchEntity.getId() != null) {
+			ResourceHistoryTable last = results.get(results.size() - 1);
+			int nextOffset = theFromIndex + results.size();
+			mySearchDao.updateHistoryCursor(mySearchEntity.getId(), nextOffset, last.getUpdatedDate(), last.getId());
+			mySearchEntity.setHistoryCursor(nextOffset, last.getUpdatedDate(), last.getId());
+		}
+
 		return retVal;
 	}
 
@@ -245,6 +274,10 @@ public class PersistedJpaBundleProvider implements IBundleProvider {
 		mySearchEntity = theSearchEntity;
 	}
 
+	public void setSearchMetricsSvc(ISearchMetricsSvc theSearchMetricsSvc) {
+		mySearchMetricsSvc = theSearchMetricsSvc;
+	}
+
 	@Override
 	public Integer size() {
 		ensureSearchEntityLoaded();
@@ -255,16 +288,26 @@ public class PersistedJpaBundleProvider implements IBundleProvider {
 		return Math.max(0, size);
 	}
 
+	private void recordPhase(SearchPhaseEnum thePhase, long theMillis) {
+		if (mySearchMetricsSvc != null) {
+			String shape = SearchParameterMap.toParameterShape(mySearchEntity.getSearchQueryString());
+			mySearchMetricsSvc.recordPhase(mySearchEntity.getResourceType(), shape, thePhase, theMillis);
+		}
+	}
+
 	protected List<IBaseResource> toResourceList(ISearchBuilder sb, List<Long> pidsSubList) {
+		StopWatch sw = new StopWatch();
 		Set<Long> includedPids = new HashSet<Long>();
 		if (mySearchEntity.getSearchType() == SearchTypeEnum.SEARCH) {
 			includedPids.addAll(sb.loadReverseIncludes(myDao, myContext, myEntityManager, pidsSubList, mySearchEntity.toRevIncludesList(), true, mySearchEntity.getLastUpdated()));
 			includedPids.addAll(sb.loadReverseIncludes(myDao, myContext, myEntityManager, pidsSubList, mySearchEntity.toIncludesList(), false, mySearchEntity.getLastUpdated()));
+			recordPhase(SearchPhaseEnum.INCLUDE_RESOLUTION, sw.getMillisAndRestart());
 		}
 
 		// Execute the query and make sure we return distinct results
 		List<IBaseResource> resources = new ArrayList<>();
 		sb.loadResourcesByPid(pidsSubList, resources, includedPids, false, myEntityManager, myContext, myDao);
+		recordPhase(SearchPhaseEnum.RESOURCE_LOAD, sw.getMillis());
 
 		return resources;
 	}
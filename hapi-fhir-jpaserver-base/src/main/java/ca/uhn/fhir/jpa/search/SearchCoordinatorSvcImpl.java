@@ -29,8 +29,11 @@ import ca.uhn.fhir.jpa.dao.data.ISearchDao;
 import ca.uhn.fhir.jpa.dao.data.ISearchIncludeDao;
 import ca.uhn.fhir.jpa.dao.data.ISearchResultDao;
 import ca.uhn.fhir.jpa.entity.*;
+import ca.uhn.fhir.jpa.util.LatencyHistogram;
+import ca.uhn.fhir.jpa.util.LongArrayList;
 import ca.uhn.fhir.jpa.util.StopWatch;
 import ca.uhn.fhir.model.api.Include;
+import ca.uhn.fhir.model.api.IQueryParameterType;
 import ca.uhn.fhir.rest.api.CacheControlDirective;
 import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
@@ -77,6 +80,7 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 	@Autowired
 	private EntityManager myEntityManager;
 	private ExecutorService myExecutor;
+	private final LatencyHistogram myFirstPageLatencyHistogram = new LatencyHistogram();
 	private Integer myLoadingThrottleForUnitTests = null;
 	private long myMaxMillisToWaitForRemoteResults = DateUtils.MILLIS_PER_MINUTE;
 	private boolean myNeverUseLocalSearchForUnitTests;
@@ -84,11 +88,14 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 	private ISearchDao mySearchDao;
 	@Autowired
 	private ISearchIncludeDao mySearchIncludeDao;
+	@Autowired(required = false)
+	private ISearchMetricsSvc mySearchMetricsSvc;
 	@Autowired
 	private ISearchResultDao mySearchResultDao;
 	@Autowired
 	private PlatformTransactionManager myManagedTxManager;
 
+	private final LatencyHistogram mySearchCompletionLatencyHistogram = new LatencyHistogram();
 	private int mySyncSize = DEFAULT_SYNC_SIZE;
 
 	/**
@@ -111,6 +118,22 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 		}
 	}
 
+	/**
+	 * Returns a histogram of the time between a new search being registered and its first
+	 * page of results being available to return to the client
+	 */
+	public LatencyHistogram getFirstPageLatencyHistogram() {
+		return myFirstPageLatencyHistogram;
+	}
+
+	/**
+	 * Returns a histogram of the time between a new search being registered and all of
+	 * its results having been loaded and saved
+	 */
+	public LatencyHistogram getSearchCompletionLatencyHistogram() {
+		return mySearchCompletionLatencyHistogram;
+	}
+
 	@Override
 	@Transactional(propagation = Propagation.NEVER)
 	public List<Long> getResources(final String theUuid, int theFrom, int theTo) {
@@ -221,6 +244,36 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 			loadSynchronousUpTo = null;
 		}
 
+		if (theParams.isCountOnly() && theParams.getEverythingMode() == null) {
+
+			ourLog.debug("Search {} is only counting results", searchUuid);
+
+			/*
+			 * The client only wants the total, so we count the matching resources
+			 * directly instead of loading and storing their IDs
+			 */
+			TransactionTemplate txTemplate = new TransactionTemplate(myManagedTxManager);
+			txTemplate.setPropagationBehavior(TransactionTemplate.PROPAGATION_REQUIRED);
+			final Long count = txTemplate.execute(new TransactionCallback<Long>() {
+				@Override
+				public Long doInTransaction(TransactionStatus theStatus) {
+					return sb.createCountQuery(theParams, searchUuid);
+				}
+			});
+
+			return new SimpleBundleProvider() {
+				@Override
+				public List<IBaseResource> getResources(int theFromIndex, int theToIndex) {
+					return Collections.emptyList();
+				}
+
+				@Override
+				public Integer size() {
+					return count.intValue();
+				}
+			};
+		}
+
 		if (theParams.isLoadSynchronous() || loadSynchronousUpTo != null) {
 
 			ourLog.debug("Search {} is loading in synchronous mode", searchUuid);
@@ -340,9 +393,22 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 			search.getIncludes().add(new SearchInclude(search, next.getValue(), true, next.isRecurse()));
 		}
 
+		/*
+		 * If configured to do so, work out the total with a count query alongside the search so
+		 * that it can be returned with the first page instead of once all of the results are loaded.
+		 * The parameters are copied before the search starts using them.
+		 */
+		SearchParameterMap countParams = null;
+		if (myDaoConfig.isUseCountQueryForSearchTotal() && theParams.getEverythingMode() == null) {
+			countParams = copyParamsForCountQuery(theParams);
+		}
+
 		SearchTask task = new SearchTask(search, theCallingDao, theParams, theResourceType, searchUuid);
 		myIdToSearchTask.put(search.getUuid(), task);
 		myExecutor.submit(task);
+		if (countParams != null) {
+			task.startCountQuery(countParams);
+		}
 
 		PersistedJpaSearchFirstPageBundleProvider retVal = new PersistedJpaSearchFirstPageBundleProvider(search, theCallingDao, task, sb, myManagedTxManager);
 		populateBundleProvider(retVal);
@@ -352,6 +418,23 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 
 	}
 
+	/**
+	 * The search builder removes empty values from the parameters it is given, so the count
+	 * query, which runs at the same time as the search, gets its own lists of values
+	 */
+	private static SearchParameterMap copyParamsForCountQuery(SearchParameterMap theParams) {
+		SearchParameterMap retVal = new SearchParameterMap();
+		for (Map.Entry<String, List<List<? extends IQueryParameterType>>> nextParam : theParams.entrySet()) {
+			List<List<? extends IQueryParameterType>> andList = new ArrayList<>();
+			for (List<? extends IQueryParameterType> nextOrList : nextParam.getValue()) {
+				andList.add(new ArrayList<IQueryParameterType>(nextOrList));
+			}
+			retVal.put(nextParam.getKey(), andList);
+		}
+		retVal.setLastUpdated(theParams.getLastUpdated());
+		return retVal;
+	}
+
 	@VisibleForTesting
 	void setContextForUnitTest(FhirContext theCtx) {
 		myContext = theCtx;
@@ -454,15 +537,19 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 
 		private final IDao myCallingDao;
 		private final CountDownLatch myCompletionLatch;
+		private final boolean myFirstPageFastPath;
+		private final int myFirstPageSize;
 		private final CountDownLatch myInitialCollectionLatch = new CountDownLatch(1);
 		private final SearchParameterMap myParams;
 		private final String myResourceType;
 		private final Search mySearch;
-		private final ArrayList<Long> mySyncedPids = new ArrayList<Long>();
-		private final ArrayList<Long> myUnsyncedPids = new ArrayList<Long>();
+		private final LongArrayList mySyncedPids = new LongArrayList();
+		private final LongArrayList myUnsyncedPids = new LongArrayList();
 		private boolean myAbortRequested;
 		private int myCountSaved = 0;
 		private String mySearchUuid;
+		private final StopWatch myStopwatch = new StopWatch();
+		private Future<?> myCountFuture;
 
 		/**
 		 * Constructor
@@ -474,6 +561,8 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 			myResourceType = theResourceType;
 			myCompletionLatch = new CountDownLatch(1);
 			mySearchUuid = theSearchUuid;
+			myFirstPageFastPath = myDaoConfig.isSearchFirstPageFastPathEnabled();
+			myFirstPageSize = theParams.getCount() != null ? theParams.getCount() : mySyncSize;
 		}
 
 		/**
@@ -495,6 +584,22 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 			} while (mySearch.getStatus() == SearchStatusEnum.LOADING);
 			ourLog.trace("Initial sync completed");
 
+			/*
+			 * The count query runs at the same time as the search, so the first page only
+			 * waits for it if it takes longer than loading the page. Once the search has
+			 * finished loading, its total is exact and the count isn't needed.
+			 */
+			if (myCountFuture != null && mySearch.getStatus() == SearchStatusEnum.LOADING) {
+				try {
+					myCountFuture.get();
+				} catch (InterruptedException e) {
+					// Shouldn't happen
+					throw new InternalErrorException(e);
+				} catch (ExecutionException e) {
+					// Already logged, and the search doesn't need the count
+				}
+			}
+
 			return mySearch.getTotalCount();
 		}
 
@@ -520,6 +625,7 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 				});
 
 				ourLog.info("Completed search for {} resources in {}ms", mySyncedPids.size(), sw.getMillis());
+				mySearchCompletionLatencyHistogram.record(myStopwatch.getMillis());
 
 			} catch (Throwable t) {
 
@@ -540,7 +646,9 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 				if (!logged) {
 					ourLog.error("Failed during search loading after {}ms", sw.getMillis(), t);
 				}
-				myUnsyncedPids.clear();
+				synchronized (mySyncedPids) {
+					myUnsyncedPids.clear();
+				}
 
 				Throwable rootCause = ExceptionUtils.getRootCause(t);
 				rootCause = ObjectUtils.defaultIfNull(rootCause, t);
@@ -566,6 +674,28 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 			return null;
 		}
 
+		private void doCountQuery(final SearchParameterMap theParams) {
+			Class<? extends IBaseResource> resourceTypeClass = myContext.getResourceDefinition(myResourceType).getImplementingClass();
+			final ISearchBuilder sb = myCallingDao.newSearchBuilder();
+			sb.setType(resourceTypeClass, myResourceType);
+
+			TransactionTemplate txTemplate = new TransactionTemplate(myManagedTxManager);
+			txTemplate.setPropagationBehavior(TransactionTemplate.PROPAGATION_REQUIRES_NEW);
+			Long count = txTemplate.execute(new TransactionCallback<Long>() {
+				@Override
+				public Long doInTransaction(TransactionStatus theStatus) {
+					return sb.createCountQuery(theParams, mySearchUuid);
+				}
+			});
+
+			synchronized (mySyncedPids) {
+				// If the search has already worked out its total, that one is exact
+				if (mySearch.getStatus() == SearchStatusEnum.LOADING && mySearch.getTotalCount() == null) {
+					mySearch.setTotalCount(count.intValue());
+				}
+			}
+		}
+
 		private void doSaveSearch() {
 			if (mySearch.getId() == null) {
 				mySearchDao.save(mySearch);
@@ -584,7 +714,10 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 			Iterator<Long> theResultIterator = sb.createQuery(myParams, mySearchUuid);
 
 			while (theResultIterator.hasNext()) {
-				myUnsyncedPids.add(theResultIterator.next());
+				Long nextPid = theResultIterator.next();
+				synchronized (mySyncedPids) {
+					myUnsyncedPids.add(nextPid);
+				}
 
 				boolean shouldSync = myUnsyncedPids.size() >= mySyncSize;
 
@@ -601,6 +734,18 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 				// If no abort was requested, bail out
 				Validate.isTrue(myAbortRequested == false, "Abort has been requested");
 
+				/*
+				 * In fast path mode, the first page can be served from the PIDs we are
+				 * holding in memory without waiting for them to be saved
+				 */
+				if (myFirstPageFastPath && myInitialCollectionLatch.getCount() > 0) {
+					int numCollected = mySyncedPids.size() + myUnsyncedPids.size();
+					if (numCollected >= myFirstPageSize && haveCountedEnoughResults(numCollected)) {
+						ourLog.debug("First page of {} results is available for search {}", numCollected, mySearchUuid);
+						releaseInitialCollectionLatch();
+					}
+				}
+
 				if (shouldSync) {
 					saveUnsynced(theResultIterator);
 				}
@@ -618,9 +763,31 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 			// If no abort was requested, bail out
 			Validate.isTrue(myAbortRequested == false, "Abort has been requested");
 
+			/*
+			 * We now know the total, so in fast path mode a search with fewer results
+			 * than a page doesn't need to wait for the final save either
+			 */
+			if (myFirstPageFastPath && myInitialCollectionLatch.getCount() > 0) {
+				synchronized (mySyncedPids) {
+					mySearch.setTotalCount(mySyncedPids.size() + myUnsyncedPids.size());
+				}
+				releaseInitialCollectionLatch();
+			}
+
 			saveUnsynced(theResultIterator);
 		}
 
+		/**
+		 * Returns the number of PIDs which can be handed out to callers. Must be called while
+		 * holding the lock on {@link #mySyncedPids}.
+		 */
+		private int getAvailablePidCount() {
+			if (myFirstPageFastPath) {
+				return mySyncedPids.size() + myUnsyncedPids.size();
+			}
+			return mySyncedPids.size();
+		}
+
 		public CountDownLatch getCompletionLatch() {
 			return myCompletionLatch;
 		}
@@ -630,14 +797,19 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 
 			boolean keepWaiting;
 			do {
+				int available;
 				synchronized (mySyncedPids) {
 					keepWaiting = false;
-					if (mySyncedPids.size() < theToIndex && mySearch.getStatus() == SearchStatusEnum.LOADING) {
-						keepWaiting = true;
+					available = getAvailablePidCount();
+					if (available < theToIndex && mySearch.getStatus() == SearchStatusEnum.LOADING) {
+						Integer totalCount = mySearch.getTotalCount();
+						if (totalCount == null || available < totalCount) {
+							keepWaiting = true;
+						}
 					}
 				}
 				if (keepWaiting) {
-					ourLog.info("Waiting, as we only have {} results", mySyncedPids.size());
+					ourLog.info("Waiting, as we only have {} results", available);
 					try {
 						Thread.sleep(500);
 					} catch (InterruptedException theE) {
@@ -648,16 +820,22 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 
 			ourLog.info("Proceeding, as we have {} results", mySyncedPids.size());
 
-			ArrayList<Long> retVal = new ArrayList<>();
+			List<Long> retVal;
 			synchronized (mySyncedPids) {
 				verifySearchHasntFailedOrThrowInternalErrorException(mySearch);
 
-				int toIndex = theToIndex;
-				if (mySyncedPids.size() < toIndex) {
-					toIndex = mySyncedPids.size();
-				}
-				for (int i = theFromIndex; i < toIndex; i++) {
-					retVal.add(mySyncedPids.get(i));
+				int syncedCount = mySyncedPids.size();
+				int toIndex = Math.min(theToIndex, getAvailablePidCount());
+				if (theFromIndex < toIndex && toIndex <= syncedCount) {
+					retVal = mySyncedPids.toList(theFromIndex, toIndex);
+				} else if (theFromIndex < toIndex) {
+					// Some of the requested PIDs haven't been saved yet
+					retVal = new ArrayList<>(toIndex - theFromIndex);
+					for (int i = theFromIndex; i < toIndex; i++) {
+						retVal.add(i < syncedCount ? mySyncedPids.get(i) : myUnsyncedPids.get(i - syncedCount));
+					}
+				} else {
+					retVal = new ArrayList<>();
 				}
 			}
 
@@ -666,6 +844,39 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 			return retVal;
 		}
 
+		private boolean haveCountedEnoughResults(int theNumResults) {
+			return myDaoConfig.getCountSearchResultsUpTo() == null ||
+				myDaoConfig.getCountSearchResultsUpTo() <= 0 ||
+				myDaoConfig.getCountSearchResultsUpTo() <= theNumResults;
+		}
+
+		private void releaseInitialCollectionLatch() {
+			if (myInitialCollectionLatch.getCount() > 0) {
+				myFirstPageLatencyHistogram.record(myStopwatch.getMillis());
+				myInitialCollectionLatch.countDown();
+			}
+		}
+
+		/**
+		 * Starts working out the total number of results with a count query, on a separate
+		 * thread from the search itself. The total is filled in when the count finishes, and
+		 * is saved with the search the next time its results are saved.
+		 */
+		void startCountQuery(final SearchParameterMap theParams) {
+			myCountFuture = myExecutor.submit(new Callable<Void>() {
+				@Override
+				public Void call() {
+					try {
+						doCountQuery(theParams);
+					} catch (RuntimeException e) {
+						ourLog.warn("Failed to count the results of search " + mySearchUuid + ", the total will be known once all results are loaded", e);
+						throw e;
+					}
+					return null;
+				}
+			});
+		}
+
 		/**
 		 * Request that the task abort as soon as possible
 		 */
@@ -686,6 +897,7 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 		}
 
 		private void saveUnsynced(final Iterator<Long> theResultIter) {
+			StopWatch sw = new StopWatch();
 			TransactionTemplate txTemplate = new TransactionTemplate(myManagedTxManager);
 			txTemplate.setPropagationBehavior(TransactionTemplate.PROPAGATION_REQUIRED);
 			txTemplate.execute(new TransactionCallbackWithoutResult() {
@@ -696,9 +908,9 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 					}
 
 					List<SearchResult> resultsToSave = Lists.newArrayList();
-					for (Long nextPid : myUnsyncedPids) {
+					for (int i = 0; i < myUnsyncedPids.size(); i++) {
 						SearchResult nextResult = new SearchResult(mySearch);
-						nextResult.setResourcePid(nextPid);
+						nextResult.setResourcePid(myUnsyncedPids.get(i));
 						nextResult.setOrder(myCountSaved++);
 						resultsToSave.add(nextResult);
 					}
@@ -723,10 +935,8 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 						numSynced = mySyncedPids.size();
 					}
 
-					if (myDaoConfig.getCountSearchResultsUpTo() == null ||
-						myDaoConfig.getCountSearchResultsUpTo() <= 0 ||
-						myDaoConfig.getCountSearchResultsUpTo() <= numSynced) {
-						myInitialCollectionLatch.countDown();
+					if (haveCountedEnoughResults(numSynced)) {
+						releaseInitialCollectionLatch();
 					}
 
 					doSaveSearch();
@@ -734,6 +944,10 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 				}
 			});
 
+			if (mySearchMetricsSvc != null) {
+				String shape = SearchParameterMap.toParameterShape(mySearch.getSearchQueryString());
+				mySearchMetricsSvc.recordPhase(myResourceType, shape, SearchPhaseEnum.RESULT_PERSISTENCE, sw.getMillis());
+			}
 		}
 
 	}
@@ -0,0 +1,330 @@
+package ca.uhn.fhir.jpa.search;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2018 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementCompositeDefinition;
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import ca.uhn.fhir.jpa.util.LatencyHistogram;
+import ca.uhn.fhir.model.primitive.InstantDt;
+import ca.uhn.fhir.model.primitive.IntegerDt;
+import ca.uhn.fhir.util.ParametersUtil;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.time.DateUtils;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseParameters;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Default {@link ISearchMetricsSvc} which keeps a {@link LatencyHistogram} for each
+ * combination of resource type, parameter shape and search phase, as well as the
+ * slowest queries which have been executed recently.
+ */
+public class SearchMetricsSvcImpl implements ISearchMetricsSvc {
+
+	/**
+	 * Default number of slow queries to keep
+	 */
+	public static final int DEFAULT_SLOW_QUERY_COUNT = 20;
+
+	/**
+	 * Upper bound on the number of distinct timers, since parameter shapes
+	 * come from client requests. Once it is reached, new shapes are grouped
+	 * together under {@link #OTHER_SHAPE}.
+	 */
+	static final int MAX_TIMERS = 2000;
+
+	/**
+	 * Parameter shape used once {@link #MAX_TIMERS} has been reached
+	 */
+	static final String OTHER_SHAPE = "(other)";
+
+	/**
+	 * Slow queries are only kept for this long
+	 */
+	static final long SLOW_QUERY_EXPIRY_MILLIS = DateUtils.MILLIS_PER_HOUR;
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(SearchMetricsSvcImpl.class);
+	private final List<SlowQuery> mySlowQueries = new ArrayList<>();
+	private final ConcurrentHashMap<TimerKey, LatencyHistogram> myTimers = new ConcurrentHashMap<>();
+	private int mySlowQueryCount = DEFAULT_SLOW_QUERY_COUNT;
+
+	/**
+	 * Returns a snapshot of all of the timers which have been recorded so far
+	 */
+	public Map<TimerKey, LatencyHistogram> getAllTimers() {
+		return Collections.unmodifiableMap(new HashMap<>(myTimers));
+	}
+
+	/**
+	 * Returns the slowest queries which completed within the last hour, slowest first
+	 */
+	public List<SlowQuery> getSlowestRecentQueries() {
+		synchronized (mySlowQueries) {
+			removeExpiredSlowQueries(System.currentTimeMillis());
+			return new ArrayList<>(mySlowQueries);
+		}
+	}
+
+	/**
+	 * Returns the slowest queries which completed within the last hour, slowest first, as a
+	 * Parameters resource with a <code>search</code> parameter for each query. Each of these has
+	 * parts called <code>resourceType</code>, <code>parameterShape</code>, <code>millis</code>,
+	 * <code>resultCount</code>, <code>recorded</code> and <code>jpql</code>.
+	 *
+	 * @see ca.uhn.fhir.jpa.provider.BaseJpaSystemProvider#GET_SLOWEST_SEARCHES
+	 */
+	public IBaseParameters getSlowestRecentQueriesAsParameters(FhirContext theContext) {
+		IBaseParameters retVal = ParametersUtil.newInstance(theContext);
+		RuntimeResourceDefinition def = theContext.getResourceDefinition(retVal);
+		BaseRuntimeChildDefinition paramChild = def.getChildByName("parameter");
+		BaseRuntimeElementCompositeDefinition<?> paramDef = (BaseRuntimeElementCompositeDefinition<?>) paramChild.getChildByName("parameter");
+		BaseRuntimeChildDefinition partChild = paramDef.getChildByName("part");
+
+		for (SlowQuery next : getSlowestRecentQueries()) {
+			IBase search = paramDef.newInstance();
+			paramChild.getMutator().addValue(retVal, search);
+			paramDef.getChildByName("name").getMutator().addValue(search, ParametersUtil.createString(theContext, "search"));
+
+			if (next.getResourceType() != null) {
+				addPart(theContext, paramDef, partChild, search, "resourceType", ParametersUtil.createString(theContext, next.getResourceType()));
+			}
+			addPart(theContext, paramDef, partChild, search, "parameterShape", ParametersUtil.createString(theContext, next.getParameterShape()));
+			addPart(theContext, paramDef, partChild, search, "millis", createInteger(theContext, (int) Math.min(next.getMillis(), Integer.MAX_VALUE)));
+			addPart(theContext, paramDef, partChild, search, "resultCount", createInteger(theContext, next.getResultCount()));
+			addPart(theContext, paramDef, partChild, search, "recorded", createInstant(theContext, next.getRecorded()));
+			addPart(theContext, paramDef, partChild, search, "jpql", ParametersUtil.createString(theContext, next.getJpql()));
+		}
+
+		return retVal;
+	}
+
+	/**
+	 * Returns the timer for the given combination, or <code>null</code> if nothing has been recorded for it
+	 */
+	public LatencyHistogram getTimer(String theResourceType, String theParameterShape, SearchPhaseEnum thePhase) {
+		return myTimers.get(new TimerKey(theResourceType, theParameterShape, thePhase));
+	}
+
+	@Override
+	public void recordPhase(String theResourceType, String theParameterShape, SearchPhaseEnum thePhase, long theMillis) {
+		TimerKey key = new TimerKey(theResourceType, theParameterShape, thePhase);
+		LatencyHistogram timer = myTimers.get(key);
+		if (timer == null) {
+			if (myTimers.size() >= MAX_TIMERS) {
+				key = new TimerKey(theResourceType, OTHER_SHAPE, thePhase);
+			}
+			myTimers.putIfAbsent(key, new LatencyHistogram());
+			timer = myTimers.get(key);
+		}
+		timer.record(theMillis);
+	}
+
+	@Override
+	public void recordQuery(String theResourceType, String theParameterShape, String theJpql, long theMillis, int theResultCount) {
+		ourLog.debug("Query for {}{} returned {} results in {}ms", theResourceType, theParameterShape, theResultCount, theMillis);
+
+		long now = System.currentTimeMillis();
+		synchronized (mySlowQueries) {
+			if (mySlowQueryCount == 0) {
+				return;
+			}
+			removeExpiredSlowQueries(now);
+			if (mySlowQueries.size() >= mySlowQueryCount) {
+				SlowQuery fastest = mySlowQueries.get(mySlowQueries.size() - 1);
+				if (fastest.getMillis() >= theMillis) {
+					return;
+				}
+				mySlowQueries.remove(mySlowQueries.size() - 1);
+			}
+
+			SlowQuery slowQuery = new SlowQuery(theResourceType, theParameterShape, theJpql, theMillis, theResultCount, new Date(now));
+			int index = 0;
+			while (index < mySlowQueries.size() && mySlowQueries.get(index).getMillis() >= theMillis) {
+				index++;
+			}
+			mySlowQueries.add(index, slowQuery);
+		}
+	}
+
+	private static void addPart(FhirContext theContext, BaseRuntimeElementCompositeDefinition<?> theParamDef, BaseRuntimeChildDefinition thePartChild, IBase theParameter, String theName, IPrimitiveType<?> theValue) {
+		IBase part = theParamDef.newInstance();
+		thePartChild.getMutator().addValue(theParameter, part);
+		theParamDef.getChildByName("name").getMutator().addValue(part, ParametersUtil.createString(theContext, theName));
+		theParamDef.getChildByName("value[x]").getMutator().addValue(part, theValue);
+	}
+
+	private static IPrimitiveType<?> createInstant(FhirContext theContext, Date theValue) {
+		if (theContext.getVersion().getVersion().isRi()) {
+			IPrimitiveType<?> retVal = (IPrimitiveType<?>) theContext.getElementDefinition("instant").newInstance();
+			retVal.setValueAsString(new InstantDt(theValue).getValueAsString());
+			return retVal;
+		}
+		return new InstantDt(theValue);
+	}
+
+	private static IPrimitiveType<?> createInteger(FhirContext theContext, int theValue) {
+		if (theContext.getVersion().getVersion().isRi()) {
+			IPrimitiveType<?> retVal = (IPrimitiveType<?>) theContext.getElementDefinition("integer").newInstance();
+			retVal.setValueAsString(Integer.toString(theValue));
+			return retVal;
+		}
+		return new IntegerDt(theValue);
+	}
+
+	private void removeExpiredSlowQueries(long theNow) {
+		for (Iterator<SlowQuery> iter = mySlowQueries.iterator(); iter.hasNext(); ) {
+			if (iter.next().getRecorded().getTime() + SLOW_QUERY_EXPIRY_MILLIS < theNow) {
+				iter.remove();
+			}
+		}
+	}
+
+	/**
+	 * Sets the number of slow queries to keep (default is {@link #DEFAULT_SLOW_QUERY_COUNT}).
+	 * Set to 0 to stop keeping slow queries.
+	 */
+	public void setSlowQueryCount(int theSlowQueryCount) {
+		Validate.isTrue(theSlowQueryCount >= 0, "theSlowQueryCount must not be negative");
+		synchronized (mySlowQueries) {
+			mySlowQueryCount = theSlowQueryCount;
+			while (mySlowQueries.size() > theSlowQueryCount) {
+				mySlowQueries.remove(mySlowQueries.size() - 1);
+			}
+		}
+	}
+
+	@VisibleForTesting
+	public void clearForUnitTest() {
+		myTimers.clear();
+		synchronized (mySlowQueries) {
+			mySlowQueries.clear();
+		}
+	}
+
+	public static class SlowQuery {
+		private final String myJpql;
+		private final long myMillis;
+		private final String myParameterShape;
+		private final Date myRecorded;
+		private final String myResourceType;
+		private final int myResultCount;
+
+		SlowQuery(String theResourceType, String theParameterShape, String theJpql, long theMillis, int theResultCount, Date theRecorded) {
+			myResourceType = theResourceType;
+			myParameterShape = theParameterShape;
+			myJpql = theJpql;
+			myMillis = theMillis;
+			myResultCount = theResultCount;
+			myRecorded = theRecorded;
+		}
+
+		/**
+		 * The JPQL query which was executed. This is the query as it was built, not the SQL which
+		 * the JPA provider generated from it.
+		 */
+		public String getJpql() {
+			return myJpql;
+		}
+
+		public long getMillis() {
+			return myMillis;
+		}
+
+		public String getParameterShape() {
+			return myParameterShape;
+		}
+
+		public Date getRecorded() {
+			return myRecorded;
+		}
+
+		public String getResourceType() {
+			return myResourceType;
+		}
+
+		public int getResultCount() {
+			return myResultCount;
+		}
+	}
+
+	public static class TimerKey {
+		private final String myParameterShape;
+		private final SearchPhaseEnum myPhase;
+		private final String myResourceType;
+
+		TimerKey(String theResourceType, String theParameterShape, SearchPhaseEnum thePhase) {
+			myResourceType = theResourceType;
+			myParameterShape = theParameterShape;
+			myPhase = thePhase;
+		}
+
+		@Override
+		public boolean equals(Object theO) {
+			if (this == theO) {
+				return true;
+			}
+			if (!(theO instanceof TimerKey)) {
+				return false;
+			}
+			TimerKey that = (TimerKey) theO;
+			return new EqualsBuilder()
+				.append(myResourceType, that.myResourceType)
+				.append(myParameterShape, that.myParameterShape)
+				.append(myPhase, that.myPhase)
+				.isEquals();
+		}
+
+		public String getParameterShape() {
+			return myParameterShape;
+		}
+
+		public SearchPhaseEnum getPhase() {
+			return myPhase;
+		}
+
+		public String getResourceType() {
+			return myResourceType;
+		}
+
+		@Override
+		public int hashCode() {
+			return new HashCodeBuilder(17, 37)
+				.append(myResourceType)
+				.append(myParameterShape)
+				.append(myPhase)
+				.toHashCode();
+		}
+
+		@Override
+		public String toString() {
+			return myResourceType + myParameterShape + " " + myPhase;
+		}
+	}
+
+}
@@ -0,0 +1,59 @@
+package ca.uhn.fhir.jpa.search;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2018 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * The phases of a JPA search which are timed and reported to {@link ISearchMetricsSvc}
+ */
+public enum SearchPhaseEnum {
+
+	/**
+	 * Building the criteria query
+	 */
+	QUERY_BUILD,
+
+	/**
+	 * Executing the query, until the database starts returning rows
+	 */
+	SQL_EXECUTION,
+
+	/**
+	 * Reading matching resource IDs from the query results
+	 */
+	PID_FETCH,
+
+	/**
+	 * Saving the matching resource IDs to the search result table
+	 */
+	RESULT_PERSISTENCE,
+
+	/**
+	 * Finding the resources to add to a page of results because of <code>_include</code>
+	 * and <code>_revinclude</code>
+	 */
+	INCLUDE_RESOLUTION,
+
+	/**
+	 * Loading and parsing the resources for a page of results
+	 */
+	RESOURCE_LOAD
+
+}
@@ -0,0 +1,70 @@
+package ca.uhn.fhir.jpa.search;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2018 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.commons.lang3.time.DateUtils;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class SearchSelectivitySvcImpl implements ISearchSelectivitySvc {
+
+	/**
+	 * Recorded counts expire after this time, since the data may have changed
+	 */
+	static final long EXPIRY_MILLIS = 10 * DateUtils.MILLIS_PER_MINUTE;
+
+	/**
+	 * Upper bound on the number of distinct criteria which are remembered
+	 */
+	static final int MAX_ENTRIES = 10000;
+
+	private final Map<String, Pair<Long, Integer>> myCriteriaToTimestampAndCount = new ConcurrentHashMap<>();
+
+	@Override
+	public Integer getEstimatedMatchCount(String theCriteria) {
+		Pair<Long, Integer> entry = myCriteriaToTimestampAndCount.get(theCriteria);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.getLeft() + EXPIRY_MILLIS < System.currentTimeMillis()) {
+			myCriteriaToTimestampAndCount.remove(theCriteria);
+			return null;
+		}
+		return entry.getRight();
+	}
+
+	@Override
+	public void recordMatchCount(String theCriteria, int theMatchCount) {
+		if (myCriteriaToTimestampAndCount.size() >= MAX_ENTRIES) {
+			// Rather than tracking usage, just start over
+			myCriteriaToTimestampAndCount.clear();
+		}
+		myCriteriaToTimestampAndCount.put(theCriteria, Pair.of(System.currentTimeMillis(), theMatchCount));
+	}
+
+	@Override
+	public void flushCachesForUnitTest() {
+		myCriteriaToTimestampAndCount.clear();
+	}
+
+}
@@ -28,6 +28,12 @@ public interface ISearchParamPresenceSvc {
 
 	void updatePresence(ResourceTable theResource, Map<String, Boolean> theParamNameToPresence);
 
+	/**
+	 * Returns the position of the given search parameter within {@link ResourceTable#getParamsPresence()},
+	 * or <code>null</code> if no position has been assigned to it yet
+	 */
+	Integer getOrdinal(String theResourceType, String theParamName);
+
 	void flushCachesForUnitTest();
 
 }
@@ -27,34 +27,113 @@ import java.util.concurrent.ConcurrentHashMap;
 import ca.uhn.fhir.jpa.dao.DaoConfig;
 import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import ca.uhn.fhir.jpa.dao.data.ISearchParamDao;
+import ca.uhn.fhir.jpa.dao.data.ISearchParamOrdinalDao;
 import ca.uhn.fhir.jpa.dao.data.ISearchParamPresentDao;
 import ca.uhn.fhir.jpa.entity.ResourceTable;
 import ca.uhn.fhir.jpa.entity.SearchParam;
+import ca.uhn.fhir.jpa.entity.SearchParamOrdinal;
 import ca.uhn.fhir.jpa.entity.SearchParamPresent;
 
 public class SearchParamPresenceSvcImpl implements ISearchParamPresenceSvc {
 
+	private static final int MAX_ORDINAL_ATTEMPTS = 10;
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(SearchParamPresenceSvcImpl.class);
 
 	private Map<Pair<String, String>, SearchParam> myResourceTypeToSearchParamToEntity = new ConcurrentHashMap<Pair<String, String>, SearchParam>();
+	private Map<Pair<String, String>, Integer> myResourceTypeToSearchParamToOrdinal = new ConcurrentHashMap<Pair<String, String>, Integer>();
 
 	@Autowired
 	private ISearchParamDao mySearchParamDao;
 
+	@Autowired
+	private ISearchParamOrdinalDao mySearchParamOrdinalDao;
+
 	@Autowired
 	private ISearchParamPresentDao mySearchParamPresentDao;
 
 	@Autowired
 	private DaoConfig myDaoConfig;
 
+	@Autowired
+	private PlatformTransactionManager myTxManager;
+
+	/**
+	 * Returns the presence ordinal of the given search param, assigning the next free
+	 * ordinal for the resource type if needed.
+	 * <p>
+	 * This happens in its own transaction (and is synchronized) so that the ordinal is
+	 * committed before any other writer on this server can look for the next free ordinal.
+	 * Ordinals are unique per resource type in the database, so if another server sharing
+	 * the database assigns the same ordinal (or an ordinal to the same search param) at the
+	 * same time, one of the two transactions fails and is retried with the next free ordinal.
+	 * </p>
+	 */
+	private int getOrAssignOrdinal(final String theResourceType, final String theParamName) {
+		Pair<String, String> key = Pair.of(theResourceType, theParamName);
+		Integer retVal = myResourceTypeToSearchParamToOrdinal.get(key);
+		if (retVal != null) {
+			return retVal;
+		}
+
+		synchronized (this) {
+			TransactionTemplate txTemplate = new TransactionTemplate(myTxManager);
+			txTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+			for (int attempt = 1; ; attempt++) {
+				try {
+					retVal = txTemplate.execute(new TransactionCallback<Integer>() {
+						@Override
+						public Integer doInTransaction(TransactionStatus theStatus) {
+							return assignOrdinal(theResourceType, theParamName);
+						}
+					});
+					break;
+				} catch (DataIntegrityViolationException e) {
+					if (attempt >= MAX_ORDINAL_ATTEMPTS) {
+						throw e;
+					}
+					ourLog.info("Search param {} for resource type {} was changed concurrently, retrying ordinal assignment: {}", theParamName, theResourceType, e.toString());
+				}
+			}
+		}
+
+		myResourceTypeToSearchParamToOrdinal.put(key, retVal);
+		return retVal;
+	}
+
+	private int assignOrdinal(String theResourceType, String theParamName) {
+		SearchParamOrdinal ordinal = mySearchParamOrdinalDao.findForResource(theResourceType, theParamName);
+		if (ordinal == null) {
+			Integer maxOrdinal = mySearchParamOrdinalDao.findMaxOrdinalForResource(theResourceType);
+			ordinal = new SearchParamOrdinal();
+			ordinal.setResourceName(theResourceType);
+			ordinal.setParamName(theParamName);
+			ordinal.setOrdinal(maxOrdinal != null ? maxOrdinal + 1 : 0);
+			// Flush so that a duplicate ordinal fails here, inside the retry loop
+			ordinal = mySearchParamOrdinalDao.saveAndFlush(ordinal);
+			ourLog.info("Assigned presence ordinal {} to search param {} for resource type {}", ordinal.getOrdinal(), theParamName, theResourceType);
+		}
+		return ordinal.getOrdinal();
+	}
+
 	@Override
 	public void updatePresence(ResourceTable theResource, Map<String, Boolean> theParamNameToPresence) {
 		if (myDaoConfig.getIndexMissingFields() == DaoConfig.IndexEnabledEnum.DISABLED) {
 			return;
 		}
 
+		if (myDaoConfig.getMissingFieldsIndexEncoding() == DaoConfig.MissingFieldsIndexEncodingEnum.RESOURCE_COLUMN) {
+			updatePresenceColumn(theResource, theParamNameToPresence);
+			return;
+		}
+
 		Map<String, Boolean> presenceMap = new HashMap<String, Boolean>(theParamNameToPresence);
 		List<SearchParamPresent> entitiesToSave = new ArrayList<SearchParamPresent>();
 		List<SearchParamPresent> entitiesToDelete = new ArrayList<SearchParamPresent>();
@@ -108,9 +187,49 @@ public class SearchParamPresenceSvcImpl implements ISearchParamPresenceSvc {
 
 	}
 
+	/**
+	 * Encodes the presence of each parameter into a single column on the resource
+	 * instead of using one row per parameter, so no existing rows need to be read
+	 */
+	private void updatePresenceColumn(ResourceTable theResource, Map<String, Boolean> theParamNameToPresence) {
+		String resourceType = theResource.getResourceType();
+		StringBuilder presence = new StringBuilder();
+
+		for (Entry<String, Boolean> next : theParamNameToPresence.entrySet()) {
+			int ordinal = getOrAssignOrdinal(resourceType, next.getKey());
+			if (ordinal >= ResourceTable.MAX_PARAMS_PRESENCE_LENGTH) {
+				ourLog.warn("Unable to record presence of search param {} for resource type {}, ordinal {} exceeds maximum of {}", next.getKey(), resourceType, ordinal, ResourceTable.MAX_PARAMS_PRESENCE_LENGTH - 1);
+				continue;
+			}
+
+			while (presence.length() <= ordinal) {
+				presence.append(ResourceTable.PARAM_PRESENCE_UNKNOWN);
+			}
+			presence.setCharAt(ordinal, next.getValue() ? ResourceTable.PARAM_PRESENCE_PRESENT : ResourceTable.PARAM_PRESENCE_MISSING);
+		}
+
+		theResource.setParamsPresence(presence.length() > 0 ? presence.toString() : null);
+	}
+
+	@Override
+	public Integer getOrdinal(String theResourceType, String theParamName) {
+		Pair<String, String> key = Pair.of(theResourceType, theParamName);
+		Integer retVal = myResourceTypeToSearchParamToOrdinal.get(key);
+		if (retVal == null) {
+			SearchParamOrdinal ordinal = mySearchParamOrdinalDao.findForResource(theResourceType, theParamName);
+			if (ordinal == null) {
+				return null;
+			}
+			retVal = ordinal.getOrdinal();
+			myResourceTypeToSearchParamToOrdinal.put(key, retVal);
+		}
+		return retVal;
+	}
+
 	@Override
 	public void flushCachesForUnitTest() {
 		myResourceTypeToSearchParamToEntity.clear();
+		myResourceTypeToSearchParamToOrdinal.clear();
 	}
 
 }
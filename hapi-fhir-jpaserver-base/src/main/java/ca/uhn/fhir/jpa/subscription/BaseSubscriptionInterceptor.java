@@ -26,6 +26,7 @@ import ca.uhn.fhir.context.FhirVersionEnum;
 import ca.uhn.fhir.jpa.config.BaseConfig;
 import ca.uhn.fhir.jpa.dao.IFhirResourceDao;
 import ca.uhn.fhir.jpa.dao.SearchParameterMap;
+import ca.uhn.fhir.jpa.dao.data.ISubscriptionDeliveryDao;
 import ca.uhn.fhir.jpa.provider.ServletSubRequestDetails;
 import ca.uhn.fhir.jpa.util.JpaConstants;
 import ca.uhn.fhir.jpa.util.StopWatch;
@@ -87,6 +88,10 @@ public abstract class BaseSubscriptionInterceptor<S extends IBaseResource> exten
 	private LinkedBlockingQueue<Runnable> myProcessingExecutorQueue;
 	private LinkedBlockingQueue<Runnable> myDeliveryExecutorQueue;
 	private IFhirResourceDao<?> mySubscriptionDao;
+	private boolean myDurableDeliveryEnabled;
+	private DurableDeliveryChannel myDurableDeliveryChannel;
+	@Autowired
+	private ISubscriptionDeliveryDao mySubscriptionDeliveryDao;
 	@Autowired
 	private List<IFhirResourceDao<?>> myResourceDaos;
 	@Autowired
@@ -225,8 +230,26 @@ public abstract class BaseSubscriptionInterceptor<S extends IBaseResource> exten
 		myDeliveryChannel = theDeliveryChannel;
 	}
 
+	/**
+	 * Returns the durable delivery channel, if {@link #setDurableDeliveryEnabled(boolean) durable delivery is enabled}
+	 * and the interceptor has been started. This can be used to monitor the delivery queue.
+	 */
+	public DurableDeliveryChannel getDurableDeliveryChannel() {
+		return myDurableDeliveryChannel;
+	}
+
 	public int getExecutorQueueSizeForUnitTests() {
-		return myProcessingExecutorQueue.size() + myDeliveryExecutorQueue.size();
+		int retVal = 0;
+		if (myProcessingExecutorQueue != null) {
+			retVal += myProcessingExecutorQueue.size();
+		}
+		if (myDeliveryExecutorQueue != null) {
+			retVal += myDeliveryExecutorQueue.size();
+		}
+		if (myDurableDeliveryChannel != null) {
+			retVal += (int) myDurableDeliveryChannel.getQueueDepth();
+		}
+		return retVal;
 	}
 
 	public int getExecutorThreadCount() {
@@ -238,6 +261,30 @@ public abstract class BaseSubscriptionInterceptor<S extends IBaseResource> exten
 		myExecutorThreadCount = theExecutorThreadCount;
 	}
 
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), deliveries are queued in the
+	 * database by a {@link DurableDeliveryChannel} instead of in memory, so that they survive a
+	 * restart, are retried with an increasing delay if they fail, and are limited in how many
+	 * may be made to a single endpoint at once. This must be set before the interceptor is
+	 * started, and has no effect if a {@link #setDeliveryChannel(SubscribableChannel) delivery channel}
+	 * has been provided.
+	 */
+	public boolean isDurableDeliveryEnabled() {
+		return myDurableDeliveryEnabled;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), deliveries are queued in the
+	 * database by a {@link DurableDeliveryChannel} instead of in memory, so that they survive a
+	 * restart, are retried with an increasing delay if they fail, and are limited in how many
+	 * may be made to a single endpoint at once. This must be set before the interceptor is
+	 * started, and has no effect if a {@link #setDeliveryChannel(SubscribableChannel) delivery channel}
+	 * has been provided.
+	 */
+	public void setDurableDeliveryEnabled(boolean theDurableDeliveryEnabled) {
+		myDurableDeliveryEnabled = theDurableDeliveryEnabled;
+	}
+
 	public Map<String, CanonicalSubscription> getIdToSubscription() {
 		return Collections.unmodifiableMap(myIdToSubscription);
 	}
@@ -309,6 +356,10 @@ public abstract class BaseSubscriptionInterceptor<S extends IBaseResource> exten
 		getProcessingChannel().unsubscribe(mySubscriptionCheckingSubscriber);
 
 		unregisterDeliverySubscriber();
+
+		if (myDurableDeliveryChannel != null) {
+			myDurableDeliveryChannel.stop();
+		}
 	}
 
 	protected abstract void registerDeliverySubscriber();
@@ -432,6 +483,11 @@ public abstract class BaseSubscriptionInterceptor<S extends IBaseResource> exten
 			setProcessingChannel(new ExecutorSubscribableChannel(myProcessingExecutor));
 		}
 
+		if (getDeliveryChannel() == null && isDurableDeliveryEnabled()) {
+			myDurableDeliveryChannel = new DurableDeliveryChannel(getChannelType().toCode(), mySubscriptionDeliveryDao, myTxManager);
+			setDeliveryChannel(myDurableDeliveryChannel);
+		}
+
 		if (getDeliveryChannel() == null) {
 			myDeliveryExecutorQueue = new LinkedBlockingQueue<>(1000);
 			BasicThreadFactory threadFactory = new BasicThreadFactory.Builder()
@@ -471,6 +527,10 @@ public abstract class BaseSubscriptionInterceptor<S extends IBaseResource> exten
 		registerSubscriptionCheckingSubscriber();
 		registerDeliverySubscriber();
 
+		if (myDurableDeliveryChannel != null) {
+			myDurableDeliveryChannel.start();
+		}
+
 		TransactionTemplate transactionTemplate = new TransactionTemplate(myTxManager);
 		transactionTemplate.execute(new TransactionCallbackWithoutResult() {
 			@Override
@@ -0,0 +1,536 @@
+package ca.uhn.fhir.jpa.subscription;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2018 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.dao.data.ISubscriptionDeliveryDao;
+import ca.uhn.fhir.jpa.entity.SubscriptionDelivery;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.Gson;
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.hl7.fhir.r4.model.IdType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.commons.lang3.StringUtils.defaultIfBlank;
+
+/**
+ * A subscription delivery channel which stores each delivery in the database
+ * ({@link SubscriptionDelivery}) before it is attempted, so that deliveries which are
+ * queued when the server stops are not lost.
+ * <p>
+ * Deliveries are queued per subscription, and a single dispatcher thread hands the due
+ * ones to a pool of delivery threads. The number of deliveries in progress is limited both
+ * overall and for each endpoint, so a slow endpoint can only hold up a few threads and
+ * does not stop deliveries to other subscriptions. A delivery which fails is retried with
+ * an exponentially increasing delay, and is abandoned (and logged) after a maximum number
+ * of attempts.
+ * </p>
+ * <p>
+ * The number of queued deliveries is bounded: once it reaches the
+ * {@link #setMaxQueueDepth(int) maximum queue depth}, {@link #send(Message) send} blocks
+ * until there is room (or the send timeout passes), which in turn holds up the processing
+ * channel that is sending to this one.
+ * </p>
+ * <p>
+ * Delivery is at-least-once: if the server stops after a delivery has been made but before
+ * its row is removed, it will be made again after a restart. Before a delivery is attempted,
+ * its row is claimed by moving its next attempt time forward by the
+ * {@link #setClaimTimeoutMillis(long) claim timeout}, so a delivery which was in progress when
+ * the server stopped is attempted again once this timeout has passed. The queue depth is
+ * tracked in memory, so a table should only be read by one server at a time.
+ * </p>
+ */
+public class DurableDeliveryChannel extends AbstractSubscribableChannel {
+
+	private static final Logger ourLog = LoggerFactory.getLogger(DurableDeliveryChannel.class);
+	private final Object myCapacityLock = new Object();
+	private long myClaimTimeoutMillis = 60 * 1000L;
+	private final String myChannelName;
+	private final AtomicLong myDeliveredCount = new AtomicLong();
+	private final AtomicLong myAbandonedCount = new AtomicLong();
+	private final ConcurrentHashMap<String, Semaphore> myEndpointPermits = new ConcurrentHashMap<>();
+	private final AtomicLong myFailedAttemptCount = new AtomicLong();
+	private final Set<Long> myInFlight = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+	private final AtomicLong myPendingCount = new AtomicLong();
+	private final ISubscriptionDeliveryDao mySubscriptionDeliveryDao;
+	private final TransactionTemplate myTxTemplate;
+	private final Object myWakeLock = new Object();
+	private ExecutorService myDeliveryExecutor;
+	private Thread myDispatcher;
+	private Semaphore myGlobalPermits;
+	private long myInitialRetryDelayMillis = 1000L;
+	private int myMaxAttempts = 10;
+	private int myMaxConcurrentDeliveries = 50;
+	private int myMaxConcurrentDeliveriesPerEndpoint = 2;
+	private int myMaxQueueDepth = 10000;
+	private long myMaxRetryDelayMillis = 10 * 60 * 1000L;
+	private long myPollIntervalMillis = 1000L;
+	private volatile boolean myRunning;
+	private boolean myWakeRequested;
+
+	/**
+	 * Constructor
+	 *
+	 * @param theChannelName A name for this channel (e.g. the subscription channel type). Deliveries are stored with this
+	 *                       name, so it must not change between restarts and must be unique among the channels sharing a
+	 *                       database.
+	 */
+	public DurableDeliveryChannel(String theChannelName, ISubscriptionDeliveryDao theSubscriptionDeliveryDao, PlatformTransactionManager theTxManager) {
+		Validate.notBlank(theChannelName, "theChannelName must not be blank");
+		Validate.notNull(theSubscriptionDeliveryDao, "theSubscriptionDeliveryDao must not be null");
+		Validate.notNull(theTxManager, "theTxManager must not be null");
+		myChannelName = theChannelName;
+		mySubscriptionDeliveryDao = theSubscriptionDeliveryDao;
+		myTxTemplate = new TransactionTemplate(theTxManager);
+		myTxTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+	}
+
+	private void decrementPendingCount() {
+		myPendingCount.decrementAndGet();
+		synchronized (myCapacityLock) {
+			myCapacityLock.notifyAll();
+		}
+	}
+
+	private void deliver(final SubscriptionDelivery theDelivery, ResourceDeliveryMessage theMessage) {
+		final long pid = theDelivery.getId();
+		try {
+			ResourceDeliveryJsonMessage message = new ResourceDeliveryJsonMessage(theMessage);
+			for (MessageHandler next : getSubscribers()) {
+				next.handleMessage(message);
+			}
+
+			removeDelivery(pid);
+			myDeliveredCount.incrementAndGet();
+		} catch (Exception e) {
+			final int attempts = theDelivery.getAttemptCount() + 1;
+			if (attempts >= myMaxAttempts) {
+				ourLog.error("Abandoning delivery " + pid + " for Subscription/" + theDelivery.getSubscriptionId() + " after " + attempts + " failed attempts", e);
+				removeDelivery(pid);
+				myAbandonedCount.incrementAndGet();
+			} else {
+				long delay = getRetryDelayMillis(attempts);
+				ourLog.warn("Delivery {} for Subscription/{} failed (attempt {}), will retry in {}ms: {}", pid, theDelivery.getSubscriptionId(), attempts, delay, e.toString());
+				final Date nextAttempt = new Date(System.currentTimeMillis() + delay);
+				myTxTemplate.execute(new TransactionCallback<Void>() {
+					@Override
+					public Void doInTransaction(TransactionStatus theStatus) {
+						mySubscriptionDeliveryDao.updateNextAttempt(pid, attempts, nextAttempt);
+						return null;
+					}
+				});
+				myFailedAttemptCount.incrementAndGet();
+			}
+		}
+	}
+
+	private boolean claim(final SubscriptionDelivery theDelivery, final Date theNow) {
+		final Date claimedUntil = new Date(System.currentTimeMillis() + myClaimTimeoutMillis);
+		Integer updated = myTxTemplate.execute(new TransactionCallback<Integer>() {
+			@Override
+			public Integer doInTransaction(TransactionStatus theStatus) {
+				return mySubscriptionDeliveryDao.claim(theDelivery.getId(), theDelivery.getAttemptCount(), theNow, claimedUntil);
+			}
+		});
+		return updated == 1;
+	}
+
+	/**
+	 * Hands as many due deliveries as the concurrency limits allow to the delivery threads
+	 */
+	private void dispatch() {
+		if (getSubscribers().isEmpty()) {
+			return;
+		}
+
+		final Date now = new Date();
+		List<String> subscriptionIds = myTxTemplate.execute(new TransactionCallback<List<String>>() {
+			@Override
+			public List<String> doInTransaction(TransactionStatus theStatus) {
+				return mySubscriptionDeliveryDao.findSubscriptionIdsWithDeliveriesDue(myChannelName, now);
+			}
+		});
+
+		for (final String nextSubscriptionId : subscriptionIds) {
+			if (!myRunning || myGlobalPermits.availablePermits() == 0) {
+				return;
+			}
+
+			// Rows whose claim has timed out may still be being delivered, so load enough to skip past them
+			final int pageSize = myMaxConcurrentDeliveriesPerEndpoint + myInFlight.size();
+			List<SubscriptionDelivery> due = myTxTemplate.execute(new TransactionCallback<List<SubscriptionDelivery>>() {
+				@Override
+				public List<SubscriptionDelivery> doInTransaction(TransactionStatus theStatus) {
+					return mySubscriptionDeliveryDao.findDue(myChannelName, nextSubscriptionId, now, new PageRequest(0, pageSize));
+				}
+			});
+
+			for (final SubscriptionDelivery nextDelivery : due) {
+				if (myInFlight.contains(nextDelivery.getId())) {
+					continue;
+				}
+
+				final ResourceDeliveryMessage message = new Gson().fromJson(nextDelivery.getMessageText(), ResourceDeliveryMessage.class);
+				String endpoint = defaultIfBlank(message.getSubscription().getEndpointUrl(), nextSubscriptionId);
+				final Semaphore endpointPermits = getEndpointPermits(endpoint);
+				if (!endpointPermits.tryAcquire()) {
+					break;
+				}
+				if (!myGlobalPermits.tryAcquire()) {
+					endpointPermits.release();
+					return;
+				}
+
+				if (!claim(nextDelivery, now)) {
+					// Finished or rescheduled since it was loaded
+					endpointPermits.release();
+					myGlobalPermits.release();
+					continue;
+				}
+
+				myInFlight.add(nextDelivery.getId());
+				myDeliveryExecutor.submit(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							deliver(nextDelivery, message);
+						} catch (Exception e) {
+							ourLog.error("Failure recording the outcome of delivery " + nextDelivery.getId(), e);
+						} finally {
+							myInFlight.remove(nextDelivery.getId());
+							endpointPermits.release();
+							myGlobalPermits.release();
+							wake();
+						}
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of deliveries which have been abandoned after failing {@link #setMaxAttempts(int) too many times}
+	 */
+	public long getAbandonedCount() {
+		return myAbandonedCount.get();
+	}
+
+	/**
+	 * Returns the number of deliveries which have been made successfully
+	 */
+	public long getDeliveredCount() {
+		return myDeliveredCount.get();
+	}
+
+	private Semaphore getEndpointPermits(String theEndpoint) {
+		Semaphore retVal = myEndpointPermits.get(theEndpoint);
+		if (retVal == null) {
+			myEndpointPermits.putIfAbsent(theEndpoint, new Semaphore(myMaxConcurrentDeliveriesPerEndpoint));
+			retVal = myEndpointPermits.get(theEndpoint);
+		}
+		return retVal;
+	}
+
+	/**
+	 * Returns the number of delivery attempts which have failed (including ones which will be retried)
+	 */
+	public long getFailedAttemptCount() {
+		return myFailedAttemptCount.get();
+	}
+
+	/**
+	 * Returns the number of deliveries currently being attempted
+	 */
+	public int getInFlightCount() {
+		return myInFlight.size();
+	}
+
+	/**
+	 * Returns the number of deliveries which are queued, including the ones being attempted
+	 * and the ones waiting to be retried
+	 */
+	public long getQueueDepth() {
+		return myPendingCount.get();
+	}
+
+	/**
+	 * Returns the number of queued deliveries for each subscription (keyed by the subscription ID).
+	 * Unlike {@link #getQueueDepth()}, this queries the database.
+	 */
+	public Map<String, Long> getQueueDepths() {
+		return myTxTemplate.execute(new TransactionCallback<Map<String, Long>>() {
+			@Override
+			public Map<String, Long> doInTransaction(TransactionStatus theStatus) {
+				Map<String, Long> retVal = new TreeMap<>();
+				for (Object[] next : mySubscriptionDeliveryDao.countByChannelGroupedBySubscription(myChannelName)) {
+					retVal.put((String) next[0], ((Number) next[1]).longValue());
+				}
+				return retVal;
+			}
+		});
+	}
+
+	@VisibleForTesting
+	long getRetryDelayMillis(int theAttempts) {
+		long retVal = myInitialRetryDelayMillis;
+		for (int i = 1; i < theAttempts && retVal < myMaxRetryDelayMillis; i++) {
+			retVal = retVal * 2;
+		}
+		return Math.min(retVal, myMaxRetryDelayMillis);
+	}
+
+	private void removeDelivery(final long thePid) {
+		Integer deleted = myTxTemplate.execute(new TransactionCallback<Integer>() {
+			@Override
+			public Integer doInTransaction(TransactionStatus theStatus) {
+				return mySubscriptionDeliveryDao.deleteByPid(thePid);
+			}
+		});
+		if (deleted == 1) {
+			decrementPendingCount();
+		}
+	}
+
+	@Override
+	protected boolean sendInternal(Message<?> theMessage, long theTimeout) {
+		Validate.isTrue(theMessage.getPayload() instanceof ResourceDeliveryMessage, "Unexpected payload type: %s", theMessage.getPayload());
+		ResourceDeliveryMessage message = (ResourceDeliveryMessage) theMessage.getPayload();
+		Validate.notNull(message.getSubscription(), "Message has no subscription");
+
+		long deadline = theTimeout < 0 ? Long.MAX_VALUE : System.currentTimeMillis() + theTimeout;
+		synchronized (myCapacityLock) {
+			while (myPendingCount.get() >= myMaxQueueDepth) {
+				long wait = deadline - System.currentTimeMillis();
+				if (wait <= 0) {
+					ourLog.warn("Delivery queue {} is full ({} deliveries), rejecting message", myChannelName, myPendingCount.get());
+					return false;
+				}
+				try {
+					myCapacityLock.wait(Math.min(wait, myPollIntervalMillis));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+			myPendingCount.incrementAndGet();
+		}
+
+		final SubscriptionDelivery delivery = new SubscriptionDelivery();
+		delivery.setChannelName(myChannelName);
+		delivery.setSubscriptionId(new IdType(message.getSubscription().getIdElementString()).getIdPart());
+		delivery.setMessageText(new Gson().toJson(message));
+		delivery.setCreated(new Date());
+		delivery.setNextAttempt(delivery.getCreated());
+		try {
+			myTxTemplate.execute(new TransactionCallback<Void>() {
+				@Override
+				public Void doInTransaction(TransactionStatus theStatus) {
+					mySubscriptionDeliveryDao.save(delivery);
+					return null;
+				}
+			});
+		} catch (RuntimeException e) {
+			decrementPendingCount();
+			throw e;
+		}
+
+		wake();
+		return true;
+	}
+
+	/**
+	 * Sets how long a delivery stays claimed once it has been handed to a delivery thread, in milliseconds.
+	 * If the server stops while a delivery is in progress, it is attempted again after this time. Default
+	 * is 60000.
+	 */
+	public void setClaimTimeoutMillis(long theClaimTimeoutMillis) {
+		Validate.isTrue(theClaimTimeoutMillis > 0, "theClaimTimeoutMillis must be positive");
+		myClaimTimeoutMillis = theClaimTimeoutMillis;
+	}
+
+	/**
+	 * Sets the delay before the first retry of a failed delivery, in milliseconds. The delay doubles with each
+	 * further failure, up to {@link #setMaxRetryDelayMillis(long)}. Default is 1000.
+	 */
+	public void setInitialRetryDelayMillis(long theInitialRetryDelayMillis) {
+		Validate.isTrue(theInitialRetryDelayMillis >= 0, "theInitialRetryDelayMillis must not be negative");
+		myInitialRetryDelayMillis = theInitialRetryDelayMillis;
+	}
+
+	/**
+	 * Sets the number of times a delivery is attempted before it is abandoned. Default is 10.
+	 */
+	public void setMaxAttempts(int theMaxAttempts) {
+		Validate.inclusiveBetween(1, Integer.MAX_VALUE, theMaxAttempts);
+		myMaxAttempts = theMaxAttempts;
+	}
+
+	/**
+	 * Sets the maximum number of deliveries attempted at the same time, across all endpoints. Default is 50.
+	 * Must be set before the channel is started.
+	 */
+	public void setMaxConcurrentDeliveries(int theMaxConcurrentDeliveries) {
+		Validate.inclusiveBetween(1, Integer.MAX_VALUE, theMaxConcurrentDeliveries);
+		myMaxConcurrentDeliveries = theMaxConcurrentDeliveries;
+	}
+
+	/**
+	 * Sets the maximum number of deliveries attempted at the same time to any one endpoint. Default is 2.
+	 * Must be set before the channel is started.
+	 */
+	public void setMaxConcurrentDeliveriesPerEndpoint(int theMaxConcurrentDeliveriesPerEndpoint) {
+		Validate.inclusiveBetween(1, Integer.MAX_VALUE, theMaxConcurrentDeliveriesPerEndpoint);
+		myMaxConcurrentDeliveriesPerEndpoint = theMaxConcurrentDeliveriesPerEndpoint;
+	}
+
+	/**
+	 * Sets the maximum number of queued deliveries. Once this many are queued, sending to the channel
+	 * blocks until a delivery completes. Default is 10000.
+	 */
+	public void setMaxQueueDepth(int theMaxQueueDepth) {
+		Validate.inclusiveBetween(1, Integer.MAX_VALUE, theMaxQueueDepth);
+		myMaxQueueDepth = theMaxQueueDepth;
+	}
+
+	/**
+	 * Sets the maximum delay before retrying a failed delivery, in milliseconds. Default is 10 minutes.
+	 */
+	public void setMaxRetryDelayMillis(long theMaxRetryDelayMillis) {
+		Validate.isTrue(theMaxRetryDelayMillis >= 0, "theMaxRetryDelayMillis must not be negative");
+		myMaxRetryDelayMillis = theMaxRetryDelayMillis;
+	}
+
+	/**
+	 * Sets how often the queue is checked for deliveries which have become due for a retry, in milliseconds.
+	 * New deliveries are dispatched immediately. Default is 1000.
+	 */
+	public void setPollIntervalMillis(long thePollIntervalMillis) {
+		Validate.isTrue(thePollIntervalMillis > 0, "thePollIntervalMillis must be positive");
+		myPollIntervalMillis = thePollIntervalMillis;
+	}
+
+	/**
+	 * Starts dispatching deliveries, including any which were queued before the server was last stopped
+	 */
+	public synchronized void start() {
+		if (myRunning) {
+			return;
+		}
+
+		long pending = myTxTemplate.execute(new TransactionCallback<Long>() {
+			@Override
+			public Long doInTransaction(TransactionStatus theStatus) {
+				return mySubscriptionDeliveryDao.countByChannel(myChannelName);
+			}
+		});
+		myPendingCount.set(pending);
+		if (pending > 0) {
+			ourLog.info("Delivery queue {} has {} deliveries queued from a previous run", myChannelName, pending);
+		}
+
+		myGlobalPermits = new Semaphore(myMaxConcurrentDeliveries);
+		myEndpointPermits.clear();
+		myDeliveryExecutor = Executors.newCachedThreadPool(new BasicThreadFactory.Builder()
+			.namingPattern("subscription-delivery-" + myChannelName + "-%d")
+			.daemon(false)
+			.priority(Thread.NORM_PRIORITY)
+			.build());
+
+		myRunning = true;
+		myDispatcher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (myRunning) {
+					try {
+						dispatch();
+					} catch (Exception e) {
+						ourLog.error("Failure dispatching subscription deliveries", e);
+					}
+					synchronized (myWakeLock) {
+						if (!myWakeRequested && myRunning) {
+							try {
+								myWakeLock.wait(myPollIntervalMillis);
+							} catch (InterruptedException e) {
+								Thread.currentThread().interrupt();
+								return;
+							}
+						}
+						myWakeRequested = false;
+					}
+				}
+			}
+		}, "subscription-delivery-dispatcher-" + myChannelName);
+		myDispatcher.setDaemon(true);
+		myDispatcher.start();
+	}
+
+	/**
+	 * Stops dispatching deliveries and waits briefly for the ones in progress to finish. Deliveries
+	 * which are still queued remain in the database.
+	 */
+	public synchronized void stop() {
+		if (!myRunning) {
+			return;
+		}
+		myRunning = false;
+		wake();
+		try {
+			// The dispatcher may be part way through a pass which hands claimed deliveries to the
+			// executor, so let it finish before the executor stops accepting them
+			myDispatcher.join(10000);
+			if (myDispatcher.isAlive()) {
+				ourLog.warn("Dispatcher for delivery queue {} did not stop within 10 seconds", myChannelName);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		myDeliveryExecutor.shutdown();
+		try {
+			if (!myDeliveryExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+				ourLog.warn("Delivery queue {} stopped with {} deliveries still in progress", myChannelName, myInFlight.size());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void wake() {
+		synchronized (myWakeLock) {
+			myWakeRequested = true;
+			myWakeLock.notifyAll();
+		}
+	}
+
+}
@@ -0,0 +1,204 @@
+package ca.uhn.fhir.jpa.subscription.resthook;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2018 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.subscription.CanonicalSubscription;
+import ca.uhn.fhir.jpa.subscription.ResourceDeliveryMessage;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the deliveries for each subscription into batches, which are handed back to the
+ * subscriber once they reach a maximum size or once the first delivery in the batch has
+ * waited for a given time. If a resource changes more than once within a batch, only its
+ * latest change is kept.
+ * <p>
+ * Batches whose time has passed are delivered on a pool of delivery threads, so that a slow
+ * endpoint does not hold up the batches for other subscriptions.
+ * </p>
+ */
+class RestHookDeliveryBatcher {
+
+	private static final Logger ourLog = LoggerFactory.getLogger(RestHookDeliveryBatcher.class);
+	private final Map<String, Batch> myBatches = new HashMap<>();
+	private final FhirContext myCtx;
+	private final ExecutorService myDeliveryExecutor;
+	private final int myMaxBatchSize;
+	private final ScheduledExecutorService myScheduler;
+	private final SubscriptionDeliveringRestHookSubscriber mySubscriber;
+	private final long myWindowMillis;
+	private boolean myStopped;
+
+	RestHookDeliveryBatcher(FhirContext theCtx, SubscriptionDeliveringRestHookSubscriber theSubscriber, int theMaxBatchSize, long theWindowMillis) {
+		myCtx = theCtx;
+		mySubscriber = theSubscriber;
+		myMaxBatchSize = theMaxBatchSize;
+		myWindowMillis = theWindowMillis;
+		myScheduler = Executors.newSingleThreadScheduledExecutor(new BasicThreadFactory.Builder()
+			.namingPattern("subscription-resthook-batch-%d")
+			.daemon(true)
+			.build());
+		myDeliveryExecutor = Executors.newCachedThreadPool(new BasicThreadFactory.Builder()
+			.namingPattern("subscription-resthook-batch-delivery-%d")
+			.daemon(true)
+			.build());
+	}
+
+	/**
+	 * Adds a delivery to the batch for its subscription. If this fills the batch, it is delivered
+	 * by the calling thread, and any failure is thrown to the caller.
+	 *
+	 * @return Returns <code>false</code> if the batcher has been stopped, in which case the delivery was
+	 * not added and should be made by the caller
+	 */
+	boolean add(ResourceDeliveryMessage theMessage) throws Exception {
+		final String subscriptionId = theMessage.getSubscription().getIdElement(myCtx).getIdPart();
+
+		Batch full = null;
+		synchronized (myBatches) {
+			if (myStopped) {
+				return false;
+			}
+			Batch batch = myBatches.get(subscriptionId);
+			if (batch == null) {
+				batch = new Batch();
+				myBatches.put(subscriptionId, batch);
+				final Batch scheduled = batch;
+				myScheduler.schedule(new Runnable() {
+					@Override
+					public void run() {
+						myDeliveryExecutor.submit(new Runnable() {
+							@Override
+							public void run() {
+								flush(subscriptionId, scheduled);
+							}
+						});
+					}
+				}, myWindowMillis, TimeUnit.MILLISECONDS);
+			}
+			batch.add(theMessage);
+			if (batch.size() >= myMaxBatchSize) {
+				myBatches.remove(subscriptionId);
+				full = batch;
+			}
+		}
+
+		if (full != null) {
+			full.deliver();
+		}
+		return true;
+	}
+
+	private void flush(String theSubscriptionId, Batch theBatch) {
+		synchronized (myBatches) {
+			if (myBatches.get(theSubscriptionId) != theBatch) {
+				// Already delivered because it filled up
+				return;
+			}
+			myBatches.remove(theSubscriptionId);
+		}
+
+		try {
+			theBatch.deliver();
+		} catch (Exception e) {
+			ourLog.error("Failed to deliver a batch of " + theBatch.size() + " rest-hook payloads for Subscription/" + theSubscriptionId, e);
+		}
+	}
+
+	/**
+	 * Stops the timer and delivers any batches which are still being collected. Once this
+	 * returns, all of the batches have been delivered (or have failed).
+	 */
+	void stop() {
+		List<String> subscriptionIds;
+		synchronized (myBatches) {
+			myStopped = true;
+			subscriptionIds = new ArrayList<>(myBatches.keySet());
+		}
+
+		// Once the timer has stopped, nothing else is handed to the delivery threads
+		myScheduler.shutdownNow();
+		try {
+			myScheduler.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		for (String next : subscriptionIds) {
+			Batch batch;
+			synchronized (myBatches) {
+				batch = myBatches.get(next);
+			}
+			if (batch != null) {
+				flush(next, batch);
+			}
+		}
+
+		myDeliveryExecutor.shutdown();
+		try {
+			if (!myDeliveryExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+				ourLog.warn("Stopped batching rest-hook deliveries with batches still being delivered");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private class Batch {
+
+		private final LinkedHashMap<String, ResourceDeliveryMessage> myMessages = new LinkedHashMap<>();
+		private CanonicalSubscription mySubscription;
+
+		void add(ResourceDeliveryMessage theMessage) {
+			// Use the most recent version of the subscription
+			mySubscription = theMessage.getSubscription();
+
+			IIdType payloadId = theMessage.getPayloadId(myCtx);
+			if (payloadId == null && theMessage.getPayload(myCtx) != null) {
+				payloadId = theMessage.getPayload(myCtx).getIdElement();
+			}
+			String key = payloadId != null ? payloadId.toUnqualifiedVersionless().getValue() : UUID.randomUUID().toString();
+
+			// A later change to the same resource replaces the earlier one, and moves to the end
+			myMessages.remove(key);
+			myMessages.put(key, theMessage);
+		}
+
+		void deliver() throws Exception {
+			mySubscriber.deliverBatch(mySubscription, new ArrayList<>(myMessages.values()));
+		}
+
+		int size() {
+			return myMessages.size();
+		}
+
+	}
+
+}
@@ -20,34 +20,115 @@ package ca.uhn.fhir.jpa.subscription.resthook;
  * #L%
  */
 
+import ca.uhn.fhir.context.ConfigurationException;
 import ca.uhn.fhir.jpa.dao.IFhirResourceDao;
 import ca.uhn.fhir.jpa.subscription.*;
 import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.EncodingEnum;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
 import ca.uhn.fhir.rest.client.api.ServerValidationModeEnum;
 import ca.uhn.fhir.rest.client.interceptor.SimpleRequestHeaderInterceptor;
 import ca.uhn.fhir.rest.gclient.IClientExecutable;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
 import org.hl7.fhir.r4.model.Subscription;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.messaging.Message;
-import org.springframework.messaging.MessagingException;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
+import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
 public class SubscriptionDeliveringRestHookSubscriber extends BaseSubscriptionDeliverySubscriber {
+	private static final int MAX_CACHED_CLIENTS = 1000;
 	private Logger ourLog = LoggerFactory.getLogger(SubscriptionDeliveringRestHookSubscriber.class);
+	private volatile RestHookDeliveryBatcher myBatcher;
+	private ConcurrentHashMap<String, IGenericClient> myClients = new ConcurrentHashMap<>();
 
 	public SubscriptionDeliveringRestHookSubscriber(IFhirResourceDao<?> theSubscriptionDao, Subscription.SubscriptionChannelType theChannelType, BaseSubscriptionInterceptor theSubscriptionInterceptor) {
 		super(theSubscriptionDao, theChannelType, theSubscriptionInterceptor);
 	}
 
+	/**
+	 * Creates a transaction Bundle which applies each of the given deliveries as an update
+	 * (for a create or update) or a delete
+	 */
+	protected IBaseBundle createDeliveryBundle(List<ResourceDeliveryMessage> theMessages) {
+		switch (getContext().getVersion().getVersion()) {
+			case DSTU2: {
+				ca.uhn.fhir.model.dstu2.resource.Bundle retVal = new ca.uhn.fhir.model.dstu2.resource.Bundle();
+				retVal.setType(ca.uhn.fhir.model.dstu2.valueset.BundleTypeEnum.TRANSACTION);
+				for (ResourceDeliveryMessage next : theMessages) {
+					ca.uhn.fhir.model.dstu2.resource.Bundle.Entry entry = retVal.addEntry();
+					if (next.getOperationType() == RestOperationTypeEnum.DELETE) {
+						entry.getRequest().setMethod(ca.uhn.fhir.model.dstu2.valueset.HTTPVerbEnum.DELETE);
+					} else {
+						entry.setResource((ca.uhn.fhir.model.api.IResource) next.getPayload(getContext()));
+						entry.getRequest().setMethod(ca.uhn.fhir.model.dstu2.valueset.HTTPVerbEnum.PUT);
+					}
+					entry.getRequest().setUrl(getRequestUrl(next));
+				}
+				return retVal;
+			}
+			case DSTU3: {
+				org.hl7.fhir.dstu3.model.Bundle retVal = new org.hl7.fhir.dstu3.model.Bundle();
+				retVal.setType(org.hl7.fhir.dstu3.model.Bundle.BundleType.TRANSACTION);
+				for (ResourceDeliveryMessage next : theMessages) {
+					org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent entry = retVal.addEntry();
+					if (next.getOperationType() == RestOperationTypeEnum.DELETE) {
+						entry.getRequest().setMethod(org.hl7.fhir.dstu3.model.Bundle.HTTPVerb.DELETE);
+					} else {
+						entry.setResource((org.hl7.fhir.dstu3.model.Resource) next.getPayload(getContext()));
+						entry.getRequest().setMethod(org.hl7.fhir.dstu3.model.Bundle.HTTPVerb.PUT);
+					}
+					entry.getRequest().setUrl(getRequestUrl(next));
+				}
+				return retVal;
+			}
+			case R4: {
+				org.hl7.fhir.r4.model.Bundle retVal = new org.hl7.fhir.r4.model.Bundle();
+				retVal.setType(org.hl7.fhir.r4.model.Bundle.BundleType.TRANSACTION);
+				for (ResourceDeliveryMessage next : theMessages) {
+					org.hl7.fhir.r4.model.Bundle.BundleEntryComponent entry = retVal.addEntry();
+					if (next.getOperationType() == RestOperationTypeEnum.DELETE) {
+						entry.getRequest().setMethod(org.hl7.fhir.r4.model.Bundle.HTTPVerb.DELETE);
+					} else {
+						entry.setResource((org.hl7.fhir.r4.model.Resource) next.getPayload(getContext()));
+						entry.getRequest().setMethod(org.hl7.fhir.r4.model.Bundle.HTTPVerb.PUT);
+					}
+					entry.getRequest().setUrl(getRequestUrl(next));
+				}
+				return retVal;
+			}
+			default:
+				throw new ConfigurationException("Batched rest-hook delivery not supported for version: " + getContext().getVersion().getVersion());
+		}
+	}
+
+	/**
+	 * Delivers several payloads for the same subscription as a single transaction
+	 */
+	protected void deliverBatch(CanonicalSubscription theSubscription, List<ResourceDeliveryMessage> theMessages) {
+		IGenericClient client = getClient(theSubscription);
+		if (client == null) {
+			return;
+		}
+
+		IBaseBundle bundle = createDeliveryBundle(theMessages);
+
+		ourLog.info("Delivering batch of {} rest-hook payloads for {}", theMessages.size(), theSubscription.getIdElement(getContext()).toUnqualifiedVersionless().getValue());
+
+		client.transaction().withBundle(bundle).encoded(getPayloadType(theSubscription)).execute();
+	}
+
 	protected void deliverPayload(ResourceDeliveryMessage theMsg, CanonicalSubscription theSubscription, EncodingEnum thePayloadType, IGenericClient theClient) {
 		IBaseResource payloadResource = theMsg.getPayload(getContext());
 
@@ -74,39 +155,93 @@ public class SubscriptionDeliveringRestHookSubscriber extends BaseSubscriptionDe
 		operation.execute();
 	}
 
-	@Override
-	public void handleMessage(ResourceDeliveryMessage theMessage) throws MessagingException {
-			CanonicalSubscription subscription = theMessage.getSubscription();
+	/**
+	 * Returns a client for the subscription's endpoint, with the subscription's headers, or <code>null</code>
+	 * if the subscription has no endpoint. Clients are reused for as long as the endpoint and headers stay
+	 * the same, and all of them share the connection pool of the context's client factory.
+	 */
+	protected IGenericClient getClient(CanonicalSubscription theSubscription) {
+		String endpointUrl = theSubscription.getEndpointUrl();
+		if (isBlank(endpointUrl)) {
+			return null;
+		}
 
-			// Grab the endpoint from the subscription
-			String endpointUrl = subscription.getEndpointUrl();
+		List<String> headers = ObjectUtils.defaultIfNull(theSubscription.getHeaders(), Collections.<String>emptyList());
+		String key = endpointUrl + "\n" + StringUtils.join(headers, "\n");
+		IGenericClient retVal = myClients.get(key);
+		if (retVal == null) {
+			getContext().getRestfulClientFactory().setServerValidationMode(ServerValidationModeEnum.NEVER);
+			retVal = getContext().newRestfulGenericClient(endpointUrl);
 
-			// Grab the payload type (encoding mimetype) from the subscription
-			String payloadString = subscription.getPayloadString();
-			payloadString = StringUtils.defaultString(payloadString, Constants.CT_FHIR_XML_NEW);
-			if (payloadString.contains(";")) {
-				payloadString = payloadString.substring(0, payloadString.indexOf(';'));
+			// Additional headers specified in the subscription
+			for (String next : headers) {
+				if (isNotBlank(next)) {
+					retVal.registerInterceptor(new SimpleRequestHeaderInterceptor(next));
+				}
 			}
-			payloadString = payloadString.trim();
-			EncodingEnum payloadType = EncodingEnum.forContentType(payloadString);
-			payloadType = ObjectUtils.defaultIfNull(payloadType, EncodingEnum.XML);
 
-			// Create the client request
-			getContext().getRestfulClientFactory().setServerValidationMode(ServerValidationModeEnum.NEVER);
-			IGenericClient client = null;
-			if (isNotBlank(endpointUrl)) {
-				client = getContext().newRestfulGenericClient(endpointUrl);
-
-				// Additional headers specified in the subscription
-				List<String> headers = subscription.getHeaders();
-				for (String next : headers) {
-					if (isNotBlank(next)) {
-						client.registerInterceptor(new SimpleRequestHeaderInterceptor(next));
-					}
-				}
+			if (myClients.size() >= MAX_CACHED_CLIENTS) {
+				myClients.clear();
 			}
+			myClients.put(key, retVal);
+		}
+		return retVal;
+	}
 
-			deliverPayload(theMessage, subscription, payloadType, client);
+	private EncodingEnum getPayloadType(CanonicalSubscription theSubscription) {
+		// Grab the payload type (encoding mimetype) from the subscription
+		String payloadString = theSubscription.getPayloadString();
+		payloadString = StringUtils.defaultString(payloadString, Constants.CT_FHIR_XML_NEW);
+		if (payloadString.contains(";")) {
+			payloadString = payloadString.substring(0, payloadString.indexOf(';'));
+		}
+		payloadString = payloadString.trim();
+		EncodingEnum payloadType = EncodingEnum.forContentType(payloadString);
+		return ObjectUtils.defaultIfNull(payloadType, EncodingEnum.XML);
+	}
+
+	private String getRequestUrl(ResourceDeliveryMessage theMessage) {
+		IIdType id = theMessage.getPayloadId(getContext());
+		if (id == null) {
+			id = theMessage.getPayload(getContext()).getIdElement();
+		}
+		return id.toUnqualifiedVersionless().getValue();
+	}
+
+	@Override
+	public void handleMessage(ResourceDeliveryMessage theMessage) throws Exception {
+		CanonicalSubscription subscription = theMessage.getSubscription();
+
+		// If batching stops after this is read, the batcher refuses the delivery and it is made here instead
+		RestHookDeliveryBatcher batcher = myBatcher;
+		if (batcher != null && batcher.add(theMessage)) {
+			return;
+		}
+
+		deliverPayload(theMessage, subscription, getPayloadType(subscription), getClient(subscription));
+	}
+
+	/**
+	 * Starts collecting the deliveries for each subscription into batches, which are delivered as a
+	 * single transaction Bundle once they contain the given number of payloads, or once the given
+	 * time has passed since the first payload was added
+	 */
+	public synchronized void startBatchedDelivery(int theMaxBatchSize, long theWindowMillis) {
+		Validate.isTrue(theMaxBatchSize > 0, "theMaxBatchSize must be positive");
+		Validate.isTrue(theWindowMillis >= 0, "theWindowMillis must not be negative");
+		stopBatchedDelivery();
+		myBatcher = new RestHookDeliveryBatcher(getContext(), this, theMaxBatchSize, theWindowMillis);
+	}
+
+	/**
+	 * Stops batching deliveries, and delivers the batches which have been collected so far
+	 */
+	public synchronized void stopBatchedDelivery() {
+		if (myBatcher != null) {
+			RestHookDeliveryBatcher batcher = myBatcher;
+			myBatcher = null;
+			batcher.stop();
+		}
 	}
 
 }
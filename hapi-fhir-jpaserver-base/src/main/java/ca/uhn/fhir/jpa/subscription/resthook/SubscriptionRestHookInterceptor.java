@@ -20,16 +20,95 @@ package ca.uhn.fhir.jpa.subscription.resthook;
  * #L%
  */
 
+import ca.uhn.fhir.context.ConfigurationException;
 import ca.uhn.fhir.jpa.subscription.BaseSubscriptionInterceptor;
+import org.apache.commons.lang3.Validate;
 
 public class SubscriptionRestHookInterceptor extends BaseSubscriptionInterceptor {
+	private boolean myBatchedDeliveryEnabled;
+	private int myBatchedDeliveryMaxSize = 100;
+	private long myBatchedDeliveryWindowMillis = 500;
 	private SubscriptionDeliveringRestHookSubscriber mySubscriptionDeliverySubscriber;
 
+	/**
+	 * The maximum number of payloads in a batch when {@link #setBatchedDeliveryEnabled(boolean) batched delivery}
+	 * is enabled. Default is 100.
+	 */
+	public int getBatchedDeliveryMaxSize() {
+		return myBatchedDeliveryMaxSize;
+	}
+
+	/**
+	 * The maximum number of payloads in a batch when {@link #setBatchedDeliveryEnabled(boolean) batched delivery}
+	 * is enabled. Default is 100.
+	 */
+	public void setBatchedDeliveryMaxSize(int theBatchedDeliveryMaxSize) {
+		Validate.inclusiveBetween(1, Integer.MAX_VALUE, theBatchedDeliveryMaxSize);
+		myBatchedDeliveryMaxSize = theBatchedDeliveryMaxSize;
+	}
+
+	/**
+	 * How long the first payload in a batch waits for more payloads to arrive when
+	 * {@link #setBatchedDeliveryEnabled(boolean) batched delivery} is enabled, in milliseconds. Default is 500.
+	 */
+	public long getBatchedDeliveryWindowMillis() {
+		return myBatchedDeliveryWindowMillis;
+	}
+
+	/**
+	 * How long the first payload in a batch waits for more payloads to arrive when
+	 * {@link #setBatchedDeliveryEnabled(boolean) batched delivery} is enabled, in milliseconds. Default is 500.
+	 */
+	public void setBatchedDeliveryWindowMillis(long theBatchedDeliveryWindowMillis) {
+		Validate.isTrue(theBatchedDeliveryWindowMillis >= 0, "theBatchedDeliveryWindowMillis must not be negative");
+		myBatchedDeliveryWindowMillis = theBatchedDeliveryWindowMillis;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), payloads for the same subscription
+	 * are collected into batches of up to {@link #setBatchedDeliveryMaxSize(int) a maximum size}, for up to
+	 * {@link #setBatchedDeliveryWindowMillis(long) a given time}, and each batch is delivered to the
+	 * endpoint as a single transaction Bundle instead of one request per payload. If a resource changes
+	 * several times within a batch, only its latest version is delivered.
+	 * <p>
+	 * A payload is considered delivered once it has been added to a batch, so a batch which fails is
+	 * logged but not retried. For this reason batched delivery can not be combined with
+	 * {@link #setDurableDeliveryEnabled(boolean) durable delivery}. This must be set before the
+	 * interceptor is started.
+	 * </p>
+	 */
+	public boolean isBatchedDeliveryEnabled() {
+		return myBatchedDeliveryEnabled;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), payloads for the same subscription
+	 * are collected into batches of up to {@link #setBatchedDeliveryMaxSize(int) a maximum size}, for up to
+	 * {@link #setBatchedDeliveryWindowMillis(long) a given time}, and each batch is delivered to the
+	 * endpoint as a single transaction Bundle instead of one request per payload. If a resource changes
+	 * several times within a batch, only its latest version is delivered.
+	 * <p>
+	 * A payload is considered delivered once it has been added to a batch, so a batch which fails is
+	 * logged but not retried. For this reason batched delivery can not be combined with
+	 * {@link #setDurableDeliveryEnabled(boolean) durable delivery}. This must be set before the
+	 * interceptor is started.
+	 * </p>
+	 */
+	public void setBatchedDeliveryEnabled(boolean theBatchedDeliveryEnabled) {
+		myBatchedDeliveryEnabled = theBatchedDeliveryEnabled;
+	}
+
 	@Override
 	protected void registerDeliverySubscriber() {
 		if (mySubscriptionDeliverySubscriber == null) {
 			mySubscriptionDeliverySubscriber = new SubscriptionDeliveringRestHookSubscriber(getSubscriptionDao(), getChannelType(), this);
 		}
+		if (isBatchedDeliveryEnabled()) {
+			if (isDurableDeliveryEnabled()) {
+				throw new ConfigurationException("Batched rest-hook delivery can not be combined with durable delivery");
+			}
+			mySubscriptionDeliverySubscriber.startBatchedDelivery(getBatchedDeliveryMaxSize(), getBatchedDeliveryWindowMillis());
+		}
 		getDeliveryChannel().subscribe(mySubscriptionDeliverySubscriber);
 	}
 
@@ -41,5 +120,6 @@ public class SubscriptionRestHookInterceptor extends BaseSubscriptionInterceptor
 	@Override
 	protected void unregisterDeliverySubscriber() {
 		getDeliveryChannel().unsubscribe(mySubscriptionDeliverySubscriber);
+		mySubscriptionDeliverySubscriber.stopBatchedDelivery();
 	}
 }
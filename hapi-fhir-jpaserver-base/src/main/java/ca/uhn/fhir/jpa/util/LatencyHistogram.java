@@ -0,0 +1,129 @@
+package ca.uhn.fhir.jpa.util;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2018 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A simple thread safe histogram of latencies (in milliseconds), using a fixed set of
+ * roughly logarithmic buckets. Recording a value is lock free and doesn't allocate, so
+ * this can be updated on every search.
+ * <p>
+ * Percentiles are approximate: they return the upper bound of the bucket which contains
+ * the requested percentile (or the largest recorded value, for the last bucket).
+ * </p>
+ */
+public class LatencyHistogram {
+
+	private static final long[] BUCKET_UPPER_BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000, Long.MAX_VALUE};
+
+	private final AtomicLongArray myBucketCounts = new AtomicLongArray(BUCKET_UPPER_BOUNDS.length);
+	private final AtomicLong myCount = new AtomicLong();
+	private final AtomicLong myMaxMillis = new AtomicLong();
+	private final AtomicLong myTotalMillis = new AtomicLong();
+
+	/**
+	 * Returns the upper bound (inclusive, in milliseconds) of each bucket
+	 */
+	public long[] getBucketUpperBounds() {
+		return BUCKET_UPPER_BOUNDS.clone();
+	}
+
+	/**
+	 * Returns a snapshot of the number of values recorded in each bucket
+	 */
+	public long[] getBucketCounts() {
+		long[] retVal = new long[BUCKET_UPPER_BOUNDS.length];
+		for (int i = 0; i < retVal.length; i++) {
+			retVal[i] = myBucketCounts.get(i);
+		}
+		return retVal;
+	}
+
+	public long getCount() {
+		return myCount.get();
+	}
+
+	public long getMaxMillis() {
+		return myMaxMillis.get();
+	}
+
+	/**
+	 * Returns the mean of all recorded values, or 0 if nothing has been recorded
+	 */
+	public long getMeanMillis() {
+		long count = myCount.get();
+		if (count == 0) {
+			return 0;
+		}
+		return myTotalMillis.get() / count;
+	}
+
+	/**
+	 * Returns an approximation of the given percentile
+	 *
+	 * @param thePercentile The percentile, between 0 and 100
+	 */
+	public long getPercentileMillis(double thePercentile) {
+		long[] counts = getBucketCounts();
+		long total = 0;
+		for (long next : counts) {
+			total += next;
+		}
+		if (total == 0) {
+			return 0;
+		}
+
+		long wanted = (long) Math.ceil(total * (thePercentile / 100.0));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= wanted && counts[i] > 0) {
+				return Math.min(BUCKET_UPPER_BOUNDS[i], getMaxMillis());
+			}
+		}
+		return getMaxMillis();
+	}
+
+	public void record(long theMillis) {
+		long millis = Math.max(0, theMillis);
+		int bucket = 0;
+		while (millis > BUCKET_UPPER_BOUNDS[bucket]) {
+			bucket++;
+		}
+		myBucketCounts.incrementAndGet(bucket);
+		myCount.incrementAndGet();
+		myTotalMillis.addAndGet(millis);
+
+		long max;
+		do {
+			max = myMaxMillis.get();
+		} while (millis > max && !myMaxMillis.compareAndSet(max, millis));
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + getCount() + " mean=" + getMeanMillis() + "ms p50=" + getPercentileMillis(50) + "ms p95=" + getPercentileMillis(95) + "ms p99=" + getPercentileMillis(99) + "ms max=" + getMaxMillis() + "ms";
+	}
+
+}
@@ -0,0 +1,113 @@
+package ca.uhn.fhir.jpa.util;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2018 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A growable list of primitive <code>long</code> values, used to hold resource PIDs
+ * without the overhead of boxing each one into a {@link Long} (which costs roughly
+ * four times the memory of the value itself once the reference is counted).
+ * <p>
+ * This class is not thread safe.
+ * </p>
+ */
+public class LongArrayList {
+
+	private static final int DEFAULT_CAPACITY = 16;
+	private long[] myValues;
+	private int mySize;
+
+	/**
+	 * Constructor
+	 */
+	public LongArrayList() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param theInitialCapacity The number of values the list can hold before it needs to grow
+	 */
+	public LongArrayList(int theInitialCapacity) {
+		Validate.isTrue(theInitialCapacity >= 0, "theInitialCapacity must not be negative");
+		myValues = new long[Math.max(theInitialCapacity, 1)];
+	}
+
+	public void add(long theValue) {
+		ensureCapacity(mySize + 1);
+		myValues[mySize++] = theValue;
+	}
+
+	public void addAll(LongArrayList theValues) {
+		ensureCapacity(mySize + theValues.mySize);
+		System.arraycopy(theValues.myValues, 0, myValues, mySize, theValues.mySize);
+		mySize += theValues.mySize;
+	}
+
+	public void clear() {
+		mySize = 0;
+	}
+
+	private void ensureCapacity(int theCapacity) {
+		if (theCapacity > myValues.length) {
+			int newCapacity = Math.max(theCapacity, myValues.length + (myValues.length >> 1) + 1);
+			myValues = Arrays.copyOf(myValues, newCapacity);
+		}
+	}
+
+	public long get(int theIndex) {
+		if (theIndex < 0 || theIndex >= mySize) {
+			throw new IndexOutOfBoundsException("Index " + theIndex + " is out of bounds for size " + mySize);
+		}
+		return myValues[theIndex];
+	}
+
+	public boolean isEmpty() {
+		return mySize == 0;
+	}
+
+	public int size() {
+		return mySize;
+	}
+
+	/**
+	 * Returns a boxed copy of the values between <code>theFromIndex</code> (inclusive)
+	 * and <code>theToIndex</code> (exclusive). This is intended for handing a single
+	 * page of values to APIs which require a {@link List}.
+	 */
+	public List<Long> toList(int theFromIndex, int theToIndex) {
+		if (theFromIndex < 0 || theToIndex > mySize || theFromIndex > theToIndex) {
+			throw new IndexOutOfBoundsException("Range " + theFromIndex + "-" + theToIndex + " is out of bounds for size " + mySize);
+		}
+		List<Long> retVal = new ArrayList<>(theToIndex - theFromIndex);
+		for (int i = theFromIndex; i < theToIndex; i++) {
+			retVal.add(myValues[i]);
+		}
+		return retVal;
+	}
+
+}
@@ -0,0 +1,134 @@
+package ca.uhn.fhir.jpa.util;
+
+/*
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2018 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * A set of primitive <code>long</code> values backed by an open addressing hash
+ * table, used to de-duplicate resource PIDs without allocating a {@link Long}
+ * and a hash map entry for each one.
+ * <p>
+ * The values are also kept in insertion order so that they can be handed on
+ * (e.g. to the <code>$everything</code> includes iterator) without copying the set.
+ * </p>
+ * <p>
+ * This class is not thread safe.
+ * </p>
+ */
+public class LongHashSet {
+
+	private static final float LOAD_FACTOR = 0.5f;
+	private static final long EMPTY = 0L;
+	private boolean myContainsEmptyValue;
+	private final LongArrayList myInsertionOrder = new LongArrayList();
+	private int myMask;
+	private int myResizeThreshold;
+	private long[] myTable;
+
+	/**
+	 * Constructor
+	 */
+	public LongHashSet() {
+		allocate(64);
+	}
+
+	/**
+	 * Adds a value to the set
+	 *
+	 * @return Returns <code>true</code> if the value was not already present in the set
+	 */
+	public boolean add(long theValue) {
+		if (theValue == EMPTY) {
+			if (myContainsEmptyValue) {
+				return false;
+			}
+			myContainsEmptyValue = true;
+			myInsertionOrder.add(theValue);
+			return true;
+		}
+
+		int index = indexOf(theValue);
+		if (myTable[index] == theValue) {
+			return false;
+		}
+
+		myTable[index] = theValue;
+		myInsertionOrder.add(theValue);
+		if (myInsertionOrder.size() > myResizeThreshold) {
+			rehash();
+		}
+		return true;
+	}
+
+	private void allocate(int theCapacity) {
+		myTable = new long[theCapacity];
+		myMask = theCapacity - 1;
+		myResizeThreshold = (int) (theCapacity * LOAD_FACTOR);
+	}
+
+	public boolean contains(long theValue) {
+		if (theValue == EMPTY) {
+			return myContainsEmptyValue;
+		}
+		return myTable[indexOf(theValue)] == theValue;
+	}
+
+	/**
+	 * Returns the values in this set, in the order they were first added. The
+	 * returned list is live and must not be modified by the caller.
+	 */
+	public LongArrayList getValuesInInsertionOrder() {
+		return myInsertionOrder;
+	}
+
+	/**
+	 * Returns the slot holding the given value, or the empty slot where it would be stored
+	 */
+	private int indexOf(long theValue) {
+		int index = mix(theValue) & myMask;
+		while (myTable[index] != EMPTY && myTable[index] != theValue) {
+			index = (index + 1) & myMask;
+		}
+		return index;
+	}
+
+	private void rehash() {
+		long[] oldTable = myTable;
+		allocate(oldTable.length * 2);
+		for (long next : oldTable) {
+			if (next != EMPTY) {
+				myTable[indexOf(next)] = next;
+			}
+		}
+	}
+
+	public int size() {
+		return myInsertionOrder.size();
+	}
+
+	/**
+	 * PIDs are sequential, so spread the bits before masking
+	 */
+	private static int mix(long theValue) {
+		long h = theValue * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+}
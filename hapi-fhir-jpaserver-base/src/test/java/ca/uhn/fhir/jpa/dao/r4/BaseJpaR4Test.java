@@ -61,6 +61,8 @@ public abstract class BaseJpaR4Test extends BaseJpaTest {
 	@Autowired
 	protected ISearchParamDao mySearchParamDao;
 	@Autowired
+	protected ISearchParamOrdinalDao mySearchParamOrdinalDao;
+	@Autowired
 	protected ISearchParamPresentDao mySearchParamPresentDao;
 	@Autowired
 	protected IResourceIndexedSearchParamStringDao myResourceIndexedSearchParamStringDao;
@@ -121,6 +123,8 @@ public abstract class BaseJpaR4Test extends BaseJpaTest {
 	@Qualifier("myGroupDaoR4")
 	protected IFhirResourceDao<Group> myGroupDao;
 	@Autowired
+	protected IHistoryArchivingSvc myHistoryArchivingSvc;
+	@Autowired
 	@Qualifier("myImmunizationDaoR4")
 	protected IFhirResourceDao<Immunization> myImmunizationDao;
 	@Autowired
@@ -0,0 +1,80 @@
+package ca.uhn.fhir.jpa.dao.r4;
+
+import ca.uhn.fhir.jpa.dao.DaoConfig;
+import ca.uhn.fhir.jpa.dao.HistoryArchivingSvcImpl;
+import ca.uhn.fhir.jpa.dao.data.IResourceHistoryArchiveDao;
+import ca.uhn.fhir.jpa.entity.ResourceHistoryTable;
+import ca.uhn.fhir.util.TestUtil;
+import org.apache.commons.lang3.time.DateUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FhirResourceDaoR4HistoryArchiveTest extends BaseJpaR4Test {
+
+	@Autowired
+	private IResourceHistoryArchiveDao myResourceHistoryArchiveDao;
+
+	@After
+	public void after() {
+		myDaoConfig.setHistoryArchiveAfterMillis(new DaoConfig().getHistoryArchiveAfterMillis());
+		HistoryArchivingSvcImpl.setNowForUnitTests(null);
+	}
+
+	@Test
+	public void testArchivedVersionsCanStillBeRead() {
+		Patient p = new Patient();
+		p.addName().setFamily("V1");
+		IIdType id1 = myPatientDao.create(p, mySrd).getId();
+
+		p.setId(id1.toVersionless());
+		p.getNameFirstRep().setFamily("V2");
+		IIdType id2 = myPatientDao.update(p, mySrd).getId();
+
+		p.getNameFirstRep().setFamily("V3");
+		IIdType id3 = myPatientDao.update(p, mySrd).getId();
+		assertEquals("3", id3.getVersionIdPart());
+
+		// Disabled by default
+		assertEquals(0, myHistoryArchivingSvc.archiveOldHistory());
+
+		myDaoConfig.setHistoryArchiveAfterMillis(DateUtils.MILLIS_PER_MINUTE);
+		HistoryArchivingSvcImpl.setNowForUnitTests(System.currentTimeMillis() + DateUtils.MILLIS_PER_HOUR);
+		assertEquals(2, myHistoryArchivingSvc.archiveOldHistory());
+		assertEquals(0, myHistoryArchivingSvc.archiveOldHistory());
+		assertEquals(1, myResourceHistoryArchiveDao.count());
+
+		ResourceHistoryTable version1 = myResourceHistoryTableDao.findForIdAndVersion(id1.getIdPartAsLong(), 1);
+		assertNull(version1.getResource());
+		assertNotNull(version1.getArchiveSegmentId());
+		ResourceHistoryTable version3 = myResourceHistoryTableDao.findForIdAndVersion(id1.getIdPartAsLong(), 3);
+		assertNotNull(version3.getResource());
+		assertNull(version3.getArchiveSegmentId());
+
+		// vread
+		assertEquals("V1", myPatientDao.read(id1, mySrd).getNameFirstRep().getFamily());
+		assertEquals("V2", myPatientDao.read(id2, mySrd).getNameFirstRep().getFamily());
+		assertEquals("V3", myPatientDao.read(id1.toVersionless(), mySrd).getNameFirstRep().getFamily());
+
+		// _history
+		List<IBaseResource> history = myPatientDao.history(id1.toVersionless(), null, null, mySrd).getResources(0, 10);
+		assertEquals(3, history.size());
+		assertEquals("V3", ((Patient) history.get(0)).getNameFirstRep().getFamily());
+		assertEquals("V2", ((Patient) history.get(1)).getNameFirstRep().getFamily());
+		assertEquals("V1", ((Patient) history.get(2)).getNameFirstRep().getFamily());
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() {
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+}
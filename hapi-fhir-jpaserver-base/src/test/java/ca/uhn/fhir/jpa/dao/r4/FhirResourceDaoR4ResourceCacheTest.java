@@ -0,0 +1,98 @@
+package ca.uhn.fhir.jpa.dao.r4;
+
+import ca.uhn.fhir.jpa.dao.DaoConfig;
+import ca.uhn.fhir.jpa.dao.IResourceCacheSvc;
+import ca.uhn.fhir.jpa.dao.ResourceCacheSvcImpl;
+import ca.uhn.fhir.rest.server.exceptions.ResourceGoneException;
+import ca.uhn.fhir.util.TestUtil;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.Organization;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import static org.junit.Assert.*;
+
+public class FhirResourceDaoR4ResourceCacheTest extends BaseJpaR4Test {
+
+	@Autowired
+	private IResourceCacheSvc myResourceCacheSvc;
+
+	@After
+	public void after() {
+		myDaoConfig.setResourceCacheMaximumSize(new DaoConfig().getResourceCacheMaximumSize());
+		myDaoConfig.setResourceCacheTimeToLiveMillis(new DaoConfig().getResourceCacheTimeToLiveMillis());
+	}
+
+	@Before
+	public void before() {
+		((ResourceCacheSvcImpl) myResourceCacheSvc).clearForUnitTest();
+	}
+
+	@Test
+	public void testCacheDisabledByDefault() {
+		Organization org = new Organization();
+		org.setName("ORG");
+		IIdType id = myOrganizationDao.create(org, mySrd).getId().toUnqualifiedVersionless();
+
+		assertEquals("ORG", myOrganizationDao.read(id, mySrd).getName());
+		assertEquals("ORG", myOrganizationDao.read(id, mySrd).getName());
+
+		ResourceCacheSvcImpl cache = (ResourceCacheSvcImpl) myResourceCacheSvc;
+		assertEquals(0, cache.getHitCount());
+		assertEquals(0, cache.getMissCount());
+	}
+
+	@Test
+	public void testReadUsesCacheAndSeesUpdates() {
+		myDaoConfig.setResourceCacheMaximumSize(100);
+		ResourceCacheSvcImpl cache = (ResourceCacheSvcImpl) myResourceCacheSvc;
+
+		Organization org = new Organization();
+		org.setName("ORG1");
+		IIdType id = myOrganizationDao.create(org, mySrd).getId().toUnqualifiedVersionless();
+
+		assertEquals("ORG1", myOrganizationDao.read(id, mySrd).getName());
+		long hits = cache.getHitCount();
+		long misses = cache.getMissCount();
+		assertTrue(misses > 0);
+
+		Organization read = myOrganizationDao.read(id, mySrd);
+		assertEquals("ORG1", read.getName());
+		assertEquals("1", read.getIdElement().getVersionIdPart());
+		assertEquals(hits + 1, cache.getHitCount());
+		assertEquals(misses, cache.getMissCount());
+		assertTrue(cache.getHitRate() > 0);
+
+		// Modifying a returned resource must not affect the cached copy
+		read.setName("MODIFIED");
+		assertEquals("ORG1", myOrganizationDao.read(id, mySrd).getName());
+
+		org.setId(id);
+		org.setName("ORG2");
+		myOrganizationDao.update(org, mySrd);
+
+		read = myOrganizationDao.read(id, mySrd);
+		assertEquals("ORG2", read.getName());
+		assertEquals("2", read.getIdElement().getVersionIdPart());
+
+		// Older versions are read from the database
+		assertEquals("ORG1", myOrganizationDao.read(id.withVersion("1"), mySrd).getName());
+
+		myOrganizationDao.delete(id, mySrd);
+		try {
+			myOrganizationDao.read(id, mySrd);
+			fail();
+		} catch (ResourceGoneException e) {
+			// good
+		}
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() {
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+}
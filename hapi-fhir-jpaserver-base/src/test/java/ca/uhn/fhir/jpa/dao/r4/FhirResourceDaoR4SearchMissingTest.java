@@ -2,18 +2,22 @@ package ca.uhn.fhir.jpa.dao.r4;
 
 import ca.uhn.fhir.jpa.dao.DaoConfig;
 import ca.uhn.fhir.jpa.dao.SearchParameterMap;
+import ca.uhn.fhir.jpa.entity.SearchParamOrdinal;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.param.*;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.exceptions.MethodNotAllowedException;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.hl7.fhir.r4.model.*;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
@@ -26,6 +30,11 @@ public class FhirResourceDaoR4SearchMissingTest extends BaseJpaR4Test {
 		myDaoConfig.setIndexMissingFields(DaoConfig.IndexEnabledEnum.ENABLED);
 	}
 
+	@After
+	public void afterResetMissingEncoding() {
+		myDaoConfig.setMissingFieldsIndexEncoding(new DaoConfig().getMissingFieldsIndexEncoding());
+	}
+
 	@Test
 	public void testIndexMissingFieldsDisabledDontAllowInSearch() {
 		myDaoConfig.setIndexMissingFields(DaoConfig.IndexEnabledEnum.DISABLED);
@@ -259,6 +268,93 @@ public class FhirResourceDaoR4SearchMissingTest extends BaseJpaR4Test {
 		}
 	}
 
+	@Test
+	public void testSearchWithMissingReferenceUsingPresenceColumn() {
+		myDaoConfig.setMissingFieldsIndexEncoding(DaoConfig.MissingFieldsIndexEncodingEnum.RESOURCE_COLUMN);
+
+		IIdType orgId = myOrganizationDao.create(new Organization(), mySrd).getId().toUnqualifiedVersionless();
+		IIdType missing;
+		IIdType notMissing;
+		{
+			Patient patient = new Patient();
+			patient.setActive(true);
+			missing = myPatientDao.create(patient, mySrd).getId().toUnqualifiedVersionless();
+		}
+		{
+			Patient patient = new Patient();
+			patient.getManagingOrganization().setReferenceElement(orgId);
+			notMissing = myPatientDao.create(patient, mySrd).getId().toUnqualifiedVersionless();
+		}
+
+		ReferenceParam missingTrue = new ReferenceParam();
+		missingTrue.setMissing(true);
+		ReferenceParam missingFalse = new ReferenceParam();
+		missingFalse.setMissing(false);
+
+		// No rows are written to the separate presence table
+		assertThat(mySearchParamPresentDao.findAll(), empty());
+
+		SearchParameterMap params = new SearchParameterMap();
+		params.setLoadSynchronous(true);
+		params.add(Patient.SP_ORGANIZATION, missingFalse);
+		assertThat(toUnqualifiedVersionlessIds(myPatientDao.search(params)), contains(notMissing));
+
+		params = new SearchParameterMap();
+		params.setLoadSynchronous(true);
+		params.add(Patient.SP_ORGANIZATION, missingTrue);
+		assertThat(toUnqualifiedVersionlessIds(myPatientDao.search(params)), contains(missing));
+
+		// Updating the resource updates the presence
+		Patient patient = new Patient();
+		patient.setId(missing);
+		patient.getManagingOrganization().setReferenceElement(orgId);
+		myPatientDao.update(patient, mySrd);
+
+		params = new SearchParameterMap();
+		params.setLoadSynchronous(true);
+		params.add(Patient.SP_ORGANIZATION, missingTrue);
+		assertThat(toUnqualifiedVersionlessIds(myPatientDao.search(params)), empty());
+
+		// A parameter which has never been recorded matches nothing
+		params = new SearchParameterMap();
+		params.setLoadSynchronous(true);
+		params.add(Observation.SP_SUBJECT, missingTrue);
+		assertThat(toUnqualifiedVersionlessIds(myObservationDao.search(params)), empty());
+	}
+
+	@Test
+	public void testSearchWithMissingReferenceUsingPresenceColumnAfterSeparateTable() {
+		IIdType orgId = myOrganizationDao.create(new Organization(), mySrd).getId().toUnqualifiedVersionless();
+
+		// Search param rows created while using the separate table never get an ordinal
+		myPatientDao.create(new Patient(), mySrd);
+		assertThat(mySearchParamDao.findAll(), not(empty()));
+		assertThat(mySearchParamOrdinalDao.findAll(), empty());
+
+		myDaoConfig.setMissingFieldsIndexEncoding(DaoConfig.MissingFieldsIndexEncodingEnum.RESOURCE_COLUMN);
+
+		IIdType missing = myPatientDao.create(new Patient(), mySrd).getId().toUnqualifiedVersionless();
+		Patient patient = new Patient();
+		patient.getManagingOrganization().setReferenceElement(orgId);
+		IIdType notMissing = myPatientDao.create(patient, mySrd).getId().toUnqualifiedVersionless();
+
+		Set<Integer> ordinals = new HashSet<>();
+		for (SearchParamOrdinal next : mySearchParamOrdinalDao.findAll()) {
+			assertEquals("Patient", next.getResourceName());
+			assertTrue("Duplicate ordinal " + next.getOrdinal(), ordinals.add(next.getOrdinal()));
+		}
+		assertThat(ordinals, not(empty()));
+
+		ReferenceParam missingTrue = new ReferenceParam();
+		missingTrue.setMissing(true);
+		SearchParameterMap params = new SearchParameterMap();
+		params.setLoadSynchronous(true);
+		params.add(Patient.SP_ORGANIZATION, missingTrue);
+		List<IIdType> patients = toUnqualifiedVersionlessIds(myPatientDao.search(params));
+		assertThat(patients, hasItem(missing));
+		assertThat(patients, not(hasItem(notMissing)));
+	}
+
 	@Test
 	public void testSearchWithMissingString() {
 		IIdType orgId = myOrganizationDao.create(new Organization(), mySrd).getId();
@@ -22,12 +22,14 @@ import org.hl7.fhir.r4.model.Subscription.SubscriptionChannelType;
 import org.hl7.fhir.r4.model.Subscription.SubscriptionStatus;
 import org.hl7.fhir.instance.model.api.*;
 import org.junit.*;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.*;
 
 import ca.uhn.fhir.jpa.dao.*;
 import ca.uhn.fhir.jpa.dao.SearchParameterMap.EverythingModeEnum;
 import ca.uhn.fhir.jpa.entity.*;
+import ca.uhn.fhir.jpa.search.ISearchSelectivitySvc;
 import ca.uhn.fhir.model.api.Include;
 import ca.uhn.fhir.model.api.TemporalPrecisionEnum;
 import ca.uhn.fhir.parser.StrictErrorHandler;
@@ -43,6 +45,9 @@ import ca.uhn.fhir.util.TestUtil;
 public class FhirResourceDaoR4SearchNoFtTest extends BaseJpaR4Test {
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(FhirResourceDaoR4SearchNoFtTest.class);
 
+	@Autowired
+	private ISearchSelectivitySvc mySearchSelectivitySvc;
+
 	@Before
 	public void beforeDisableCacheReuse() {
 		myDaoConfig.setReuseCachedSearchResultsForMillis(null);
@@ -52,6 +57,146 @@ public class FhirResourceDaoR4SearchNoFtTest extends BaseJpaR4Test {
 	public void afterResetSearchSize() {
 		myDaoConfig.setReuseCachedSearchResultsForMillis(new DaoConfig().getReuseCachedSearchResultsForMillis());
 		myDaoConfig.setFetchSizeDefaultMaximum(new DaoConfig().getFetchSizeDefaultMaximum());
+		myDaoConfig.setMaximumIncludeInClauseSize(new DaoConfig().getMaximumIncludeInClauseSize());
+		myDaoConfig.setChainedSearchPreResolveThreshold(new DaoConfig().getChainedSearchPreResolveThreshold());
+		myDaoConfig.setUseCountQueryForSearchTotal(new DaoConfig().isUseCountQueryForSearchTotal());
+		mySearchSelectivitySvc.flushCachesForUnitTest();
+	}
+
+	@Test
+	public void testSearchCountOnly() {
+		for (int i = 0; i < 5; i++) {
+			Patient pt = new Patient();
+			pt.addName().setFamily(i < 3 ? "SMITH" : "JONES");
+			pt.addIdentifier().setSystem("urn:system").setValue("A" + i);
+			pt.addIdentifier().setSystem("urn:system").setValue("B" + i);
+			myPatientDao.create(pt, mySrd);
+		}
+		long searchCount = mySearchEntityDao.count();
+
+		SearchParameterMap map = new SearchParameterMap();
+		map.setCountOnly(true);
+		map.add(Patient.SP_FAMILY, new StringParam("SMITH"));
+		IBundleProvider results = myPatientDao.search(map);
+		assertEquals(3, results.size().intValue());
+		assertThat(results.getResources(0, 10), empty());
+
+		// Joins which match more than one index row per resource are only counted once
+		map = new SearchParameterMap();
+		map.setCountOnly(true);
+		map.add(Patient.SP_IDENTIFIER, new TokenParam("urn:system", null));
+		assertEquals(5, myPatientDao.search(map).size().intValue());
+
+		// Nothing is stored for count only searches
+		assertEquals(searchCount, mySearchEntityDao.count());
+	}
+
+	@Test
+	public void testSearchTotalFromCountQuery() {
+		myDaoConfig.setUseCountQueryForSearchTotal(true);
+		for (int i = 0; i < 5; i++) {
+			Patient pt = new Patient();
+			pt.addName().setFamily(i < 3 ? "SMITH" : "JONES");
+			myPatientDao.create(pt, mySrd);
+		}
+
+		SearchParameterMap map = new SearchParameterMap();
+		map.add(Patient.SP_FAMILY, new StringParam("SMITH"));
+		IBundleProvider results = myPatientDao.search(map);
+		assertEquals(3, results.size().intValue());
+		assertEquals(3, results.getResources(0, 10).size());
+	}
+
+	@Test
+	public void testSearchChainedWithPreResolveThreshold() {
+		mySearchSelectivitySvc.flushCachesForUnitTest();
+		myDaoConfig.setChainedSearchPreResolveThreshold(2);
+
+		List<IIdType> smithObs = new ArrayList<IIdType>();
+		for (int i = 0; i < 3; i++) {
+			Patient pt = new Patient();
+			pt.addName().setFamily(i < 2 ? "SMITH" : "JONES");
+			IIdType ptId = myPatientDao.create(pt, mySrd).getId().toUnqualifiedVersionless();
+
+			Observation obs = new Observation();
+			obs.getSubject().setReferenceElement(ptId);
+			IIdType obsId = myObservationDao.create(obs, mySrd).getId().toUnqualifiedVersionless();
+			if (i < 2) {
+				smithObs.add(obsId);
+			}
+		}
+
+		// Two matching patients, so the chain is resolved to a PID list
+		SearchParameterMap map = new SearchParameterMap();
+		map.setLoadSynchronous(true);
+		map.add(Observation.SP_SUBJECT, new ReferenceParam("Patient", "family", "SMITH"));
+		assertThat(toUnqualifiedVersionlessIds(myObservationDao.search(map)), containsInAnyOrder(smithObs.toArray()));
+		assertEquals(2, mySearchSelectivitySvc.getEstimatedMatchCount("Patient?family=SMITH").intValue());
+
+		// No matching patients
+		map = new SearchParameterMap();
+		map.setLoadSynchronous(true);
+		map.add(Observation.SP_SUBJECT, new ReferenceParam("Patient", "family", "FOO"));
+		assertThat(toUnqualifiedVersionlessIds(myObservationDao.search(map)), empty());
+		assertEquals(0, mySearchSelectivitySvc.getEstimatedMatchCount("Patient?family=FOO").intValue());
+
+		// Two recorded matches is above the threshold, so a subquery is used without looking up the patients first
+		myDaoConfig.setChainedSearchPreResolveThreshold(1);
+		map = new SearchParameterMap();
+		map.setLoadSynchronous(true);
+		map.add(Observation.SP_SUBJECT, new ReferenceParam("Patient", "family", "SMITH"));
+		assertThat(toUnqualifiedVersionlessIds(myObservationDao.search(map)), containsInAnyOrder(smithObs.toArray()));
+
+		// The recorded count is only a lower bound once the threshold is exceeded
+		mySearchSelectivitySvc.flushCachesForUnitTest();
+		map = new SearchParameterMap();
+		map.setLoadSynchronous(true);
+		map.add(Observation.SP_SUBJECT, new ReferenceParam("Patient", "family", "SMITH"));
+		assertThat(toUnqualifiedVersionlessIds(myObservationDao.search(map)), containsInAnyOrder(smithObs.toArray()));
+		assertEquals(2, mySearchSelectivitySvc.getEstimatedMatchCount("Patient?family=SMITH").intValue());
+
+		// With the planner disabled, a subquery is always used
+		myDaoConfig.setChainedSearchPreResolveThreshold(0);
+		mySearchSelectivitySvc.flushCachesForUnitTest();
+		assertThat(toUnqualifiedVersionlessIds(myObservationDao.search(map)), containsInAnyOrder(smithObs.toArray()));
+		assertNull(mySearchSelectivitySvc.getEstimatedMatchCount("Patient?family=SMITH"));
+	}
+
+	@Test
+	public void testIncludeRecursiveWithCycleAndSmallInClauseSize() {
+		myDaoConfig.setMaximumIncludeInClauseSize(2);
+
+		IIdType[] orgIds = new IIdType[4];
+		for (int i = 0; i < orgIds.length; i++) {
+			Organization org = new Organization();
+			org.setName("ORG" + i);
+			orgIds[i] = myOrganizationDao.create(org, mySrd).getId().toUnqualifiedVersionless();
+		}
+
+		// ORG0 -> ORG1 -> ORG2 -> ORG3 -> ORG0
+		for (int i = 0; i < orgIds.length; i++) {
+			Organization org = new Organization();
+			org.setId(orgIds[i]);
+			org.setName("ORG" + i);
+			org.getPartOf().setReferenceElement(orgIds[(i + 1) % orgIds.length]);
+			myOrganizationDao.update(org, mySrd);
+		}
+
+		for (int i = 0; i < 3; i++) {
+			Patient patient = new Patient();
+			patient.addName().setFamily("FAM_INCLUDE_CYCLE");
+			patient.getManagingOrganization().setReferenceElement(orgIds[0]);
+			myPatientDao.create(patient, mySrd);
+		}
+
+		SearchParameterMap params = new SearchParameterMap();
+		params.add(Patient.SP_FAMILY, new StringParam("FAM_INCLUDE_CYCLE"));
+		params.addInclude(Patient.INCLUDE_ORGANIZATION);
+		params.addInclude(Organization.INCLUDE_PARTOF.asRecursive());
+		List<IIdType> ids = toUnqualifiedVersionlessIds(myPatientDao.search(params));
+
+		assertEquals(7, ids.size());
+		assertThat(ids, hasItems(orgIds));
 	}
 
 	/**
@@ -1,5 +1,6 @@
 package ca.uhn.fhir.jpa.dao.r4;
 
+import ca.uhn.fhir.jpa.dao.DaoConfig;
 import ca.uhn.fhir.jpa.dao.SearchParameterMap;
 import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.SortOrderEnum;
@@ -11,11 +12,16 @@ import ca.uhn.fhir.rest.param.ParamPrefixEnum;
 import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.util.TestUtil;
 import org.hl7.fhir.instance.model.api.IIdType;
+import com.google.common.collect.Sets;
+import org.hl7.fhir.r4.model.DateTimeType;
 import org.hl7.fhir.r4.model.Enumerations.AdministrativeGender;
+import org.hl7.fhir.r4.model.Observation;
 import org.hl7.fhir.r4.model.Patient;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Test;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
 
 import java.util.List;
 
@@ -30,6 +36,7 @@ public class FhirResourceDaoR4SortTest extends BaseJpaR4Test {
 
 	@After
 	public final void after() {
+		myDaoConfig.setSortKeySearchParams(new DaoConfig().getSortKeySearchParams());
 	}
 
 	@Test
@@ -304,6 +311,96 @@ public class FhirResourceDaoR4SortTest extends BaseJpaR4Test {
 		assertThat(ids, contains("Patient/AA", "Patient/AB", "Patient/BA", "Patient/BB"));
 	}
 
+	@Test
+	public void testSortUsingSortKeys() {
+		myDaoConfig.setSortKeySearchParams(Sets.newHashSet("Observation:date", "Patient:family"));
+
+		Observation obs1 = new Observation();
+		obs1.setEffective(new DateTimeType("2011-01-01"));
+		String id1 = myObservationDao.create(obs1).getId().toUnqualifiedVersionless().getValue();
+
+		Observation obs2 = new Observation();
+		obs2.setEffective(new DateTimeType("2013-01-01"));
+		String id2 = myObservationDao.create(obs2).getId().toUnqualifiedVersionless().getValue();
+
+		Observation obs3 = new Observation();
+		obs3.setEffective(new DateTimeType("2012-01-01"));
+		String id3 = myObservationDao.create(obs3).getId().toUnqualifiedVersionless().getValue();
+
+		SearchParameterMap map;
+		List<String> ids;
+
+		map = new SearchParameterMap();
+		map.setSort(new SortSpec(Observation.SP_DATE, SortOrderEnum.ASC));
+		ids = toUnqualifiedVersionlessIdValues(myObservationDao.search(map));
+		assertThat(ids, contains(id1, id3, id2));
+
+		map = new SearchParameterMap();
+		map.setSort(new SortSpec(Observation.SP_DATE, SortOrderEnum.DESC));
+		ids = toUnqualifiedVersionlessIdValues(myObservationDao.search(map));
+		assertThat(ids, contains(id2, id3, id1));
+
+		// Updating the resource should replace its sort key
+		obs1.setId(id1);
+		obs1.setEffective(new DateTimeType("2014-01-01"));
+		myObservationDao.update(obs1);
+
+		map = new SearchParameterMap();
+		map.setSort(new SortSpec(Observation.SP_DATE, SortOrderEnum.DESC));
+		ids = toUnqualifiedVersionlessIdValues(myObservationDao.search(map));
+		assertThat(ids, contains(id1, id2, id3));
+
+		// A multi-valued parameter sorts on its lowest value ascending and highest value descending
+		Patient pA = new Patient();
+		pA.addName().setFamily("B");
+		pA.addName().setFamily("Y");
+		String idA = myPatientDao.create(pA).getId().toUnqualifiedVersionless().getValue();
+
+		Patient pB = new Patient();
+		pB.addName().setFamily("C");
+		String idB = myPatientDao.create(pB).getId().toUnqualifiedVersionless().getValue();
+
+		Patient pC = new Patient();
+		pC.addName().setFamily("A");
+		pC.addName().setFamily("X");
+		String idC = myPatientDao.create(pC).getId().toUnqualifiedVersionless().getValue();
+
+		map = new SearchParameterMap();
+		map.setSort(new SortSpec(Patient.SP_FAMILY, SortOrderEnum.ASC));
+		ids = toUnqualifiedVersionlessIdValues(myPatientDao.search(map));
+		assertThat(ids, contains(idC, idA, idB));
+
+		map = new SearchParameterMap();
+		map.setSort(new SortSpec(Patient.SP_FAMILY, SortOrderEnum.DESC));
+		ids = toUnqualifiedVersionlessIdValues(myPatientDao.search(map));
+		assertThat(ids, contains(idA, idC, idB));
+	}
+
+	@Test
+	public void testSortKeysRemovedWhenNoLongerEnabled() {
+		myDaoConfig.setSortKeySearchParams(Sets.newHashSet("Observation:date"));
+
+		Observation obs = new Observation();
+		obs.setEffective(new DateTimeType("2011-01-01"));
+		IIdType id = myObservationDao.create(obs).getId().toUnqualifiedVersionless();
+		assertEquals(1, countSortKeys());
+
+		myDaoConfig.setSortKeySearchParams(new DaoConfig().getSortKeySearchParams());
+		obs.setId(id);
+		obs.setEffective(new DateTimeType("2012-01-01"));
+		myObservationDao.update(obs);
+		assertEquals(0, countSortKeys());
+	}
+
+	private long countSortKeys() {
+		return newTxTemplate().execute(new TransactionCallback<Long>() {
+			@Override
+			public Long doInTransaction(TransactionStatus theStatus) {
+				return myEntityManager.createQuery("SELECT COUNT(k) FROM ResourceIndexedSortKey k", Long.class).getSingleResult();
+			}
+		});
+	}
+
 	@AfterClass
 	public static void afterClassClearContext() {
 		TestUtil.clearAllStaticFieldsForUnitTest();
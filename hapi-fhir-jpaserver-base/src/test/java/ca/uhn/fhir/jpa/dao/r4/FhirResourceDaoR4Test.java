@@ -56,6 +56,7 @@ public class FhirResourceDaoR4Test extends BaseJpaR4Test {
 		myDaoConfig.setAllowExternalReferences(new DaoConfig().isAllowExternalReferences());
 		myDaoConfig.setTreatReferencesAsLogical(new DaoConfig().getTreatReferencesAsLogical());
 		myDaoConfig.setEnforceReferentialIntegrityOnDelete(new DaoConfig().isEnforceReferentialIntegrityOnDelete());
+		myDaoConfig.setHistoryCountMode(new DaoConfig().getHistoryCountMode());
 	}
 
 	private void assertGone(IIdType theId) {
@@ -1535,6 +1536,40 @@ public class FhirResourceDaoR4Test extends BaseJpaR4Test {
 		assertNotEquals(idv1, idv2);
 	}
 
+	@Test
+	public void testHistoryCountModes() {
+		Patient patient = new Patient();
+		patient.addName().setFamily("testHistoryCountModes");
+		IIdType id = myPatientDao.create(patient, mySrd).getId().toUnqualifiedVersionless();
+		for (int i = 0; i < 4; i++) {
+			patient.setId(id);
+			patient.getName().get(0).setFamily("testHistoryCountModes" + i);
+			myPatientDao.update(patient, mySrd);
+		}
+
+		// No count
+		myDaoConfig.setHistoryCountMode(DaoConfig.HistoryCountModeEnum.COUNT_DISABLED);
+		IBundleProvider history = myPatientDao.history(null, null, mySrd);
+		assertNull(history.size());
+		assertEquals(id.withVersion("5").getValue(), history.getResources(0, 2).get(0).getIdElement().getValue());
+		assertEquals(id.withVersion("3").getValue(), history.getResources(2, 4).get(0).getIdElement().getValue());
+		assertEquals(id.withVersion("1").getValue(), history.getResources(4, 6).get(0).getIdElement().getValue());
+		assertEquals(0, history.getResources(6, 8).size());
+
+		// Cached count is reused for type level history, but not for instance level history
+		myDaoConfig.setHistoryCountMode(DaoConfig.HistoryCountModeEnum.COUNT_CACHED);
+		int typeCount = myPatientDao.history(null, null, mySrd).size();
+		patient.setId(id);
+		patient.getName().get(0).setFamily("testHistoryCountModes_last");
+		myPatientDao.update(patient, mySrd);
+		assertEquals(typeCount, myPatientDao.history(null, null, mySrd).size().intValue());
+		assertEquals(6, myPatientDao.history(id, null, null, mySrd).size().intValue());
+
+		// Exact count
+		myDaoConfig.setHistoryCountMode(DaoConfig.HistoryCountModeEnum.COUNT_ACCURATE);
+		assertEquals(typeCount + 1, myPatientDao.history(null, null, mySrd).size().intValue());
+	}
+
 	@Test
 	public void testHistoryOverMultiplePages() throws Exception {
 		String methodName = "testHistoryOverMultiplePages";
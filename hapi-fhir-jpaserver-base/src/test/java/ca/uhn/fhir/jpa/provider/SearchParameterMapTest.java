@@ -47,6 +47,30 @@ public class SearchParameterMapTest {
 		assertEquals("?birthdate=ge2001&birthdate=lt2002&name=bouvier,simpson&name=homer,jay&name:exact=ZZZ?", UrlUtil.unescape(queryString));
 	}
 
+	@Test
+	public void testToParameterShape() {
+		SearchParameterMap map = new SearchParameterMap();
+
+		StringAndListParam familyAnd = new StringAndListParam()
+				.addAnd(new StringOrListParam().add(new StringParam("ZZZ?").setExact(true)))
+				.addAnd(new StringOrListParam().add(new StringParam("homer")).add(new StringParam("jay")))
+				.addAnd(new StringOrListParam().add(new StringParam("simpson")));
+		map.add("name", familyAnd);
+		map.add("birthdate", new DateParam(ParamPrefixEnum.GREATERTHAN_OR_EQUALS, "2001"));
+		map.add("gender", new TokenParam().setMissing(true));
+		map.add("family", new StringParam(""));
+		map.addInclude(new Include("Patient:organization"));
+		map.setSort(new SortSpec("name").setChain(new SortSpec("identifier", SortOrderEnum.DESC)));
+		map.setLastUpdated(new DateRangeParam("2001", "2002"));
+		map.setCount(10);
+
+		String shape = map.toParameterShape(ourCtx);
+		assertEquals("?birthdate&gender:missing&name&name:exact&_sort=name,-identifier&_include=Patient:organization&_lastUpdated&_count", shape);
+		assertEquals(SearchParameterMap.toParameterShape(map.toNormalizedQueryString(ourCtx)), shape);
+
+		assertEquals("?", new SearchParameterMap().toParameterShape(ourCtx));
+	}
+
 	@Test
 	public void testToQueryStringEmpty() {
 		SearchParameterMap map = new SearchParameterMap();
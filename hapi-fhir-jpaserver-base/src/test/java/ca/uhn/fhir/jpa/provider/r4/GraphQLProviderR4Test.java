@@ -3,9 +3,11 @@ package ca.uhn.fhir.jpa.provider.r4;
 import ca.uhn.fhir.util.TestUtil;
 import ca.uhn.fhir.util.UrlUtil;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.Observation;
 import org.hl7.fhir.r4.model.Patient;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -14,7 +16,9 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 
+import static org.hamcrest.Matchers.containsString;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
 
 public class GraphQLProviderR4Test extends BaseResourceProviderR4Test {
 	private Logger ourLog = LoggerFactory.getLogger(GraphQLProviderR4Test.class);
@@ -76,6 +80,32 @@ public class GraphQLProviderR4Test extends BaseResourceProviderR4Test {
 
 	}
 
+	@Test
+	public void testSystemSearchFollowingReferences() throws IOException {
+		initTestPatients();
+
+		for (int i = 0; i < 2; i++) {
+			Observation obs = new Observation();
+			obs.setStatus(Observation.ObservationStatus.FINAL);
+			obs.getSubject().setReference(myPatientId0.getValue());
+			myClient.create().resource(obs).execute();
+		}
+
+		String query = "{ObservationList{subject{resource(type:Patient){name{family}}}}}";
+		HttpGet httpGet = new HttpGet(ourServerBase + "/$graphql?query=" + UrlUtil.escapeUrlParam(query));
+
+		CloseableHttpResponse response = ourHttpClient.execute(httpGet);
+		try {
+			String resp = IOUtils.toString(response.getEntity().getContent(), StandardCharsets.UTF_8);
+			ourLog.info(resp);
+			assertThat(resp, containsString("\"ObservationList\""));
+			assertEquals(2, StringUtils.countMatches(resp, "\"family\":\"FAM\""));
+		} finally {
+			IOUtils.closeQuietly(response);
+		}
+
+	}
+
 	private void initTestPatients() {
 		Patient p = new Patient();
 		p.addName()
@@ -40,6 +40,8 @@ import org.springframework.transaction.PlatformTransactionManager;
 
 import javax.persistence.EntityManager;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
@@ -217,6 +219,55 @@ public class SearchCoordinatorSvcImplTest {
 
 	}
 
+	@Test
+	public void testAsyncSearchFirstPageFastPathDoesntWaitForSave() {
+		myDaoConfig.setSearchFirstPageFastPathEnabled(true);
+
+		SearchParameterMap params = new SearchParameterMap();
+		params.add("name", new StringParam("ANAME"));
+		params.setCount(10);
+
+		List<Long> pids = createPidSequence(10, 800);
+		Iterator<Long> iter = new SlowIterator<Long>(pids.iterator(), 1);
+		when(mySearchBuider.createQuery(Mockito.same(params), any(String.class))).thenReturn(iter);
+
+		doAnswer(loadPids()).when(mySearchBuider).loadResourcesByPid(any(List.class), any(List.class), any(Set.class), anyBoolean(), any(EntityManager.class), any(FhirContext.class), same(myCallingDao));
+
+		// Block saving the results until we've got the first page
+		final CountDownLatch saveLatch = new CountDownLatch(1);
+		final AtomicInteger savesCompleted = new AtomicInteger();
+		doAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock theInvocation) throws Throwable {
+				saveLatch.await();
+				savesCompleted.incrementAndGet();
+				return null;
+			}
+		}).when(mySearchResultDao).save(any(Iterable.class));
+
+		IBundleProvider result;
+		List<IBaseResource> resources;
+		try {
+			result = mySvc.registerSearch(myCallingDao, params, "Patient", new CacheControlDirective());
+			assertNotNull(result.getUuid());
+			assertEquals(null, result.size());
+
+			resources = result.getResources(0, 10);
+			assertEquals(10, resources.size());
+			assertEquals("10", resources.get(0).getIdElement().getValueAsString());
+			assertEquals("19", resources.get(9).getIdElement().getValueAsString());
+			assertEquals(0, savesCompleted.get());
+			assertEquals(1, mySvc.getFirstPageLatencyHistogram().getCount());
+		} finally {
+			saveLatch.countDown();
+		}
+
+		resources = result.getResources(10, 20);
+		assertEquals(10, resources.size());
+		assertEquals("20", resources.get(0).getIdElement().getValueAsString());
+		assertEquals("29", resources.get(9).getIdElement().getValueAsString());
+	}
+
 	/**
 	 * Subsequent requests for the same search (i.e. a request for the next
 	 * page) within the same JVM will not use the original bundle provider
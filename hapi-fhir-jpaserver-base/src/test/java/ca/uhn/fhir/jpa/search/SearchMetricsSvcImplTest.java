@@ -0,0 +1,116 @@
+package ca.uhn.fhir.jpa.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+
+import org.hl7.fhir.r4.model.IntegerType;
+import org.hl7.fhir.r4.model.Parameters;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.util.TestUtil;
+
+public class SearchMetricsSvcImplTest {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(SearchMetricsSvcImplTest.class);
+
+	private static FhirContext ourCtx = FhirContext.forR4();
+	private SearchMetricsSvcImpl mySvc;
+
+	@Before
+	public void before() {
+		mySvc = new SearchMetricsSvcImpl();
+	}
+
+	@Test
+	public void testRecordPhase() {
+		mySvc.recordPhase("Patient", "?name", SearchPhaseEnum.SQL_EXECUTION, 10);
+		mySvc.recordPhase("Patient", "?name", SearchPhaseEnum.SQL_EXECUTION, 30);
+		mySvc.recordPhase("Patient", "?name", SearchPhaseEnum.QUERY_BUILD, 1);
+
+		assertEquals(2, mySvc.getTimer("Patient", "?name", SearchPhaseEnum.SQL_EXECUTION).getCount());
+		assertEquals(20, mySvc.getTimer("Patient", "?name", SearchPhaseEnum.SQL_EXECUTION).getMeanMillis());
+		assertEquals(1, mySvc.getTimer("Patient", "?name", SearchPhaseEnum.QUERY_BUILD).getCount());
+		assertNull(mySvc.getTimer("Patient", "?family", SearchPhaseEnum.SQL_EXECUTION));
+		assertEquals(2, mySvc.getAllTimers().size());
+	}
+
+	@Test
+	public void testRecordPhaseGroupsShapesOnceFull() {
+		for (int i = 0; i < SearchMetricsSvcImpl.MAX_TIMERS + 10; i++) {
+			mySvc.recordPhase("Patient", "?param" + i, SearchPhaseEnum.SQL_EXECUTION, 1);
+		}
+
+		assertEquals(SearchMetricsSvcImpl.MAX_TIMERS + 1, mySvc.getAllTimers().size());
+		assertEquals(10, mySvc.getTimer("Patient", SearchMetricsSvcImpl.OTHER_SHAPE, SearchPhaseEnum.SQL_EXECUTION).getCount());
+	}
+
+	@Test
+	public void testSlowestRecentQueriesAsParameters() {
+		mySvc.recordQuery("Patient", "?name", "select 1", 50, 1);
+		mySvc.recordQuery(null, "?_id", "select 2", 300, 2);
+
+		Parameters parameters = (Parameters) mySvc.getSlowestRecentQueriesAsParameters(ourCtx);
+		ourLog.info(ourCtx.newJsonParser().setPrettyPrint(true).encodeResourceToString(parameters));
+		assertEquals(2, parameters.getParameter().size());
+
+		Parameters.ParametersParameterComponent slowest = parameters.getParameter().get(0);
+		assertEquals("search", slowest.getName());
+		assertEquals("parameterShape", slowest.getPart().get(0).getName());
+		assertEquals("?_id", slowest.getPart().get(0).getValue().primitiveValue());
+		assertEquals(300, ((IntegerType) slowest.getPart().get(1).getValue()).getValue().intValue());
+		assertEquals("jpql", slowest.getPart().get(4).getName());
+		assertEquals("select 2", slowest.getPart().get(4).getValue().primitiveValue());
+
+		Parameters.ParametersParameterComponent next = parameters.getParameter().get(1);
+		assertEquals("resourceType", next.getPart().get(0).getName());
+		assertEquals("Patient", next.getPart().get(0).getValue().primitiveValue());
+		assertEquals("resultCount", next.getPart().get(3).getName());
+		assertEquals(1, ((IntegerType) next.getPart().get(3).getValue()).getValue().intValue());
+		assertEquals("recorded", next.getPart().get(4).getName());
+		assertEquals("select 1", next.getPart().get(5).getValue().primitiveValue());
+	}
+
+	@Test
+	public void testSlowQueriesNotKeptWhenCountIsZero() {
+		mySvc.recordQuery("Patient", "?name", "select 1", 50, 1);
+		mySvc.setSlowQueryCount(0);
+		assertEquals(0, mySvc.getSlowestRecentQueries().size());
+
+		mySvc.recordQuery("Patient", "?name", "select 2", 100, 2);
+		assertEquals(0, mySvc.getSlowestRecentQueries().size());
+	}
+
+	@Test
+	public void testSlowestRecentQueries() {
+		mySvc.setSlowQueryCount(3);
+		mySvc.recordQuery("Patient", "?name", "select 1", 50, 1);
+		mySvc.recordQuery("Patient", "?name", "select 2", 10, 2);
+		mySvc.recordQuery("Patient", "?name", "select 3", 300, 3);
+		mySvc.recordQuery("Patient", "?name", "select 4", 5, 4);
+		mySvc.recordQuery("Patient", "?name", "select 5", 100, 5);
+
+		List<SearchMetricsSvcImpl.SlowQuery> queries = mySvc.getSlowestRecentQueries();
+		assertEquals(3, queries.size());
+		assertEquals("select 3", queries.get(0).getJpql());
+		assertEquals("select 5", queries.get(1).getJpql());
+		assertEquals("select 1", queries.get(2).getJpql());
+		assertEquals(3, queries.get(0).getResultCount());
+
+		mySvc.setSlowQueryCount(1);
+		assertEquals(1, mySvc.getSlowestRecentQueries().size());
+
+		mySvc.clearForUnitTest();
+		assertEquals(0, mySvc.getSlowestRecentQueries().size());
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() {
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+}
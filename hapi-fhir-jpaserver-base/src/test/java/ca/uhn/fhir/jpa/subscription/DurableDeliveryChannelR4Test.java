@@ -0,0 +1,273 @@
+package ca.uhn.fhir.jpa.subscription;
+
+import ca.uhn.fhir.jpa.dao.data.ISubscriptionDeliveryDao;
+import ca.uhn.fhir.jpa.dao.r4.BaseJpaR4Test;
+import ca.uhn.fhir.jpa.entity.SubscriptionDelivery;
+import ca.uhn.fhir.util.TestUtil;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessagingException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class DurableDeliveryChannelR4Test extends BaseJpaR4Test {
+
+	private List<DurableDeliveryChannel> myChannels = new ArrayList<>();
+	@Autowired
+	private ISubscriptionDeliveryDao mySubscriptionDeliveryDao;
+
+	@After
+	public void after() {
+		for (DurableDeliveryChannel next : myChannels) {
+			next.stop();
+		}
+		mySubscriptionDeliveryDao.deleteAll();
+	}
+
+	private DurableDeliveryChannel newChannel() {
+		DurableDeliveryChannel retVal = new DurableDeliveryChannel("test", mySubscriptionDeliveryDao, myTxManager);
+		retVal.setInitialRetryDelayMillis(10);
+		retVal.setPollIntervalMillis(20);
+		myChannels.add(retVal);
+		return retVal;
+	}
+
+	private ResourceDeliveryJsonMessage newMessage(String theSubscriptionId, String theEndpoint, String theFamily) {
+		CanonicalSubscription subscription = new CanonicalSubscription();
+		subscription.setIdElement(new IdType("Subscription/" + theSubscriptionId + "/_history/1"));
+		subscription.setEndpointUrl(theEndpoint);
+
+		Patient patient = new Patient();
+		patient.addName().setFamily(theFamily);
+
+		ResourceDeliveryMessage retVal = new ResourceDeliveryMessage();
+		retVal.setSubscription(subscription);
+		retVal.setPayload(myFhirCtx, patient);
+		return new ResourceDeliveryJsonMessage(retVal);
+	}
+
+	private void waitForDepth(DurableDeliveryChannel theChannel, long theDepth) throws InterruptedException {
+		long start = System.currentTimeMillis();
+		while (theChannel.getQueueDepth() != theDepth) {
+			if (System.currentTimeMillis() - start > 10000) {
+				fail("Queue depth is " + theChannel.getQueueDepth() + ", expected " + theDepth);
+			}
+			Thread.sleep(20);
+		}
+	}
+
+	@Test
+	public void testAbandonsAfterMaxAttempts() throws InterruptedException {
+		DurableDeliveryChannel channel = newChannel();
+		channel.setMaxAttempts(3);
+		final AtomicInteger attempts = new AtomicInteger();
+		channel.subscribe(new MessageHandler() {
+			@Override
+			public void handleMessage(Message<?> theMessage) throws MessagingException {
+				attempts.incrementAndGet();
+				throw new MessagingException("Endpoint is down");
+			}
+		});
+		channel.start();
+
+		channel.send(newMessage("1", "http://a", "A"));
+		waitForDepth(channel, 0);
+
+		assertEquals(3, attempts.get());
+		assertEquals(2, channel.getFailedAttemptCount());
+		assertEquals(1, channel.getAbandonedCount());
+		assertEquals(0, channel.getDeliveredCount());
+		assertEquals(0, mySubscriptionDeliveryDao.count());
+	}
+
+	@Test
+	public void testBlocksWhenQueueIsFull() {
+		DurableDeliveryChannel channel = newChannel();
+		channel.setMaxQueueDepth(2);
+		channel.start();
+
+		// Nothing is subscribed, so nothing is delivered
+		assertTrue(channel.send(newMessage("1", "http://a", "A"), 100));
+		assertTrue(channel.send(newMessage("1", "http://a", "B"), 100));
+		assertFalse(channel.send(newMessage("1", "http://a", "C"), 100));
+		assertEquals(2, channel.getQueueDepth());
+		assertEquals(2, mySubscriptionDeliveryDao.count());
+	}
+
+	@Test
+	public void testDeliveryIsOnlyClaimedOnce() {
+		DurableDeliveryChannel channel = newChannel();
+		channel.start();
+		channel.send(newMessage("1", "http://a", "A"));
+
+		// Nothing is subscribed, so the row is still due
+		final SubscriptionDelivery delivery = mySubscriptionDeliveryDao.findAll().get(0);
+		final Date now = new Date();
+		TransactionCallback<Integer> claim = new TransactionCallback<Integer>() {
+			@Override
+			public Integer doInTransaction(TransactionStatus theStatus) {
+				return mySubscriptionDeliveryDao.claim(delivery.getId(), delivery.getAttemptCount(), now, new Date(now.getTime() + 60000));
+			}
+		};
+		assertEquals(Integer.valueOf(1), newTxTemplate().execute(claim));
+		assertEquals(Integer.valueOf(0), newTxTemplate().execute(claim));
+
+		// A retry which has been rescheduled can't be claimed using the old attempt count
+		newTxTemplate().execute(new TransactionCallback<Void>() {
+			@Override
+			public Void doInTransaction(TransactionStatus theStatus) {
+				mySubscriptionDeliveryDao.updateNextAttempt(delivery.getId(), 1, now);
+				return null;
+			}
+		});
+		assertEquals(Integer.valueOf(0), newTxTemplate().execute(claim));
+	}
+
+	@Test
+	public void testDeliversAndReportsQueueDepths() throws InterruptedException {
+		DurableDeliveryChannel channel = newChannel();
+		channel.start();
+		for (int i = 0; i < 3; i++) {
+			channel.send(newMessage("1", "http://a", "A" + i));
+		}
+		channel.send(newMessage("2", "http://b", "B"));
+
+		assertEquals(4, channel.getQueueDepth());
+		assertEquals(Long.valueOf(3), channel.getQueueDepths().get("1"));
+		assertEquals(Long.valueOf(1), channel.getQueueDepths().get("2"));
+
+		final List<String> delivered = Collections.synchronizedList(new ArrayList<String>());
+		channel.subscribe(new MessageHandler() {
+			@Override
+			public void handleMessage(Message<?> theMessage) throws MessagingException {
+				ResourceDeliveryMessage msg = (ResourceDeliveryMessage) theMessage.getPayload();
+				delivered.add(((Patient) msg.getPayload(myFhirCtx)).getNameFirstRep().getFamily());
+			}
+		});
+		waitForDepth(channel, 0);
+
+		Collections.sort(delivered);
+		assertEquals("[A0, A1, A2, B]", delivered.toString());
+		assertEquals(4, channel.getDeliveredCount());
+		assertTrue(channel.getQueueDepths().isEmpty());
+	}
+
+	@Test
+	public void testLimitsConcurrentDeliveriesPerEndpoint() throws InterruptedException {
+		DurableDeliveryChannel channel = newChannel();
+		channel.setMaxConcurrentDeliveriesPerEndpoint(2);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger current = new AtomicInteger();
+		final AtomicInteger max = new AtomicInteger();
+		channel.subscribe(new MessageHandler() {
+			@Override
+			public void handleMessage(Message<?> theMessage) throws MessagingException {
+				int count = current.incrementAndGet();
+				synchronized (max) {
+					max.set(Math.max(max.get(), count));
+				}
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					throw new MessagingException("Interrupted", e);
+				}
+				current.decrementAndGet();
+			}
+		});
+		channel.start();
+
+		// Two subscriptions with the same endpoint share its limit
+		for (int i = 0; i < 6; i++) {
+			channel.send(newMessage(Integer.toString(i % 2), "http://a", "A" + i));
+		}
+		Thread.sleep(500);
+		assertEquals(2, channel.getInFlightCount());
+
+		release.countDown();
+		waitForDepth(channel, 0);
+		assertEquals(2, max.get());
+		assertEquals(6, channel.getDeliveredCount());
+	}
+
+	@Test
+	public void testQueuedDeliveriesSurviveRestart() throws InterruptedException {
+		DurableDeliveryChannel channel = newChannel();
+		channel.start();
+		channel.send(newMessage("1", "http://a", "A"));
+		channel.send(newMessage("1", "http://a", "B"));
+		channel.stop();
+
+		final List<String> delivered = Collections.synchronizedList(new ArrayList<String>());
+		DurableDeliveryChannel restarted = newChannel();
+		restarted.subscribe(new MessageHandler() {
+			@Override
+			public void handleMessage(Message<?> theMessage) throws MessagingException {
+				ResourceDeliveryMessage msg = (ResourceDeliveryMessage) theMessage.getPayload();
+				assertEquals("http://a", msg.getSubscription().getEndpointUrl());
+				delivered.add(((Patient) msg.getPayload(myFhirCtx)).getNameFirstRep().getFamily());
+			}
+		});
+		restarted.start();
+		waitForDepth(restarted, 0);
+
+		Collections.sort(delivered);
+		assertEquals("[A, B]", delivered.toString());
+	}
+
+	@Test
+	public void testRetriesFailedDeliveries() throws InterruptedException {
+		DurableDeliveryChannel channel = newChannel();
+		final AtomicInteger attempts = new AtomicInteger();
+		channel.subscribe(new MessageHandler() {
+			@Override
+			public void handleMessage(Message<?> theMessage) throws MessagingException {
+				if (attempts.incrementAndGet() < 3) {
+					throw new MessagingException("Endpoint is down");
+				}
+			}
+		});
+		channel.start();
+
+		channel.send(newMessage("1", "http://a", "A"));
+		waitForDepth(channel, 0);
+
+		assertEquals(3, attempts.get());
+		assertEquals(2, channel.getFailedAttemptCount());
+		assertEquals(1, channel.getDeliveredCount());
+		assertEquals(0, channel.getAbandonedCount());
+	}
+
+	@Test
+	public void testRetryDelayIsExponentialAndCapped() {
+		DurableDeliveryChannel channel = newChannel();
+		channel.setInitialRetryDelayMillis(1000);
+		channel.setMaxRetryDelayMillis(10000);
+		assertEquals(1000, channel.getRetryDelayMillis(1));
+		assertEquals(2000, channel.getRetryDelayMillis(2));
+		assertEquals(8000, channel.getRetryDelayMillis(4));
+		assertEquals(10000, channel.getRetryDelayMillis(5));
+		assertEquals(10000, channel.getRetryDelayMillis(50));
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() {
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+}
@@ -0,0 +1,297 @@
+package ca.uhn.fhir.jpa.subscription.r4;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.dao.IFhirResourceDao;
+import ca.uhn.fhir.jpa.subscription.CanonicalSubscription;
+import ca.uhn.fhir.jpa.subscription.ResourceDeliveryMessage;
+import ca.uhn.fhir.jpa.subscription.resthook.SubscriptionDeliveringRestHookSubscriber;
+import ca.uhn.fhir.rest.annotation.ResourceParam;
+import ca.uhn.fhir.rest.annotation.Transaction;
+import ca.uhn.fhir.rest.annotation.TransactionParam;
+import ca.uhn.fhir.rest.annotation.Update;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.server.IResourceProvider;
+import ca.uhn.fhir.rest.server.RestfulServer;
+import ca.uhn.fhir.util.PortUtil;
+import ca.uhn.fhir.util.TestUtil;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Observation;
+import org.junit.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Delivers rest-hook payloads to a stub endpoint, with and without batching
+ */
+public class RestHookBatchedDeliveryR4Test {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(RestHookBatchedDeliveryR4Test.class);
+	private static final long SLOW_TRANSACTION_MILLIS = 2000;
+	private static FhirContext ourCtx = FhirContext.forR4();
+	private static List<Bundle> ourTransactions = Collections.synchronizedList(new ArrayList<Bundle>());
+	private static AtomicInteger ourUpdateCount = new AtomicInteger();
+	private static Server ourListenerServer;
+	private static String ourListenerServerBase;
+	private List<IGenericClient> myClients = Collections.synchronizedList(new ArrayList<IGenericClient>());
+	private SubscriptionDeliveringRestHookSubscriber mySubscriber;
+
+	@After
+	public void after() {
+		mySubscriber.stopBatchedDelivery();
+	}
+
+	@Before
+	public void before() {
+		ourTransactions.clear();
+		ourUpdateCount.set(0);
+
+		IFhirResourceDao<?> subscriptionDao = mock(IFhirResourceDao.class);
+		when(subscriptionDao.getContext()).thenReturn(ourCtx);
+		mySubscriber = new SubscriptionDeliveringRestHookSubscriber(subscriptionDao, org.hl7.fhir.r4.model.Subscription.SubscriptionChannelType.RESTHOOK, null) {
+			@Override
+			protected IGenericClient getClient(CanonicalSubscription theSubscription) {
+				IGenericClient retVal = super.getClient(theSubscription);
+				myClients.add(retVal);
+				return retVal;
+			}
+		};
+	}
+
+	private int countTransactionEntries() {
+		int retVal = 0;
+		synchronized (ourTransactions) {
+			for (Bundle next : ourTransactions) {
+				retVal += next.getEntry().size();
+			}
+		}
+		return retVal;
+	}
+
+	private void deliver(String theSubscriptionId, String theObservationId, RestOperationTypeEnum theOperationType) throws Exception {
+		CanonicalSubscription subscription = new CanonicalSubscription();
+		subscription.setIdElement(new IdType("Subscription/" + theSubscriptionId));
+		subscription.setEndpointUrl(ourListenerServerBase);
+		subscription.setPayloadString(Constants.CT_FHIR_JSON_NEW);
+
+		Observation observation = new Observation();
+		observation.setId("Observation/" + theObservationId + "/_history/1");
+		observation.setStatus(Observation.ObservationStatus.FINAL);
+
+		ResourceDeliveryMessage msg = new ResourceDeliveryMessage();
+		msg.setSubscription(subscription);
+		msg.setOperationType(theOperationType);
+		msg.setPayloadId(observation.getIdElement());
+		if (theOperationType != RestOperationTypeEnum.DELETE) {
+			msg.setPayload(ourCtx, observation);
+		}
+		mySubscriber.handleMessage(msg);
+	}
+
+	private void waitForTransactions(int theCount) throws InterruptedException {
+		long start = System.currentTimeMillis();
+		while (ourTransactions.size() < theCount) {
+			if (System.currentTimeMillis() - start > 10000) {
+				fail("Received " + ourTransactions.size() + " transactions, expected " + theCount);
+			}
+			Thread.sleep(20);
+		}
+	}
+
+	@Test
+	public void testBatchIsDeliveredAfterWindow() throws Exception {
+		mySubscriber.startBatchedDelivery(100, 200);
+
+		deliver("1", "A", RestOperationTypeEnum.CREATE);
+		deliver("1", "B", RestOperationTypeEnum.UPDATE);
+		deliver("2", "C", RestOperationTypeEnum.CREATE);
+		assertEquals(0, ourTransactions.size());
+
+		waitForTransactions(2);
+		Thread.sleep(200);
+		assertEquals(2, ourTransactions.size());
+		assertEquals(3, countTransactionEntries());
+		assertEquals(0, ourUpdateCount.get());
+	}
+
+	@Test
+	public void testBatchIsDeliveredWhenFull() throws Exception {
+		mySubscriber.startBatchedDelivery(10, 60000);
+
+		for (int i = 0; i < 25; i++) {
+			deliver("1", "O" + i, RestOperationTypeEnum.UPDATE);
+		}
+		assertEquals(2, ourTransactions.size());
+		assertEquals(10, ourTransactions.get(0).getEntry().size());
+		assertEquals("Observation/O0", ourTransactions.get(0).getEntry().get(0).getRequest().getUrl());
+		assertEquals(Bundle.HTTPVerb.PUT, ourTransactions.get(0).getEntry().get(0).getRequest().getMethod());
+
+		// The rest are delivered when batching stops
+		mySubscriber.stopBatchedDelivery();
+		assertEquals(3, ourTransactions.size());
+		assertEquals(25, countTransactionEntries());
+	}
+
+	@Test
+	public void testDeliveryAfterBatchingStopsIsNotLost() throws Exception {
+		mySubscriber.startBatchedDelivery(100, 60000);
+		deliver("1", "A", RestOperationTypeEnum.CREATE);
+		mySubscriber.stopBatchedDelivery();
+		assertEquals(1, ourTransactions.size());
+
+		deliver("1", "B", RestOperationTypeEnum.CREATE);
+		assertEquals(1, ourTransactions.size());
+		assertEquals(1, ourUpdateCount.get());
+	}
+
+	@Test
+	public void testLatestChangeToResourceIsDelivered() throws Exception {
+		mySubscriber.startBatchedDelivery(100, 60000);
+
+		deliver("1", "A", RestOperationTypeEnum.CREATE);
+		deliver("1", "B", RestOperationTypeEnum.CREATE);
+		deliver("1", "A", RestOperationTypeEnum.UPDATE);
+		deliver("1", "B", RestOperationTypeEnum.DELETE);
+		mySubscriber.stopBatchedDelivery();
+
+		assertEquals(1, ourTransactions.size());
+		List<Bundle.BundleEntryComponent> entries = ourTransactions.get(0).getEntry();
+		assertEquals(2, entries.size());
+		assertEquals("Observation/A", entries.get(0).getRequest().getUrl());
+		assertEquals(Bundle.HTTPVerb.PUT, entries.get(0).getRequest().getMethod());
+		assertEquals("Observation/B", entries.get(1).getRequest().getUrl());
+		assertEquals(Bundle.HTTPVerb.DELETE, entries.get(1).getRequest().getMethod());
+	}
+
+	@Test
+	public void testSlowEndpointDoesNotHoldUpOtherBatches() throws Exception {
+		mySubscriber.startBatchedDelivery(100, 100);
+
+		long start = System.currentTimeMillis();
+		deliver("1", "SLOW", RestOperationTypeEnum.CREATE);
+		deliver("2", "A", RestOperationTypeEnum.CREATE);
+
+		waitForTransactions(1);
+		assertTrue(System.currentTimeMillis() - start < SLOW_TRANSACTION_MILLIS);
+		assertEquals("Observation/A", ourTransactions.get(0).getEntry().get(0).getRequest().getUrl());
+
+		waitForTransactions(2);
+	}
+
+	@Test
+	public void testUnbatchedDeliveryReusesClient() throws Exception {
+		for (int i = 0; i < 5; i++) {
+			deliver("1", "O" + i, RestOperationTypeEnum.UPDATE);
+		}
+		assertEquals(5, ourUpdateCount.get());
+		assertEquals(0, ourTransactions.size());
+
+		assertEquals(5, myClients.size());
+		for (IGenericClient next : myClients) {
+			assertSame(myClients.get(0), next);
+		}
+	}
+
+	@Test
+	@Ignore
+	public void testDeliveryThroughput() throws Exception {
+		int count = 5000;
+
+		// warm up
+		for (int i = 0; i < 200; i++) {
+			deliver("1", "W" + i, RestOperationTypeEnum.UPDATE);
+		}
+
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < count; i++) {
+			deliver("1", "O" + i, RestOperationTypeEnum.UPDATE);
+		}
+		long unbatched = Math.max(1, System.currentTimeMillis() - start);
+
+		mySubscriber.startBatchedDelivery(100, 500);
+		start = System.currentTimeMillis();
+		for (int i = 0; i < count; i++) {
+			deliver("1", "O" + i, RestOperationTypeEnum.UPDATE);
+		}
+		mySubscriber.stopBatchedDelivery();
+		long batched = Math.max(1, System.currentTimeMillis() - start);
+
+		ourLog.info("Delivered {} payloads - unbatched {} deliveries/sec, batched {} deliveries/sec ({} transactions)", count, count * 1000L / unbatched, count * 1000L / batched, ourTransactions.size());
+	}
+
+	@AfterClass
+	public static void afterClass() throws Exception {
+		ourListenerServer.stop();
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+	@BeforeClass
+	public static void beforeClass() throws Exception {
+		int port = PortUtil.findFreePort();
+		ourListenerServerBase = "http://localhost:" + port + "/fhir/context";
+
+		RestfulServer restServer = new RestfulServer(ourCtx);
+		restServer.setResourceProviders(new ObservationListener());
+		restServer.setPlainProviders(new TransactionListener());
+
+		ourListenerServer = new Server(port);
+		ServletContextHandler proxyHandler = new ServletContextHandler();
+		proxyHandler.setContextPath("/");
+		ServletHolder servletHolder = new ServletHolder();
+		servletHolder.setServlet(restServer);
+		proxyHandler.addServlet(servletHolder, "/fhir/context/*");
+		ourListenerServer.setHandler(proxyHandler);
+		ourListenerServer.start();
+	}
+
+	public static class ObservationListener implements IResourceProvider {
+
+		@Override
+		public Class<? extends IBaseResource> getResourceType() {
+			return Observation.class;
+		}
+
+		@Update
+		public MethodOutcome update(@ResourceParam Observation theObservation) {
+			ourUpdateCount.incrementAndGet();
+			return new MethodOutcome(theObservation.getIdElement(), false);
+		}
+
+	}
+
+	public static class TransactionListener {
+
+		@Transaction
+		public Bundle transaction(@TransactionParam Bundle theInput) throws InterruptedException {
+			if ("Observation/SLOW".equals(theInput.getEntryFirstRep().getRequest().getUrl())) {
+				Thread.sleep(SLOW_TRANSACTION_MILLIS);
+			}
+			ourTransactions.add(theInput);
+			Bundle retVal = new Bundle();
+			retVal.setType(Bundle.BundleType.TRANSACTIONRESPONSE);
+			for (Bundle.BundleEntryComponent next : theInput.getEntry()) {
+				retVal.addEntry().getResponse().setStatus("200 OK").setLocation(next.getRequest().getUrl());
+			}
+			return retVal;
+		}
+
+	}
+
+}
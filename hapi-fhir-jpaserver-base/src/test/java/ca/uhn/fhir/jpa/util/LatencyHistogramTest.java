@@ -0,0 +1,46 @@
+package ca.uhn.fhir.jpa.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testEmpty() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMeanMillis());
+		assertEquals(0, histogram.getPercentileMillis(50));
+		assertEquals(0, histogram.getMaxMillis());
+	}
+
+	@Test
+	public void testRecord() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 90; i++) {
+			histogram.record(3);
+		}
+		for (int i = 0; i < 9; i++) {
+			histogram.record(150);
+		}
+		histogram.record(70000);
+		histogram.record(-5);
+
+		assertEquals(101, histogram.getCount());
+		assertEquals(70000, histogram.getMaxMillis());
+		assertEquals((90 * 3 + 9 * 150 + 70000) / 101, histogram.getMeanMillis());
+
+		assertEquals(5, histogram.getPercentileMillis(50));
+		assertEquals(200, histogram.getPercentileMillis(95));
+		assertEquals(70000, histogram.getPercentileMillis(100));
+
+		long[] counts = histogram.getBucketCounts();
+		long[] bounds = histogram.getBucketUpperBounds();
+		assertEquals(bounds.length, counts.length);
+		assertEquals(1, counts[0]);
+		assertEquals(90, counts[2]);
+		assertEquals(1, counts[counts.length - 1]);
+	}
+
+}
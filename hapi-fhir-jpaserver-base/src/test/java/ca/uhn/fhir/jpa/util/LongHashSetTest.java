@@ -0,0 +1,79 @@
+package ca.uhn.fhir.jpa.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class LongHashSetTest {
+
+	@Test
+	public void testAddAndContains() {
+		LongHashSet set = new LongHashSet();
+		assertTrue(set.add(5L));
+		assertTrue(set.add(0L));
+		assertTrue(set.add(-1L));
+		assertFalse(set.add(5L));
+		assertFalse(set.add(0L));
+
+		assertEquals(3, set.size());
+		assertTrue(set.contains(0L));
+		assertTrue(set.contains(-1L));
+		assertFalse(set.contains(6L));
+
+		LongArrayList values = set.getValuesInInsertionOrder();
+		assertEquals(Arrays.asList(5L, 0L, -1L), values.toList(0, values.size()));
+	}
+
+	@Test
+	public void testManyValuesMatchesHashSet() {
+		LongHashSet set = new LongHashSet();
+		Set<Long> expected = new HashSet<Long>();
+		Random random = new Random(0);
+
+		for (int i = 0; i < 100000; i++) {
+			// Mix of sequential and repeated values, which is what PIDs look like
+			long next = i % 3 == 0 ? random.nextInt(1000) : i;
+			assertEquals(expected.add(next), set.add(next));
+		}
+
+		assertEquals(expected.size(), set.size());
+		for (Long next : expected) {
+			assertTrue(set.contains(next));
+		}
+		assertFalse(set.contains(200000L));
+	}
+
+	@Test
+	public void testLongArrayList() {
+		LongArrayList list = new LongArrayList(1);
+		for (long i = 0; i < 100; i++) {
+			list.add(i);
+		}
+		LongArrayList other = new LongArrayList();
+		other.add(1000L);
+		list.addAll(other);
+
+		assertEquals(101, list.size());
+		assertEquals(99L, list.get(99));
+		assertEquals(1000L, list.get(100));
+		assertEquals(Arrays.asList(98L, 99L, 1000L), list.toList(98, 101));
+
+		list.clear();
+		assertTrue(list.isEmpty());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testLongArrayListGetOutOfBounds() {
+		LongArrayList list = new LongArrayList();
+		list.add(1L);
+		list.get(1);
+	}
+
+}
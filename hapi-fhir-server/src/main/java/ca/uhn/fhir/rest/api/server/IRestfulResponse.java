@@ -40,6 +40,18 @@ public interface IRestfulResponse {
 
 	Writer getResponseWriter(int theStatusCode, String theStatusMessage, String theContentType, String theCharset, boolean theRespondGzip) throws UnsupportedEncodingException, IOException;
 
+	/**
+	 * Returns a stream which the response body can be written to as bytes, so that it can be
+	 * encoded straight into the container's response buffer instead of going through a
+	 * {@link Writer}. The stream is returned to the server, which closes it once the response
+	 * has been written.
+	 *
+	 * @return Returns <code>null</code> if this response can only be written using
+	 * {@link #getResponseWriter(int, String, String, String, boolean)}
+	 * @since 3.3.0
+	 */
+	OutputStream getResponseOutputStream(int theStatusCode, String theStatusMessage, String theContentType, String theCharset, boolean theRespondGzip) throws IOException;
+
 	Object sendWriterResponse(int status, String contentType, String charset, Writer writer) throws IOException;
 
 	void addHeader(String headerKey, String headerValue);
@@ -0,0 +1,471 @@
+package ca.uhn.fhir.rest.server;
+
+/*
+ * #%L
+ * HAPI FHIR - Server Framework
+ * %%
+ * Copyright (C) 2014 - 2018 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.rest.server.exceptions.UnclassifiedServerFailureException;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Dispatches incoming requests to a dedicated, bounded executor using Servlet 3.1
+ * asynchronous processing, so that container threads are released while the request
+ * is being processed.
+ * <p>
+ * This class is deliberately kept separate from {@link RestfulServer} so that the
+ * Servlet 3.1 API is only required at runtime if asynchronous processing has
+ * been enabled.
+ * </p>
+ * <p>
+ * The worker thread writes to a {@link FencedResponse} rather than to the container's
+ * response. If the request times out, the response is fenced off before the timeout
+ * error is written, so anything the worker writes afterwards is discarded instead of
+ * going to a response that has been completed (and may have been recycled).
+ * </p>
+ */
+class AsyncRequestHandler {
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(AsyncRequestHandler.class);
+
+	private final ThreadPoolExecutor myExecutor;
+	private final RestfulServer myServer;
+	private final long myTimeoutMillis;
+
+	AsyncRequestHandler(RestfulServer theServer, int theThreadCount, int theQueueCapacity, long theTimeoutMillis) {
+		myServer = theServer;
+		myTimeoutMillis = theTimeoutMillis;
+
+		BlockingQueue<Runnable> workQueue = new ArrayBlockingQueue<>(theQueueCapacity);
+		ThreadFactory threadFactory = new BasicThreadFactory.Builder()
+			.namingPattern("hapi-fhir-request-%d")
+			.daemon(false)
+			.priority(Thread.NORM_PRIORITY)
+			.build();
+		myExecutor = new ThreadPoolExecutor(theThreadCount, theThreadCount, 0L, TimeUnit.MILLISECONDS, workQueue, threadFactory);
+	}
+
+	/**
+	 * Returns <code>true</code> if the request was dispatched for asynchronous processing, or
+	 * <code>false</code> if the container does not support asynchronous processing for this
+	 * request (in which case the caller should process it synchronously)
+	 */
+	boolean dispatch(final HttpServletRequest theRequest, final HttpServletResponse theResponse) throws IOException {
+		if (!theRequest.isAsyncSupported()) {
+			return false;
+		}
+
+		final AsyncContext asyncContext = theRequest.startAsync();
+		asyncContext.setTimeout(myTimeoutMillis);
+
+		final AtomicBoolean finished = new AtomicBoolean(false);
+		final FencedResponse fencedResponse = new FencedResponse(theResponse);
+		asyncContext.addListener(new AsyncListener() {
+			@Override
+			public void onComplete(AsyncEvent theEvent) {
+				finished.set(true);
+			}
+
+			@Override
+			public void onError(AsyncEvent theEvent) {
+				ourLog.warn("Error during asynchronous processing of request", theEvent.getThrowable());
+				finish(asyncContext, finished);
+			}
+
+			@Override
+			public void onStartAsync(AsyncEvent theEvent) {
+				// nothing
+			}
+
+			@Override
+			public void onTimeout(AsyncEvent theEvent) throws IOException {
+				ourLog.warn("Request timed out after {}ms: {}", myTimeoutMillis, theRequest.getRequestURI());
+				if (finished.compareAndSet(false, true)) {
+					synchronized (fencedResponse.myLock) {
+						fencedResponse.myFenced = true;
+						writeFailure(theResponse, "Request processing timed out after " + myTimeoutMillis + "ms");
+					}
+					asyncContext.complete();
+				}
+			}
+		});
+
+		try {
+			myExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						myServer.serviceSynchronously(theRequest, fencedResponse);
+					} catch (Throwable t) {
+						ourLog.error("Failure during asynchronous processing of request", t);
+					} finally {
+						finish(asyncContext, finished);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			ourLog.warn("Rejecting request because the request processing queue is full: {}", theRequest.getRequestURI());
+			if (finished.compareAndSet(false, true)) {
+				writeFailure(theResponse, "Server is too busy to process this request, try again later");
+				asyncContext.complete();
+			}
+		}
+
+		return true;
+	}
+
+	void shutdown() {
+		myExecutor.shutdown();
+		try {
+			if (!myExecutor.awaitTermination(myTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				myExecutor.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			myExecutor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void writeFailure(HttpServletResponse theResponse, String theMessage) throws IOException {
+		if (theResponse.isCommitted()) {
+			return;
+		}
+		theResponse.reset();
+		myServer.writeExceptionToResponse(theResponse, new UnclassifiedServerFailureException(503, theMessage));
+	}
+
+	/**
+	 * A response which can be fenced off, after which everything written to it is discarded.
+	 * All access to the underlying response holds a lock, so that a write which is already in
+	 * progress when the request times out finishes before the timeout error is written.
+	 */
+	private static class FencedResponse extends HttpServletResponseWrapper {
+
+		private final Object myLock = new Object();
+		private boolean myFenced;
+		private ServletOutputStream myOutputStream;
+		private PrintWriter myWriter;
+
+		FencedResponse(HttpServletResponse theResponse) {
+			super(theResponse);
+		}
+
+		@Override
+		public void addCookie(Cookie theCookie) {
+			synchronized (myLock) {
+				if (!myFenced) {
+					super.addCookie(theCookie);
+				}
+			}
+		}
+
+		@Override
+		public void addDateHeader(String theName, long theDate) {
+			synchronized (myLock) {
+				if (!myFenced) {
+					super.addDateHeader(theName, theDate);
+				}
+			}
+		}
+
+		@Override
+		public void addHeader(String theName, String theValue) {
+			synchronized (myLock) {
+				if (!myFenced) {
+					super.addHeader(theName, theValue);
+				}
+			}
+		}
+
+		@Override
+		public void addIntHeader(String theName, int theValue) {
+			synchronized (myLock) {
+				if (!myFenced) {
+					super.addIntHeader(theName, theValue);
+				}
+			}
+		}
+
+		@Override
+		public void flushBuffer() throws IOException {
+			synchronized (myLock) {
+				if (!myFenced) {
+					super.flushBuffer();
+				}
+			}
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() throws IOException {
+			synchronized (myLock) {
+				if (myOutputStream == null) {
+					final ServletOutputStream delegate = super.getOutputStream();
+					myOutputStream = new ServletOutputStream() {
+						@Override
+						public void close() throws IOException {
+							synchronized (myLock) {
+								if (!myFenced) {
+									delegate.close();
+								}
+							}
+						}
+
+						@Override
+						public void flush() throws IOException {
+							synchronized (myLock) {
+								if (!myFenced) {
+									delegate.flush();
+								}
+							}
+						}
+
+						@Override
+						public boolean isReady() {
+							return delegate.isReady();
+						}
+
+						@Override
+						public void setWriteListener(WriteListener theWriteListener) {
+							delegate.setWriteListener(theWriteListener);
+						}
+
+						@Override
+						public void write(byte[] theBytes, int theOffset, int theLength) throws IOException {
+							synchronized (myLock) {
+								if (!myFenced) {
+									delegate.write(theBytes, theOffset, theLength);
+								}
+							}
+						}
+
+						@Override
+						public void write(int theByte) throws IOException {
+							synchronized (myLock) {
+								if (!myFenced) {
+									delegate.write(theByte);
+								}
+							}
+						}
+					};
+				}
+				return myOutputStream;
+			}
+		}
+
+		@Override
+		public PrintWriter getWriter() throws IOException {
+			synchronized (myLock) {
+				if (myWriter == null) {
+					final PrintWriter delegate = super.getWriter();
+					myWriter = new PrintWriter(new Writer() {
+						@Override
+						public void close() {
+							synchronized (myLock) {
+								if (!myFenced) {
+									delegate.close();
+								}
+							}
+						}
+
+						@Override
+						public void flush() {
+							synchronized (myLock) {
+								if (!myFenced) {
+									delegate.flush();
+								}
+							}
+						}
+
+						@Override
+						public void write(char[] theChars, int theOffset, int theLength) {
+							synchronized (myLock) {
+								if (!myFenced) {
+									delegate.write(theChars, theOffset, theLength);
+								}
+							}
+						}
+					});
+				}
+				return myWriter;
+			}
+		}
+
+		@Override
+		public void reset() {
+			synchronized (myLock) {
+				if (!myFenced) {
+					super.reset();
+				}
+			}
+		}
+
+		@Override
+		public void resetBuffer() {
+			synchronized (myLock) {
+				if (!myFenced) {
+					super.resetBuffer();
+				}
+			}
+		}
+
+		@Override
+		public void sendError(int theStatusCode) throws IOException {
+			synchronized (myLock) {
+				if (!myFenced) {
+					super.sendError(theStatusCode);
+				}
+			}
+		}
+
+		@Override
+		public void sendError(int theStatusCode, String theMessage) throws IOException {
+			synchronized (myLock) {
+				if (!myFenced) {
+					super.sendError(theStatusCode, theMessage);
+				}
+			}
+		}
+
+		@Override
+		public void sendRedirect(String theLocation) throws IOException {
+			synchronized (myLock) {
+				if (!myFenced) {
+					super.sendRedirect(theLocation);
+				}
+			}
+		}
+
+		@Override
+		public void setBufferSize(int theSize) {
+			synchronized (myLock) {
+				if (!myFenced) {
+					super.setBufferSize(theSize);
+				}
+			}
+		}
+
+		@Override
+		public void setCharacterEncoding(String theCharset) {
+			synchronized (myLock) {
+				if (!myFenced) {
+					super.setCharacterEncoding(theCharset);
+				}
+			}
+		}
+
+		@Override
+		public void setContentLength(int theLength) {
+			synchronized (myLock) {
+				if (!myFenced) {
+					super.setContentLength(theLength);
+				}
+			}
+		}
+
+		@Override
+		public void setContentLengthLong(long theLength) {
+			synchronized (myLock) {
+				if (!myFenced) {
+					super.setContentLengthLong(theLength);
+				}
+			}
+		}
+
+		@Override
+		public void setContentType(String theType) {
+			synchronized (myLock) {
+				if (!myFenced) {
+					super.setContentType(theType);
+				}
+			}
+		}
+
+		@Override
+		public void setDateHeader(String theName, long theDate) {
+			synchronized (myLock) {
+				if (!myFenced) {
+					super.setDateHeader(theName, theDate);
+				}
+			}
+		}
+
+		@Override
+		public void setHeader(String theName, String theValue) {
+			synchronized (myLock) {
+				if (!myFenced) {
+					super.setHeader(theName, theValue);
+				}
+			}
+		}
+
+		@Override
+		public void setIntHeader(String theName, int theValue) {
+			synchronized (myLock) {
+				if (!myFenced) {
+					super.setIntHeader(theName, theValue);
+				}
+			}
+		}
+
+		@Override
+		public void setLocale(Locale theLocale) {
+			synchronized (myLock) {
+				if (!myFenced) {
+					super.setLocale(theLocale);
+				}
+			}
+		}
+
+		@Override
+		public void setStatus(int theStatusCode) {
+			synchronized (myLock) {
+				if (!myFenced) {
+					super.setStatus(theStatusCode);
+				}
+			}
+		}
+
+	}
+
+	private static void finish(AsyncContext theAsyncContext, AtomicBoolean theFinished) {
+		if (theFinished.compareAndSet(false, true)) {
+			try {
+				theAsyncContext.complete();
+			} catch (IllegalStateException e) {
+				// The container has already completed or recycled this request
+				ourLog.debug("Failed to complete asynchronous request", e);
+			}
+		}
+	}
+
+}
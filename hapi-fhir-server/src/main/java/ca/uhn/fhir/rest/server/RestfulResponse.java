@@ -21,6 +21,7 @@ package ca.uhn.fhir.rest.server;
  */
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Date;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -47,6 +48,15 @@ public abstract class RestfulResponse<T extends RequestDetails> implements IRest
 		this.getHeaders().put(headerKey, headerValue);
 	}
 
+	/**
+	 * Returns <code>null</code>, since responses are written using a writer unless a
+	 * subclass supports writing bytes
+	 */
+	@Override
+	public OutputStream getResponseOutputStream(int theStatusCode, String theStatusMessage, String theContentType, String theCharset, boolean theRespondGzip) throws IOException {
+		return null;
+	}
+
 	/**
 	 * Get the http headers
 	 * @return the headers
@@ -30,6 +30,7 @@ import java.util.Map.Entry;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.jar.Manifest;
+import java.util.zip.Deflater;
 
 import javax.servlet.ServletException;
 import javax.servlet.UnavailableException;
@@ -69,6 +70,14 @@ public class RestfulServer extends HttpServlet implements IRestfulServer<Servlet
 	 * Default setting for {@link #setETagSupport(ETagSupportEnum) ETag Support}: {@link ETagSupportEnum#ENABLED}
 	 */
 	public static final ETagSupportEnum DEFAULT_ETAG_SUPPORT = ETagSupportEnum.ENABLED;
+	/**
+	 * Default setting for {@link #setAsyncRequestQueueCapacity(int) async request queue capacity}: 100
+	 */
+	public static final int DEFAULT_ASYNC_REQUEST_QUEUE_CAPACITY = 100;
+	/**
+	 * Default setting for {@link #setAsyncRequestTimeoutMillis(long) async request timeout}: 60000ms (1 minute)
+	 */
+	public static final long DEFAULT_ASYNC_REQUEST_TIMEOUT_MILLIS = 60 * 1000L;
 	/**
 	 * Requests will have an HttpServletRequest attribute set with this name, containing the servlet
 	 * context, in order to avoid a dependency on Servlet-API 3.0+
@@ -78,6 +87,10 @@ public class RestfulServer extends HttpServlet implements IRestfulServer<Servlet
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(RestfulServer.class);
 	private static final long serialVersionUID = 1L;
 	private final List<IServerInterceptor> myInterceptors = new ArrayList<>();
+	private AsyncRequestHandler myAsyncRequestHandler;
+	private int myAsyncRequestQueueCapacity = DEFAULT_ASYNC_REQUEST_QUEUE_CAPACITY;
+	private int myAsyncRequestThreadCount = 0;
+	private long myAsyncRequestTimeoutMillis = DEFAULT_ASYNC_REQUEST_TIMEOUT_MILLIS;
 	private final List<Object> myPlainProviders = new ArrayList<>();
 	private final List<IResourceProvider> myResourceProviders = new ArrayList<>();
 	private BundleInclusionRule myBundleInclusionRule = BundleInclusionRule.BASED_ON_INCLUDES;
@@ -85,6 +98,7 @@ public class RestfulServer extends HttpServlet implements IRestfulServer<Servlet
 	private EncodingEnum myDefaultResponseEncoding = EncodingEnum.XML;
 	private ETagSupportEnum myETagSupport = DEFAULT_ETAG_SUPPORT;
 	private FhirContext myFhirContext;
+	private int myGzipCompressionLevel = Deflater.DEFAULT_COMPRESSION;
 	private boolean myIgnoreServerParsedRequestParameters = true;
 	private String myImplementationDescription;
 	private IPagingProvider myPagingProvider;
@@ -200,6 +214,10 @@ public class RestfulServer extends HttpServlet implements IRestfulServer<Servlet
 
 	@Override
 	public void destroy() {
+		if (myAsyncRequestHandler != null) {
+			myAsyncRequestHandler.shutdown();
+			myAsyncRequestHandler = null;
+		}
 		if (getResourceProviders() != null) {
 			for (IResourceProvider iResourceProvider : getResourceProviders()) {
 				invokeDestroy(iResourceProvider);
@@ -351,6 +369,86 @@ public class RestfulServer extends HttpServlet implements IRestfulServer<Servlet
 		return count;
 	}
 
+	/**
+	 * Returns the capacity of the queue which holds requests waiting for a thread
+	 * when {@link #setAsyncRequestThreadCount(int) asynchronous processing} is enabled
+	 *
+	 * @see #setAsyncRequestQueueCapacity(int)
+	 */
+	public int getAsyncRequestQueueCapacity() {
+		return myAsyncRequestQueueCapacity;
+	}
+
+	/**
+	 * Sets the capacity of the queue which holds requests waiting for a thread
+	 * when {@link #setAsyncRequestThreadCount(int) asynchronous processing} is enabled
+	 * (default is {@link #DEFAULT_ASYNC_REQUEST_QUEUE_CAPACITY}). Requests which arrive
+	 * when the queue is full will be rejected with an HTTP 503 response.
+	 * <p>
+	 * This setting must be set prior to the server being initialized.
+	 * </p>
+	 */
+	public void setAsyncRequestQueueCapacity(int theAsyncRequestQueueCapacity) {
+		Validate.isTrue(theAsyncRequestQueueCapacity > 0, "theAsyncRequestQueueCapacity must be greater than 0");
+		myAsyncRequestQueueCapacity = theAsyncRequestQueueCapacity;
+	}
+
+	/**
+	 * Returns the number of threads used to process requests asynchronously, or <code>0</code>
+	 * if asynchronous processing is disabled (which is the default)
+	 *
+	 * @see #setAsyncRequestThreadCount(int)
+	 */
+	public int getAsyncRequestThreadCount() {
+		return myAsyncRequestThreadCount;
+	}
+
+	/**
+	 * If set to a value greater than <code>0</code> (the default is <code>0</code>), incoming requests
+	 * will be processed using Servlet 3.1 asynchronous processing. The container thread is released as soon
+	 * as the request has been handed to a dedicated pool with the given number of threads, which means that
+	 * slow requests (e.g. large searches) can not exhaust the container's thread pool.
+	 * <p>
+	 * Note that the servlet must be marked as supporting asynchronous processing (e.g. using
+	 * <code>&lt;async-supported&gt;true&lt;/async-supported&gt;</code> in <code>web.xml</code>)
+	 * or requests will continue to be processed synchronously. Note also that any filters in front
+	 * of the servlet must support asynchronous processing too.
+	 * </p>
+	 * <p>
+	 * This setting must be set prior to the server being initialized.
+	 * </p>
+	 *
+	 * @see #setAsyncRequestQueueCapacity(int)
+	 * @see #setAsyncRequestTimeoutMillis(long)
+	 */
+	public void setAsyncRequestThreadCount(int theAsyncRequestThreadCount) {
+		Validate.isTrue(theAsyncRequestThreadCount >= 0, "theAsyncRequestThreadCount must not be negative");
+		myAsyncRequestThreadCount = theAsyncRequestThreadCount;
+	}
+
+	/**
+	 * Returns the maximum time that a request may take when {@link #setAsyncRequestThreadCount(int) asynchronous processing}
+	 * is enabled
+	 *
+	 * @see #setAsyncRequestTimeoutMillis(long)
+	 */
+	public long getAsyncRequestTimeoutMillis() {
+		return myAsyncRequestTimeoutMillis;
+	}
+
+	/**
+	 * Sets the maximum time that a request may take when {@link #setAsyncRequestThreadCount(int) asynchronous processing}
+	 * is enabled (default is {@link #DEFAULT_ASYNC_REQUEST_TIMEOUT_MILLIS}). If a request has not completed within this
+	 * time, an HTTP 503 response will be returned to the client if no response has yet been committed.
+	 * <p>
+	 * This setting must be set prior to the server being initialized.
+	 * </p>
+	 */
+	public void setAsyncRequestTimeoutMillis(long theAsyncRequestTimeoutMillis) {
+		Validate.isTrue(theAsyncRequestTimeoutMillis > 0, "theAsyncRequestTimeoutMillis must be greater than 0");
+		myAsyncRequestTimeoutMillis = theAsyncRequestTimeoutMillis;
+	}
+
 	/**
 	 * @deprecated As of HAPI FHIR 1.5, this property has been moved to
 	 *             {@link FhirContext#setAddProfileTagWhenEncoding(AddProfileTagEnum)}
@@ -1010,6 +1108,11 @@ public class RestfulServer extends HttpServlet implements IRestfulServer<Servlet
 				 */
 				findResourceMethods(new PageProvider());
 
+				if (myAsyncRequestThreadCount > 0) {
+					ourLog.info("Enabling asynchronous request processing with {} threads", myAsyncRequestThreadCount);
+					myAsyncRequestHandler = new AsyncRequestHandler(this, myAsyncRequestThreadCount, myAsyncRequestQueueCapacity, myAsyncRequestTimeoutMillis);
+				}
+
 			} catch (Exception ex) {
 				ourLog.error("An error occurred while loading request handlers!", ex);
 				throw new ServletException("Failed to initialize FHIR Restful server", ex);
@@ -1123,6 +1226,32 @@ public class RestfulServer extends HttpServlet implements IRestfulServer<Servlet
 		myDefaultPrettyPrint = theDefaultPrettyPrint;
 	}
 
+	/**
+	 * Returns the compression level which will be used when a client requests a GZip compressed
+	 * response (the default is {@link Deflater#DEFAULT_COMPRESSION}).
+	 *
+	 * @see #setGzipCompressionLevel(int)
+	 */
+	public int getGzipCompressionLevel() {
+		return myGzipCompressionLevel;
+	}
+
+	/**
+	 * Sets the compression level which will be used when a client requests a GZip compressed
+	 * response (the default is {@link Deflater#DEFAULT_COMPRESSION}). Valid values are
+	 * {@link Deflater#DEFAULT_COMPRESSION}, or a value between {@link Deflater#BEST_SPEED} (1)
+	 * and {@link Deflater#BEST_COMPRESSION} (9).
+	 * <p>
+	 * Large responses (e.g. search result Bundles) spend a significant amount of CPU time
+	 * being compressed, so servers which are CPU bound rather than bandwidth bound may
+	 * benefit from using {@link Deflater#BEST_SPEED}.
+	 * </p>
+	 */
+	public void setGzipCompressionLevel(int theGzipCompressionLevel) {
+		Validate.isTrue(theGzipCompressionLevel == Deflater.DEFAULT_COMPRESSION || (theGzipCompressionLevel >= Deflater.BEST_SPEED && theGzipCompressionLevel <= Deflater.BEST_COMPRESSION), "Invalid GZip compression level: %s", theGzipCompressionLevel);
+		myGzipCompressionLevel = theGzipCompressionLevel;
+	}
+
 	/**
 	 * If set to <code>true</code> (the default is <code>true</code>) this server will not
 	 * use the parsed request parameters (URL parameters and HTTP POST form contents) but
@@ -1435,6 +1564,18 @@ public class RestfulServer extends HttpServlet implements IRestfulServer<Servlet
 	protected void service(HttpServletRequest theReq, HttpServletResponse theResp) throws ServletException, IOException {
 		theReq.setAttribute(REQUEST_START_TIME, new Date());
 
+		if (myAsyncRequestHandler != null && myAsyncRequestHandler.dispatch(theReq, theResp)) {
+			return;
+		}
+
+		serviceSynchronously(theReq, theResp);
+	}
+
+	/**
+	 * Processes the request on the calling thread. This is invoked by {@link #service(HttpServletRequest, HttpServletResponse)}
+	 * directly, or from a worker thread if {@link #setAsyncRequestThreadCount(int) asynchronous processing} is enabled.
+	 */
+	void serviceSynchronously(HttpServletRequest theReq, HttpServletResponse theResp) throws ServletException, IOException {
 		RequestTypeEnum method;
 		try {
 			method = RequestTypeEnum.valueOf(theReq.getMethod());
@@ -1547,7 +1688,7 @@ public class RestfulServer extends HttpServlet implements IRestfulServer<Servlet
 		}
 	}
 
-	private void writeExceptionToResponse(HttpServletResponse theResponse, BaseServerResponseException theException) throws IOException {
+	void writeExceptionToResponse(HttpServletResponse theResponse, BaseServerResponseException theException) throws IOException {
 		theResponse.setStatus(theException.getStatusCode());
 		addHeadersToResponse(theResponse);
 		if (theException.hasResponseHeaders()) {
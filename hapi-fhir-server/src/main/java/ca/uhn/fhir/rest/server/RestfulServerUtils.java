@@ -45,6 +45,7 @@ import org.hl7.fhir.instance.model.api.*;
 
 import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
 import java.util.*;
 import java.util.regex.Matcher;
@@ -699,6 +700,24 @@ public class RestfulServerUtils {
 		}
 		String charset = Constants.CHARSET_NAME_UTF8;
 
+		/*
+		 * If the response supports it, encode straight into its output stream (and therefore
+		 * into the container's response buffer) as UTF-8 bytes
+		 */
+		OutputStream outputStream = response.getResponseOutputStream(theStatusCode, theStatusMessage, contentType, charset, respondGzip);
+		if (outputStream != null) {
+			if (theResource == null) {
+				// No response is being returned
+			} else if (encodingDomainResourceAsText && theResource instanceof IResource) {
+				outputStream.write(((IResource) theResource).getText().getDiv().getValueAsString().getBytes(Constants.CHARSET_UTF8));
+			} else {
+				FhirVersionEnum forVersion = theResource.getStructureFhirVersionEnum();
+				IParser parser = getNewParser(theServer.getFhirContext(), forVersion, theRequestDetails);
+				parser.encodeResourceToOutputStream(theResource, outputStream);
+			}
+			return outputStream;
+		}
+
 		Writer writer = response.getResponseWriter(theStatusCode, theStatusMessage, contentType, charset, respondGzip);
 		if (theResource == null) {
 			// No response is being returned
@@ -131,9 +131,16 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 		String searchId = null;
 		List<IBaseResource> resourceList;
 		Integer numTotalResults = theResult.size();
+
+		/*
+		 * If the client only asked for the total (_summary=count), no resources
+		 * will be encoded in the response so there is no point in loading any
+		 */
+		boolean countOnly = RestfulServerUtils.determineSummaryMode(theRequest).contains(SummaryEnum.COUNT);
+
 		if (theServer.getPagingProvider() == null) {
 			numToReturn = numTotalResults;
-			if (numToReturn > 0) {
+			if (numToReturn > 0 && !countOnly) {
 				resourceList = theResult.getResources(0, numToReturn);
 			} else {
 				resourceList = Collections.emptyList();
@@ -151,6 +158,9 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 			if (numTotalResults != null) {
 				numToReturn = Math.min(numToReturn, numTotalResults - theOffset);
 			}
+			if (countOnly) {
+				numToReturn = 0;
+			}
 
 			if (numToReturn > 0) {
 				resourceList = theResult.getResources(theOffset, numToReturn + theOffset);
@@ -162,7 +172,7 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 			if (theSearchId != null) {
 				searchId = theSearchId;
 			} else {
-				if (numTotalResults == null || numTotalResults > numToReturn) {
+				if (!countOnly && (numTotalResults == null || numTotalResults > numToReturn)) {
 					searchId = pagingProvider.storeResultList(theResult);
 					if (isBlank(searchId)) {
 						ourLog.info("Found {} results but paging provider did not provide an ID to use for paging", numTotalResults);
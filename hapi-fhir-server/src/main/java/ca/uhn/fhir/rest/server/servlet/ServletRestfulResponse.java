@@ -21,6 +21,7 @@ package ca.uhn.fhir.rest.server.servlet;
  */
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
@@ -58,6 +59,20 @@ public class ServletRestfulResponse extends RestfulResponse<ServletRequestDetail
 		return oos;
 	}
 
+	@Override
+	public OutputStream getResponseOutputStream(int theStatusCode, String theStatusMessage, String theContentType, String theCharset, boolean theRespondGzip) throws IOException {
+		addHeaders();
+		HttpServletResponse theHttpResponse = getRequestDetails().getServletResponse();
+		theHttpResponse.setCharacterEncoding(theCharset);
+		theHttpResponse.setStatus(theStatusCode);
+		theHttpResponse.setContentType(theContentType);
+		if (theRespondGzip) {
+			theHttpResponse.addHeader(Constants.HEADER_CONTENT_ENCODING, Constants.ENCODING_GZIP);
+			return new LevelGzipOutputStream(theHttpResponse.getOutputStream(), getRequestDetails().getServer().getGzipCompressionLevel());
+		}
+		return theHttpResponse.getOutputStream();
+	}
+
 	@Override
 	public Writer getResponseWriter(int theStatusCode, String theStatusMessage, String theContentType, String theCharset, boolean theRespondGzip) throws UnsupportedEncodingException, IOException {
 		addHeaders();
@@ -67,7 +82,8 @@ public class ServletRestfulResponse extends RestfulResponse<ServletRequestDetail
 		theHttpResponse.setContentType(theContentType);
 		if (theRespondGzip) {
 			theHttpResponse.addHeader(Constants.HEADER_CONTENT_ENCODING, Constants.ENCODING_GZIP);
-			return new OutputStreamWriter(new GZIPOutputStream(theHttpResponse.getOutputStream()), Constants.CHARSET_NAME_UTF8);
+			GZIPOutputStream gzipOutputStream = new LevelGzipOutputStream(theHttpResponse.getOutputStream(), getRequestDetails().getServer().getGzipCompressionLevel());
+			return new OutputStreamWriter(gzipOutputStream, Constants.CHARSET_NAME_UTF8);
 		}
 		return theHttpResponse.getWriter();
 	}
@@ -90,4 +106,18 @@ public class ServletRestfulResponse extends RestfulResponse<ServletRequestDetail
 		addHeaders();
 		return getRequestDetails().getServer().returnResponse(getRequestDetails(), outcome, operationStatus, allowPrefer, response, resourceName);
 	}
+
+	/**
+	 * GZip output stream which allows the compression level to be specified, and which
+	 * uses a larger buffer than the JDK default of 512 bytes so that the compressed
+	 * output is handed to the servlet container in fewer, larger writes
+	 */
+	private static class LevelGzipOutputStream extends GZIPOutputStream {
+		private static final int BUFFER_SIZE = 8192;
+
+		LevelGzipOutputStream(OutputStream theOutputStream, int theLevel) throws IOException {
+			super(theOutputStream, BUFFER_SIZE);
+			def.setLevel(theLevel);
+		}
+	}
 }
@@ -5,8 +5,10 @@ import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.containsStringIgnoringCase;
 import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -33,6 +35,7 @@ import ca.uhn.fhir.model.primitive.IdDt;
 import ca.uhn.fhir.rest.annotation.*;
 import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.SummaryEnum;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.util.PortUtil;
 import ca.uhn.fhir.util.TestUtil;
 
@@ -40,6 +43,7 @@ public class SummaryParamTest {
 
 	private static CloseableHttpClient ourClient;
 	private static FhirContext ourCtx = FhirContext.forDstu2();
+	private static boolean ourLastGetResourcesCalled;
 	private static SummaryEnum ourLastSummary;
 	private static List<SummaryEnum> ourLastSummaryList;
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(SummaryParamTest.class);
@@ -51,6 +55,7 @@ public class SummaryParamTest {
 	public void before() {
 		ourLastSummary = null;
 		ourLastSummaryList = null;
+		ourLastGetResourcesCalled = false;
 	}
 	@Test
 	public void testReadSummaryData() throws Exception {
@@ -141,6 +146,20 @@ public class SummaryParamTest {
 		assertEquals(SummaryEnum.COUNT, ourLastSummary);
 	}
 
+	@Test
+	public void testSearchSummaryCountDoesntLoadResources() throws Exception {
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/MedicationOrder?_query=bundleProvider&_summary=" + SummaryEnum.COUNT.getCode());
+		HttpResponse status = ourClient.execute(httpGet);
+		String responseContent = IOUtils.toString(status.getEntity().getContent());
+		IOUtils.closeQuietly(status.getEntity().getContent());
+		ourLog.info(responseContent);
+
+		assertEquals(200, status.getStatusLine().getStatusCode());
+		assertThat(responseContent, (containsString("<total value=\"3\"/>")));
+		assertThat(responseContent, not(containsString("entry")));
+		assertFalse(ourLastGetResourcesCalled);
+	}
+
 	@Test
 	public void testSearchSummaryData() throws Exception {
 		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/Patient?_summary=" + SummaryEnum.DATA.getCode());
@@ -300,6 +319,21 @@ public class SummaryParamTest {
 			return Arrays.asList(read(new IdDt("999")));
 		}
 
+		@Search(queryName = "bundleProvider")
+		public IBundleProvider searchBundleProvider() {
+			final List<IBaseResource> resources = new ArrayList<IBaseResource>();
+			for (int i = 0; i < 3; i++) {
+				resources.add(read(new IdDt(Integer.toString(i))));
+			}
+			return new SimpleBundleProvider(resources) {
+				@Override
+				public List<IBaseResource> getResources(int theFromIndex, int theToIndex) {
+					ourLastGetResourcesCalled = true;
+					return super.getResources(theFromIndex, theToIndex);
+				}
+			};
+		}
+
 	}
 	
 	public static class DummyPatientResourceProvider implements IResourceProvider {
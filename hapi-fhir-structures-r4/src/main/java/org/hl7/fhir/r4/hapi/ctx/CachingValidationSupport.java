@@ -0,0 +1,336 @@
+package org.hl7.fhir.r4.hapi.ctx;
+
+import ca.uhn.fhir.context.FhirContext;
+import org.apache.commons.lang3.Validate;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.CodeSystem;
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.hl7.fhir.r4.model.UriType;
+import org.hl7.fhir.r4.model.ValueSet.ConceptReferenceComponent;
+import org.hl7.fhir.r4.model.ValueSet.ConceptSetComponent;
+import org.hl7.fhir.r4.model.ValueSet.ConceptSetFilterComponent;
+import org.hl7.fhir.r4.model.ValueSet.ValueSetExpansionComponent;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validation support module which caches the results of the validation support module it wraps. This
+ * is useful in front of modules which are expensive to call, such as a module which looks codes up in a
+ * terminology server or database, since the validator tends to ask the same questions (e.g. whether a given
+ * code is valid in a given code system) many times when validating a batch of resources.
+ * <p>
+ * Code validations, value set expansions and resource fetches are each cached in a separate cache with the
+ * same maximum size and time to live. Negative results (e.g. a resource which could not be found) are
+ * cached too. This module can be used on its own or as a module within a {@link ValidationSupportChain}.
+ * </p>
+ * <p>
+ * Note that cached results are shared between callers, so they must not be modified.
+ * </p>
+ * <p>
+ * Thread safety: This class is thread safe as long as the wrapped module is.
+ * </p>
+ */
+public class CachingValidationSupport implements IValidationSupport {
+
+	/**
+	 * Default maximum number of entries in each cache (10000)
+	 */
+	public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+	/**
+	 * Default time to live for cache entries (10 minutes)
+	 */
+	public static final long DEFAULT_TIME_TO_LIVE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+	private static final Object NULL_VALUE = new Object();
+
+	private final BoundedCache myCodeValidationCache;
+	private final BoundedCache myExpansionCache;
+	private final BoundedCache myFetchCache;
+	private final IValidationSupport myWrap;
+
+	/**
+	 * Constructor which uses the default maximum size ({@link #DEFAULT_MAXIMUM_SIZE}) and time to live
+	 * ({@link #DEFAULT_TIME_TO_LIVE_MILLIS})
+	 *
+	 * @param theWrap The validation support module to cache the results of
+	 */
+	public CachingValidationSupport(IValidationSupport theWrap) {
+		this(theWrap, DEFAULT_MAXIMUM_SIZE, DEFAULT_TIME_TO_LIVE_MILLIS);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param theWrap               The validation support module to cache the results of
+	 * @param theMaximumSize        The maximum number of entries in each cache. Once this is reached, the least recently used entry is evicted.
+	 * @param theTimeToLiveMillis   The number of milliseconds that an entry stays in the cache after it is added
+	 */
+	public CachingValidationSupport(IValidationSupport theWrap, int theMaximumSize, long theTimeToLiveMillis) {
+		Validate.notNull(theWrap, "theWrap must not be null");
+		Validate.isTrue(theMaximumSize > 0, "theMaximumSize must be greater than 0");
+		Validate.isTrue(theTimeToLiveMillis > 0, "theTimeToLiveMillis must be greater than 0");
+
+		myWrap = theWrap;
+		myCodeValidationCache = new BoundedCache(theMaximumSize, theTimeToLiveMillis);
+		myExpansionCache = new BoundedCache(theMaximumSize, theTimeToLiveMillis);
+		myFetchCache = new BoundedCache(theMaximumSize, theTimeToLiveMillis);
+	}
+
+	@Override
+	public ValueSetExpansionComponent expandValueSet(FhirContext theContext, ConceptSetComponent theInclude) {
+		List<Object> key = expansionKey(theInclude);
+		Object retVal = myExpansionCache.get(key);
+		if (retVal == null) {
+			retVal = myExpansionCache.put(key, myWrap.expandValueSet(theContext, theInclude));
+		}
+		return (ValueSetExpansionComponent) unwrapNull(retVal);
+	}
+
+	@Override
+	public List<IBaseResource> fetchAllConformanceResources(FhirContext theContext) {
+		return myWrap.fetchAllConformanceResources(theContext);
+	}
+
+	@Override
+	public List<StructureDefinition> fetchAllStructureDefinitions(FhirContext theContext) {
+		return myWrap.fetchAllStructureDefinitions(theContext);
+	}
+
+	@Override
+	public CodeSystem fetchCodeSystem(FhirContext theContext, String theSystem) {
+		List<Object> key = Arrays.<Object>asList("fetchCodeSystem", theSystem);
+		Object retVal = myFetchCache.get(key);
+		if (retVal == null) {
+			retVal = myFetchCache.put(key, myWrap.fetchCodeSystem(theContext, theSystem));
+		}
+		return (CodeSystem) unwrapNull(retVal);
+	}
+
+	@Override
+	public <T extends IBaseResource> T fetchResource(FhirContext theContext, Class<T> theClass, String theUri) {
+		List<Object> key = Arrays.<Object>asList("fetchResource", theClass, theUri);
+		Object retVal = myFetchCache.get(key);
+		if (retVal == null) {
+			retVal = myFetchCache.put(key, myWrap.fetchResource(theContext, theClass, theUri));
+		}
+		return theClass.cast(unwrapNull(retVal));
+	}
+
+	@Override
+	public StructureDefinition fetchStructureDefinition(FhirContext theCtx, String theUrl) {
+		List<Object> key = Arrays.<Object>asList("fetchStructureDefinition", theUrl);
+		Object retVal = myFetchCache.get(key);
+		if (retVal == null) {
+			retVal = myFetchCache.put(key, myWrap.fetchStructureDefinition(theCtx, theUrl));
+		}
+		return (StructureDefinition) unwrapNull(retVal);
+	}
+
+	/**
+	 * Removes all entries from the caches. This should be called if the content of the
+	 * wrapped module changes (e.g. because a new code system has been stored).
+	 */
+	public void flushCaches() {
+		myCodeValidationCache.clear();
+		myExpansionCache.clear();
+		myFetchCache.clear();
+	}
+
+	/**
+	 * Returns statistics for the cache of {@link #validateCode(FhirContext, String, String, String) code validations}
+	 */
+	public CacheStatistics getCodeValidationStatistics() {
+		return myCodeValidationCache.getStatistics();
+	}
+
+	/**
+	 * Returns statistics for the cache of {@link #expandValueSet(FhirContext, ConceptSetComponent) value set expansions}
+	 */
+	public CacheStatistics getExpansionStatistics() {
+		return myExpansionCache.getStatistics();
+	}
+
+	/**
+	 * Returns statistics for the cache of fetched resources, code systems and structure definitions, as well
+	 * as {@link #isCodeSystemSupported(FhirContext, String) supported code systems}
+	 */
+	public CacheStatistics getFetchStatistics() {
+		return myFetchCache.getStatistics();
+	}
+
+	@Override
+	public boolean isCodeSystemSupported(FhirContext theContext, String theSystem) {
+		List<Object> key = Arrays.<Object>asList("isCodeSystemSupported", theSystem);
+		Object retVal = myFetchCache.get(key);
+		if (retVal == null) {
+			retVal = myFetchCache.put(key, myWrap.isCodeSystemSupported(theContext, theSystem));
+		}
+		return (Boolean) retVal;
+	}
+
+	@Override
+	public CodeValidationResult validateCode(FhirContext theContext, String theCodeSystem, String theCode, String theDisplay) {
+		List<Object> key = Arrays.<Object>asList(theCodeSystem, theCode, theDisplay);
+		Object retVal = myCodeValidationCache.get(key);
+		if (retVal == null) {
+			retVal = myCodeValidationCache.put(key, myWrap.validateCode(theContext, theCodeSystem, theCode, theDisplay));
+		}
+		return (CodeValidationResult) unwrapNull(retVal);
+	}
+
+	private static List<Object> expansionKey(ConceptSetComponent theInclude) {
+		List<Object> retVal = new ArrayList<Object>();
+		retVal.add(theInclude.getSystem());
+		retVal.add(theInclude.getVersion());
+		for (ConceptReferenceComponent next : theInclude.getConcept()) {
+			retVal.add(Arrays.asList("concept", next.getCode(), next.getDisplay()));
+		}
+		for (ConceptSetFilterComponent next : theInclude.getFilter()) {
+			retVal.add(Arrays.<Object>asList("filter", next.getProperty(), next.getOp(), next.getValue()));
+		}
+		for (UriType next : theInclude.getValueSet()) {
+			retVal.add(Arrays.asList("valueSet", next.getValue()));
+		}
+		return retVal;
+	}
+
+	private static Object unwrapNull(Object theValue) {
+		return theValue == NULL_VALUE ? null : theValue;
+	}
+
+	/**
+	 * A snapshot of the statistics for one of the caches
+	 */
+	public static class CacheStatistics {
+
+		private final long myEvictionCount;
+		private final long myHitCount;
+		private final long myMissCount;
+		private final int mySize;
+
+		CacheStatistics(long theHitCount, long theMissCount, long theEvictionCount, int theSize) {
+			myHitCount = theHitCount;
+			myMissCount = theMissCount;
+			myEvictionCount = theEvictionCount;
+			mySize = theSize;
+		}
+
+		/**
+		 * Returns the number of entries which have been evicted because the cache was full or they expired
+		 */
+		public long getEvictionCount() {
+			return myEvictionCount;
+		}
+
+		public long getHitCount() {
+			return myHitCount;
+		}
+
+		/**
+		 * Returns the proportion of lookups which were answered from the cache, or 0 if there have been no lookups
+		 */
+		public double getHitRate() {
+			long total = myHitCount + myMissCount;
+			return total == 0 ? 0 : (double) myHitCount / total;
+		}
+
+		public long getMissCount() {
+			return myMissCount;
+		}
+
+		/**
+		 * Returns the number of entries in the cache (which may include entries that have expired but not yet been evicted)
+		 */
+		public int getSize() {
+			return mySize;
+		}
+
+		@Override
+		public String toString() {
+			return "CacheStatistics[hits=" + myHitCount + ", misses=" + myMissCount + ", evictions=" + myEvictionCount + ", size=" + mySize + "]";
+		}
+	}
+
+	/**
+	 * Least recently used cache with a time to live for each entry. <code>null</code> values are
+	 * stored as {@link #NULL_VALUE} so that negative results are cached too.
+	 */
+	private static class BoundedCache {
+
+		private final LinkedHashMap<Object, CacheEntry> myEntries;
+		private final int myMaximumSize;
+		private final long myTimeToLiveMillis;
+		private long myEvictionCount;
+		private long myHitCount;
+		private long myMissCount;
+
+		BoundedCache(int theMaximumSize, long theTimeToLiveMillis) {
+			myMaximumSize = theMaximumSize;
+			myTimeToLiveMillis = theTimeToLiveMillis;
+			myEntries = new LinkedHashMap<Object, CacheEntry>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Object, CacheEntry> theEldest) {
+					if (size() > myMaximumSize) {
+						myEvictionCount++;
+						return true;
+					}
+					return false;
+				}
+			};
+		}
+
+		synchronized void clear() {
+			myEntries.clear();
+		}
+
+		/**
+		 * Returns the cached value (which is {@link #NULL_VALUE} for a cached <code>null</code>), or
+		 * <code>null</code> if there is no live entry for the key
+		 */
+		synchronized Object get(Object theKey) {
+			CacheEntry entry = myEntries.get(theKey);
+			if (entry != null && entry.myExpiry < System.currentTimeMillis()) {
+				myEntries.remove(theKey);
+				myEvictionCount++;
+				entry = null;
+			}
+			if (entry == null) {
+				myMissCount++;
+				return null;
+			}
+			myHitCount++;
+			return entry.myValue;
+		}
+
+		synchronized CacheStatistics getStatistics() {
+			return new CacheStatistics(myHitCount, myMissCount, myEvictionCount, myEntries.size());
+		}
+
+		/**
+		 * Stores a value and returns what {@link #get(Object)} will return for it
+		 */
+		synchronized Object put(Object theKey, Object theValue) {
+			Object value = theValue != null ? theValue : NULL_VALUE;
+			myEntries.put(theKey, new CacheEntry(value, System.currentTimeMillis() + myTimeToLiveMillis));
+			return value;
+		}
+
+	}
+
+	private static class CacheEntry {
+
+		private final long myExpiry;
+		private final Object myValue;
+
+		CacheEntry(Object theValue, long theExpiry) {
+			myValue = theValue;
+			myExpiry = theExpiry;
+		}
+
+	}
+
+}
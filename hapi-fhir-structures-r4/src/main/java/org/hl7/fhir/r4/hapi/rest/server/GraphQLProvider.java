@@ -53,6 +53,7 @@ public class GraphQLProvider {
 
     GraphQLEngine engine = new GraphQLEngine(myWorkerContext);
     engine.setServices(myStorageServices);
+    engine.setAppInfo(theRequestDetails);
     try {
       engine.setGraphQL(Parser.parse(theQuery));
     } catch (Exception theE) {
@@ -16,8 +16,10 @@ import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class GraphQLEngine {
   
@@ -159,8 +161,14 @@ public class GraphQLEngine {
         this.targetContext = targetContext;
         this.target = target;
       }
-      
-      
+
+      public Resource getTarget() {
+        return target;
+      }
+
+      public Resource getTargetContext() {
+        return targetContext;
+      }
     }
     // given a reference inside a context, return what it references (including resolving internal references (e.g. start with #)
     public ReferenceResolution lookup(Object appInfo, Resource context, Reference reference) throws FHIRException;
@@ -175,6 +183,17 @@ public class GraphQLEngine {
     // just perform a standard search, and return the bundle as you return to the client  
     public Bundle search(Object appInfo, String type, List<Argument> searchParams) throws FHIRException;
   }
+
+  /**
+   * Storage services which are able to resolve a number of references in a single operation. If the
+   * services provided to the engine implement this interface, the engine collects the references which
+   * will be followed for each resource in a list and resolves them all at once before processing the list
+   */
+  public interface IGraphQLBatchingStorageServices extends IGraphQLStorageServices {
+    // given a set of references (which are never internal references), return the resources they reference, 
+    // keyed by the reference value. References which can't be resolved are omitted from the result
+    public Map<String, Resource> lookup(Object appInfo, Set<String> references) throws FHIRException;
+  }
   
   private IWorkerContext context;
   
@@ -211,6 +230,12 @@ public class GraphQLEngine {
   // internal stuff 
   private Map<String, Argument> workingVariables = new HashMap<String, Argument>();
 
+  /**
+   * references which have already been resolved during this execution, keyed by reference value. A
+   * null value means the reference is known not to resolve
+   */
+  private Map<String, ReferenceResolution> resolvedReferences = new HashMap<String, ReferenceResolution>();
+
   private FHIRPathEngine fpe;
 
   private ExpressionNode magicExpression;
@@ -222,6 +247,7 @@ public class GraphQLEngine {
     magicExpression = new ExpressionNode(0);
 
     output = new ObjectValue();
+    resolvedReferences.clear();
 
     Operation op = null;
     // todo: initial conditions
@@ -540,7 +566,7 @@ public class GraphQLEngine {
       throw new EGraphQLException("Resource Referencing services not provided");
 
     Reference ref = (Reference) source;
-    ReferenceResolution res = services.lookup(appInfo, context, ref);
+    ReferenceResolution res = resolveReference(context, ref);
     if (res != null) {
       if (targetTypeOk(field.getArguments(), res.target)) {
         Argument arg = target.addField(field.getAlias() + suffix, listStatus(field, inheritedList));
@@ -553,6 +579,58 @@ public class GraphQLEngine {
       throw new EGraphQLException("Unable to resolve reference to "+ref.getReference());
   }
 
+  private ReferenceResolution resolveReference(Resource context, Reference ref) throws FHIRException {
+    String key = ref.getReference();
+    if (Utilities.noString(key) || key.startsWith("#"))
+      return services.lookup(appInfo, context, ref);
+    if (resolvedReferences.containsKey(key))
+      return resolvedReferences.get(key);
+    ReferenceResolution res = services.lookup(appInfo, context, ref);
+    resolvedReferences.put(key, res);
+    return res;
+  }
+
+  /**
+   * If the storage services support it, resolve all of the references which will be followed 
+   * for a list of resources in a single operation, instead of one at a time
+   */
+  private void prefetchReferences(List<Resource> resources, List<Selection> selection) throws FHIRException {
+    if (!(services instanceof IGraphQLBatchingStorageServices))
+      return;
+
+    Set<String> references = new HashSet<String>();
+    for (Selection sel : selection) {
+      if (sel.getField() == null || !selectsField(sel.getField().getSelectionSet(), "resource"))
+        continue;
+      for (Resource r : resources) {
+        Property prop = r.getNamedProperty(sel.getField().getName());
+        if (prop == null)
+          continue;
+        for (Base v : prop.getValues()) {
+          if (v instanceof Reference) {
+            String key = ((Reference) v).getReference();
+            if (!Utilities.noString(key) && !key.startsWith("#") && !resolvedReferences.containsKey(key))
+              references.add(key);
+          }
+        }
+      }
+    }
+    if (references.isEmpty())
+      return;
+
+    // anything the services couldn't resolve is left to the individual lookup when the reference is followed
+    Map<String, Resource> resolved = ((IGraphQLBatchingStorageServices) services).lookup(appInfo, references);
+    for (Map.Entry<String, Resource> entry : resolved.entrySet())
+      resolvedReferences.put(entry.getKey(), new ReferenceResolution(entry.getValue(), entry.getValue()));
+  }
+
+  private boolean selectsField(List<Selection> selection, String name) {
+    for (Selection sel : selection)
+      if (sel.getField() != null && sel.getField().getName().equals(name))
+        return true;
+    return false;
+  }
+
   private ArgumentListStatus listStatus(Field field, boolean isList) {
     if (field.hasDirective("singleton"))
       return ArgumentListStatus.SINGLETON;
@@ -587,6 +665,7 @@ public class GraphQLEngine {
 
     List<Resource> vl = filterResources(field.argument("fhirpath"), list);
     if (!vl.isEmpty()) {
+      prefetchReferences(vl, field.getSelectionSet());
       arg = target.addField(field.getAlias()+suffix, listStatus(field, true));
       for (Resource v : vl) {
         obj = new ObjectValue();
@@ -667,6 +746,7 @@ public class GraphQLEngine {
 
     List<Resource> vl = filterResources(field.argument("fhirpath"), list);
     if (!vl.isEmpty()) {
+      prefetchReferences(vl, field.getSelectionSet());
       arg = target.addField(field.getAlias()+suffix, listStatus(field, true));
       for (Resource v : vl) {
         obj = new ObjectValue();
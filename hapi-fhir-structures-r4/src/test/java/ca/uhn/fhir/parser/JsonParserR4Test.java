@@ -2,6 +2,7 @@ package ca.uhn.fhir.parser;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.util.TestUtil;
+import com.google.common.base.Charsets;
 import com.google.common.collect.Sets;
 import org.apache.commons.io.IOUtils;
 import org.hl7.fhir.r4.model.Bundle;
@@ -13,6 +14,7 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.HashSet;
 import java.util.Set;
@@ -115,6 +117,22 @@ public class JsonParserR4Test {
 		assertEquals("GIVEN", ((Patient) b.getEntry().get(0).getResource()).getNameFirstRep().getGivenAsSingleString());
 	}
 
+	@Test
+	public void testEncodeToOutputStream() throws IOException {
+		IParser parser = ourCtx.newJsonParser();
+
+		Bundle b = createBundleWithPatient();
+		((Patient) b.getEntry().get(0).getResource()).getNameFirstRep().setFamily("\u00C0\u00E9\u4E2D");
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		parser.encodeResourceToOutputStream(b, bos);
+		String encoded = new String(bos.toByteArray(), Charsets.UTF_8);
+		ourLog.info(encoded);
+
+		assertEquals(parser.encodeResourceToString(b), encoded);
+		assertThat(encoded, containsString("\u00C0\u00E9\u4E2D"));
+	}
+
 	private Bundle createBundleWithPatient() {
 		Bundle b = new Bundle();
 		b.setId("BUNDLEID");
@@ -16,6 +16,9 @@ import java.io.*;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.ReaderInputStream;
@@ -1067,6 +1070,51 @@ public class GenericClientR4Test {
     assertEquals(encoded, requestString);
   }
 
+  @Test
+  public void testReadAsync() throws Exception {
+    Patient patient = new Patient();
+    patient.addName().setFamily("FAM");
+    final String respString = ourCtx.newJsonParser().encodeResourceToString(patient);
+
+    ArgumentCaptor<HttpUriRequest> capt = ArgumentCaptor.forClass(HttpUriRequest.class);
+    when(myHttpClient.execute(capt.capture())).thenReturn(myHttpResponse);
+    when(myHttpResponse.getStatusLine()).thenReturn(new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), 200, "OK"));
+    when(myHttpResponse.getEntity().getContentType()).thenReturn(new BasicHeader("content-type", Constants.CT_FHIR_JSON + "; charset=UTF-8"));
+    when(myHttpResponse.getEntity().getContent()).thenAnswer(new Answer<ReaderInputStream>() {
+      @Override
+      public ReaderInputStream answer(InvocationOnMock theInvocation) throws Throwable {
+        return new ReaderInputStream(new StringReader(respString), Charset.forName("UTF-8"));
+      }
+    });
+
+    IGenericClient client = ourCtx.newRestfulGenericClient("http://example.com/fhir");
+    Future<Patient> future = client.read().resource(Patient.class).withId("123").executeAsync();
+    Patient resp = future.get(10, TimeUnit.SECONDS);
+
+    assertEquals("FAM", resp.getNameFirstRep().getFamily());
+    assertEquals("http://example.com/fhir/Patient/123", capt.getAllValues().get(0).getURI().toASCIIString());
+  }
+
+  @Test
+  public void testReadAsyncWithUnparseableResponse() throws Exception {
+    String msg = "{\"resourceTypeeeee\":\"Patient\"}";
+
+    ArgumentCaptor<HttpUriRequest> capt = ArgumentCaptor.forClass(HttpUriRequest.class);
+    when(myHttpClient.execute(capt.capture())).thenReturn(myHttpResponse);
+    when(myHttpResponse.getStatusLine()).thenReturn(new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), 200, "OK"));
+    when(myHttpResponse.getEntity().getContentType()).thenReturn(new BasicHeader("content-type", Constants.CT_FHIR_JSON + "; charset=UTF-8"));
+    when(myHttpResponse.getEntity().getContent()).thenReturn(new ReaderInputStream(new StringReader(msg), Charset.forName("UTF-8")));
+
+    IGenericClient client = ourCtx.newRestfulGenericClient("http://example.com/fhir");
+    Future<IBaseResource> future = client.read().resource("Patient").withId("123").executeAsync();
+    try {
+      future.get(10, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertEquals(FhirClientConnectionException.class, e.getCause().getClass());
+    }
+  }
+
   @Test
   public void testReadWithUnparseableResponse() throws Exception {
     String msg = "{\"resourceTypeeeee\":\"Patient\"}";
@@ -0,0 +1,149 @@
+package ca.uhn.fhir.rest.client;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.annotation.Search;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.api.ServerValidationModeEnum;
+import ca.uhn.fhir.rest.client.impl.PrefetchingSearchResultIterator;
+import ca.uhn.fhir.rest.server.FifoMemoryPagingProvider;
+import ca.uhn.fhir.rest.server.IResourceProvider;
+import ca.uhn.fhir.rest.server.RestfulServer;
+import ca.uhn.fhir.util.PortUtil;
+import ca.uhn.fhir.util.TestUtil;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class PrefetchingSearchResultIteratorR4Test {
+
+	private static FhirContext ourCtx = FhirContext.forR4();
+	private static int ourPort;
+	private static Server ourServer;
+	private static boolean ourReturnSize;
+	private IGenericClient myClient;
+
+	@Before
+	public void before() {
+		ourCtx.getRestfulClientFactory().setServerValidationMode(ServerValidationModeEnum.NEVER);
+		myClient = ourCtx.newRestfulGenericClient("http://localhost:" + ourPort);
+		ourReturnSize = true;
+	}
+
+	@Test
+	public void testIterateWithKnownTotal() {
+		Bundle firstPage = myClient.search().forResource(Patient.class).returnBundle(Bundle.class).execute();
+		assertEquals(25, firstPage.getTotal());
+
+		PrefetchingSearchResultIterator iter = new PrefetchingSearchResultIterator(myClient, firstPage, 3);
+		List<String> ids = toIdList(iter);
+
+		assertEquals(25, ids.size());
+		for (int i = 0; i < 25; i++) {
+			assertEquals("Patient/" + i, ids.get(i));
+		}
+		assertFalse(iter.hasNext());
+	}
+
+	@Test
+	public void testIterateWithUnknownTotal() {
+		ourReturnSize = false;
+		Bundle firstPage = myClient.search().forResource(Patient.class).returnBundle(Bundle.class).execute();
+
+		PrefetchingSearchResultIterator iter = new PrefetchingSearchResultIterator(myClient, firstPage, 3);
+		List<String> ids = toIdList(iter);
+
+		assertEquals(25, ids.size());
+		for (int i = 0; i < 25; i++) {
+			assertEquals("Patient/" + i, ids.get(i));
+		}
+	}
+
+	private List<String> toIdList(PrefetchingSearchResultIterator theIter) {
+		List<String> ids = new ArrayList<>();
+		while (theIter.hasNext()) {
+			ids.add(theIter.next().getIdElement().toUnqualifiedVersionless().getValue());
+		}
+		return ids;
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() throws Exception {
+		ourServer.stop();
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+	@BeforeClass
+	public static void beforeClass() throws Exception {
+		ourPort = PortUtil.findFreePort();
+		ourServer = new Server(ourPort);
+
+		ServletHandler proxyHandler = new ServletHandler();
+		RestfulServer servlet = new RestfulServer(ourCtx);
+		servlet.setPagingProvider(new FifoMemoryPagingProvider(10));
+		servlet.setResourceProviders(new DummyPatientResourceProvider());
+		ServletHolder servletHolder = new ServletHolder(servlet);
+		proxyHandler.addServletWithMapping(servletHolder, "/*");
+		ourServer.setHandler(proxyHandler);
+		ourServer.start();
+	}
+
+	public static class DummyPatientResourceProvider implements IResourceProvider {
+
+		@Override
+		public Class<? extends IBaseResource> getResourceType() {
+			return Patient.class;
+		}
+
+		@Search()
+		public IBundleProvider searchAll() {
+			return new IBundleProvider() {
+				@Override
+				public org.hl7.fhir.instance.model.api.IPrimitiveType<java.util.Date> getPublished() {
+					return null;
+				}
+
+				@Override
+				public List<IBaseResource> getResources(int theFromIndex, int theToIndex) {
+					List<IBaseResource> retVal = new ArrayList<>();
+					for (int i = theFromIndex; i < Math.min(theToIndex, 25); i++) {
+						Patient p = new Patient();
+						p.setId(Integer.toString(i));
+						retVal.add(p);
+					}
+					return retVal;
+				}
+
+				@Override
+				public String getUuid() {
+					return null;
+				}
+
+				@Override
+				public Integer preferredPageSize() {
+					return null;
+				}
+
+				@Override
+				public Integer size() {
+					return ourReturnSize ? 25 : null;
+				}
+			};
+		}
+
+	}
+
+}
@@ -0,0 +1,176 @@
+package ca.uhn.fhir.rest.server;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.annotation.IdParam;
+import ca.uhn.fhir.rest.annotation.Read;
+import ca.uhn.fhir.util.PortUtil;
+import ca.uhn.fhir.util.TestUtil;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class AsyncRequestProcessingR4Test {
+
+	private static final long SLOW_READ_MILLIS = 1500;
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(AsyncRequestProcessingR4Test.class);
+	private static CloseableHttpClient ourClient;
+	private static FhirContext ourCtx = FhirContext.forR4();
+	private static volatile String ourLastThreadName;
+	private static int ourPort;
+	private static Server ourServer;
+	private static int ourShortTimeoutPort;
+	private static Server ourShortTimeoutServer;
+
+	@Before
+	public void before() {
+		ourLastThreadName = null;
+	}
+
+	@Test
+	public void testReadIsProcessedOnAsyncPoolThread() throws Exception {
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/Patient/123?_format=json");
+		CloseableHttpResponse status = ourClient.execute(httpGet);
+		try {
+			String responseContent = IOUtils.toString(status.getEntity().getContent(), StandardCharsets.UTF_8);
+			ourLog.info(responseContent);
+			assertEquals(200, status.getStatusLine().getStatusCode());
+
+			Patient patient = ourCtx.newJsonParser().parseResource(Patient.class, responseContent);
+			assertEquals("Patient/123", patient.getIdElement().toUnqualifiedVersionless().getValue());
+			assertThat(ourLastThreadName, containsString("hapi-fhir-request-"));
+		} finally {
+			IOUtils.closeQuietly(status.getEntity().getContent());
+		}
+	}
+
+	@Test
+	public void testTimedOutRequestDoesNotWriteToResponseAfterTimeout() throws Exception {
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourShortTimeoutPort + "/Patient/slow?_format=json");
+		CloseableHttpResponse status = ourClient.execute(httpGet);
+		try {
+			String responseContent = IOUtils.toString(status.getEntity().getContent(), StandardCharsets.UTF_8);
+			ourLog.info(responseContent);
+			assertEquals(503, status.getStatusLine().getStatusCode());
+			assertThat(responseContent, containsString("timed out"));
+			assertThat(responseContent, not(containsString("Patient")));
+		} finally {
+			IOUtils.closeQuietly(status.getEntity().getContent());
+		}
+
+		// Let the worker finish writing its (discarded) response, then make sure the next request is unaffected
+		Thread.sleep(SLOW_READ_MILLIS);
+		httpGet = new HttpGet("http://localhost:" + ourShortTimeoutPort + "/Patient/123?_format=json");
+		status = ourClient.execute(httpGet);
+		try {
+			String responseContent = IOUtils.toString(status.getEntity().getContent(), StandardCharsets.UTF_8);
+			assertEquals(200, status.getStatusLine().getStatusCode());
+			Patient patient = ourCtx.newJsonParser().parseResource(Patient.class, responseContent);
+			assertEquals("Patient/123", patient.getIdElement().toUnqualifiedVersionless().getValue());
+		} finally {
+			IOUtils.closeQuietly(status.getEntity().getContent());
+		}
+	}
+
+	@Test
+	public void testUnknownResourceReturnsErrorAsynchronously() throws Exception {
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/Foo/123");
+		CloseableHttpResponse status = ourClient.execute(httpGet);
+		try {
+			String responseContent = IOUtils.toString(status.getEntity().getContent(), StandardCharsets.UTF_8);
+			ourLog.info(responseContent);
+			assertEquals(404, status.getStatusLine().getStatusCode());
+			assertThat(responseContent, not(containsString("timed out")));
+		} finally {
+			IOUtils.closeQuietly(status.getEntity().getContent());
+		}
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() throws Exception {
+		ourServer.stop();
+		ourShortTimeoutServer.stop();
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+	@BeforeClass
+	public static void beforeClass() throws Exception {
+		ourPort = PortUtil.findFreePort();
+		ourServer = new Server(ourPort);
+
+		ServletHandler proxyHandler = new ServletHandler();
+		RestfulServer servlet = new RestfulServer(ourCtx);
+		servlet.setAsyncRequestThreadCount(2);
+		servlet.setAsyncRequestQueueCapacity(10);
+		servlet.setAsyncRequestTimeoutMillis(10000);
+		servlet.setResourceProviders(new DummyPatientResourceProvider());
+
+		ServletHolder servletHolder = new ServletHolder(servlet);
+		servletHolder.setAsyncSupported(true);
+		proxyHandler.addServletWithMapping(servletHolder, "/*");
+
+		ourServer.setHandler(proxyHandler);
+		ourServer.start();
+
+		ourShortTimeoutPort = PortUtil.findFreePort();
+		ourShortTimeoutServer = new Server(ourShortTimeoutPort);
+		ServletHandler shortTimeoutHandler = new ServletHandler();
+		RestfulServer shortTimeoutServlet = new RestfulServer(ourCtx);
+		shortTimeoutServlet.setAsyncRequestThreadCount(2);
+		shortTimeoutServlet.setAsyncRequestQueueCapacity(10);
+		shortTimeoutServlet.setAsyncRequestTimeoutMillis(500);
+		shortTimeoutServlet.setResourceProviders(new DummyPatientResourceProvider());
+		ServletHolder shortTimeoutHolder = new ServletHolder(shortTimeoutServlet);
+		shortTimeoutHolder.setAsyncSupported(true);
+		shortTimeoutHandler.addServletWithMapping(shortTimeoutHolder, "/*");
+		ourShortTimeoutServer.setHandler(shortTimeoutHandler);
+		ourShortTimeoutServer.start();
+
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(5000, TimeUnit.MILLISECONDS);
+		HttpClientBuilder builder = HttpClientBuilder.create();
+		builder.setConnectionManager(connectionManager);
+		ourClient = builder.build();
+	}
+
+	public static class DummyPatientResourceProvider implements IResourceProvider {
+
+		@Override
+		public Class<? extends IBaseResource> getResourceType() {
+			return Patient.class;
+		}
+
+		@Read
+		public Patient read(@IdParam IdType theId) throws InterruptedException {
+			ourLastThreadName = Thread.currentThread().getName();
+			if ("slow".equals(theId.getIdPart())) {
+				Thread.sleep(SLOW_READ_MILLIS);
+			}
+			Patient retVal = new Patient();
+			retVal.setId(theId);
+			retVal.setActive(true);
+			return retVal;
+		}
+
+	}
+
+}
@@ -0,0 +1,203 @@
+package ca.uhn.fhir.rest.server;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.annotation.IdParam;
+import ca.uhn.fhir.rest.annotation.Read;
+import ca.uhn.fhir.rest.annotation.Search;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.util.PortUtil;
+import ca.uhn.fhir.util.TestUtil;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Resources are encoded straight into the servlet output stream, so these tests run behind a
+ * filter which doesn't allow the servlet to use the response writer
+ */
+public class ServerResponseOutputStreamR4Test {
+
+	private static final String FAMILY = "Gr\u00fcn \u65e5\u672c";
+	private static final String FHIR_ID = "123";
+	private static final int SEARCH_RESULT_COUNT = 500;
+	private static CloseableHttpClient ourClient;
+	private static FhirContext ourCtx = FhirContext.forR4();
+	private static int ourPort;
+	private static Server ourServer;
+
+	@Test
+	public void testReadJson() throws Exception {
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/Patient/123?_format=json");
+		CloseableHttpResponse status = ourClient.execute(httpGet);
+		try {
+			String responseContent = IOUtils.toString(status.getEntity().getContent(), StandardCharsets.UTF_8);
+			assertEquals(200, status.getStatusLine().getStatusCode());
+			assertThat(status.getFirstHeader(Constants.HEADER_CONTENT_TYPE).getValue().toLowerCase(), containsString("charset=utf-8"));
+
+			Patient patient = ourCtx.newJsonParser().parseResource(Patient.class, responseContent);
+			assertEquals(FAMILY, patient.getNameFirstRep().getFamily());
+		} finally {
+			IOUtils.closeQuietly(status.getEntity().getContent());
+		}
+	}
+
+	@Test
+	public void testReadXml() throws Exception {
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/Patient/123?_format=xml");
+		CloseableHttpResponse status = ourClient.execute(httpGet);
+		try {
+			String responseContent = IOUtils.toString(status.getEntity().getContent(), StandardCharsets.UTF_8);
+			assertEquals(200, status.getStatusLine().getStatusCode());
+
+			Patient patient = ourCtx.newXmlParser().parseResource(Patient.class, responseContent);
+			assertEquals(FHIR_ID, patient.getIdElement().getIdPart());
+			assertEquals(FAMILY, patient.getNameFirstRep().getFamily());
+		} finally {
+			IOUtils.closeQuietly(status.getEntity().getContent());
+		}
+	}
+
+	@Test
+	public void testSearchGzip() throws Exception {
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/Patient?_format=json&_count=" + SEARCH_RESULT_COUNT);
+		httpGet.addHeader(Constants.HEADER_ACCEPT_ENCODING, Constants.ENCODING_GZIP);
+		CloseableHttpResponse status = ourClient.execute(httpGet);
+		try {
+			assertEquals(200, status.getStatusLine().getStatusCode());
+			assertEquals(Constants.ENCODING_GZIP, status.getFirstHeader(Constants.HEADER_CONTENT_ENCODING).getValue());
+			String responseContent = IOUtils.toString(new GZIPInputStream(status.getEntity().getContent()), StandardCharsets.UTF_8);
+
+			Bundle bundle = ourCtx.newJsonParser().parseResource(Bundle.class, responseContent);
+			assertEquals(SEARCH_RESULT_COUNT, bundle.getEntry().size());
+			assertEquals(FAMILY, ((Patient) bundle.getEntry().get(SEARCH_RESULT_COUNT - 1).getResource()).getNameFirstRep().getFamily());
+		} finally {
+			IOUtils.closeQuietly(status.getEntity().getContent());
+		}
+	}
+
+	@Test
+	public void testUnknownResourceError() throws Exception {
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/Foo/123?_format=json");
+		CloseableHttpResponse status = ourClient.execute(httpGet);
+		try {
+			String responseContent = IOUtils.toString(status.getEntity().getContent(), StandardCharsets.UTF_8);
+			assertEquals(404, status.getStatusLine().getStatusCode());
+			assertThat(responseContent, containsString("OperationOutcome"));
+		} finally {
+			IOUtils.closeQuietly(status.getEntity().getContent());
+		}
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() throws Exception {
+		ourServer.stop();
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+	@BeforeClass
+	public static void beforeClass() throws Exception {
+		ourPort = PortUtil.findFreePort();
+		ourServer = new Server(ourPort);
+
+		ServletHandler proxyHandler = new ServletHandler();
+		RestfulServer servlet = new RestfulServer(ourCtx);
+		servlet.setResourceProviders(new DummyPatientResourceProvider());
+		servlet.setPagingProvider(new FifoMemoryPagingProvider(10).setDefaultPageSize(SEARCH_RESULT_COUNT).setMaximumPageSize(SEARCH_RESULT_COUNT));
+		proxyHandler.addServletWithMapping(new ServletHolder(servlet), "/*");
+		proxyHandler.addFilterWithMapping(new FilterHolder(new NoWriterFilter()), "/*", EnumSet.of(DispatcherType.REQUEST));
+
+		ourServer.setHandler(proxyHandler);
+		ourServer.start();
+
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(5000, TimeUnit.MILLISECONDS);
+		HttpClientBuilder builder = HttpClientBuilder.create();
+		builder.setConnectionManager(connectionManager);
+		builder.disableContentCompression();
+		ourClient = builder.build();
+	}
+
+	public static class DummyPatientResourceProvider implements IResourceProvider {
+
+		private Patient createPatient(String theId) {
+			Patient retVal = new Patient();
+			retVal.setId(theId);
+			retVal.addName().setFamily(FAMILY);
+			return retVal;
+		}
+
+		@Override
+		public Class<? extends IBaseResource> getResourceType() {
+			return Patient.class;
+		}
+
+		@Read
+		public Patient read(@IdParam IdType theId) {
+			return createPatient(theId.getIdPart());
+		}
+
+		@Search
+		public List<Patient> search() {
+			List<Patient> retVal = new ArrayList<>();
+			for (int i = 0; i < SEARCH_RESULT_COUNT; i++) {
+				retVal.add(createPatient(Integer.toString(i)));
+			}
+			return retVal;
+		}
+
+	}
+
+	public static class NoWriterFilter implements Filter {
+
+		@Override
+		public void destroy() {
+			// nothing
+		}
+
+		@Override
+		public void doFilter(ServletRequest theRequest, ServletResponse theResponse, FilterChain theChain) throws IOException, ServletException {
+			theChain.doFilter(theRequest, new HttpServletResponseWrapper((HttpServletResponse) theResponse) {
+				@Override
+				public PrintWriter getWriter() {
+					throw new IllegalStateException("The response writer should not be used");
+				}
+			});
+		}
+
+		@Override
+		public void init(FilterConfig theFilterConfig) {
+			// nothing
+		}
+
+	}
+
+}
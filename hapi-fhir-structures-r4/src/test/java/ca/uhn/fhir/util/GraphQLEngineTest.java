@@ -9,15 +9,23 @@ import org.hl7.fhir.r4.utils.GraphQLEngine;
 import org.hl7.fhir.utilities.graphql.*;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.apache.commons.lang3.StringUtils;
+import org.mockito.ArgumentCaptor;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
 
 public class GraphQLEngineTest {
 	private static HapiWorkerContext ourWorkerCtx;
@@ -117,6 +125,57 @@ public class GraphQLEngineTest {
 
 	}
 
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testReferencesInListAreResolvedInBatch() throws EGraphQLException, EGraphEngine, IOException, FHIRException {
+		GraphQLEngine.IGraphQLBatchingStorageServices services = mock(GraphQLEngine.IGraphQLBatchingStorageServices.class);
+		doAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) {
+				List<Resource> matches = (List<Resource>) invocation.getArguments()[3];
+				for (String next : new String[]{"Patient/123", "Patient/123", "Patient/456"}) {
+					Observation obs = new Observation();
+					obs.setSubject(new Reference(next));
+					matches.add(obs);
+				}
+				return null;
+			}
+		}).when(services).listResources(any(Object.class), eq("Observation"), any(List.class), any(List.class));
+		when(services.lookup(any(Object.class), any(Set.class))).thenAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) {
+				Set<String> references = (Set<String>) invocation.getArguments()[1];
+				Map<String, Resource> retVal = new HashMap<>();
+				for (String next : references) {
+					Patient p = new Patient();
+					p.addName().setFamily(next.replace("Patient/", "FAM"));
+					retVal.put(next, p);
+				}
+				return retVal;
+			}
+		});
+
+		// Make sure the context knows about Observation so that ObservationList is recognized
+		ourCtx.getResourceDefinition(Observation.class);
+
+		GraphQLEngine engine = new GraphQLEngine(ourWorkerCtx);
+		engine.setGraphQL(Parser.parse("{ObservationList{subject{resource(type : Patient){name{family}}}}}"));
+		engine.setServices(services);
+		engine.execute();
+
+		StringBuilder outputBuilder = new StringBuilder();
+		engine.getOutput().write(outputBuilder, 0, "\n");
+		String output = TestUtil.stripReturns(outputBuilder.toString());
+		ourLog.info(output);
+		assertEquals(2, StringUtils.countMatches(output, "\"family\":\"FAM123\""));
+		assertEquals(1, StringUtils.countMatches(output, "\"family\":\"FAM456\""));
+
+		ArgumentCaptor<Set> referencesCaptor = ArgumentCaptor.forClass(Set.class);
+		verify(services, times(1)).lookup(any(Object.class), referencesCaptor.capture());
+		assertThat((Set<String>) referencesCaptor.getValue(), containsInAnyOrder("Patient/123", "Patient/456"));
+		verify(services, never()).lookup(any(Object.class), any(Resource.class), any(Reference.class));
+	}
+
 	@BeforeClass
 	public static void beforeClass() {
 		ourCtx = FhirContext.forR4();
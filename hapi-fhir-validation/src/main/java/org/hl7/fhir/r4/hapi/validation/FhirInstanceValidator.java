@@ -2,12 +2,14 @@ package org.hl7.fhir.r4.hapi.validation;
 
 import java.io.StringReader;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 
 import org.apache.commons.lang3.Validate;
 import org.hl7.fhir.exceptions.PathEngineException;
+import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.hapi.ctx.*;
 import org.hl7.fhir.r4.model.*;
 import org.hl7.fhir.r4.utils.FHIRPathEngine.IEvaluationContext;
@@ -29,6 +31,7 @@ import ca.uhn.fhir.rest.api.EncodingEnum;
 import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.validation.IValidationContext;
 import ca.uhn.fhir.validation.IValidatorModule;
+import ca.uhn.fhir.validation.ValidationContext;
 
 public class FhirInstanceValidator extends BaseValidatorBridge implements IValidatorModule {
 
@@ -36,9 +39,11 @@ public class FhirInstanceValidator extends BaseValidatorBridge implements IValid
 
 	private boolean myAnyExtensionsAllowed = true;
 	private BestPracticeWarningLevel myBestPracticeWarningLevel;
+	private ExecutorService myBundleEntryExecutor;
 	private DocumentBuilderFactory myDocBuilderFactory;
 	private boolean myNoTerminologyChecks;
 	private StructureDefinition myStructureDefintion;
+	private boolean myValidateParsedResourcesAsJson;
 
 	private IValidationSupport myValidationSupport;
 
@@ -98,6 +103,16 @@ public class FhirInstanceValidator extends BaseValidatorBridge implements IValid
 		return myBestPracticeWarningLevel;
 	}
 
+	/**
+	 * Returns the executor used to validate the entries of a Bundle concurrently, or <code>null</code>
+	 * (which is the default) if entries are validated one after the other.
+	 *
+	 * @see #setBundleEntryExecutor(ExecutorService)
+	 */
+	public ExecutorService getBundleEntryExecutor() {
+		return myBundleEntryExecutor;
+	}
+
 	/**
 	 * Returns the {@link IValidationSupport validation support} in use by this validator. Default is an instance of
 	 * {@link DefaultProfileValidationSupport} if the no-arguments constructor for this object was used.
@@ -122,6 +137,17 @@ public class FhirInstanceValidator extends BaseValidatorBridge implements IValid
 		return myNoTerminologyChecks;
 	}
 
+	/**
+	 * If set to {@literal true} (default is false), resources which are passed to the validator
+	 * as already parsed objects (e.g. by {@link ca.uhn.fhir.validation.FhirValidator#validateWithResult(org.hl7.fhir.instance.model.api.IBaseResource)})
+	 * are encoded as JSON and read directly into the validator's element model, instead of being
+	 * encoded as XML and parsed into a DOM first. This is considerably faster, but line and
+	 * column numbers in the resulting messages refer to the JSON encoding instead of the XML one.
+	 */
+	public boolean isValidateParsedResourcesAsJson() {
+		return myValidateParsedResourcesAsJson;
+	}
+
 	/**
 	 * If set to {@literal true} (default is true) extensions which are not known to the
 	 * validator (e.g. because they have not been explicitly declared in a profile) will
@@ -149,6 +175,21 @@ public class FhirInstanceValidator extends BaseValidatorBridge implements IValid
 		myBestPracticeWarningLevel = theBestPracticeWarningLevel;
 	}
 
+	/**
+	 * If set (default is <code>null</code>), the resources in the entries of a Bundle are validated
+	 * concurrently using the given executor. This can considerably speed up the validation of large
+	 * batch and transaction Bundles. The messages are returned in the same order as they are when the
+	 * entries are validated one after the other, and checks which span several entries (e.g. the rules
+	 * for documents and messages) are applied once all of the entries have been validated.
+	 * <p>
+	 * The executor is not shut down by this validator. The {@link IValidationSupport validation support}
+	 * in use must be safe for concurrent use when this is set.
+	 * </p>
+	 */
+	public void setBundleEntryExecutor(ExecutorService theBundleEntryExecutor) {
+		myBundleEntryExecutor = theBundleEntryExecutor;
+	}
+
 	/**
 	 * If set to {@literal true} (default is false) the valueSet will not be validate
 	 */
@@ -160,6 +201,17 @@ public class FhirInstanceValidator extends BaseValidatorBridge implements IValid
 		myStructureDefintion = theStructureDefintion;
 	}
 
+	/**
+	 * If set to {@literal true} (default is false), resources which are passed to the validator
+	 * as already parsed objects (e.g. by {@link ca.uhn.fhir.validation.FhirValidator#validateWithResult(org.hl7.fhir.instance.model.api.IBaseResource)})
+	 * are encoded as JSON and read directly into the validator's element model, instead of being
+	 * encoded as XML and parsed into a DOM first. This is considerably faster, but line and
+	 * column numbers in the resulting messages refer to the JSON encoding instead of the XML one.
+	 */
+	public void setValidateParsedResourcesAsJson(boolean theValidateParsedResourcesAsJson) {
+		myValidateParsedResourcesAsJson = theValidateParsedResourcesAsJson;
+	}
+
 	/**
 	 * Sets the {@link IValidationSupport validation support} in use by this validator. Default is an instance of
 	 * {@link DefaultProfileValidationSupport} if the no-arguments constructor for this object was used.
@@ -183,6 +235,7 @@ public class FhirInstanceValidator extends BaseValidatorBridge implements IValid
 		v.setAnyExtensionsAllowed(isAnyExtensionsAllowed());
 		v.setResourceIdRule(IdStatus.OPTIONAL);
 		v.setNoTerminologyChecks(isNoTerminologyChecks());
+		v.setBundleEntryExecutor(getBundleEntryExecutor());
 
 		List<ValidationMessage> messages = new ArrayList<ValidationMessage>();
 
@@ -238,6 +291,15 @@ public class FhirInstanceValidator extends BaseValidatorBridge implements IValid
 
 	@Override
 	protected List<ValidationMessage> validate(IValidationContext<?> theCtx) {
+		/*
+		 * If we were given a parsed resource, the context would otherwise encode it
+		 * as XML just so that we can parse it again into a DOM
+		 */
+		if (myValidateParsedResourcesAsJson && theCtx instanceof ValidationContext && theCtx.getResource() instanceof IBaseResource) {
+			FhirContext ctx = theCtx.getFhirContext();
+			String encoded = ctx.newJsonParser().encodeResourceToString((IBaseResource) theCtx.getResource());
+			return validate(ctx, encoded, EncodingEnum.JSON);
+		}
 		return validate(theCtx.getFhirContext(), theCtx.getResourceAsString(), theCtx.getResourceAsStringEncoding());
 	}
 
@@ -0,0 +1,151 @@
+package org.hl7.fhir.r4.validation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hl7.fhir.r4.conformance.ProfileUtilities;
+import org.hl7.fhir.r4.model.ElementDefinition;
+import org.hl7.fhir.r4.model.StructureDefinition;
+
+/**
+ * An index over the snapshot of a StructureDefinition, built once and then used by the
+ * {@link InstanceValidator} for the lookups it makes for every element it validates
+ * (direct children, position in the snapshot, elements by path and content references),
+ * instead of scanning the snapshot each time.
+ *
+ * The index is kept in the user data of the StructureDefinition, so it is shared by all
+ * validations that use the same StructureDefinition instance. If the snapshot is replaced
+ * or changes size, the index is rebuilt.
+ *
+ * Instances are immutable once built, and so are safe to use from several threads.
+ */
+public class CompiledProfile {
+
+  public static final String USER_DATA_KEY = "validator.compiled.profile";
+
+  private final List<ElementDefinition> elements;
+  private final int elementCount;
+  private final Map<ElementDefinition, Integer> indexes = new IdentityHashMap<ElementDefinition, Integer>();
+  private final Map<ElementDefinition, List<ElementDefinition>> children = new IdentityHashMap<ElementDefinition, List<ElementDefinition>>();
+  private final Map<String, ElementDefinition> byPath = new HashMap<String, ElementDefinition>();
+  private final Map<String, ElementDefinition> byContentReference = new HashMap<String, ElementDefinition>();
+  private final boolean usesMustSupport;
+
+  private CompiledProfile(StructureDefinition profile) {
+    elements = profile.getSnapshot().getElement();
+    elementCount = elements.size();
+
+    boolean mustSupport = false;
+    for (int i = 0; i < elementCount; i++) {
+      ElementDefinition ed = elements.get(i);
+      if (!indexes.containsKey(ed))
+        indexes.put(ed, i);
+      if (!byPath.containsKey(ed.getPath()))
+        byPath.put(ed.getPath(), ed);
+      String ref = "#" + ed.getId();
+      if (!byContentReference.containsKey(ref))
+        byContentReference.put(ref, ed);
+      if (ed.getMustSupport())
+        mustSupport = true;
+    }
+    usesMustSupport = mustSupport;
+
+    // same rules as ProfileUtilities.getChildMap(..)
+    for (ElementDefinition ed : indexes.keySet()) {
+      if (ed.getContentReference() == null)
+        children.put(ed, findChildren(ed));
+    }
+    for (ElementDefinition ed : indexes.keySet()) {
+      if (ed.getContentReference() != null) {
+        ElementDefinition target = byContentReference.get(ed.getContentReference());
+        if (target != null && target.getContentReference() == null)
+          children.put(ed, children.get(target));
+      }
+    }
+  }
+
+  private List<ElementDefinition> findChildren(ElementDefinition element) {
+    List<ElementDefinition> res = new ArrayList<ElementDefinition>();
+    String prefix = element.getPath() + ".";
+    for (int index = indexes.get(element) + 1; index < elementCount; index++) {
+      ElementDefinition e = elements.get(index);
+      if (e.getPath().startsWith(prefix)) {
+        // We only want direct children, not all descendants
+        if (e.getPath().indexOf('.', prefix.length()) == -1)
+          res.add(e);
+      } else
+        break;
+    }
+    return Collections.unmodifiableList(res);
+  }
+
+  private boolean isCurrent(StructureDefinition profile) {
+    return profile.getSnapshot().getElement() == elements && elements.size() == elementCount;
+  }
+
+  /**
+   * Returns the direct children of the given element, following content references, or
+   * <code>null</code> if the element is not part of the snapshot or the content reference
+   * can't be resolved (in which case {@link ProfileUtilities#getChildMap(StructureDefinition, ElementDefinition)}
+   * should be used, which reports the problem)
+   */
+  public List<ElementDefinition> getChildMap(ElementDefinition element) {
+    return children.get(element);
+  }
+
+  /**
+   * Returns the position of the element in the snapshot, or -1 if it isn't part of the snapshot
+   */
+  public int indexOf(ElementDefinition element) {
+    Integer retVal = indexes.get(element);
+    return retVal != null ? retVal : -1;
+  }
+
+  /**
+   * Returns the first element in the snapshot with the given path, or <code>null</code>
+   */
+  public ElementDefinition findElement(String path) {
+    return byPath.get(path);
+  }
+
+  /**
+   * Returns the first element in the snapshot that a content reference (e.g. <code>#Questionnaire.item</code>)
+   * points to, or <code>null</code>
+   */
+  public ElementDefinition resolveContentReference(String contentReference) {
+    return byContentReference.get(contentReference);
+  }
+
+  public boolean usesMustSupport() {
+    return usesMustSupport;
+  }
+
+  /**
+   * Returns the index for the snapshot of the given StructureDefinition, building it if it
+   * hasn't been built yet or the snapshot has changed since.
+   *
+   * This is called for every element that is validated, so an index which is already built is
+   * returned without locking. Only building one locks the StructureDefinition, and the check is
+   * repeated under the lock so that the index is only built once. All of the fields of an index
+   * are final, so a thread which sees it also sees it fully built.
+   */
+  public static CompiledProfile forProfile(StructureDefinition profile) {
+    CompiledProfile retVal = (CompiledProfile) profile.getUserData(USER_DATA_KEY);
+    if (retVal != null && retVal.isCurrent(profile))
+      return retVal;
+
+    synchronized (profile) {
+      retVal = (CompiledProfile) profile.getUserData(USER_DATA_KEY);
+      if (retVal == null || !retVal.isCurrent(profile)) {
+        retVal = new CompiledProfile(profile);
+        profile.setUserData(USER_DATA_KEY, retVal);
+      }
+      return retVal;
+    }
+  }
+
+}
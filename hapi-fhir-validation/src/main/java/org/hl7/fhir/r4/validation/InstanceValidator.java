@@ -7,6 +7,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.rmi.CORBA.Util;
 
@@ -175,6 +179,9 @@ public class InstanceValidator extends BaseValidator implements IResourceValidat
   private ValidationProfileSet providedProfiles;
   private IEvaluationContext externalHostServices;
 
+  // parallel validation of bundle entries
+  private ExecutorService bundleEntryExecutor;
+
   /*
    * Keeps track of whether a particular profile has been checked or not yet
    */
@@ -1738,12 +1745,14 @@ public class InstanceValidator extends BaseValidator implements IResourceValidat
   }
 
   protected ElementDefinition findElement(StructureDefinition profile, String name) {
-    for (ElementDefinition c : profile.getSnapshot().getElement()) {
-      if (c.getPath().equals(name)) {
-        return c;
-      }
-    }
-    return null;
+    return CompiledProfile.forProfile(profile).findElement(name);
+  }
+
+  private List<ElementDefinition> getChildMap(StructureDefinition profile, ElementDefinition definition) throws DefinitionException {
+    List<ElementDefinition> retVal = CompiledProfile.forProfile(profile).getChildMap(definition);
+    if (retVal == null)
+      retVal = ProfileUtilities.getChildMap(profile, definition);
+    return retVal;
   }
 
   public BestPracticeWarningLevel getBasePracticeWarningLevel() {
@@ -2198,13 +2207,6 @@ public class InstanceValidator extends BaseValidator implements IResourceValidat
     }
   }
 
-  private ElementDefinition resolveNameReference(StructureDefinitionSnapshotComponent snapshot, String contentReference) {
-    for (ElementDefinition ed : snapshot.getElement())
-      if (contentReference.equals("#"+ed.getId()))
-        return ed;
-    return null;
-  }
-
   private StructureDefinition resolveProfile(StructureDefinition profile, String pr)  {
     if (pr.startsWith("#")) {
       for (Resource r : profile.getContained()) {
@@ -2274,6 +2276,23 @@ public class InstanceValidator extends BaseValidator implements IResourceValidat
     this.allowXsiLocation = allowXsiLocation;
   }
 
+  public ExecutorService getBundleEntryExecutor() {
+    return bundleEntryExecutor;
+  }
+
+  /**
+   * If set, the resources in the entries of a Bundle are validated concurrently using this executor, 
+   * each on a copy of this validator. The messages for each entry are merged back in entry order, so the 
+   * results are the same as when the entries are validated one after the other. Checks which span 
+   * several entries (document and message rules, references between entries) run once all the entries 
+   * have been validated. 
+   * 
+   * Bundles nested inside an entry are validated on the thread which validates the entry.
+   */
+  public void setBundleEntryExecutor(ExecutorService bundleEntryExecutor) {
+    this.bundleEntryExecutor = bundleEntryExecutor;
+  }
+
   /**
    *
    * @param element
@@ -2296,7 +2315,7 @@ public class InstanceValidator extends BaseValidator implements IResourceValidat
     if (!slicer.getSlicing().hasDiscriminator())
       return false; // cannot validate in this case
 
-    ExpressionNode n = (ExpressionNode) ed.getUserData("slice.expression.cache");
+    ExpressionNode n = (ExpressionNode) getSharedUserData(ed, "slice.expression.cache");
     if (n == null) {
       long t = System.nanoTime();
       // GG: this approach is flawed because it treats discriminators individually rather than collectively
@@ -2350,7 +2369,7 @@ public class InstanceValidator extends BaseValidator implements IResourceValidat
         throw new FHIRException("Problem processing expression "+expression +" in profile " + profile.getUrl() + " path " + path + ": " + e.getMessage());
       }
       fpeTime = fpeTime + (System.nanoTime() - t);
-      ed.setUserData("slice.expression.cache", n);
+      setSharedUserData(ed, "slice.expression.cache", n);
     }
 
     String msg;
@@ -3106,7 +3125,10 @@ public class InstanceValidator extends BaseValidator implements IResourceValidat
 
 
     // get the list of direct defined children, including slices
-    List<ElementDefinition> childDefinitions = ProfileUtilities.getChildMap(profile, definition);
+    CompiledProfile compiledProfile = CompiledProfile.forProfile(profile);
+    List<ElementDefinition> childDefinitions = compiledProfile.getChildMap(definition);
+    if (childDefinitions == null)
+      childDefinitions = ProfileUtilities.getChildMap(profile, definition);
     if (childDefinitions.isEmpty()) {
       if (actualType == null)
         return; // there'll be an error elsewhere in this case, and we're going to stop.
@@ -3115,7 +3137,7 @@ public class InstanceValidator extends BaseValidator implements IResourceValidat
       if (dt == null)
         throw new DefinitionException("Unable to resolve actual type " + actualType);
 
-      childDefinitions = ProfileUtilities.getChildMap(dt, dt.getSnapshot().getElement().get(0));
+      childDefinitions = getChildMap(dt, dt.getSnapshot().getElement().get(0));
     }
 
     // 1. List the children, and remember their exact path (convenience)
@@ -3276,24 +3298,14 @@ public class InstanceValidator extends BaseValidator implements IResourceValidat
     // 4. check order if any slices are ordered. (todo)
 
     // 5. inspect each child for validity
+    List<DeferredBundleEntry> deferredEntries = new ArrayList<DeferredBundleEntry>();
     for (ElementInfo ei : children) {
       List<String> profiles = new ArrayList<String>();
       if (ei.definition != null) {
         String type = null;
         ElementDefinition typeDefn = null;
 
-        String usesMustSupport = profile.getUserString("usesMustSupport");
-        if (usesMustSupport == null) {
-          usesMustSupport = "N";
-          for (ElementDefinition pe: profile.getSnapshot().getElement()) {
-            if (pe.getMustSupport()) {
-              usesMustSupport = "Y";
-              break;
-            }
-          }
-          profile.setUserData("usesMustSupport", usesMustSupport);
-        }
-        if (usesMustSupport.equals("Y")) {
+        if (compiledProfile.usesMustSupport()) {
           String elementSupported = ei.element.getUserString("elementSupported");
           if (elementSupported==null || ei.definition.getMustSupport())
             if (ei.definition.getMustSupport())
@@ -3340,7 +3352,7 @@ public class InstanceValidator extends BaseValidator implements IResourceValidat
                   "The element " + ei.name + " is illegal. Valid types at this point are " + describeTypes(ei.definition.getType()));
           }
         } else if (ei.definition.getContentReference() != null) {
-          typeDefn = resolveNameReference(profile.getSnapshot(), ei.definition.getContentReference());
+          typeDefn = compiledProfile.resolveContentReference(ei.definition.getContentReference());
         }
 
         if (type != null) {
@@ -3374,6 +3386,10 @@ public class InstanceValidator extends BaseValidator implements IResourceValidat
           } else if (type.equals("Extension") && ei.element.getChildValue("url").contains("/")) {
             checkExtension(hostContext, errors, ei.path, resource, ei.element, ei.definition, profile, localStack);
           } else if (type.equals("Resource")) {
+            if (bundleEntryExecutor != null && ei.element.getSpecial() == SpecialElement.BUNDLE_ENTRY && profiles.isEmpty()) {
+              deferredEntries.add(deferBundleEntry(hostContext, errors, ei, definition, profile, resource, type, localStack, idStatusForEntry(element, ei)));
+              continue;
+            }
             validateContains(hostContext, errors, ei.path, ei.definition, definition, resource, ei.element, localStack, idStatusForEntry(element, ei)); // if
           // (str.matches(".*([.,/])work\\1$"))
           }
@@ -3424,7 +3440,7 @@ public class InstanceValidator extends BaseValidator implements IResourceValidat
           if (p!=null) {
             if (!elementValidated)
               validateElement(hostContext, errors, p, p.getSnapshot().getElement().get(0), profile, ei.definition, resource, ei.element, type, localStack, thisIsCodeableConcept);
-            int index = profile.getSnapshot().getElement().indexOf(ei.definition);
+            int index = compiledProfile.indexOf(ei.definition);
             if (index < profile.getSnapshot().getElement().size() - 1) {
               String nextPath = profile.getSnapshot().getElement().get(index+1).getPath();
               if (!nextPath.equals(ei.definition.getPath()) && nextPath.startsWith(ei.definition.getPath()))
@@ -3437,6 +3453,121 @@ public class InstanceValidator extends BaseValidator implements IResourceValidat
         }
       }
     }
+    if (!deferredEntries.isEmpty())
+      mergeDeferredBundleEntries(errors, deferredEntries);
+  }
+
+  /*
+   * A bundle entry resource which is being validated on the bundle entry executor, and the position in the
+   * error list where its messages would have been added had it been validated inline. The profiles found 
+   * in the entry (e.g. in meta.profile) are checked later by the root validator, as they would have been 
+   * had the entry been validated inline
+   */
+  private class DeferredBundleEntry {
+    private int position;
+    private Future<List<ValidationMessage>> messages;
+    private HashMap<Element, ResourceProfiles> resourceProfiles;
+
+    public DeferredBundleEntry(int position) {
+      this.position = position;
+    }
+  }
+
+  private DeferredBundleEntry deferBundleEntry(final ValidatorHostContext hostContext, List<ValidationMessage> errors, final ElementInfo ei, final ElementDefinition definition, final StructureDefinition profile, 
+      final Element resource, final String type, final NodeStack localStack, final IdStatus idstatus) {
+    final DeferredBundleEntry retVal = new DeferredBundleEntry(errors.size());
+    retVal.messages = bundleEntryExecutor.submit(new Callable<List<ValidationMessage>>() {
+      @Override
+      public List<ValidationMessage> call() throws Exception {
+        InstanceValidator validator = newEntryValidator();
+        List<ValidationMessage> entryErrors = new ArrayList<ValidationMessage>();
+        validator.resourceProfilesMap = new HashMap<Element, ResourceProfiles>();
+        validator.validateContains(hostContext, entryErrors, ei.path, ei.definition, definition, resource, ei.element, localStack, idstatus);
+        StructureDefinition p = validator.getProfileForType(type);
+        if (validator.rule(entryErrors, IssueType.STRUCTURE, ei.line(), ei.col(), ei.path, p != null, "Unknown type " + type)) {
+          validator.validateElement(hostContext, entryErrors, p, p.getSnapshot().getElement().get(0), profile, ei.definition, resource, ei.element, type, localStack, false);
+          int index = CompiledProfile.forProfile(profile).indexOf(ei.definition);
+          if (index < profile.getSnapshot().getElement().size() - 1) {
+            String nextPath = profile.getSnapshot().getElement().get(index+1).getPath();
+            if (!nextPath.equals(ei.definition.getPath()) && nextPath.startsWith(ei.definition.getPath()))
+              validator.validateElement(hostContext, entryErrors, profile, ei.definition, null, null, resource, ei.element, type, localStack, false);
+          }
+        }
+        retVal.resourceProfiles = validator.resourceProfilesMap;
+        return entryErrors;
+      }
+    });
+    return retVal;
+  }
+
+  /*
+   * Entry validators share the (read only) worker context, but not the FHIRPath engine or the
+   * per-validation state, so each one is only used by one thread. Nested bundles are
+   * validated inline by the entry validator, so an entry never waits on the executor it runs on
+   */
+  private InstanceValidator newEntryValidator() {
+    InstanceValidator retVal = new InstanceValidator(context, externalHostServices);
+    retVal.checkDisplay = checkDisplay;
+    retVal.anyExtensionsAllowed = anyExtensionsAllowed;
+    retVal.errorForUnknownProfiles = errorForUnknownProfiles;
+    retVal.noInvariantChecks = noInvariantChecks;
+    retVal.noTerminologyChecks = noTerminologyChecks;
+    retVal.bpWarnings = bpWarnings;
+    retVal.extensionDomains = extensionDomains;
+    retVal.resourceIdRule = resourceIdRule;
+    retVal.allowXsiLocation = allowXsiLocation;
+    retVal.suppressLoincSnomedMessages = suppressLoincSnomedMessages;
+    retVal.logical = logical;
+    retVal.noBindingMsgSuppressed = noBindingMsgSuppressed;
+    retVal.fetcher = fetcher;
+    retVal.providedProfiles = providedProfiles;
+    return retVal;
+  }
+
+  private void mergeDeferredBundleEntries(List<ValidationMessage> errors, List<DeferredBundleEntry> deferredEntries) throws FHIRException, IOException {
+    try {
+      // work backwards so that the positions of the earlier entries are still correct
+      for (int i = deferredEntries.size() - 1; i >= 0; i--) {
+        DeferredBundleEntry next = deferredEntries.get(i);
+        errors.addAll(next.position, next.messages.get());
+      }
+      for (DeferredBundleEntry next : deferredEntries)
+        resourceProfilesMap.putAll(next.resourceProfiles);
+    } catch (InterruptedException e) {
+      cancelDeferredBundleEntries(deferredEntries);
+      Thread.currentThread().interrupt();
+      throw new FHIRException("Interrupted while validating bundle entries", e);
+    } catch (ExecutionException e) {
+      cancelDeferredBundleEntries(deferredEntries);
+      Throwable cause = e.getCause();
+      if (cause instanceof FHIRException)
+        throw (FHIRException) cause;
+      if (cause instanceof IOException)
+        throw (IOException) cause;
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException) cause;
+      if (cause instanceof Error)
+        throw (Error) cause;
+      throw new FHIRException(cause);
+    }
+  }
+
+  private void cancelDeferredBundleEntries(List<DeferredBundleEntry> deferredEntries) {
+    for (DeferredBundleEntry next : deferredEntries)
+      next.messages.cancel(true);
+  }
+
+  private static Object getSharedUserData(Base base, String name) {
+    // definitions are shared by the entry validators when bundle entries are validated in parallel
+    synchronized (base) {
+      return base.getUserData(name);
+    }
+  }
+
+  private static void setSharedUserData(Base base, String name, Object value) {
+    synchronized (base) {
+      base.setUserData(name, value);
+    }
   }
 
   private IdStatus idStatusForEntry(Element ep, ElementInfo ei) {
@@ -3483,7 +3614,7 @@ public class InstanceValidator extends BaseValidator implements IResourceValidat
 
     for (ElementDefinitionConstraintComponent inv : ed.getConstraint()) {
       if (inv.hasExpression()) {
-        ExpressionNode n = (ExpressionNode) inv.getUserData("validator.expression.cache");
+        ExpressionNode n = (ExpressionNode) getSharedUserData(inv, "validator.expression.cache");
         if (n == null) {
           long t = System.nanoTime();
           try {
@@ -3492,7 +3623,7 @@ public class InstanceValidator extends BaseValidator implements IResourceValidat
             throw new FHIRException("Problem processing expression "+inv.getExpression() +" in profile " + profile.getUrl() + " path " + path + ": " + e.getMessage());
           }
           fpeTime = fpeTime + (System.nanoTime() - t);
-          inv.setUserData("validator.expression.cache", n);
+          setSharedUserData(inv, "validator.expression.cache", n);
         }
 
         String msg;
@@ -0,0 +1,128 @@
+package org.hl7.fhir.r4.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.hl7.fhir.r4.hapi.ctx.CachingValidationSupport;
+import org.hl7.fhir.r4.hapi.ctx.IValidationSupport;
+import org.hl7.fhir.r4.hapi.ctx.IValidationSupport.CodeValidationResult;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.hl7.fhir.r4.model.ValueSet.ConceptSetComponent;
+import org.hl7.fhir.r4.model.ValueSet.ValueSetExpansionComponent;
+import org.hl7.fhir.utilities.validation.ValidationMessage.IssueSeverity;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.util.TestUtil;
+
+public class CachingValidationSupportTest {
+
+	private static FhirContext ourCtx = FhirContext.forR4();
+	private IValidationSupport myWrap;
+
+	@Before
+	public void before() {
+		myWrap = mock(IValidationSupport.class);
+	}
+
+	@Test
+	public void testValidateCodeIsCached() {
+		CodeValidationResult result = new CodeValidationResult(IssueSeverity.ERROR, "Unknown code");
+		when(myWrap.validateCode(any(FhirContext.class), anyString(), anyString(), anyString())).thenReturn(result);
+
+		CachingValidationSupport svc = new CachingValidationSupport(myWrap);
+		for (int i = 0; i < 5; i++) {
+			assertSame(result, svc.validateCode(ourCtx, "http://loinc.org", "12345", "Display"));
+		}
+		svc.validateCode(ourCtx, "http://loinc.org", "12345", "Other Display");
+
+		verify(myWrap, times(1)).validateCode(any(FhirContext.class), eq("http://loinc.org"), eq("12345"), eq("Display"));
+		verify(myWrap, times(1)).validateCode(any(FhirContext.class), eq("http://loinc.org"), eq("12345"), eq("Other Display"));
+		assertEquals(4, svc.getCodeValidationStatistics().getHitCount());
+		assertEquals(2, svc.getCodeValidationStatistics().getMissCount());
+		assertEquals(2, svc.getCodeValidationStatistics().getSize());
+	}
+
+	@Test
+	public void testNegativeResultsAreCached() {
+		CachingValidationSupport svc = new CachingValidationSupport(myWrap);
+
+		assertNull(svc.fetchResource(ourCtx, ValueSet.class, "http://example.com/ValueSet/foo"));
+		assertNull(svc.fetchResource(ourCtx, ValueSet.class, "http://example.com/ValueSet/foo"));
+		assertNull(svc.fetchCodeSystem(ourCtx, "http://example.com/cs"));
+		assertNull(svc.fetchCodeSystem(ourCtx, "http://example.com/cs"));
+		assertFalse(svc.isCodeSystemSupported(ourCtx, "http://example.com/cs"));
+		assertFalse(svc.isCodeSystemSupported(ourCtx, "http://example.com/cs"));
+
+		verify(myWrap, times(1)).fetchResource(any(FhirContext.class), eq(ValueSet.class), eq("http://example.com/ValueSet/foo"));
+		verify(myWrap, times(1)).fetchCodeSystem(any(FhirContext.class), eq("http://example.com/cs"));
+		verify(myWrap, times(1)).isCodeSystemSupported(any(FhirContext.class), eq("http://example.com/cs"));
+		assertEquals(3, svc.getFetchStatistics().getHitCount());
+	}
+
+	@Test
+	public void testExpansionKeyIncludesConcepts() {
+		when(myWrap.expandValueSet(any(FhirContext.class), any(ConceptSetComponent.class))).thenReturn(new ValueSetExpansionComponent());
+		CachingValidationSupport svc = new CachingValidationSupport(myWrap);
+
+		ConceptSetComponent include = new ConceptSetComponent().setSystem("http://loinc.org");
+		include.addConcept().setCode("1");
+		svc.expandValueSet(ourCtx, include);
+		svc.expandValueSet(ourCtx, include.copy());
+
+		ConceptSetComponent otherInclude = new ConceptSetComponent().setSystem("http://loinc.org");
+		otherInclude.addConcept().setCode("2");
+		svc.expandValueSet(ourCtx, otherInclude);
+
+		verify(myWrap, times(2)).expandValueSet(any(FhirContext.class), any(ConceptSetComponent.class));
+		assertEquals(1, svc.getExpansionStatistics().getHitCount());
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() {
+		CachingValidationSupport svc = new CachingValidationSupport(myWrap, 2, 60000);
+		svc.isCodeSystemSupported(ourCtx, "http://a");
+		svc.isCodeSystemSupported(ourCtx, "http://b");
+		svc.isCodeSystemSupported(ourCtx, "http://a");
+		svc.isCodeSystemSupported(ourCtx, "http://c");
+		svc.isCodeSystemSupported(ourCtx, "http://a");
+		svc.isCodeSystemSupported(ourCtx, "http://b");
+
+		verify(myWrap, times(1)).isCodeSystemSupported(any(FhirContext.class), eq("http://a"));
+		verify(myWrap, times(2)).isCodeSystemSupported(any(FhirContext.class), eq("http://b"));
+		assertEquals(2, svc.getFetchStatistics().getEvictionCount());
+		assertEquals(2, svc.getFetchStatistics().getSize());
+	}
+
+	@Test
+	public void testExpiredEntriesAreReloaded() throws Exception {
+		CachingValidationSupport svc = new CachingValidationSupport(myWrap, 100, 1);
+		svc.isCodeSystemSupported(ourCtx, "http://a");
+		Thread.sleep(10);
+		svc.isCodeSystemSupported(ourCtx, "http://a");
+
+		verify(myWrap, times(2)).isCodeSystemSupported(any(FhirContext.class), eq("http://a"));
+		assertTrue(svc.getFetchStatistics().getEvictionCount() > 0);
+
+		svc.flushCaches();
+		assertEquals(0, svc.getFetchStatistics().getSize());
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() {
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+}
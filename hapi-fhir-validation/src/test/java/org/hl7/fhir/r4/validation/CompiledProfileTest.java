@@ -0,0 +1,67 @@
+package org.hl7.fhir.r4.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.hl7.fhir.r4.conformance.ProfileUtilities;
+import org.hl7.fhir.r4.hapi.ctx.DefaultProfileValidationSupport;
+import org.hl7.fhir.r4.model.ElementDefinition;
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.util.TestUtil;
+
+public class CompiledProfileTest {
+
+	private static FhirContext ourCtx = FhirContext.forR4();
+	private static DefaultProfileValidationSupport ourValidationSupport = new DefaultProfileValidationSupport();
+
+	@Test
+	public void testMatchesSnapshotLookups() throws Exception {
+		List<StructureDefinition> structureDefinitions = ourValidationSupport.fetchAllStructureDefinitions(ourCtx);
+		assertTrue(structureDefinitions.size() > 0);
+
+		for (StructureDefinition next : structureDefinitions) {
+			CompiledProfile compiled = CompiledProfile.forProfile(next);
+			List<ElementDefinition> elements = next.getSnapshot().getElement();
+			for (int i = 0; i < elements.size(); i++) {
+				ElementDefinition ed = elements.get(i);
+				assertEquals(ed.getId(), elements.indexOf(ed), compiled.indexOf(ed));
+				List<ElementDefinition> children = compiled.getChildMap(ed);
+				if (children != null) {
+					assertEquals(ed.getId(), ProfileUtilities.getChildMap(next, ed), children);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testRebuiltWhenSnapshotChanges() {
+		StructureDefinition sd = new StructureDefinition();
+		ElementDefinition foo = sd.getSnapshot().addElement().setPath("Foo");
+		ElementDefinition bar = sd.getSnapshot().addElement().setPath("Foo.bar");
+
+		CompiledProfile compiled = CompiledProfile.forProfile(sd);
+		assertSame(compiled, CompiledProfile.forProfile(sd));
+		assertEquals(1, compiled.getChildMap(foo).size());
+		assertSame(bar, compiled.findElement("Foo.bar"));
+
+		sd.getSnapshot().addElement().setPath("Foo.baz").setMustSupport(true);
+		CompiledProfile rebuilt = CompiledProfile.forProfile(sd);
+		assertNotSame(compiled, rebuilt);
+		assertEquals(2, rebuilt.getChildMap(foo).size());
+		assertTrue(rebuilt.usesMustSupport());
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() {
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+}
@@ -15,6 +15,8 @@ import static org.mockito.Mockito.when;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.zip.GZIPInputStream;
 
 import ca.uhn.fhir.rest.api.Constants;
@@ -745,6 +747,137 @@ public class FhirInstanceValidatorR4Test {
 
 	}
 
+	@Test
+	public void testValidateBundleEntriesInParallel() {
+		Bundle input = new Bundle();
+		input.setType(Bundle.BundleType.COLLECTION);
+		for (int i = 0; i < 20; i++) {
+			Observation obs = new Observation();
+			obs.setId("Observation/" + i);
+			obs.getCode().addCoding().setSystem("http://loinc.org").setCode("12345");
+			if (i % 3 != 0) {
+				obs.setStatus(ObservationStatus.FINAL);
+			}
+			obs.setValue(new StringType("value " + i));
+			input.addEntry().setFullUrl("http://example.com/Observation/" + i).setResource(obs);
+		}
+
+		ValidationResult expected = myVal.validateWithResult(input);
+		ourLog.info("Sequential messages: {}", expected.getMessages());
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			myInstanceVal.setBundleEntryExecutor(executor);
+			ValidationResult actual = myVal.validateWithResult(input);
+
+			assertThat(expected.getMessages().toString(), containsString("Bundle.entry[1].resource.status"));
+			assertEquals(expected.getMessages().size(), actual.getMessages().size());
+			for (int i = 0; i < expected.getMessages().size(); i++) {
+				assertEquals(expected.getMessages().get(i).getMessage(), actual.getMessages().get(i).getMessage());
+				assertEquals(expected.getMessages().get(i).getLocationString(), actual.getMessages().get(i).getLocationString());
+			}
+		} finally {
+			myInstanceVal.setBundleEntryExecutor(null);
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testValidateBundleEntriesInParallelWithProfiledEntry() {
+		addValidConcept("http://loinc.org", "12345");
+
+		Bundle input = new Bundle();
+		input.setType(Bundle.BundleType.COLLECTION);
+		for (int i = 0; i < 5; i++) {
+			Observation obs = new Observation();
+			obs.setId("Observation/" + i);
+			if (i == 2) {
+				obs.getMeta().addProfile("http://hl7.org/fhir/StructureDefinition/devicemetricobservation");
+			}
+			obs.setStatus(ObservationStatus.FINAL);
+			obs.getCode().addCoding().setSystem("http://loinc.org").setCode("12345");
+			input.addEntry().setFullUrl("http://example.com/Observation/" + i).setResource(obs);
+		}
+
+		ValidationResult expected = myVal.validateWithResult(input);
+		ourLog.info("Sequential messages: {}", expected.getMessages());
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			myInstanceVal.setBundleEntryExecutor(executor);
+			ValidationResult actual = myVal.validateWithResult(input);
+
+			assertThat(expected.getMessages().toString(), containsString("Element 'Bundle.entry[3].resource.device': minimum required = 1, but only found 0"));
+			assertEquals(expected.getMessages().size(), actual.getMessages().size());
+			for (int i = 0; i < expected.getMessages().size(); i++) {
+				assertEquals(expected.getMessages().get(i).getMessage(), actual.getMessages().get(i).getMessage());
+				assertEquals(expected.getMessages().get(i).getLocationString(), actual.getMessages().get(i).getLocationString());
+			}
+		} finally {
+			myInstanceVal.setBundleEntryExecutor(null);
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testValidateParsedResourceAsJsonMatchesXml() {
+		Observation input = new Observation();
+		input.getCode().addCoding().setSystem("http://loinc.org").setCode("12345");
+		input.setValue(new StringType("AAA"));
+
+		myInstanceVal.setValidateParsedResourcesAsJson(false);
+		ValidationResult outputXml = myVal.validateWithResult(input);
+		myInstanceVal.setValidateParsedResourcesAsJson(true);
+		ValidationResult outputJson = myVal.validateWithResult(input);
+
+		assertEquals(outputXml.getMessages().size(), outputJson.getMessages().size());
+		for (int i = 0; i < outputXml.getMessages().size(); i++) {
+			assertEquals(outputXml.getMessages().get(i).getMessage(), outputJson.getMessages().get(i).getMessage());
+			assertEquals(outputXml.getMessages().get(i).getLocationString(), outputJson.getMessages().get(i).getLocationString());
+		}
+	}
+
+	/**
+	 * Compares the throughput of validating already parsed resources with
+	 * {@link FhirInstanceValidator#setValidateParsedResourcesAsJson(boolean)} enabled and disabled
+	 */
+	@Test
+	@Ignore
+	public void testValidateParsedResourcePerformance() throws Exception {
+		List<IBaseResource> corpus = new ArrayList<IBaseResource>();
+		corpus.add(ourCtx.newJsonParser().parseResource(IOUtils.toString(FhirInstanceValidatorR4Test.class.getResourceAsStream("/r4/diagnosticreport-example-gingival-mass.json"))));
+		for (int i = 0; i < 20; i++) {
+			Patient patient = new Patient();
+			patient.addIdentifier().setSystem("http://example.com/mrn").setValue("MRN" + i);
+			patient.addName().setFamily("Family" + i).addGiven("Given" + i);
+			patient.setGender(Enumerations.AdministrativeGender.FEMALE);
+			patient.getBirthDateElement().setValueAsString("1970-01-01");
+			patient.addAddress().addLine("123 Main Street").setCity("Toronto").setCountry("CA");
+			corpus.add(patient);
+
+			Observation obs = new Observation();
+			obs.setStatus(ObservationStatus.FINAL);
+			obs.getCode().addCoding().setSystem("http://loinc.org").setCode("29463-7").setDisplay("Body Weight");
+			obs.getSubject().setReference("Patient/" + i);
+			obs.setValue(new Quantity().setValue(70).setUnit("kg").setSystem("http://unitsofmeasure.org").setCode("kg"));
+			corpus.add(obs);
+		}
+
+		int passes = 20;
+		for (boolean asJson : new boolean[] { false, true, false, true }) {
+			myInstanceVal.setValidateParsedResourcesAsJson(asJson);
+			long start = System.currentTimeMillis();
+			for (int i = 0; i < passes; i++) {
+				for (IBaseResource next : corpus) {
+					myVal.validateWithResult(next);
+				}
+			}
+			long delay = System.currentTimeMillis() - start;
+			int count = passes * corpus.size();
+			ourLog.info("Validated {} parsed resources (as JSON: {}) in {}ms -- {} / sec", count, asJson, delay, (count * 1000L) / Math.max(1, delay));
+		}
+	}
+
 	@Test
 	public void testValidateResourceWithDefaultValueset() {
 		Observation input = new Observation();